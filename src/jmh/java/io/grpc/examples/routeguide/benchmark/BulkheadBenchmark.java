@@ -0,0 +1,238 @@
+package io.grpc.examples.routeguide.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.GetFeatureRequest;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.RouteGuideGrpc;
+import io.grpc.examples.routeguide.RouteSummary;
+import io.grpc.examples.routeguide.bulkhead.Bulkhead;
+import io.grpc.examples.routeguide.bulkhead.BulkheadInterceptor;
+import io.grpc.examples.routeguide.channel.ChannelPool;
+import io.grpc.examples.routeguide.transport.NettyServerConfig;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * GetFeature latency while RecordRoute streams grow, with every call on one
+ * shared executor and with separate unary and streaming bulkheads.
+ *
+ * Both layouts get THREADS threads for service work: "shared" as the server
+ * executor, "bulkheads" split evenly between the two bulkheads (plus a small
+ * server executor that only hands callbacks over). The synthetic service
+ * blocks LOOKUP_MILLIS for every GetFeature and every route point, standing in
+ * for a DynamoDB read. GET_THREADS threads issue GetFeature calls back to back
+ * while each stream sends points as fast as the server takes them.
+ *
+ * Usage:
+ *   mvn -Pjmh package && java -cp target/route-guide-1.0-SNAPSHOT.jar \
+ *     io.grpc.examples.routeguide.benchmark.BulkheadBenchmark [seconds]
+ */
+public class BulkheadBenchmark {
+
+    private static final int THREADS = 32;
+    private static final int HANDOFF_THREADS = 4;
+    private static final long LOOKUP_MILLIS = 2;
+    private static final int GET_THREADS = 8;
+    private static final int POINTS_PER_ROUTE = 200;
+    private static final int[] STREAMS = {0, 16, 64, 256};
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+
+        System.out.println(String.format("%-10s %8s %12s %12s %12s %14s %10s",
+            "server", "streams", "Get calls/s", "Get p50 ms", "Get p99 ms", "route points/s", "rejected"));
+        // Unreported run so both layouts run compiled code
+        run(false, 16, Math.min(seconds, 3), false);
+        run(true, 16, Math.min(seconds, 3), false);
+        for (int streams : STREAMS) {
+            run(false, streams, seconds, true);
+            run(true, streams, seconds, true);
+        }
+    }
+
+    private static void run(boolean bulkheads, int streams, int seconds, boolean report) throws Exception {
+        NettyServerConfig config = NettyServerConfig.fromEnvironment();
+        ExecutorService serverExecutor = Executors.newFixedThreadPool(bulkheads ? HANDOFF_THREADS : THREADS);
+        Bulkhead unary = bulkheads ? new Bulkhead("bench-unary", THREADS / 2, 1_000) : null;
+        Bulkhead streaming = bulkheads ? new Bulkhead("bench-streaming", THREADS / 2, 1_000) : null;
+        SyntheticService service = new SyntheticService();
+        Server server = config.newServerBuilder(0)
+            .executor(serverExecutor)
+            .addService(bulkheads
+                ? ServerInterceptors.intercept(service, new BulkheadInterceptor(method ->
+                    method.getType() == MethodDescriptor.MethodType.UNARY ? unary : streaming))
+                : service.bindService())
+            .build()
+            .start();
+        ManagedChannel channel = new ChannelPool(() -> ManagedChannelBuilder.forAddress("localhost", server.getPort())
+            .usePlaintext()
+            .build(), 2, 2);
+        try {
+            RouteGuideGrpc.RouteGuideStub asyncStub = RouteGuideGrpc.newStub(channel);
+            RouteGuideGrpc.RouteGuideBlockingStub blockingStub = RouteGuideGrpc.newBlockingStub(channel);
+            long start = System.nanoTime();
+            long end = start + TimeUnit.SECONDS.toNanos(seconds);
+            AtomicLong points = new AtomicLong();
+            AtomicLong rejected = new AtomicLong();
+            List<long[]> latencies = new ArrayList<>();
+            List<Thread> threads = new ArrayList<>();
+
+            for (int i = 0; i < streams; i++) {
+                threads.add(new Thread(() -> {
+                    while (System.nanoTime() < end) {
+                        recordRoute(asyncStub, points, rejected);
+                    }
+                }));
+            }
+            for (int i = 0; i < GET_THREADS; i++) {
+                long[] samples = new long[1 << 20];
+                latencies.add(samples);
+                threads.add(new Thread(() -> {
+                    GetFeatureRequest request = GetFeatureRequest.newBuilder()
+                        .setPoint(Point.newBuilder().setLatitude(409_146_138).setLongitude(-746_188_906))
+                        .build();
+                    int n = 1; // samples[0] holds the count
+                    while (System.nanoTime() < end && n < samples.length) {
+                        long callStart = System.nanoTime();
+                        try {
+                            blockingStub.getFeature(request);
+                            samples[n++] = System.nanoTime() - callStart;
+                        } catch (RuntimeException e) {
+                            rejected.incrementAndGet();
+                        }
+                    }
+                    samples[0] = n - 1;
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            long elapsed = System.nanoTime() - start;
+
+            int calls = 0;
+            for (long[] samples : latencies) {
+                calls += (int) samples[0];
+            }
+            long[] sorted = new long[calls];
+            int offset = 0;
+            for (long[] samples : latencies) {
+                System.arraycopy(samples, 1, sorted, offset, (int) samples[0]);
+                offset += (int) samples[0];
+            }
+            Arrays.sort(sorted);
+            if (report) {
+                System.out.println(String.format("%-10s %8d %12.0f %12.2f %12.2f %14.0f %10d",
+                    bulkheads ? "bulkheads" : "shared", streams, calls / (elapsed / 1e9),
+                    percentile(sorted, 0.50), percentile(sorted, 0.99), points.get() / (elapsed / 1e9),
+                    rejected.get()));
+            }
+        } finally {
+            channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+            server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+            serverExecutor.shutdownNow();
+            if (bulkheads) {
+                unary.shutdownNow();
+                streaming.shutdownNow();
+            }
+            config.shutdownEventLoops();
+        }
+    }
+
+    private static void recordRoute(RouteGuideGrpc.RouteGuideStub stub, AtomicLong points, AtomicLong rejected) {
+        CountDownLatch done = new CountDownLatch(1);
+        StreamObserver<Point> route = stub.recordRoute(new StreamObserver<RouteSummary>() {
+            @Override
+            public void onNext(RouteSummary summary) {
+                points.addAndGet(summary.getPointCount());
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                rejected.incrementAndGet();
+                done.countDown();
+            }
+
+            @Override
+            public void onCompleted() {
+                done.countDown();
+            }
+        });
+        try {
+            for (int i = 0; i < POINTS_PER_ROUTE; i++) {
+                route.onNext(Point.newBuilder().setLatitude(400_000_000 + i).setLongitude(-740_000_000).build());
+            }
+            route.onCompleted();
+            done.await();
+        } catch (InterruptedException e) {
+            route.onError(e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.max(0, (int) Math.ceil(percentile * sorted.length) - 1)] / 1e6;
+    }
+
+    private static void lookUp() {
+        try {
+            Thread.sleep(LOOKUP_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class SyntheticService extends RouteGuideGrpc.RouteGuideImplBase {
+
+        @Override
+        public void getFeature(GetFeatureRequest request, StreamObserver<Feature> responseObserver) {
+            lookUp();
+            responseObserver.onNext(Feature.newBuilder()
+                .setName("Feature, Example Road, Somewhere, NJ 07000, USA")
+                .setLocation(request.getPoint())
+                .build());
+            responseObserver.onCompleted();
+        }
+
+        @Override
+        public StreamObserver<Point> recordRoute(StreamObserver<RouteSummary> responseObserver) {
+            return new StreamObserver<Point>() {
+                private int points;
+
+                @Override
+                public void onNext(Point point) {
+                    lookUp();
+                    points++;
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                }
+
+                @Override
+                public void onCompleted() {
+                    responseObserver.onNext(RouteSummary.newBuilder().setPointCount(points).build());
+                    responseObserver.onCompleted();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package io.grpc.examples.routeguide.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.GetFeatureRequest;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.RouteGuideGrpc;
+import io.grpc.examples.routeguide.RouteSummary;
+import io.grpc.examples.routeguide.channel.ChannelPool;
+import io.grpc.examples.routeguide.transport.NettyServerConfig;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Compares a single channel against ChannelPool layouts for a client mixing
+ * long RecordRoute streams with unary GetFeature calls.
+ *
+ * The synthetic server allows MAX_CALLS_PER_CONNECTION concurrent calls per
+ * connection, as many servers and proxies do. ROUTES streams each send a point
+ * every POINT_INTERVAL_MILLIS for POINTS_PER_ROUTE points, while GET_THREADS
+ * threads issue GetFeature calls back to back. On one channel the streams and
+ * unary calls together exceed the limit, so unary calls queue for a free stream.
+ *
+ * Usage:
+ *   mvn -Pjmh package && java -cp target/route-guide-1.0-SNAPSHOT.jar \
+ *     io.grpc.examples.routeguide.benchmark.ChannelPoolBenchmark [seconds]
+ */
+public class ChannelPoolBenchmark {
+
+    private static final int MAX_CALLS_PER_CONNECTION = 100;
+    private static final int ROUTES = 80;
+    private static final int POINTS_PER_ROUTE = 100;
+    private static final long POINT_INTERVAL_MILLIS = 20;
+    private static final int GET_THREADS = 32;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+
+        Map<String, String> settings = new HashMap<>();
+        settings.put("SERVER_MAX_CONCURRENT_CALLS_PER_CONNECTION", Integer.toString(MAX_CALLS_PER_CONNECTION));
+        NettyServerConfig config = NettyServerConfig.from(settings::get);
+        Server server = config.newServerBuilder(0)
+            .addService(new SyntheticService())
+            .build()
+            .start();
+        try {
+            // Unreported run so every layout runs compiled code
+            run(server.getPort(), "warm-up", 1, 0, Math.min(seconds, 3), false);
+            System.out.println(String.format("%-26s %12s %12s %12s %16s",
+                "client", "Get calls/s", "Get p50 ms", "Get p99 ms", "RecordRoute p/s"));
+            run(server.getPort(), "1 channel", 1, 0, seconds, true);
+            run(server.getPort(), "4 channels, shared", 4, 0, seconds, true);
+            run(server.getPort(), "2 unary + 2 streaming", 2, 2, seconds, true);
+        } finally {
+            server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+            config.shutdownEventLoops();
+        }
+    }
+
+    private static void run(int port, String label, int unaryChannels, int streamingChannels, int seconds,
+            boolean report) throws InterruptedException {
+        ManagedChannel channel = new ChannelPool(() -> ManagedChannelBuilder.forAddress("localhost", port)
+            .usePlaintext()
+            .build(), unaryChannels, streamingChannels);
+        try {
+            RouteGuideGrpc.RouteGuideStub asyncStub = RouteGuideGrpc.newStub(channel);
+            RouteGuideGrpc.RouteGuideBlockingStub blockingStub = RouteGuideGrpc.newBlockingStub(channel);
+            long start = System.nanoTime();
+            long end = start + TimeUnit.SECONDS.toNanos(seconds);
+            AtomicLong points = new AtomicLong();
+            List<long[]> latencies = new ArrayList<>();
+            List<Thread> threads = new ArrayList<>();
+
+            for (int i = 0; i < ROUTES; i++) {
+                threads.add(new Thread(() -> {
+                    while (System.nanoTime() < end) {
+                        recordRoute(asyncStub, points);
+                    }
+                }));
+            }
+            for (int i = 0; i < GET_THREADS; i++) {
+                long[] samples = new long[1 << 20];
+                latencies.add(samples);
+                threads.add(new Thread(() -> {
+                    GetFeatureRequest request = GetFeatureRequest.newBuilder()
+                        .setPoint(Point.newBuilder().setLatitude(409_146_138).setLongitude(-746_188_906))
+                        .build();
+                    int n = 1; // samples[0] holds the count
+                    while (System.nanoTime() < end && n < samples.length) {
+                        long callStart = System.nanoTime();
+                        blockingStub.getFeature(request);
+                        samples[n++] = System.nanoTime() - callStart;
+                    }
+                    samples[0] = n - 1;
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            long elapsed = System.nanoTime() - start;
+
+            int calls = 0;
+            for (long[] samples : latencies) {
+                calls += (int) samples[0];
+            }
+            long[] sorted = new long[calls];
+            int offset = 0;
+            for (long[] samples : latencies) {
+                System.arraycopy(samples, 1, sorted, offset, (int) samples[0]);
+                offset += (int) samples[0];
+            }
+            Arrays.sort(sorted);
+            if (report) {
+                System.out.println(String.format("%-26s %12.0f %12.2f %12.2f %16.0f", label,
+                    calls / (elapsed / 1e9), percentile(sorted, 0.50), percentile(sorted, 0.99),
+                    points.get() / (elapsed / 1e9)));
+            }
+        } finally {
+            channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static void recordRoute(RouteGuideGrpc.RouteGuideStub stub, AtomicLong points) {
+        CountDownLatch done = new CountDownLatch(1);
+        StreamObserver<Point> route = stub.recordRoute(new StreamObserver<RouteSummary>() {
+            @Override
+            public void onNext(RouteSummary summary) {
+                points.addAndGet(summary.getPointCount());
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                done.countDown();
+            }
+
+            @Override
+            public void onCompleted() {
+                done.countDown();
+            }
+        });
+        try {
+            for (int i = 0; i < POINTS_PER_ROUTE; i++) {
+                route.onNext(Point.newBuilder().setLatitude(400_000_000 + i).setLongitude(-740_000_000).build());
+                Thread.sleep(POINT_INTERVAL_MILLIS);
+            }
+            route.onCompleted();
+            done.await();
+        } catch (InterruptedException e) {
+            route.onError(e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.max(0, (int) Math.ceil(percentile * sorted.length) - 1)] / 1e6;
+    }
+
+    private static class SyntheticService extends RouteGuideGrpc.RouteGuideImplBase {
+
+        @Override
+        public void getFeature(GetFeatureRequest request, StreamObserver<Feature> responseObserver) {
+            responseObserver.onNext(Feature.newBuilder()
+                .setName("Feature, Example Road, Somewhere, NJ 07000, USA")
+                .setLocation(request.getPoint())
+                .build());
+            responseObserver.onCompleted();
+        }
+
+        @Override
+        public StreamObserver<Point> recordRoute(StreamObserver<RouteSummary> responseObserver) {
+            return new StreamObserver<Point>() {
+                private int points;
+
+                @Override
+                public void onNext(Point point) {
+                    points++;
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                }
+
+                @Override
+                public void onCompleted() {
+                    responseObserver.onNext(RouteSummary.newBuilder().setPointCount(points).build());
+                    responseObserver.onCompleted();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package io.grpc.examples.routeguide.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.grpc.examples.routeguide.ratelimit.ClientRateLimiter;
+import io.grpc.examples.routeguide.ratelimit.TokenBucket;
+
+/**
+ * Cost of the per-call rate limit check with 8 concurrent callers. "1" sends
+ * every call as the same client (worst case for contention on one bucket),
+ * "100000" spreads them over 100k clients (map size and cache misses).
+ *
+ *   java -cp target/route-guide-1.0-SNAPSHOT.jar org.openjdk.jmh.Main ClientRateLimiter
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class ClientRateLimiterBenchmark {
+
+    @Param({"1", "100000"})
+    public int clients;
+
+    private ClientRateLimiter limiter;
+    private String[] ids;
+
+    @Setup
+    public void setUp() {
+        // High enough that calls are mostly allowed and the CAS path is measured
+        limiter = new ClientRateLimiter(new TokenBucket[] {
+            new TokenBucket(1e9, 1_000), new TokenBucket(1e9, 1_000), new TokenBucket(1e9, 1_000)},
+            TimeUnit.MINUTES.toNanos(5), 1_000_000);
+        ids = new String[clients];
+        for (int i = 0; i < clients; i++) {
+            ids[i] = "client-" + i;
+            limiter.tryAcquire(ids[i], ClientRateLimiter.Kind.READ, 1);
+        }
+    }
+
+    @Benchmark
+    public long tryAcquire() {
+        String id = ids[ThreadLocalRandom.current().nextInt(ids.length)];
+        return limiter.tryAcquire(id, ClientRateLimiter.Kind.READ, 1);
+    }
+}
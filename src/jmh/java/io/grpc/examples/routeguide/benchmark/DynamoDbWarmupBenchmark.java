@@ -0,0 +1,127 @@
+package io.grpc.examples.routeguide.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.RouteGuideUtil;
+import io.grpc.examples.routeguide.db.FeatureRepository;
+import io.grpc.examples.routeguide.factory.AwsClientFactory;
+import io.grpc.examples.routeguide.factory.AwsClientFactoryProvider;
+
+/**
+ * Measures GetFeature latency during the first minute of a fresh DynamoDB client,
+ * with and without connection warm-up.
+ *
+ * Each round builds a new FeatureRepository (and so a new client and pool), warms
+ * it or not, then runs concurrent lookups of the points in route_guide_db.json and
+ * reports latency percentiles for the first requests and per 10 second bucket.
+ * Cold and warm rounds alternate so both see the same DynamoDB conditions.
+ *
+ * Needs a reachable DynamoDB with a loaded RouteGuideFeatures table, selected the
+ * same way as the server (APP_ENV, DYNAMODB_ENDPOINT, AWS_REGION, DYNAMODB_*).
+ *
+ * Usage:
+ *   mvn -Pjmh package && APP_ENV=local java -cp target/route-guide-1.0-SNAPSHOT.jar \
+ *     io.grpc.examples.routeguide.benchmark.DynamoDbWarmupBenchmark [seconds] [threads] [rounds]
+ */
+public class DynamoDbWarmupBenchmark {
+
+    private static final int FIRST_REQUESTS = 100;
+    private static final long BUCKET_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final long WARMUP_BUDGET_MILLIS = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+
+        List<Feature> features = RouteGuideUtil.parseFeatures(RouteGuideUtil.getDefaultFeaturesFile());
+        AwsClientFactory factory = AwsClientFactoryProvider.getFactory();
+        System.out.println("Client: " + factory.getClientConfig());
+
+        for (int round = 0; round < rounds; round++) {
+            for (boolean warm : new boolean[] {false, true}) {
+                run(factory, features, warm, seconds, threads);
+            }
+        }
+    }
+
+    private static void run(AwsClientFactory factory, List<Feature> features, boolean warm,
+            int seconds, int threads) throws InterruptedException {
+        FeatureRepository repository = new FeatureRepository(factory);
+        try {
+            long warmupMillis = 0;
+            if (warm) {
+                long start = System.nanoTime();
+                repository.warmUp(WARMUP_BUDGET_MILLIS);
+                warmupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            }
+
+            // {offset from start, latency} per request, in nanoseconds
+            ConcurrentLinkedQueue<long[]> samples = new ConcurrentLinkedQueue<>();
+            long start = System.nanoTime();
+            long end = start + TimeUnit.SECONDS.toNanos(seconds);
+            CountDownLatch done = new CountDownLatch(threads);
+            for (int i = 0; i < threads; i++) {
+                new Thread(() -> {
+                    try {
+                        while (System.nanoTime() < end) {
+                            Feature feature = features.get(ThreadLocalRandom.current().nextInt(features.size()));
+                            long callStart = System.nanoTime();
+                            repository.getFeature(feature.getLocation());
+                            long now = System.nanoTime();
+                            samples.add(new long[] {callStart - start, now - callStart});
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }).start();
+            }
+            done.await();
+            report(warm ? "warm (" + warmupMillis + " ms warm-up)" : "cold", new ArrayList<>(samples));
+        } finally {
+            repository.close();
+        }
+    }
+
+    private static void report(String label, List<long[]> samples) {
+        samples.sort((a, b) -> Long.compare(a[0], b[0]));
+        System.out.println(label + ", " + samples.size() + " requests");
+        System.out.println(String.format("  %-14s %10s %10s %10s %10s", "", "count", "p50 ms", "p99 ms", "max ms"));
+        print("first " + FIRST_REQUESTS, samples.subList(0, Math.min(FIRST_REQUESTS, samples.size())));
+
+        int from = 0;
+        for (long bucketEnd = BUCKET_NANOS; from < samples.size(); bucketEnd += BUCKET_NANOS) {
+            int to = from;
+            while (to < samples.size() && samples.get(to)[0] < bucketEnd) {
+                to++;
+            }
+            print(String.format("%ds-%ds", (bucketEnd - BUCKET_NANOS) / 1_000_000_000L,
+                bucketEnd / 1_000_000_000L), samples.subList(from, to));
+            from = to;
+        }
+    }
+
+    private static void print(String label, List<long[]> samples) {
+        if (samples.isEmpty()) {
+            return;
+        }
+        double[] millis = new double[samples.size()];
+        for (int i = 0; i < millis.length; i++) {
+            millis[i] = samples.get(i)[1] / 1e6;
+        }
+        Arrays.sort(millis);
+        System.out.println(String.format("  %-14s %10d %10.2f %10.2f %10.2f", label, millis.length,
+            percentile(millis, 0.50), percentile(millis, 0.99), millis[millis.length - 1]));
+    }
+
+    private static double percentile(double[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.floor(p * sorted.length))];
+    }
+}
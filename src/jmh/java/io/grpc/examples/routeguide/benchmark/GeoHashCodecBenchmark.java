@@ -0,0 +1,139 @@
+package io.grpc.examples.routeguide.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ch.hsr.geohash.GeoHash;
+import io.grpc.examples.routeguide.geo.GeoHashCodec;
+
+/**
+ * GeoHashCodec against ch.hsr.geohash for the operations on request paths:
+ * encoding a point to a cell id, to a 6-char partition key, and listing the
+ * neighbours of a cell.
+ *
+ * Setup first checks that both produce the same ids, strings and neighbours for
+ * random points and for E7 values next to cell boundaries at every precision,
+ * and fails the run if they differ.
+ *
+ * Run with -prof gc to see allocations per operation (gc.alloc.rate.norm):
+ *   java -cp target/route-guide-1.0-SNAPSHOT.jar org.openjdk.jmh.Main GeoHashCodec -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeoHashCodecBenchmark {
+
+    private static final int POINTS = 4096;
+    private static final int PARTITION_CHARS = 6;
+    private static final int CELL_CHARS = 12;
+    private static final int CHECKS = 200_000;
+
+    private final int[] latitudes = new int[POINTS];
+    private final int[] longitudes = new int[POINTS];
+    private final long[] cells = new long[POINTS];
+    private final GeoHash[] geoHashes = new GeoHash[POINTS];
+    private final long[] neighbors = new long[8];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < POINTS; i++) {
+            latitudes[i] = random.nextInt(1_800_000_001) - 900_000_000;
+            longitudes[i] = (int) (random.nextLong() % 1_800_000_001L);
+            cells[i] = GeoHashCodec.encode(latitudes[i], longitudes[i], PARTITION_CHARS);
+            geoHashes[i] = GeoHash.withCharacterPrecision(latitudes[i] / 1e7, longitudes[i] / 1e7, PARTITION_CHARS);
+        }
+        checkCompatible(random);
+    }
+
+    @Benchmark
+    public long encodeCodec() {
+        int i = next();
+        return GeoHashCodec.encode(latitudes[i], longitudes[i], CELL_CHARS);
+    }
+
+    @Benchmark
+    public long encodeLibrary() {
+        int i = next();
+        return GeoHash.withCharacterPrecision(latitudes[i] / 1e7, longitudes[i] / 1e7, CELL_CHARS).longValue();
+    }
+
+    @Benchmark
+    public String partitionKeyCodec() {
+        int i = next();
+        return GeoHashCodec.toBase32(GeoHashCodec.encode(latitudes[i], longitudes[i], PARTITION_CHARS),
+            PARTITION_CHARS);
+    }
+
+    @Benchmark
+    public String partitionKeyLibrary() {
+        int i = next();
+        return GeoHash.geoHashStringWithCharacterPrecision(latitudes[i] / 1e7, longitudes[i] / 1e7, PARTITION_CHARS);
+    }
+
+    @Benchmark
+    public void neighborsCodec(Blackhole blackhole) {
+        GeoHashCodec.neighbors(cells[next()], PARTITION_CHARS, neighbors);
+        blackhole.consume(neighbors);
+    }
+
+    @Benchmark
+    public GeoHash[] neighborsLibrary() {
+        return geoHashes[next()].getAdjacent();
+    }
+
+    private int next() {
+        next = (next + 1) & (POINTS - 1);
+        return next;
+    }
+
+    private static void checkCompatible(Random random) {
+        long[] adjacent = new long[8];
+        for (int n = 0; n < CHECKS; n++) {
+            int chars = 1 + random.nextInt(GeoHashCodec.MAX_CHARS);
+            int lat = random.nextInt(1_800_000_001) - 900_000_000;
+            int lon = (int) (random.nextLong() % 1_800_000_001L);
+            if ((n & 1) == 0) {
+                // Snap to the E7 value nearest a cell boundary, then step around it
+                int latBits = 5 * chars / 2;
+                int lonBits = (5 * chars + 1) / 2;
+                double latSize = 180.0 / (1L << latBits);
+                double lonSize = 360.0 / (1L << lonBits);
+                lat = (int) Math.round((Math.floor(lat / 1e7 / latSize) * latSize) * 1e7) + random.nextInt(5) - 2;
+                lon = (int) Math.round((Math.floor(lon / 1e7 / lonSize) * lonSize) * 1e7) + random.nextInt(5) - 2;
+                lat = Math.max(-900_000_000, Math.min(900_000_000, lat));
+                lon = Math.max(-1_800_000_000, Math.min(1_800_000_000, lon));
+            }
+            GeoHash expected = GeoHash.withCharacterPrecision(lat / 1e7, lon / 1e7, chars);
+            long cell = GeoHashCodec.encode(lat, lon, chars);
+            String geoHash = GeoHashCodec.toBase32(cell, chars);
+            if (!geoHash.equals(expected.toBase32()) || GeoHashCodec.fromBase32(geoHash) != cell) {
+                throw new IllegalStateException("Mismatch at " + lat + ", " + lon + " (" + chars + " chars): "
+                    + geoHash + " != " + expected.toBase32());
+            }
+            GeoHashCodec.neighbors(cell, chars, adjacent);
+            GeoHash[] expectedAdjacent = expected.getAdjacent();
+            for (int i = 0; i < 8; i++) {
+                if (!GeoHashCodec.toBase32(adjacent[i], chars).equals(expectedAdjacent[i].toBase32())) {
+                    throw new IllegalStateException("Neighbour " + i + " of " + geoHash + " differs");
+                }
+            }
+        }
+    }
+}
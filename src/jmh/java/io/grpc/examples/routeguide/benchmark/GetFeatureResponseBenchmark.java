@@ -0,0 +1,129 @@
+package io.grpc.examples.routeguide.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.protobuf.FieldMask;
+import com.google.protobuf.util.FieldMaskUtil;
+
+import io.grpc.Drainable;
+import io.grpc.MethodDescriptor;
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.RouteGuideGrpc;
+import io.grpc.examples.routeguide.cache.SerializedMessageMarshaller;
+import io.grpc.examples.routeguide.cache.SerializedResponseCache;
+
+/**
+ * GetFeature response path on a hot-tier hit: protobuf (look up the Feature, mask
+ * it, serialize through the generated marshaller) against the serialized response
+ * cache (look up bytes, drain them). Both end with the stream drained into the
+ * transport, here a discarding OutputStream.
+ *
+ * Run with -prof gc to see allocations per operation (gc.alloc.rate.norm):
+ *   java -cp target/route-guide-1.0-SNAPSHOT.jar org.openjdk.jmh.Main GetFeatureResponse -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GetFeatureResponseBenchmark {
+
+    private static final int FEATURES = 1024;
+
+    @Param({"", "name"})
+    public String mask;
+
+    private final MethodDescriptor.Marshaller<Feature> protoMarshaller =
+        RouteGuideGrpc.getGetFeatureMethod().getResponseMarshaller();
+    private final Map<Long, Feature> resident = new HashMap<>();
+    private final Point[] points = new Point[FEATURES];
+    private final OutputStream transport = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private SerializedResponseCache cache;
+    private FieldMask fieldMask;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        fieldMask = mask.isEmpty() ? FieldMask.getDefaultInstance() : FieldMask.newBuilder().addPaths(mask).build();
+        cache = new SerializedResponseCache(Long.MAX_VALUE, geoHash -> true);
+        String fingerprint = SerializedResponseCache.fingerprint(fieldMask);
+        for (int i = 0; i < FEATURES; i++) {
+            Point point = Point.newBuilder()
+                .setLatitude(407_838_351 + i * 1_000)
+                .setLongitude(-746_143_763 - i * 1_000)
+                .build();
+            Feature feature = Feature.newBuilder()
+                .setName("Patriots Path, Mendham, NJ 07945, USA #" + i)
+                .setLocation(point)
+                .build();
+            points[i] = point;
+            resident.put(key(point), feature);
+            cache.put(cache.stamp(), point, fingerprint, mask(feature).toByteArray());
+        }
+    }
+
+    @Benchmark
+    public int protobuf() throws IOException {
+        Point point = nextPoint();
+        Feature feature = mask(resident.get(key(point)));
+        return drain(protoMarshaller.stream(feature));
+    }
+
+    @Benchmark
+    public int serializedCache() throws IOException {
+        Point point = nextPoint();
+        SerializedResponseCache.CachedResponse cached =
+            cache.get(point, SerializedResponseCache.fingerprint(fieldMask));
+        return drain(SerializedMessageMarshaller.INSTANCE.stream(cached.getMessage()));
+    }
+
+    private Feature mask(Feature feature) {
+        if (fieldMask.getPathsCount() == 0) {
+            return feature;
+        }
+        Feature.Builder masked = Feature.newBuilder();
+        FieldMaskUtil.merge(fieldMask, feature, masked);
+        return masked.build();
+    }
+
+    private Point nextPoint() {
+        next = (next + 1) & (FEATURES - 1);
+        return points[next];
+    }
+
+    private int drain(InputStream stream) throws IOException {
+        return ((Drainable) stream).drainTo(transport);
+    }
+
+    private static long key(Point point) {
+        return ((long) point.getLatitude() << 32) | (point.getLongitude() & 0xffffffffL);
+    }
+}
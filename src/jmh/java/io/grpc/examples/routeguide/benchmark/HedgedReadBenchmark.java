@@ -0,0 +1,139 @@
+package io.grpc.examples.routeguide.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import io.grpc.examples.routeguide.db.CancellationGuard;
+import io.grpc.examples.routeguide.db.ReadHedger;
+import io.grpc.examples.routeguide.metrics.MetricsRegistry;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+/**
+ * Read latency with and without ReadHedger against a backend with a slow tail.
+ *
+ * The synthetic read stands in for a partition Query: it takes FAST_MILLIS,
+ * except for a SLOW_SHARE of reads that take SLOW_MILLIS, and runs through
+ * CancellationGuard like the real one, so a losing attempt is cut short by
+ * interrupting its sleep. A real request blocked in a socket read is not, so
+ * this is the best case for the threads the losers hold. THREADS callers read back to back. Each hedged row
+ * gets a budget of BUDGET_SHARE of the unhedged read rate.
+ *
+ * Usage:
+ *   mvn -Pjmh package && java -cp target/route-guide-1.0-SNAPSHOT.jar \
+ *     io.grpc.examples.routeguide.benchmark.HedgedReadBenchmark [seconds]
+ */
+public class HedgedReadBenchmark {
+
+    private static final int THREADS = 16;
+    private static final long FAST_MILLIS = 2;
+    private static final long SLOW_MILLIS = 50;
+    private static final double SLOW_SHARE = 0.02;
+    private static final double BUDGET_SHARE = 0.05;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+
+        System.out.println(String.format("%-16s %10s %10s %10s %10s %12s %10s",
+            "reads", "reads/s", "p50 ms", "p99 ms", "p99.9 ms", "extra reads", "hedges won"));
+        double readsPerSecond = run("unhedged", null, seconds);
+        double hedgesPerSecond = readsPerSecond * BUDGET_SHARE;
+        run("hedged p95", new ReadHedger("bench-p95", 0, 0.95, hedgesPerSecond, 20, 4 * THREADS), seconds);
+        run("hedged 10 ms", new ReadHedger("bench-10ms", 10, 0.95, hedgesPerSecond, 20, 4 * THREADS), seconds);
+        run("hedged p95 1%", new ReadHedger("bench-p95-1", 0, 0.95, readsPerSecond * 0.01, 20, 4 * THREADS),
+            seconds);
+    }
+
+    /**
+     * @param hedger Hedger, or null for plain reads
+     * @return Reads per second
+     */
+    private static double run(String label, ReadHedger hedger, int seconds) throws InterruptedException {
+        long wonBefore = wonHedges();
+        AtomicLong attempts = new AtomicLong();
+        Supplier<Integer> read = () -> CancellationGuard.run("Query", () -> {
+            attempts.incrementAndGet();
+            long millis = ThreadLocalRandom.current().nextDouble() < SLOW_SHARE ? SLOW_MILLIS : FAST_MILLIS;
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                throw SdkClientException.create("Read aborted", e);
+            }
+            return 1;
+        });
+
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        List<long[]> latencies = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            long[] samples = new long[1 << 20];
+            latencies.add(samples);
+            threads.add(new Thread(() -> {
+                int n = 1; // samples[0] holds the count
+                while (System.nanoTime() < end && n < samples.length) {
+                    long callStart = System.nanoTime();
+                    if (hedger != null) {
+                        hedger.call(read);
+                    } else {
+                        read.get();
+                    }
+                    samples[n++] = System.nanoTime() - callStart;
+                }
+                samples[0] = n - 1;
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        int calls = 0;
+        for (long[] samples : latencies) {
+            calls += (int) samples[0];
+        }
+        long[] sorted = new long[calls];
+        int offset = 0;
+        for (long[] samples : latencies) {
+            System.arraycopy(samples, 1, sorted, offset, (int) samples[0]);
+            offset += (int) samples[0];
+        }
+        Arrays.sort(sorted);
+        long won = wonHedges() - wonBefore;
+        System.out.println(String.format("%-16s %10.0f %10.2f %10.2f %10.2f %11.1f%% %10d",
+            label, calls / (elapsed / 1e9), percentile(sorted, 0.50), percentile(sorted, 0.99),
+            percentile(sorted, 0.999), 100.0 * (attempts.get() - calls) / calls, won));
+        if (hedger != null) {
+            hedger.shutdownNow();
+        }
+        return calls / (elapsed / 1e9);
+    }
+
+    /**
+     * Hedges won by every hedger so far.
+     */
+    private static long wonHedges() {
+        long won = 0;
+        for (Map.Entry<String, Long> metric : MetricsRegistry.getDefault().snapshot().entrySet()) {
+            if (metric.getKey().endsWith(".hedge.won")) {
+                won += metric.getValue();
+            }
+        }
+        return won;
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.max(0, (int) Math.ceil(percentile * sorted.length) - 1)] / 1e6;
+    }
+}
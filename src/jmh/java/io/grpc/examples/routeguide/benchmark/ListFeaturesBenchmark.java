@@ -0,0 +1,160 @@
+package io.grpc.examples.routeguide.benchmark;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import io.grpc.Grpc;
+import io.grpc.InsecureServerCredentials;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.FeatureBatch;
+import io.grpc.examples.routeguide.FeatureBatcher;
+import io.grpc.examples.routeguide.ListFeatureBatchesRequest;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.Rectangle;
+import io.grpc.examples.routeguide.RouteGuideClient;
+import io.grpc.examples.routeguide.RouteGuideGrpc;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Compares ListFeatures (one message per feature) against ListFeatureBatches
+ * for 1k, 10k and 100k results over a real loopback HTTP/2 connection.
+ *
+ * The server side is synthetic: the rectangle's lo.latitude carries the number of
+ * features to generate, so only transport and serialization cost is measured.
+ *
+ * Usage:
+ *   mvn -Pjmh package && java -cp target/route-guide-1.0-SNAPSHOT.jar io.grpc.examples.routeguide.benchmark.ListFeaturesBenchmark
+ */
+public class ListFeaturesBenchmark {
+
+    private static final int[] RESULT_SIZES = {1_000, 10_000, 100_000};
+    private static final int WARMUP_RUNS = 5;
+    private static final int MEASURED_RUNS = 10;
+
+    public static void main(String[] args) throws Exception {
+        ScheduledExecutorService flushTimer = Executors.newSingleThreadScheduledExecutor();
+        Server server = Grpc.newServerBuilderForPort(0, InsecureServerCredentials.create())
+            .addService(new SyntheticService(flushTimer))
+            .build()
+            .start();
+        ManagedChannel channel = ManagedChannelBuilder.forAddress("localhost", server.getPort())
+            .usePlaintext()
+            .build();
+
+        try {
+            RouteGuideGrpc.RouteGuideBlockingStub stub = RouteGuideGrpc.newBlockingStub(channel);
+            System.out.println(String.format("%10s %18s %18s %18s",
+                "features", "per-feature ms", "batched ms", "batched+gzip ms"));
+            for (int size : RESULT_SIZES) {
+                double single = median(size, () -> drain(stub.listFeatures(rectangle(size))));
+                double batched = median(size, () -> drain(RouteGuideClient.featureIterator(
+                    stub.listFeatureBatches(batchRequest(size, "")))));
+                double gzip = median(size, () -> drain(RouteGuideClient.featureIterator(
+                    stub.listFeatureBatches(batchRequest(size, "gzip")))));
+                System.out.println(String.format("%10d %18.2f %18.2f %18.2f", size, single, batched, gzip));
+            }
+        } finally {
+            channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+            server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+            flushTimer.shutdownNow();
+        }
+    }
+
+    private static double median(int expected, Run run) {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            check(expected, run.run());
+        }
+        double[] millis = new double[MEASURED_RUNS];
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            long start = System.nanoTime();
+            check(expected, run.run());
+            millis[i] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(millis);
+        return millis[MEASURED_RUNS / 2];
+    }
+
+    private static void check(int expected, int actual) {
+        if (expected != actual) {
+            throw new IllegalStateException("Expected " + expected + " features, got " + actual);
+        }
+    }
+
+    private static int drain(Iterator<Feature> features) {
+        int count = 0;
+        while (features.hasNext()) {
+            features.next();
+            count++;
+        }
+        return count;
+    }
+
+    private static Rectangle rectangle(int size) {
+        return Rectangle.newBuilder()
+            .setLo(Point.newBuilder().setLatitude(size).build())
+            .build();
+    }
+
+    private static ListFeatureBatchesRequest batchRequest(int size, String compression) {
+        return ListFeatureBatchesRequest.newBuilder()
+            .setRectangle(rectangle(size))
+            .setCompression(compression)
+            .build();
+    }
+
+    private interface Run {
+        int run();
+    }
+
+    private static class SyntheticService extends RouteGuideGrpc.RouteGuideImplBase {
+
+        private final ScheduledExecutorService flushTimer;
+
+        SyntheticService(ScheduledExecutorService flushTimer) {
+            this.flushTimer = flushTimer;
+        }
+
+        @Override
+        public void listFeatures(Rectangle rectangle, StreamObserver<Feature> responseObserver) {
+            generate(rectangle.getLo().getLatitude(), responseObserver::onNext);
+            responseObserver.onCompleted();
+        }
+
+        @Override
+        public void listFeatureBatches(ListFeatureBatchesRequest request,
+                StreamObserver<FeatureBatch> responseObserver) {
+            boolean compressed = !request.getCompression().isEmpty();
+            if (compressed) {
+                ((ServerCallStreamObserver<FeatureBatch>) responseObserver)
+                    .setCompression(request.getCompression());
+            }
+            FeatureBatcher batcher = new FeatureBatcher(responseObserver, flushTimer, 0, 0, compressed);
+            generate(request.getRectangle().getLo().getLatitude(), batcher);
+            batcher.flush();
+            responseObserver.onCompleted();
+        }
+
+        private void generate(int count, Consumer<Feature> sink) {
+            for (int i = 0; i < count; i++) {
+                sink.accept(feature(i));
+            }
+        }
+
+        private static Feature feature(int i) {
+            return Feature.newBuilder()
+                .setName("Feature " + i + ", Example Road, Somewhere, NJ 07000, USA")
+                .setLocation(Point.newBuilder()
+                    .setLatitude(400_000_000 + i)
+                    .setLongitude(-740_000_000 - i))
+                .build();
+        }
+    }
+}
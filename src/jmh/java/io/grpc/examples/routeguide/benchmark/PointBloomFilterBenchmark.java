@@ -0,0 +1,74 @@
+package io.grpc.examples.routeguide.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.grpc.examples.routeguide.geo.PointBloomFilter;
+
+/**
+ * Cost of a feature filter lookup for points with no feature, the RecordRoute
+ * common case, at 1% target false positive rate. The 10M filter is ~13 MB, far
+ * beyond the CPU caches, so its lookups pay one cache miss.
+ *
+ * Setup also prints the measured false positive rate.
+ *
+ *   java -cp target/route-guide-1.0-SNAPSHOT.jar org.openjdk.jmh.Main PointBloomFilter
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PointBloomFilterBenchmark {
+
+    private static final int PROBES = 1 << 16;
+
+    @Param({"100000", "10000000"})
+    public int features;
+
+    private PointBloomFilter filter;
+    private final int[] lats = new int[PROBES];
+    private final int[] lons = new int[PROBES];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        filter = new PointBloomFilter(features, 0.01);
+        Random random = new Random(42);
+        for (int i = 0; i < features; i++) {
+            filter.add(random.nextInt(1_800_000_000) - 900_000_000, random.nextInt());
+        }
+        // Distinct stream of points, almost surely never added
+        Random probes = new Random(7);
+        int maybe = 0;
+        for (int i = 0; i < PROBES; i++) {
+            lats[i] = probes.nextInt(1_800_000_000) - 900_000_000;
+            lons[i] = probes.nextInt();
+            if (filter.mightContain(lats[i], lons[i])) {
+                maybe++;
+            }
+        }
+        System.out.printf("%n%d features, %d KiB, false positive rate %.4f (expected %.4f)%n", features,
+            filter.sizeInBytes() / 1024, (double) maybe / PROBES, filter.expectedFalsePositiveRate());
+    }
+
+    @Benchmark
+    public boolean mightContainAbsent() {
+        int i = next++ & (PROBES - 1);
+        return filter.mightContain(lats[i], lons[i]);
+    }
+}
@@ -0,0 +1,69 @@
+package io.grpc.examples.routeguide.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.metrics.RouteHeatmap;
+
+/**
+ * Cost of RouteHeatmap.record() on the RecordRoute path with 8 concurrent streams.
+ * "hot" sends every stream through the same few cells (worst case for contention),
+ * "spread" over ~4000 cells of a city.
+ *
+ *   java -cp target/route-guide-1.0-SNAPSHOT.jar org.openjdk.jmh.Main RouteHeatmap
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class RouteHeatmapBenchmark {
+
+    private static final int POINTS = 4096;
+
+    @Param({"hot", "spread"})
+    public String traffic;
+
+    private RouteHeatmap heatmap;
+    private Point[] points;
+
+    @Setup
+    public void setUp() {
+        heatmap = new RouteHeatmap(10, TimeUnit.SECONDS, 30, 10_000);
+        points = new Point[POINTS];
+        int spread = "hot".equals(traffic) ? 2_000 : 1_000_000; // E7 degrees
+        for (int i = 0; i < POINTS; i++) {
+            points[i] = Point.newBuilder()
+                .setLatitude(407_000_000 + ThreadLocalRandom.current().nextInt(spread))
+                .setLongitude(-740_000_000 + ThreadLocalRandom.current().nextInt(spread))
+                .build();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next = ThreadLocalRandom.current().nextInt(POINTS);
+    }
+
+    @Benchmark
+    public void record(Cursor cursor) {
+        cursor.next = (cursor.next + 1) & (POINTS - 1);
+        heatmap.record(points[cursor.next], (cursor.next & 7) == 0);
+    }
+}
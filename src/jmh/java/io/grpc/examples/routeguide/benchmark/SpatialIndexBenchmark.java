@@ -0,0 +1,139 @@
+package io.grpc.examples.routeguide.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.geo.GeoHashCodec;
+import io.grpc.examples.routeguide.geo.PointQuadtree;
+
+/**
+ * ListFeatures rectangle queries against viewport size, for 1M and 10M features
+ * clustered around 2000 city centres across the continental US.
+ *
+ * "quadtree" queries PointQuadtree. "partitions" is the in-memory equivalent of
+ * the geohash path: every 6-char partition covering the viewport is read and its
+ * features filtered, as the hot tier does with resident partitions (DynamoDB
+ * reads would come on top).
+ *
+ *   java -cp target/route-guide-1.0-SNAPSHOT.jar org.openjdk.jmh.Main SpatialIndex
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class SpatialIndexBenchmark {
+
+    private static final int PARTITION_CHARS = 6;
+    private static final int CITIES = 2_000;
+    private static final int VIEWPORTS = 1024;
+    private static final int MAX_PARTITIONS = 1_000_000;
+
+    @Param({"1000000", "10000000"})
+    public int features;
+
+    @Param({"0.01", "0.1", "1"})
+    public double viewportDegrees;
+
+    @Param({"quadtree", "partitions"})
+    public String store;
+
+    private PointQuadtree<Feature> quadtree;
+    private Map<Long, List<Feature>> partitions;
+    private final int[][] viewports = new int[VIEWPORTS][];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        int[][] cities = new int[CITIES][];
+        for (int i = 0; i < CITIES; i++) {
+            cities[i] = new int[] {
+                250_000_000 + random.nextInt(240_000_000), -1_250_000_000 + random.nextInt(580_000_000)};
+        }
+        String[] names = new String[64];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "Feature " + i;
+        }
+
+        List<Feature> all = new ArrayList<>(features);
+        for (int i = 0; i < features; i++) {
+            int[] city = cities[random.nextInt(CITIES)];
+            int spread = 500_000 + (city[0] & 0xffff) * 30; // 0.05 to 0.25 degrees
+            all.add(Feature.newBuilder()
+                .setName(names[i & 63])
+                .setLocation(Point.newBuilder()
+                    .setLatitude(clamp(city[0] + (int) (random.nextGaussian() * spread), 900_000_000))
+                    .setLongitude(clamp(city[1] + (int) (random.nextGaussian() * spread), 1_800_000_000)))
+                .build());
+        }
+        int half = (int) (viewportDegrees * 1e7 / 2);
+        for (int i = 0; i < VIEWPORTS; i++) {
+            Point center = all.get(random.nextInt(features)).getLocation();
+            viewports[i] = new int[] {center.getLatitude() - half, center.getLongitude() - half,
+                center.getLatitude() + half, center.getLongitude() + half};
+        }
+
+        if ("quadtree".equals(store)) {
+            quadtree = PointQuadtree.build(all,
+                feature -> feature.getLocation().getLatitude(), feature -> feature.getLocation().getLongitude());
+        } else {
+            partitions = new HashMap<>();
+            for (Feature feature : all) {
+                long cell = GeoHashCodec.encode(feature.getLocation().getLatitude(),
+                    feature.getLocation().getLongitude(), PARTITION_CHARS);
+                partitions.computeIfAbsent(cell, key -> new ArrayList<>(4)).add(feature);
+            }
+        }
+    }
+
+    @Benchmark
+    public void query(Blackhole blackhole) {
+        next = (next + 1) & (VIEWPORTS - 1);
+        int[] viewport = viewports[next];
+        if (quadtree != null) {
+            quadtree.query(viewport[0], viewport[1], viewport[2], viewport[3], blackhole::consume);
+            return;
+        }
+        long[] cells = GeoHashCodec.cover(viewport[0], viewport[1], viewport[2], viewport[3],
+            PARTITION_CHARS, MAX_PARTITIONS);
+        for (long cell : cells) {
+            List<Feature> partition = partitions.get(cell);
+            if (partition == null) {
+                continue;
+            }
+            for (Feature feature : partition) {
+                int lat = feature.getLocation().getLatitude();
+                int lon = feature.getLocation().getLongitude();
+                if (lat >= viewport[0] && lat <= viewport[2] && lon >= viewport[1] && lon <= viewport[3]) {
+                    blackhole.consume(feature);
+                }
+            }
+        }
+    }
+
+    private static int clamp(int value, int limit) {
+        return Math.max(-limit, Math.min(limit, value));
+    }
+}
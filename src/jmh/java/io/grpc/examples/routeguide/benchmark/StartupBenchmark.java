@@ -0,0 +1,188 @@
+package io.grpc.examples.routeguide.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.StatusRuntimeException;
+import io.grpc.examples.routeguide.GetFeatureRequest;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.RouteGuideGrpc;
+import io.grpc.examples.routeguide.warmup.StubDynamoDbEndpoint;
+import io.grpc.health.v1.HealthCheckRequest;
+import io.grpc.health.v1.HealthCheckResponse;
+import io.grpc.health.v1.HealthGrpc;
+
+/**
+ * Time from JVM launch to the first successful RPC of a fresh server process.
+ *
+ * Each run launches RouteGuideServer in a child JVM on the classpath of this
+ * one, against a stub DynamoDB endpoint in this process, and records three
+ * moments: the port accepting connections, the first GetFeature answered OK,
+ * and the health service reporting SERVING. Rows compare the default startup
+ * (SERVING after warm-up), FAST_START=true, and FAST_START=true with the AppCDS
+ * archive if one is given. Medians over the runs are reported. The archive
+ * must be dumped from the same jar, as the Dockerfile does, or the JVM
+ * ignores it.
+ *
+ * Usage:
+ *   mvn -Pjmh package && java -cp target/route-guide-1.0-SNAPSHOT.jar \
+ *     io.grpc.examples.routeguide.benchmark.StartupBenchmark [runs] [archive.jsa]
+ */
+public class StartupBenchmark {
+
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(120);
+    private static final long POLL_MILLIS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        String archive = args.length > 1 ? args[1] : null;
+
+        try (StubDynamoDbEndpoint dynamoDb = new StubDynamoDbEndpoint()) {
+            System.out.println(String.format("%-22s %12s %16s %12s",
+                "startup", "listening ms", "first RPC ms", "SERVING ms"));
+            run("default", false, null, dynamoDb, runs);
+            run("fast start", true, null, dynamoDb, runs);
+            if (archive != null) {
+                run("fast start + AppCDS", true, archive, dynamoDb, runs);
+            }
+        }
+    }
+
+    private static void run(String label, boolean fastStart, String archive, StubDynamoDbEndpoint dynamoDb,
+            int runs) throws Exception {
+        long[][] samples = new long[3][runs];
+        for (int i = 0; i < runs; i++) {
+            long[] times = launch(fastStart, archive, dynamoDb);
+            for (int j = 0; j < times.length; j++) {
+                samples[j][i] = times[j];
+            }
+        }
+        System.out.println(String.format("%-22s %12.0f %16.0f %12.0f",
+            label, median(samples[0]), median(samples[1]), median(samples[2])));
+    }
+
+    /**
+     * @return Nanoseconds from launch to listening, to first RPC and to SERVING
+     */
+    private static long[] launch(boolean fastStart, String archive, StubDynamoDbEndpoint dynamoDb)
+            throws Exception {
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        if (archive != null) {
+            command.add("-XX:SharedArchiveFile=" + archive);
+            command.add("-Xshare:auto");
+        }
+        command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"),
+            "io.grpc.examples.routeguide.RouteGuideServer", Integer.toString(port)));
+        ProcessBuilder builder = new ProcessBuilder(command)
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .redirectError(ProcessBuilder.Redirect.DISCARD);
+        Map<String, String> env = builder.environment();
+        env.put("APP_ENV", "local");
+        env.put("DYNAMODB_ENDPOINT", dynamoDb.endpoint());
+        env.put("FAST_START", Boolean.toString(fastStart));
+        env.put("LATENCY_INJECTION", "false");
+
+        long start = System.nanoTime();
+        Process process = builder.start();
+        ManagedChannel channel = null;
+        try {
+            long listening = awaitListening(process, port, start) - start;
+            channel = ManagedChannelBuilder.forAddress("localhost", port).usePlaintext().build();
+            long firstRpc = awaitFirstRpc(channel, start) - start;
+            long serving = awaitServing(channel, start) - start;
+            return new long[] {listening, firstRpc, serving};
+        } finally {
+            if (channel != null) {
+                channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+            }
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    private static long awaitListening(Process process, int port, long start) throws Exception {
+        while (true) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress("localhost", port), 100);
+                return System.nanoTime();
+            } catch (IOException e) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("Server exited with " + process.exitValue());
+                }
+                checkTimeout(start);
+                Thread.sleep(POLL_MILLIS);
+            }
+        }
+    }
+
+    private static long awaitFirstRpc(ManagedChannel channel, long start) throws InterruptedException {
+        GetFeatureRequest request = GetFeatureRequest.newBuilder()
+            .setPoint(Point.newBuilder().setLatitude(409_146_138).setLongitude(-746_188_906))
+            .build();
+        while (true) {
+            try {
+                RouteGuideGrpc.newBlockingStub(channel)
+                    .withWaitForReady()
+                    .withDeadlineAfter(10, TimeUnit.SECONDS)
+                    .getFeature(request);
+                return System.nanoTime();
+            } catch (StatusRuntimeException e) {
+                checkTimeout(start);
+                Thread.sleep(POLL_MILLIS);
+            }
+        }
+    }
+
+    private static long awaitServing(ManagedChannel channel, long start) throws InterruptedException {
+        HealthCheckRequest request = HealthCheckRequest.newBuilder()
+            .setService(RouteGuideGrpc.SERVICE_NAME)
+            .build();
+        while (true) {
+            try {
+                HealthCheckResponse response = HealthGrpc.newBlockingStub(channel)
+                    .withDeadlineAfter(1, TimeUnit.SECONDS)
+                    .check(request);
+                if (response.getStatus() == HealthCheckResponse.ServingStatus.SERVING) {
+                    return System.nanoTime();
+                }
+            } catch (StatusRuntimeException e) {
+                // Not registered yet
+            }
+            checkTimeout(start);
+            Thread.sleep(POLL_MILLIS);
+        }
+    }
+
+    private static void checkTimeout(long start) {
+        if (System.nanoTime() - start > TIMEOUT_NANOS) {
+            throw new IllegalStateException("Server did not start within "
+                + TimeUnit.NANOSECONDS.toSeconds(TIMEOUT_NANOS) + " s");
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static double median(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2] / 1e6;
+    }
+}
@@ -0,0 +1,292 @@
+package io.grpc.examples.routeguide.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.grpc.Grpc;
+import io.grpc.InsecureServerCredentials;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.GetFeatureRequest;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.Rectangle;
+import io.grpc.examples.routeguide.RouteGuideGrpc;
+import io.grpc.examples.routeguide.RouteSummary;
+import io.grpc.examples.routeguide.transport.NettyServerConfig;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Measures the effect of the NettyServerConfig settings on a real loopback
+ * HTTP/2 connection: ListFeatures and RecordRoute throughput with several
+ * concurrent streams, and GetFeature latency with many concurrent calls.
+ *
+ * The server side is synthetic, as in ListFeaturesBenchmark, so only the
+ * transport is measured. Each row runs a fresh server with one setting
+ * changed from the defaults; the first row is grpc-java's own defaults.
+ * Keepalive and connection-age limits only act on idle or long-lived
+ * connections and have no row.
+ *
+ * Usage:
+ *   mvn -Pjmh package && java -cp target/route-guide-1.0-SNAPSHOT.jar \
+ *     io.grpc.examples.routeguide.benchmark.TransportBenchmark [seconds per measurement]
+ */
+public class TransportBenchmark {
+
+    private static final int STREAMS = 8;
+    private static final int FEATURES_PER_STREAM = 10_000;
+    private static final int POINTS_PER_ROUTE = 1_000;
+    private static final int CONCURRENT_GETS = 64;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+
+        Map<String, Map<String, String>> matrix = new LinkedHashMap<>();
+        matrix.put("grpc defaults", null);
+        matrix.put("nio", Collections.singletonMap("SERVER_TRANSPORT", "nio"));
+        matrix.put("epoll", Collections.singletonMap("SERVER_TRANSPORT", "epoll"));
+        matrix.put("epoll, 1 worker", settings("SERVER_TRANSPORT", "epoll", "SERVER_WORKER_THREADS", "1"));
+        matrix.put("epoll, 64 KiB window",
+            settings("SERVER_TRANSPORT", "epoll", "SERVER_FLOW_CONTROL_WINDOW_BYTES", "65536"));
+        matrix.put("epoll, 8 MiB window",
+            settings("SERVER_TRANSPORT", "epoll", "SERVER_FLOW_CONTROL_WINDOW_BYTES", "8388608"));
+        matrix.put("epoll, 16 calls/conn",
+            settings("SERVER_TRANSPORT", "epoll", "SERVER_MAX_CONCURRENT_CALLS_PER_CONNECTION", "16"));
+
+        // One unreported pass over the matrix so every row runs compiled code
+        for (Map.Entry<String, Map<String, String>> row : matrix.entrySet()) {
+            run(row.getKey(), row.getValue(), 1, false);
+        }
+        System.out.println(String.format("%-22s %16s %16s %12s %12s",
+            "server", "ListFeatures f/s", "RecordRoute p/s", "Get p50 ms", "Get p99 ms"));
+        for (Map.Entry<String, Map<String, String>> row : matrix.entrySet()) {
+            run(row.getKey(), row.getValue(), seconds, true);
+        }
+    }
+
+    /**
+     * Measure one server configuration; null settings for grpc-java's defaults.
+     */
+    private static void run(String label, Map<String, String> settings, int seconds, boolean report)
+            throws Exception {
+        NettyServerConfig config = settings != null ? NettyServerConfig.from(settings::get) : null;
+        ServerBuilder<?> builder = config != null
+            ? config.newServerBuilder(0)
+            : Grpc.newServerBuilderForPort(0, InsecureServerCredentials.create());
+        Server server = builder.addService(new SyntheticService()).build().start();
+        ManagedChannel channel = ManagedChannelBuilder.forAddress("localhost", server.getPort())
+            .usePlaintext()
+            .build();
+        try {
+            double features = listFeatures(channel, seconds);
+            double points = recordRoute(channel, seconds);
+            long[] latencies = getFeature(channel, seconds);
+            if (report) {
+                System.out.println(String.format("%-22s %16.0f %16.0f %12.2f %12.2f", label,
+                    features, points, percentile(latencies, 0.50), percentile(latencies, 0.99)));
+            }
+        } finally {
+            channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+            server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+            if (config != null) {
+                config.shutdownEventLoops();
+            }
+        }
+    }
+
+    private static Map<String, String> settings(String... keyValues) {
+        Map<String, String> settings = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            settings.put(keyValues[i], keyValues[i + 1]);
+        }
+        return settings;
+    }
+
+    /**
+     * @return Features received per second over all streams
+     */
+    private static double listFeatures(ManagedChannel channel, int seconds) throws InterruptedException {
+        RouteGuideGrpc.RouteGuideBlockingStub stub = RouteGuideGrpc.newBlockingStub(channel);
+        Rectangle rectangle = Rectangle.newBuilder()
+            .setLo(Point.newBuilder().setLatitude(FEATURES_PER_STREAM))
+            .build();
+        AtomicLong features = new AtomicLong();
+        long elapsed = runFor(seconds, () -> {
+            long count = 0;
+            for (Iterator<Feature> it = stub.listFeatures(rectangle); it.hasNext(); it.next()) {
+                count++;
+            }
+            features.addAndGet(count);
+        });
+        return features.get() / (elapsed / 1e9);
+    }
+
+    /**
+     * @return Points sent per second over all streams
+     */
+    private static double recordRoute(ManagedChannel channel, int seconds) throws InterruptedException {
+        RouteGuideGrpc.RouteGuideStub stub = RouteGuideGrpc.newStub(channel);
+        AtomicLong points = new AtomicLong();
+        long elapsed = runFor(seconds, () -> {
+            CountDownLatch done = new CountDownLatch(1);
+            StreamObserver<Point> route = stub.recordRoute(new StreamObserver<RouteSummary>() {
+                @Override
+                public void onNext(RouteSummary summary) {
+                    points.addAndGet(summary.getPointCount());
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    done.countDown();
+                }
+
+                @Override
+                public void onCompleted() {
+                    done.countDown();
+                }
+            });
+            for (int i = 0; i < POINTS_PER_ROUTE; i++) {
+                route.onNext(Point.newBuilder().setLatitude(400_000_000 + i).setLongitude(-740_000_000).build());
+            }
+            route.onCompleted();
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        return points.get() / (elapsed / 1e9);
+    }
+
+    /**
+     * Keep CONCURRENT_GETS calls outstanding.
+     *
+     * @return Sorted call latencies in nanoseconds
+     */
+    private static long[] getFeature(ManagedChannel channel, int seconds) throws InterruptedException {
+        RouteGuideGrpc.RouteGuideStub stub = RouteGuideGrpc.newStub(channel);
+        GetFeatureRequest request = GetFeatureRequest.newBuilder()
+            .setPoint(Point.newBuilder().setLatitude(409_146_138).setLongitude(-746_188_906))
+            .build();
+        Semaphore outstanding = new Semaphore(CONCURRENT_GETS);
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        while (System.nanoTime() < end) {
+            outstanding.acquire();
+            long start = System.nanoTime();
+            stub.getFeature(request, new StreamObserver<Feature>() {
+                @Override
+                public void onNext(Feature feature) {
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    outstanding.release();
+                }
+
+                @Override
+                public void onCompleted() {
+                    latencies.add(System.nanoTime() - start);
+                    outstanding.release();
+                }
+            });
+        }
+        outstanding.acquire(CONCURRENT_GETS);
+        synchronized (latencies) {
+            long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+
+    /**
+     * Run the task in a loop on STREAMS threads.
+     *
+     * @return Elapsed nanoseconds
+     */
+    private static long runFor(int seconds, Runnable task) throws InterruptedException {
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < STREAMS; i++) {
+            Thread thread = new Thread(() -> {
+                while (System.nanoTime() < end) {
+                    task.run();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.max(0, (int) Math.ceil(percentile * sorted.length) - 1)] / 1e6;
+    }
+
+    private static class SyntheticService extends RouteGuideGrpc.RouteGuideImplBase {
+
+        @Override
+        public void getFeature(GetFeatureRequest request, StreamObserver<Feature> responseObserver) {
+            responseObserver.onNext(feature(request.getPoint().getLatitude()));
+            responseObserver.onCompleted();
+        }
+
+        @Override
+        public void listFeatures(Rectangle rectangle, StreamObserver<Feature> responseObserver) {
+            for (int i = 0; i < rectangle.getLo().getLatitude(); i++) {
+                responseObserver.onNext(feature(i));
+            }
+            responseObserver.onCompleted();
+        }
+
+        @Override
+        public StreamObserver<Point> recordRoute(StreamObserver<RouteSummary> responseObserver) {
+            return new StreamObserver<Point>() {
+                private int points;
+
+                @Override
+                public void onNext(Point point) {
+                    points++;
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                }
+
+                @Override
+                public void onCompleted() {
+                    responseObserver.onNext(RouteSummary.newBuilder().setPointCount(points).build());
+                    responseObserver.onCompleted();
+                }
+            };
+        }
+
+        private static Feature feature(int i) {
+            return Feature.newBuilder()
+                .setName("Feature " + i + ", Example Road, Somewhere, NJ 07000, USA")
+                .setLocation(Point.newBuilder()
+                    .setLatitude(400_000_000 + i)
+                    .setLongitude(-740_000_000 - i))
+                .build();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package io.grpc.examples.routeguide;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import com.google.protobuf.CodedOutputStream;
+
+import io.grpc.examples.routeguide.metrics.MetricsRegistry;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Packs features into FeatureBatch messages for ListFeatureBatches.
+ *
+ * A batch is sent once its serialized size reaches the byte budget, or once the
+ * oldest buffered feature has waited longer than the flush latency. The latter is
+ * checked on every feature and by a timer, so a partial batch also goes out while
+ * the producer is stuck in a slow partition read. Dense results therefore go out
+ * in large messages while sparse results are not held back.
+ *
+ * A full batch waits until the client can take it (see FlowControl), so at most
+ * one batch per call is buffered; the timer skips a batch the client cannot take
+ * yet. Batches are sent under a lock, which the timer only tries to take, so a
+ * producer waiting on its client never holds up the timer for other calls.
+ */
+public class FeatureBatcher implements Consumer<Feature> {
+
+    static final int DEFAULT_MAX_BATCH_BYTES = 32 * 1024;
+    static final int MAX_ALLOWED_BATCH_BYTES = 1024 * 1024; // Well below the 4MB message limit
+    static final long DEFAULT_MAX_FLUSH_MILLIS = 20;
+    static final int MIN_COMPRESSED_BATCH_BYTES = 1024; // Smaller batches are not worth compressing
+
+    private static final LongAdder batchesSent =
+        MetricsRegistry.getDefault().counter("listFeatureBatches.batches");
+    private static final LongAdder featuresSent =
+        MetricsRegistry.getDefault().counter("listFeatureBatches.features");
+    private static final LongAdder timedFlushes =
+        MetricsRegistry.getDefault().counter("listFeatureBatches.timed_flushes");
+
+    private final StreamObserver<FeatureBatch> observer;
+    private final ScheduledExecutorService timer;
+    private final int maxBatchBytes;
+    private final long maxFlushNanos;
+    private final boolean compressed;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Guarded by lock
+    private FeatureBatch.Builder batch = FeatureBatch.newBuilder();
+    private int batchBytes;
+    private long oldestNanos;
+    private ScheduledFuture<?> timedFlush;
+
+    /**
+     * @param observer Receives the batches
+     * @param timer Runs the flushes of partial batches
+     * @param maxBatchBytes Byte budget per batch, 0 for the default
+     * @param maxFlushMillis Longest a feature may wait in a partial batch, 0 for the default
+     * @param compressed Whether the call has a compressor set; only large batches are compressed
+     */
+    public FeatureBatcher(StreamObserver<FeatureBatch> observer, ScheduledExecutorService timer,
+            int maxBatchBytes, long maxFlushMillis, boolean compressed) {
+        this.observer = observer;
+        this.timer = timer;
+        this.maxBatchBytes = maxBatchBytes > 0
+            ? Math.min(maxBatchBytes, MAX_ALLOWED_BATCH_BYTES)
+            : DEFAULT_MAX_BATCH_BYTES;
+        this.maxFlushNanos = TimeUnit.MILLISECONDS.toNanos(
+            maxFlushMillis > 0 ? maxFlushMillis : DEFAULT_MAX_FLUSH_MILLIS);
+        this.compressed = compressed;
+    }
+
+    @Override
+    public void accept(Feature feature) {
+        int size = CodedOutputStream.computeMessageSize(FeatureBatch.FEATURE_FIELD_NUMBER, feature);
+        lock.lock();
+        try {
+            if (batchBytes > 0 && batchBytes + size > maxBatchBytes) {
+                FlowControl.awaitReady(observer);
+                send();
+            }
+            if (batchBytes == 0) {
+                oldestNanos = System.nanoTime();
+                scheduleFlush(maxFlushNanos);
+            }
+            batch.addFeature(feature);
+            batchBytes += size;
+
+            if (batchBytes >= maxBatchBytes || System.nanoTime() - oldestNanos >= maxFlushNanos) {
+                FlowControl.awaitReady(observer);
+                send();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Send whatever is buffered once the client can take it. Call once more
+     * after the last feature, before completing the call.
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            if (timedFlush != null) {
+                timedFlush.cancel(false);
+                timedFlush = null;
+            }
+            if (batchBytes > 0) {
+                FlowControl.awaitReady(observer);
+                send();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void scheduleFlush(long delayNanos) {
+        if (timedFlush == null || timedFlush.isDone()) {
+            timedFlush = timer.schedule(this::flushIfDue, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Timer task: send the partial batch once it is due and the client can take
+     * it, else check again later. A producer holding the lock sends it itself.
+     */
+    private void flushIfDue() {
+        if (!lock.tryLock()) {
+            timer.schedule(this::flushIfDue, maxFlushNanos, TimeUnit.NANOSECONDS);
+            return;
+        }
+        try {
+            timedFlush = null;
+            if (batchBytes == 0) {
+                return;
+            }
+            long waited = System.nanoTime() - oldestNanos;
+            boolean ready = !(observer instanceof ServerCallStreamObserver)
+                || ((ServerCallStreamObserver<FeatureBatch>) observer).isReady();
+            if (waited >= maxFlushNanos && ready) {
+                timedFlushes.increment();
+                send();
+            } else {
+                scheduleFlush(waited >= maxFlushNanos ? maxFlushNanos : maxFlushNanos - waited);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void send() {
+        if (batchBytes == 0) {
+            return;
+        }
+        if (compressed && observer instanceof ServerCallStreamObserver) {
+            ((ServerCallStreamObserver<FeatureBatch>) observer)
+                .setMessageCompression(batchBytes >= MIN_COMPRESSED_BATCH_BYTES);
+        }
+        batchesSent.increment();
+        featuresSent.add(batch.getFeatureCount());
+        observer.onNext(batch.build());
+
+        batch = FeatureBatch.newBuilder();
+        batchBytes = 0;
+    }
+}
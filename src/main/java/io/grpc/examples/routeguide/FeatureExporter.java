@@ -0,0 +1,331 @@
+package io.grpc.examples.routeguide;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import io.grpc.Context;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.examples.routeguide.db.FeatureRepository;
+import io.grpc.examples.routeguide.metrics.MetricsRegistry;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * Serves ExportFeatures: a parallel DynamoDB Scan streamed to the client.
+ *
+ * Each segment is read page by page on a shared scheduler, and each finished
+ * page becomes one response. A segment's next page is only requested once its
+ * previous page has been sent, and pages are only sent while the transport is
+ * ready, so a slow client holds the scan back instead of filling memory: at
+ * most one page per segment is buffered. Pages are started no faster than
+ * the read capacity budget allows, judged by what earlier pages consumed.
+ *
+ * Every response carries a resume token holding each segment's position after
+ * that response; resuming with it skips exactly the pages already sent.
+ */
+public class FeatureExporter {
+
+    private static final Logger logger = Logger.getLogger(FeatureExporter.class.getName());
+
+    static final int MAX_SEGMENTS = 64;
+
+    private static final LongAdder exportedFeatures = MetricsRegistry.getDefault().counter("export.features");
+    private static final LongAdder exportedPages = MetricsRegistry.getDefault().counter("export.pages");
+    private static final LongAdder completedExports = MetricsRegistry.getDefault().counter("export.completed");
+    private static final LongAdder failedExports = MetricsRegistry.getDefault().counter("export.failed");
+
+    private final FeatureRepository repository;
+    private final ScheduledExecutorService scheduler;
+    private final int defaultSegments;
+    private final double maxReadCapacityUnits;
+    private final int pageItems;
+
+    /**
+     * @param scheduler Runs the page scans of all exports
+     * @param defaultSegments Segments of exports that do not ask for a number
+     * @param maxReadCapacityUnits Budget per export in read capacity units per second, above 0
+     * @param pageItems Items evaluated per Scan page
+     */
+    public FeatureExporter(FeatureRepository repository, ScheduledExecutorService scheduler,
+            int defaultSegments, double maxReadCapacityUnits, int pageItems) {
+        // Pages are paced at consumed capacity / budget, which needs a finite pace
+        if (!(maxReadCapacityUnits > 0) || Double.isInfinite(maxReadCapacityUnits)) {
+            throw new IllegalArgumentException(
+                "Read capacity budget must be a positive number of units per second, got " + maxReadCapacityUnits);
+        }
+        this.repository = repository;
+        this.scheduler = scheduler;
+        this.defaultSegments = Math.min(defaultSegments, MAX_SEGMENTS);
+        this.maxReadCapacityUnits = maxReadCapacityUnits;
+        this.pageItems = pageItems;
+    }
+
+    /**
+     * Start an export; responses are sent from the scheduler's threads.
+     */
+    public void export(ExportFeaturesRequest request, StreamObserver<ExportFeaturesResponse> responseObserver) {
+        ExportCursor cursor;
+        if (!request.getResumeToken().isEmpty()) {
+            cursor = parseResumeToken(request);
+            if (cursor == null) {
+                responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription("Invalid resume_token").asRuntimeException());
+                return;
+            }
+        } else {
+            int segments = request.getSegments() > 0
+                ? Math.min(request.getSegments(), MAX_SEGMENTS)
+                : defaultSegments;
+            ExportCursor.Builder builder = ExportCursor.newBuilder().setTotalSegments(segments);
+            for (int i = 0; i < segments; i++) {
+                builder.addSegment(ExportSegmentCursor.getDefaultInstance());
+            }
+            cursor = builder.build();
+        }
+        double readCapacityUnits = request.getMaxReadCapacityUnits() > 0
+            ? Math.min(request.getMaxReadCapacityUnits(), maxReadCapacityUnits)
+            : maxReadCapacityUnits;
+        new Export((ServerCallStreamObserver<ExportFeaturesResponse>) responseObserver,
+            cursor, readCapacityUnits).start();
+    }
+
+    private static ExportCursor parseResumeToken(ExportFeaturesRequest request) {
+        try {
+            ExportCursor cursor = ExportCursor.parseFrom(request.getResumeToken());
+            if (cursor.getTotalSegments() < 1 || cursor.getTotalSegments() > MAX_SEGMENTS
+                    || cursor.getSegmentCount() != cursor.getTotalSegments()) {
+                return null;
+            }
+            return cursor;
+        } catch (InvalidProtocolBufferException e) {
+            return null;
+        }
+    }
+
+    static ExportSegmentCursor toCursor(Map<String, AttributeValue> startKey, boolean done) {
+        ExportSegmentCursor.Builder cursor = ExportSegmentCursor.newBuilder().setDone(done);
+        if (startKey != null) {
+            startKey.forEach((name, value) -> {
+                ExportKeyAttribute.Builder attribute = ExportKeyAttribute.newBuilder().setName(name);
+                if (value.s() != null) {
+                    attribute.setS(value.s());
+                } else if (value.n() != null) {
+                    attribute.setN(value.n());
+                } else {
+                    throw new IllegalStateException("Unsupported key attribute type: " + name + "=" + value);
+                }
+                cursor.addStartKey(attribute);
+            });
+        }
+        return cursor.build();
+    }
+
+    static Map<String, AttributeValue> fromCursor(ExportSegmentCursor cursor) {
+        if (cursor.getStartKeyCount() == 0) {
+            return null;
+        }
+        Map<String, AttributeValue> startKey = new HashMap<>();
+        for (ExportKeyAttribute attribute : cursor.getStartKeyList()) {
+            startKey.put(attribute.getName(), attribute.getValueCase() == ExportKeyAttribute.ValueCase.N
+                ? AttributeValue.builder().n(attribute.getN()).build()
+                : AttributeValue.builder().s(attribute.getS()).build());
+        }
+        return startKey;
+    }
+
+    /**
+     * Position of one segment: what has been sent, and what to scan next.
+     */
+    private static final class Segment {
+
+        final int index;
+        ExportSegmentCursor sent;
+        Map<String, AttributeValue> nextKey;
+        boolean scanDone;
+        boolean busy; // A page is being scanned or waits to be sent
+        double reservedCapacity; // Budget charged when the page was started
+
+        Segment(int index, ExportSegmentCursor sent) {
+            this.index = index;
+            this.sent = sent;
+            this.nextKey = fromCursor(sent);
+            this.scanDone = sent.getDone();
+        }
+    }
+
+    private static final class Page {
+
+        final Segment segment;
+        final FeatureRepository.ScanPage scanPage;
+
+        Page(Segment segment, FeatureRepository.ScanPage scanPage) {
+            this.segment = segment;
+            this.scanPage = scanPage;
+        }
+    }
+
+    /**
+     * One ExportFeatures call. All state is guarded by the instance lock, which
+     * also serializes calls on the observer between scheduler threads and the
+     * transport's onReady callbacks.
+     */
+    private final class Export {
+
+        private final ServerCallStreamObserver<ExportFeaturesResponse> observer;
+        private final Context context = Context.current();
+        private final Segment[] segments;
+        private final double readCapacityUnits;
+        private final ArrayDeque<Page> ready = new ArrayDeque<>();
+        private final long startNanos = System.nanoTime();
+        private long nextPageNanos = startNanos;
+        private double lastPageCapacity;
+        private long features;
+        private double consumedCapacity;
+        private boolean finished;
+
+        Export(ServerCallStreamObserver<ExportFeaturesResponse> observer, ExportCursor cursor,
+                double readCapacityUnits) {
+            this.observer = observer;
+            this.readCapacityUnits = readCapacityUnits;
+            this.segments = new Segment[cursor.getTotalSegments()];
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = new Segment(i, cursor.getSegment(i));
+            }
+        }
+
+        void start() {
+            observer.setOnCancelHandler(() -> {
+                synchronized (this) {
+                    finished = true;
+                }
+            });
+            observer.setOnReadyHandler(this::drain);
+            logger.info("Exporting features with " + segments.length + " segments at up to "
+                + readCapacityUnits + " RCU/s");
+            drain();
+        }
+
+        private void scan(Segment segment) {
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+            }
+            FeatureRepository.ScanPage page;
+            try {
+                page = repository.scanSegment(segment.index, segments.length, segment.nextKey, pageItems);
+            } catch (RuntimeException e) {
+                fail(e);
+                return;
+            }
+            synchronized (this) {
+                // Settle the estimate charged when the page was started
+                nextPageNanos += capacityNanos(page.getConsumedCapacity() - segment.reservedCapacity);
+                lastPageCapacity = page.getConsumedCapacity();
+                consumedCapacity += page.getConsumedCapacity();
+                segment.nextKey = page.getLastEvaluatedKey();
+                segment.scanDone = segment.nextKey == null;
+                ready.add(new Page(segment, page));
+            }
+            drain();
+        }
+
+        /**
+         * Send ready pages while the transport takes them, then finish or start
+         * the next pages.
+         */
+        private synchronized void drain() {
+            while (!finished && !ready.isEmpty() && observer.isReady()) {
+                Page page = ready.poll();
+                page.segment.busy = false;
+                page.segment.sent = toCursor(page.scanPage.getLastEvaluatedKey(), page.segment.scanDone);
+                exportedPages.increment();
+                if (page.scanPage.getFeatures().isEmpty()) {
+                    continue; // The next response's token covers it
+                }
+                features += page.scanPage.getFeatures().size();
+                exportedFeatures.add(page.scanPage.getFeatures().size());
+                observer.onNext(ExportFeaturesResponse.newBuilder()
+                    .addAllFeature(page.scanPage.getFeatures())
+                    .setResumeToken(resumeToken().toByteString())
+                    .setFeaturesExported(features)
+                    .setConsumedReadCapacityUnits(consumedCapacity)
+                    .setFeaturesPerSecond(featuresPerSecond())
+                    .build());
+            }
+            if (finished) {
+                return;
+            }
+            boolean done = ready.isEmpty();
+            for (Segment segment : segments) {
+                done &= segment.sent.getDone();
+            }
+            if (done) {
+                finished = true;
+                completedExports.increment();
+                logger.info(String.format("Exported %d features in %.1f s (%.0f features/s), %.1f RCU consumed",
+                    features, (System.nanoTime() - startNanos) / 1e9, featuresPerSecond(), consumedCapacity));
+                observer.onCompleted();
+                return;
+            }
+            schedulePages();
+        }
+
+        /**
+         * Start the next page of every idle segment, each paced behind the
+         * previous one by the capacity the last page consumed.
+         */
+        private void schedulePages() {
+            for (Segment segment : segments) {
+                if (segment.busy || segment.scanDone) {
+                    continue;
+                }
+                long now = System.nanoTime();
+                long startAt = Math.max(nextPageNanos, now);
+                segment.busy = true;
+                segment.reservedCapacity = lastPageCapacity;
+                nextPageNanos = startAt + capacityNanos(lastPageCapacity);
+                scheduler.schedule(context.wrap(() -> scan(segment)), startAt - now, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private synchronized void fail(RuntimeException e) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            failedExports.increment();
+            logger.warning("Export failed after " + features + " features: " + e.getMessage());
+            observer.onError(e instanceof StatusRuntimeException
+                ? e
+                : Status.UNAVAILABLE.withDescription("Export scan failed, resume from the last token")
+                    .withCause(e).asRuntimeException());
+        }
+
+        private ExportCursor resumeToken() {
+            ExportCursor.Builder cursor = ExportCursor.newBuilder().setTotalSegments(segments.length);
+            for (Segment segment : segments) {
+                cursor.addSegment(segment.sent);
+            }
+            return cursor.build();
+        }
+
+        private double featuresPerSecond() {
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+            return seconds > 0 ? features / seconds : 0;
+        }
+
+        private long capacityNanos(double capacityUnits) {
+            return (long) (capacityUnits / readCapacityUnits * 1e9);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package io.grpc.examples.routeguide;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import io.grpc.Context;
+import io.grpc.examples.routeguide.db.CircuitBreaker;
+import io.grpc.examples.routeguide.db.DataMigration;
+import io.grpc.examples.routeguide.db.FeatureEntity;
+import io.grpc.examples.routeguide.db.FeatureRepository;
+import io.grpc.examples.routeguide.metrics.MetricsRegistry;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.RequestLimitExceededException;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+/**
+ * Serves ImportFeatures: features streamed by the client are written in
+ * 25-item BatchWriteItem calls, several batches at a time.
+ *
+ * Messages are requested from the client one at a time, and only while fewer
+ * batches are being written than currently allowed, so the client runs at most
+ * one batch ahead of the writes. The allowance halves whenever DynamoDB
+ * throttles a batch and grows by one per batch written cleanly, so a throttled
+ * table slows the stream down through HTTP/2 flow control instead of queueing
+ * features in memory. Items left unprocessed are retried with exponential
+ * backoff.
+ *
+ * Feature ids are derived from the coordinates (DataMigration.featureId), as
+ * the migration derives them, so importing a feature that is already in the
+ * table overwrites it instead of adding a duplicate. Rows loaded by a migration
+ * older than that still carry random ids and need to be loaded again.
+ */
+public class FeatureImporter {
+
+    private static final Logger logger = Logger.getLogger(FeatureImporter.class.getName());
+
+    static final int BATCH_SIZE = 25; // DynamoDB batch write limit
+    private static final int MAX_ATTEMPTS = 8;
+    private static final long BASE_BACKOFF_MILLIS = 50;
+    private static final long MAX_BACKOFF_MILLIS = 5_000;
+
+    private static final LongAdder acceptedFeatures = MetricsRegistry.getDefault().counter("import.features.accepted");
+    private static final LongAdder skippedFeatures = MetricsRegistry.getDefault().counter("import.features.skipped");
+    private static final LongAdder failedFeatures = MetricsRegistry.getDefault().counter("import.features.failed");
+    private static final LongAdder retriedBatches = MetricsRegistry.getDefault().counter("import.batches.retried");
+
+    private final FeatureRepository repository;
+    private final ScheduledExecutorService scheduler;
+    private final int maxConcurrentBatches;
+    private final Consumer<List<Feature>> onWritten;
+
+    /**
+     * @param scheduler Runs the batch writes and retries of all imports
+     * @param maxConcurrentBatches Batches one import may write at once
+     * @param onWritten Told about every batch of features written, to update local caches
+     */
+    public FeatureImporter(FeatureRepository repository, ScheduledExecutorService scheduler,
+            int maxConcurrentBatches, Consumer<List<Feature>> onWritten) {
+        this.repository = repository;
+        this.scheduler = scheduler;
+        this.maxConcurrentBatches = Math.max(1, maxConcurrentBatches);
+        this.onWritten = onWritten;
+    }
+
+    /**
+     * Start an import. Must be called from the service method, which returns
+     * the observer.
+     */
+    public StreamObserver<Feature> importFeatures(StreamObserver<ImportSummary> responseObserver) {
+        ServerCallStreamObserver<ImportSummary> observer = (ServerCallStreamObserver<ImportSummary>) responseObserver;
+        observer.disableAutoRequest();
+        Import featureImport = new Import(observer);
+        synchronized (featureImport) {
+            featureImport.requestMore();
+        }
+        return featureImport;
+    }
+
+    private static final class Item {
+
+        final Feature feature;
+        final WriteRequest write;
+
+        Item(Feature feature, WriteRequest write) {
+            this.feature = feature;
+            this.write = write;
+        }
+    }
+
+    /**
+     * One ImportFeatures call. State is guarded by the instance lock, which
+     * also serializes calls on the observer.
+     */
+    private final class Import implements StreamObserver<Feature> {
+
+        private final ServerCallStreamObserver<ImportSummary> observer;
+        private final Context context = Context.current();
+        private final long startNanos = System.nanoTime();
+        private Map<String, Item> batch = new LinkedHashMap<>(); // By feature id
+        private int inFlight;
+        private int allowedInFlight = maxConcurrentBatches;
+        private boolean requested;
+        private boolean halfClosed;
+        private boolean finished;
+        private long accepted;
+        private long skipped;
+        private long failed;
+        private long retried;
+
+        Import(ServerCallStreamObserver<ImportSummary> observer) {
+            this.observer = observer;
+        }
+
+        @Override
+        public synchronized void onNext(Feature feature) {
+            requested = false;
+            if (finished) {
+                return;
+            }
+            if (feature.getName().isEmpty() || !feature.hasLocation()) {
+                skipped++;
+                skippedFeatures.increment();
+            } else {
+                FeatureEntity entity = DataMigration.convertToEntity(feature);
+                // One batch may not write the same key twice; the later feature wins
+                if (batch.put(entity.getFeatureId(), new Item(feature, repository.toPutRequest(entity))) != null) {
+                    skipped++;
+                    skippedFeatures.increment();
+                }
+                if (batch.size() == BATCH_SIZE) {
+                    submitBatch();
+                }
+            }
+            requestMore();
+        }
+
+        @Override
+        public synchronized void onError(Throwable t) {
+            // Batches already submitted still complete; nobody is left to tell
+            finished = true;
+            logger.warning("ImportFeatures cancelled after " + accepted + " features: " + t.getMessage());
+        }
+
+        @Override
+        public synchronized void onCompleted() {
+            halfClosed = true;
+            if (!batch.isEmpty()) {
+                submitBatch();
+            }
+            completeIfDone();
+        }
+
+        void requestMore() {
+            if (!requested && !halfClosed && !finished && inFlight < allowedInFlight) {
+                requested = true;
+                observer.request(1);
+            }
+        }
+
+        private void submitBatch() {
+            List<Item> items = new ArrayList<>(batch.values());
+            batch = new LinkedHashMap<>();
+            List<WriteRequest> writes = new ArrayList<>(items.size());
+            for (Item item : items) {
+                writes.add(item.write);
+            }
+            inFlight++;
+            scheduler.execute(context.wrap(() -> write(items, writes, 1, false)));
+        }
+
+        /**
+         * Write what is left of a batch, then retry its unprocessed items or finish it.
+         */
+        private void write(List<Item> items, List<WriteRequest> writes, int attempt, boolean throttled) {
+            List<WriteRequest> unprocessed;
+            try {
+                unprocessed = repository.batchWrite(writes);
+            } catch (ProvisionedThroughputExceededException | RequestLimitExceededException
+                    | CircuitBreaker.OpenException e) {
+                // Back off and retry the whole batch, as for a throttled one
+                unprocessed = writes;
+            } catch (RuntimeException e) {
+                logger.warning("Batch write of " + writes.size() + " features failed: " + e.getMessage());
+                finishBatch(items, writes, throttled);
+                return;
+            }
+            if (unprocessed.isEmpty()) {
+                finishBatch(items, unprocessed, throttled);
+                return;
+            }
+
+            synchronized (this) {
+                if (!throttled) {
+                    allowedInFlight = Math.max(1, allowedInFlight / 2);
+                }
+                retried++;
+            }
+            retriedBatches.increment();
+            if (attempt >= MAX_ATTEMPTS) {
+                finishBatch(items, unprocessed, true);
+                return;
+            }
+            List<WriteRequest> remaining = unprocessed;
+            long backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << (attempt - 1));
+            scheduler.schedule(context.wrap(() -> write(items, remaining, attempt + 1, true)),
+                ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1), TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * @param failedWrites Writes of the batch that were given up on
+         * @param throttled Whether any attempt of the batch was throttled
+         */
+        private void finishBatch(List<Item> items, List<WriteRequest> failedWrites, boolean throttled) {
+            Set<String> failedIds = new HashSet<>();
+            for (WriteRequest write : failedWrites) {
+                failedIds.add(write.putRequest().item().get("featureId").s());
+            }
+            List<Feature> written = new ArrayList<>(items.size());
+            for (Item item : items) {
+                if (!failedIds.contains(item.write.putRequest().item().get("featureId").s())) {
+                    written.add(item.feature);
+                }
+            }
+            if (!written.isEmpty()) {
+                onWritten.accept(Collections.unmodifiableList(written));
+            }
+            acceptedFeatures.add(written.size());
+            failedFeatures.add(failedIds.size());
+
+            synchronized (this) {
+                inFlight--;
+                accepted += written.size();
+                failed += failedIds.size();
+                if (!throttled) {
+                    allowedInFlight = Math.min(maxConcurrentBatches, allowedInFlight + 1);
+                }
+                requestMore();
+                completeIfDone();
+            }
+        }
+
+        private void completeIfDone() {
+            if (!halfClosed || inFlight > 0 || finished) {
+                return;
+            }
+            finished = true;
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            logger.info("Imported " + accepted + " features (" + skipped + " skipped, " + failed + " failed, "
+                + retried + " batch retries) in " + elapsedMillis + " ms");
+            observer.onNext(ImportSummary.newBuilder()
+                .setAcceptedCount(accepted)
+                .setSkippedCount(skipped)
+                .setFailedCount(failed)
+                .setRetriedBatches(retried)
+                .setElapsedMillis(elapsedMillis)
+                .build());
+            observer.onCompleted();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package io.grpc.examples.routeguide;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import io.grpc.Status;
+import io.grpc.examples.routeguide.metrics.MetricsRegistry;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Holds back a server-streaming handler that produces its responses on the
+ * call's own thread until the transport takes more, so a slow client makes the
+ * handler wait instead of buffering the whole result in memory.
+ *
+ * The call's onReady callback cannot be delivered while that thread is busy in
+ * the handler, so readiness is polled; it only changes as the client reads,
+ * and the poll interval backs off to MAX_POLL_NANOS.
+ */
+final class FlowControl {
+
+    private static final long MIN_POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long MAX_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final LongAdder waits = MetricsRegistry.getDefault().counter("flowControl.waits");
+    private static final LongAdder waitedNanos = MetricsRegistry.getDefault().counter("flowControl.waited_nanos");
+
+    private FlowControl() {
+    }
+
+    /**
+     * Return once the call can take another message. Observers that are not a
+     * server call's are always ready.
+     *
+     * @throws io.grpc.StatusRuntimeException CANCELLED if the call is cancelled or
+     *         the thread interrupted while waiting
+     */
+    static void awaitReady(StreamObserver<?> observer) {
+        if (!(observer instanceof ServerCallStreamObserver)) {
+            return;
+        }
+        ServerCallStreamObserver<?> call = (ServerCallStreamObserver<?>) observer;
+        if (call.isReady()) {
+            return;
+        }
+        waits.increment();
+        long start = System.nanoTime();
+        long pollNanos = MIN_POLL_NANOS;
+        try {
+            while (!call.isReady()) {
+                if (call.isCancelled()) {
+                    throw Status.CANCELLED.withDescription("Call cancelled while waiting for the client")
+                        .asRuntimeException();
+                }
+                LockSupport.parkNanos(pollNanos);
+                if (Thread.interrupted()) {
+                    Thread.currentThread().interrupt();
+                    throw Status.CANCELLED.withDescription("Interrupted while waiting for the client")
+                        .asRuntimeException();
+                }
+                pollNanos = Math.min(MAX_POLL_NANOS, pollNanos * 2);
+            }
+        } finally {
+            waitedNanos.add(System.nanoTime() - start);
+        }
+    }
+}
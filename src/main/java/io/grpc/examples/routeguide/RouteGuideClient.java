@@ -3,45 +3,70 @@ package io.grpc.examples.routeguide;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 
 import java.util.Random;
 
+import com.google.protobuf.ByteString;
 import com.google.protobuf.FieldMask;
 import com.google.protobuf.util.FieldMaskUtil;
 
 import io.grpc.Channel;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
 import io.grpc.examples.routeguide.RouteGuideGrpc.RouteGuideBlockingStub;
 import io.grpc.examples.routeguide.RouteGuideGrpc.RouteGuideStub;
+import io.grpc.examples.routeguide.channel.ChannelPool;
 import io.grpc.examples.routeguide.header.HeaderClientInterceptor;
+import io.grpc.examples.routeguide.tracing.TracingClientInterceptor;
+import io.grpc.examples.routeguide.shard.ShardRouter;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
 import io.grpc.stub.StreamObserver;
 
 public class RouteGuideClient {
 
     private static final Logger logger = Logger.getLogger(RouteGuideClient.class.getName());
+    private static final int DEFAULT_UNARY_CHANNELS = 2;
+    private static final int DEFAULT_STREAMING_CHANNELS = 1;
     private final RouteGuideBlockingStub blockingStub;
     private final RouteGuideStub stub;
     private Random random = new Random();
     private final HeaderClientInterceptor headerClientInterceptor;
+    private final ShardRouter shardRouter;
 
 
     public RouteGuideClient(Channel channel) {
+        this(channel, null);
+    }
+
+    /**
+     * Client that routes point and rectangle calls to the owning shard.
+     * Calls that are not shard-aware still go to the given channel.
+     */
+    public RouteGuideClient(Channel channel, ShardRouter shardRouter) {
         this.headerClientInterceptor = new HeaderClientInterceptor();
+        this.shardRouter = shardRouter;
+        TracingClientInterceptor tracingClientInterceptor = new TracingClientInterceptor();
 
         blockingStub = RouteGuideGrpc.newBlockingStub(channel)
-            .withInterceptors(headerClientInterceptor);
+            .withInterceptors(headerClientInterceptor, tracingClientInterceptor);
             
         stub = RouteGuideGrpc.newStub(channel)
-            .withInterceptors(headerClientInterceptor);
+            .withInterceptors(headerClientInterceptor, tracingClientInterceptor);
     }
 
     public void getFeature(int latitude, int longitude) {
@@ -63,7 +88,7 @@ public class RouteGuideClient {
             .setFieldMask(fieldMask)
             .build();
 
-        final Feature feature = blockingStub.getFeature(featureRequest);
+        final Feature feature = blockingStubFor(point).getFeature(featureRequest);
 
         info("Received feature response: {0}", feature);
 
@@ -87,7 +112,9 @@ public class RouteGuideClient {
                 .setHi(Point.newBuilder().setLatitude(hiLat).setLongitude(hiLon).build())
                 .build();
         // Get all features
-        Iterator<Feature> features = blockingStub.listFeatures(rectangle);
+        Iterator<Feature> features = shardRouter != null
+            ? shardRouter.listFeatures(rectangle)
+            : blockingStub.listFeatures(rectangle);
         Feature feature;
         while (features.hasNext()) {
             feature = features.next();
@@ -99,6 +126,99 @@ public class RouteGuideClient {
         info("ListFeatures completed");
     }
 
+    public void listFeatureBatches(int lowLat, int lowLon, int hiLat, int hiLon) {
+        info("*** ListFeatureBatches: lowLat={0} lowLon={1} hiLat={2} hiLon={3}", lowLat, lowLon, hiLat, hiLon);
+
+        ListFeatureBatchesRequest request = ListFeatureBatchesRequest.newBuilder()
+                .setRectangle(Rectangle.newBuilder()
+                    .setLo(Point.newBuilder().setLatitude(lowLat).setLongitude(lowLon).build())
+                    .setHi(Point.newBuilder().setLatitude(hiLat).setLongitude(hiLon).build())
+                    .build())
+                .setCompression("gzip")
+                .build();
+
+        Iterator<Feature> features = featureIterator(blockingStub.listFeatureBatches(request));
+        int count = 0;
+        while (features.hasNext()) {
+            Feature feature = features.next();
+            count++;
+            logger.log(Level.FINE, "Found feature: {0} at {1}, {2}", new Object[] {
+                feature.getName(),
+                feature.getLocation().getLatitude(),
+                feature.getLocation().getLongitude()});
+        }
+        info("ListFeatureBatches completed with {0} features", count);
+    }
+
+    /**
+     * Flattens a stream of FeatureBatch messages back into single features, so
+     * callers of ListFeatureBatches can iterate exactly like ListFeatures.
+     */
+    public static Iterator<Feature> featureIterator(final Iterator<FeatureBatch> batches) {
+        return new Iterator<Feature>() {
+            private Iterator<Feature> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext()) {
+                    if (!batches.hasNext()) {
+                        return false;
+                    }
+                    current = batches.next().getFeatureList().iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public Feature next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    /**
+     * Dump every feature with ExportFeatures, resuming from the last token
+     * received when the stream breaks.
+     *
+     * @param maxAttempts Calls to make before giving up
+     * @return Number of features exported
+     */
+    public long exportFeatures(int segments, int maxAttempts) {
+        info("*** ExportFeatures: segments={0}", segments);
+
+        ByteString resumeToken = ByteString.EMPTY;
+        long count = 0;
+        for (int attempt = 1; ; attempt++) {
+            ExportFeaturesRequest request = ExportFeaturesRequest.newBuilder()
+                    .setSegments(segments)
+                    .setResumeToken(resumeToken)
+                    .build();
+            try {
+                Iterator<ExportFeaturesResponse> responses = blockingStub.exportFeatures(request);
+                ExportFeaturesResponse response = null;
+                while (responses.hasNext()) {
+                    response = responses.next();
+                    count += response.getFeatureCount();
+                    resumeToken = response.getResumeToken();
+                }
+                if (response != null) {
+                    info("Exported {0} features at {1} features/s, {2} RCU consumed by the last call",
+                        count, Math.round(response.getFeaturesPerSecond()), response.getConsumedReadCapacityUnits());
+                }
+                return count;
+            } catch (StatusRuntimeException e) {
+                if (e.getStatus().getCode() != Status.Code.UNAVAILABLE || attempt >= maxAttempts) {
+                    throw e;
+                }
+                logger.log(Level.WARNING, "ExportFeatures interrupted after {0} features, resuming: {1}",
+                    new Object[] {count, e.getStatus()});
+            }
+        }
+    }
+
     public void updateFeature(int latitude, int longitude, String newName) {
         info("*** UpdateFeature: lat={0} lon={1} newName={2}", latitude, longitude, newName);
 
@@ -126,7 +246,7 @@ public class RouteGuideClient {
                 .build();
 
         try {
-            UpdateFeatureResponse response = blockingStub.updateFeature(request);
+            UpdateFeatureResponse response = blockingStubFor(location).updateFeature(request);
             info("Update successful! Updated feature: {0}", response.getFeature());
         } catch (Exception e) {
             logger.log(Level.SEVERE, "UpdateFeature failed: {0}", e.getMessage());
@@ -159,7 +279,9 @@ public class RouteGuideClient {
 
         };
 
-        StreamObserver<Point> requestObserver = stub.recordRoute(responseObserver);
+        StreamObserver<Point> requestObserver = shardRouter != null
+            ? shardRouter.recordRoute(responseObserver)
+            : stub.recordRoute(responseObserver);
         try {
         // Send numPoints points randomly selected from the features list.
         for (int i = 0; i < points; ++i) {
@@ -183,17 +305,72 @@ public class RouteGuideClient {
         finishLatch.await(1, TimeUnit.MINUTES);
     }
 
+    /**
+     * Bulk load features with ImportFeatures. Features are only sent while the
+     * call is ready, so the server's pace (set by DynamoDB) holds the client back.
+     */
+    public void importFeatures(List<Feature> features) throws InterruptedException {
+        info("*** ImportFeatures: {0} features", features.size());
+        final CountDownLatch finishLatch = new CountDownLatch(1);
+
+        ClientResponseObserver<Feature, ImportSummary> responseObserver =
+            new ClientResponseObserver<Feature, ImportSummary>() {
+
+                private int next;
+
+                @Override
+                public void beforeStart(ClientCallStreamObserver<Feature> requestObserver) {
+                    requestObserver.setOnReadyHandler(() -> {
+                        while (requestObserver.isReady() && next < features.size()) {
+                            requestObserver.onNext(features.get(next++));
+                        }
+                        if (next == features.size()) {
+                            next++;
+                            requestObserver.onCompleted();
+                        }
+                    });
+                }
+
+                @Override
+                public void onNext(ImportSummary summary) {
+                    info("Imported {0} features ({1} skipped, {2} failed) in {3} ms",
+                        summary.getAcceptedCount(), summary.getSkippedCount(),
+                        summary.getFailedCount(), summary.getElapsedMillis());
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    logger.log(Level.WARNING, "ImportFeatures failed: {0}", t.getMessage());
+                    finishLatch.countDown();
+                }
+
+                @Override
+                public void onCompleted() {
+                    finishLatch.countDown();
+                }
+            };
+        stub.importFeatures(responseObserver);
+
+        finishLatch.await(10, TimeUnit.MINUTES);
+    }
+
+    private RouteGuideBlockingStub blockingStubFor(Point point) {
+        return shardRouter != null ? shardRouter.blockingStub(point) : blockingStub;
+    }
+
     public static void main(String[] args) throws InterruptedException, IOException {
         String target = "localhost:8980";
         if (args.length > 0) {
             if ("--help".equals(args[0])) {
-                System.err.println("Usage: [target]");
+                System.err.println("Usage: [target[,target...]]");
                 System.err.println("");
                 System.err.println("  target  The server to connect to. Defaults to " + target);
+                System.err.println("          Several comma-separated targets are treated as shards.");
                 System.exit(1);
             }
             target = args[0];
         }
+        List<String> targets = Arrays.asList(target.split(","));
 
         // Load the hedging service config
         String hedgingConfigJson = new String(
@@ -203,15 +380,31 @@ public class RouteGuideClient {
         Map<String, ?> hedgingServiceConfig = new com.google.gson.Gson()
             .fromJson(hedgingConfigJson, Map.class);
 
-        ManagedChannel channel = ManagedChannelBuilder.forTarget(target)
-            .defaultServiceConfig(hedgingServiceConfig)
-            .enableRetry()
-            .usePlaintext() // For testing without TLS
-            // .overrideAuthority("brandon-mooney.com") // Override to match SSL certificate
-            .build();
+        // Each target gets a pool of connections, with streams kept apart from unary calls
+        int unaryChannels = Integer.parseInt(System.getenv().getOrDefault(
+            "CLIENT_UNARY_CHANNELS", Integer.toString(DEFAULT_UNARY_CHANNELS)));
+        int streamingChannels = Integer.parseInt(System.getenv().getOrDefault(
+            "CLIENT_STREAMING_CHANNELS", Integer.toString(DEFAULT_STREAMING_CHANNELS)));
+        Function<String, ManagedChannel> channelFactory = shardTarget -> new ChannelPool(() ->
+            ManagedChannelBuilder.forTarget(shardTarget)
+                .defaultServiceConfig(hedgingServiceConfig)
+                .enableRetry()
+                .usePlaintext() // For testing without TLS
+                // .overrideAuthority("brandon-mooney.com") // Override to match SSL certificate
+                .build(),
+            unaryChannels, streamingChannels);
+
+        ShardRouter shardRouter = targets.size() > 1
+            ? new ShardRouter(targets, channelFactory, new HeaderClientInterceptor(),
+                new TracingClientInterceptor())
+            : null;
+        // With shards, calls outside the router share its pool to the first target
+        ManagedChannel channel = shardRouter != null
+            ? shardRouter.channel(targets.get(0))
+            : channelFactory.apply(targets.get(0));
 
         try {
-            RouteGuideClient client = new RouteGuideClient(channel);
+            RouteGuideClient client = new RouteGuideClient(channel, shardRouter);
 
             // Test 1: Get the feature first to see its current state
             client.getFeature(409146138, -746188906);
@@ -225,11 +418,20 @@ public class RouteGuideClient {
 
             // client.listFeatures(400000000, -750000000, 420000000, -730000000);
 
+            // client.listFeatureBatches(400000000, -750000000, 420000000, -730000000);
+
+            // client.exportFeatures(4, 5);
+
             // List<Feature> features = RouteGuideUtil.parseFeatures(RouteGuideUtil.getDefaultFeaturesFile());
 
             // client.recordRoute(features, 10);
 
+            // client.importFeatures(features);
+
         } finally {
+            if (shardRouter != null) {
+                shardRouter.shutdown();
+            }
             channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
         }
     }
@@ -1,52 +1,404 @@
 package io.grpc.examples.routeguide;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 import com.google.protobuf.FieldMask;
 import com.google.protobuf.util.FieldMaskUtil;
 
-import io.grpc.Grpc;
-import io.grpc.InsecureServerCredentials;
+import io.grpc.Context;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.examples.routeguide.admin.AdminAuthInterceptor;
+import io.grpc.examples.routeguide.admin.RouteGuideAdminService;
+import io.grpc.examples.routeguide.bulkhead.Bulkhead;
+import io.grpc.examples.routeguide.bulkhead.BulkheadInterceptor;
+import io.grpc.examples.routeguide.cache.SerializedMessage;
+import io.grpc.examples.routeguide.cache.SerializedMessageMarshaller;
+import io.grpc.examples.routeguide.cache.SerializedResponseCache;
+import io.grpc.examples.routeguide.changefeed.ChangeFeedConsumer;
+import io.grpc.examples.routeguide.changefeed.DynamoDbStreamsChangeFeedSource;
+import io.grpc.examples.routeguide.db.CircuitBreaker;
+import io.grpc.examples.routeguide.db.FeatureFilterStore;
 import io.grpc.examples.routeguide.db.FeatureRepository;
+import io.grpc.examples.routeguide.db.FeatureStore;
+import io.grpc.examples.routeguide.db.ReadHedger;
+import io.grpc.examples.routeguide.db.RoutePrefetcher;
+import io.grpc.examples.routeguide.db.SpatialIndexFeatureStore;
+import io.grpc.examples.routeguide.db.StaleWhileRevalidateFeatureStore;
+import io.grpc.examples.routeguide.db.TieredFeatureStore;
+import io.grpc.examples.routeguide.db.TrackingFeatureStore;
+import io.grpc.examples.routeguide.factory.AwsClientFactory;
+import io.grpc.examples.routeguide.factory.AwsClientFactoryProvider;
 import io.grpc.examples.routeguide.header.HeaderServerInterceptor;
+import io.grpc.examples.routeguide.header.StaleResponseInterceptor;
 import io.grpc.examples.routeguide.interceptor.LatencyInjectionInterceptor;
+import io.grpc.examples.routeguide.ratelimit.ClientRateLimiter;
+import io.grpc.examples.routeguide.ratelimit.RateLimitInterceptor;
+import io.grpc.examples.routeguide.ratelimit.TokenBucket;
+import io.grpc.examples.routeguide.tracing.Tracer;
+import io.grpc.examples.routeguide.tracing.TracingServerInterceptor;
+import io.grpc.examples.routeguide.transport.NettyServerConfig;
+import io.grpc.examples.routeguide.metrics.HotCellTracker;
+import io.grpc.examples.routeguide.metrics.MetricsRegistry;
+import io.grpc.examples.routeguide.metrics.RouteHeatmap;
+import io.grpc.examples.routeguide.shard.ShardAdmission;
+import io.grpc.examples.routeguide.warmup.ServerWarmup;
+import io.grpc.health.v1.HealthCheckResponse.ServingStatus;
+import io.grpc.protobuf.services.HealthStatusManager;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.ServerCalls;
 import io.grpc.stub.StreamObserver;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 
 public class RouteGuideServer {
       private static final Logger logger = Logger.getLogger(RouteGuideServer.class.getName());
+    private static final long DEFAULT_HOT_TIER_BYTES = 64L * 1024 * 1024;
+    private static final long DEFAULT_RESPONSE_CACHE_BYTES = 16L * 1024 * 1024;
+    private static final int DEFAULT_HOT_CELLS_TOP_K = 20;
+    private static final long DEFAULT_HOT_CELLS_WINDOW_SECONDS = 60;
+    private static final long DEFAULT_HEATMAP_WINDOW_SECONDS = 10;
+    private static final int DEFAULT_HEATMAP_WINDOWS = 30;
+    private static final int DEFAULT_HEATMAP_MAX_CELLS = 10_000;
+    private static final double DEFAULT_PREFETCH_RATIO = 0.5;
+    private static final int PREFETCH_THREADS = 2;
+    private static final int PREFETCH_QUEUE_SIZE = 256;
+    private static final long DEFAULT_CHANGE_FEED_POLL_MILLIS = 500;
+    private static final long DYNAMODB_WARMUP_BUDGET_MILLIS = 10_000;
+    private static final long DEFAULT_WARMUP_MAX_MILLIS = 30_000;
+    private static final int DEFAULT_WARMUP_MAX_ITERATIONS = 5_000;
+    private static final int DEFAULT_WARMUP_THREADS = 4;
+    private static final int DEFAULT_WARMUP_PRELOAD_PARTITIONS = 64;
+    private static final int CHANGE_FEED_BATCH_SIZE = 500;
+    private static final long DEFAULT_SPATIAL_INDEX_REFRESH_SECONDS = 300;
+    private static final long DEFAULT_FEATURE_FILTER_REFRESH_SECONDS = 300;
+    private static final double DEFAULT_FEATURE_FILTER_FALSE_POSITIVE_RATE = 0.01;
+    private static final String DEFAULT_RATE_LIMIT_CLIENT_HEADER = "custom_client_header_key";
+    private static final double DEFAULT_RATE_LIMIT_READS_PER_SECOND = 200;
+    private static final double DEFAULT_RATE_LIMIT_UPDATES_PER_SECOND = 20;
+    private static final double DEFAULT_RATE_LIMIT_POINTS_PER_SECOND = 1_000;
+    private static final long DEFAULT_RATE_LIMIT_IDLE_SECONDS = 300;
+    private static final int DEFAULT_RATE_LIMIT_MAX_CLIENTS = 1_000_000;
+    private static final int DEFAULT_EXPORT_SEGMENTS = 4;
+    private static final double DEFAULT_EXPORT_MAX_READ_CAPACITY_UNITS = 100;
+    private static final int DEFAULT_EXPORT_PAGE_ITEMS = 500;
+    private static final int DEFAULT_EXPORT_THREADS = 4;
+    private static final int DEFAULT_IMPORT_THREADS = 4;
+    private static final int DEFAULT_IMPORT_MAX_CONCURRENT_BATCHES = 8;
+    private static final double DEFAULT_DYNAMODB_BREAKER_FAILURE_RATIO = 0.5;
+    private static final int DEFAULT_DYNAMODB_BREAKER_MIN_CALLS = 20;
+    private static final long DEFAULT_DYNAMODB_BREAKER_WINDOW_SECONDS = 10;
+    private static final long DEFAULT_DYNAMODB_BREAKER_OPEN_MILLIS = 5_000;
+    private static final double DEFAULT_DYNAMODB_HEDGE_READS_PER_SECOND = 0;
+    private static final int DEFAULT_DYNAMODB_HEDGE_BURST = 20;
+    private static final long DEFAULT_DYNAMODB_HEDGE_DELAY_MILLIS = 0;
+    private static final double DEFAULT_DYNAMODB_HEDGE_PERCENTILE = 0.95;
+    private static final int DEFAULT_DYNAMODB_HEDGE_THREADS = 128;
+    private static final long DEFAULT_STALE_BUDGET_MILLIS = 100;
+    private static final int DEFAULT_STALE_MAX_ENTRIES = 100_000;
+    private static final int DEFAULT_BULKHEAD_UNARY_THREADS = 64;
+    private static final int DEFAULT_BULKHEAD_UNARY_MAX_CALLS = 1_000;
+    private static final int DEFAULT_BULKHEAD_STREAMING_THREADS = 32;
+    private static final int DEFAULT_BULKHEAD_STREAMING_MAX_CALLS = 1_000;
 
     private final int port;
     private final Server server;
     private final HeaderServerInterceptor headerServerInterceptor;
-    private final FeatureRepository repository;
+    private final FeatureRepository backend;
+    private final FeatureStore repository;
+    private final ShardAdmission shardAdmission;
+    private final TieredFeatureStore hotTier;
+    private final SerializedResponseCache responseCache;
+    private final SpatialIndexFeatureStore spatialIndex;
+    private final FeatureFilterStore featureFilter;
+    private final HotCellTracker hotCells;
+    private final RouteHeatmap heatmap;
+    private final ScheduledExecutorService maintenance;
+    private final ScheduledExecutorService rebuildScheduler;
+    private final ExecutorService prefetchExecutor;
+    private final ScheduledExecutorService exportScheduler;
+    private final ScheduledExecutorService importScheduler;
+    private final ScheduledExecutorService batchFlushTimer;
+    private final ExecutorService staleRefreshExecutor;
+    private final ReadHedger readHedger;
+    private final Bulkhead unaryBulkhead;
+    private final Bulkhead streamingBulkhead;
+    private final ChangeFeedConsumer changeFeedConsumer;
+    private final HealthStatusManager health;
+    private final ServerServiceDefinition routeGuideDefinition;
+    private final ClientRateLimiter rateLimiter;
+    private final NettyServerConfig transportConfig;
 
     public RouteGuideServer(int port) throws IOException {
-        this(Grpc.newServerBuilderForPort(port, InsecureServerCredentials.create()), port);
+        this(NettyServerConfig.fromEnvironment(), port);
+    }
+
+    public RouteGuideServer(NettyServerConfig transportConfig, int port) {
+        this(transportConfig.newServerBuilder(port), port, transportConfig);
+        logger.info("Server transport: " + transportConfig);
     }
 
     public RouteGuideServer(ServerBuilder<?> serverBuilder, int port) {
+        this(serverBuilder, port, null);
+    }
+
+    private RouteGuideServer(ServerBuilder<?> serverBuilder, int port, NettyServerConfig transportConfig) {
         this.port = port;
+        this.transportConfig = transportConfig;
         this.headerServerInterceptor = new HeaderServerInterceptor();
 
-        // Create repository for DynamoDB access using Abstract Factory pattern
-        this.repository = new FeatureRepository();
+        // Create repository for DynamoDB access using Abstract Factory pattern,
+        // behind a circuit breaker and fronted by the in-memory hot tier unless
+        // either is disabled
+        this.readHedger = createReadHedger();
+        this.backend = new FeatureRepository(AwsClientFactoryProvider.getFactory(), createCircuitBreaker(),
+            readHedger);
+        this.shardAdmission = createShardAdmission(port);
+        this.hotTier = createHotTier(backend, shardAdmission);
+
+        // Unary and streaming calls run on separate pools, after any injected latency
+        this.unaryBulkhead = createBulkhead("unary", DEFAULT_BULKHEAD_UNARY_THREADS,
+            DEFAULT_BULKHEAD_UNARY_MAX_CALLS);
+        this.streamingBulkhead = createBulkhead("streaming", DEFAULT_BULKHEAD_STREAMING_THREADS,
+            DEFAULT_BULKHEAD_STREAMING_MAX_CALLS);
+
+        // Serve the last known feature when a lookup misses its latency budget or fails.
+        // Refreshes get as many threads as the bulkheads, so they never cap backend
+        // concurrency below what the calls themselves could reach.
+        long staleBudgetMillis = Long.parseLong(System.getenv().getOrDefault(
+            "STALE_BUDGET_MILLIS", Long.toString(DEFAULT_STALE_BUDGET_MILLIS)));
+        FeatureStore lookups = hotTier != null ? hotTier : backend;
+        if (staleBudgetMillis > 0) {
+            int refreshThreads = Integer.parseInt(System.getenv().getOrDefault(
+                "STALE_REFRESH_THREADS", Integer.toString(
+                    bulkheadThreads(unaryBulkhead, DEFAULT_BULKHEAD_UNARY_THREADS)
+                        + bulkheadThreads(streamingBulkhead, DEFAULT_BULKHEAD_STREAMING_THREADS))));
+            int refreshQueue = (unaryBulkhead != null ? unaryBulkhead.maxCalls() : DEFAULT_BULKHEAD_UNARY_MAX_CALLS)
+                + (streamingBulkhead != null ? streamingBulkhead.maxCalls() : DEFAULT_BULKHEAD_STREAMING_MAX_CALLS);
+            this.staleRefreshExecutor = new ThreadPoolExecutor(refreshThreads, refreshThreads,
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(refreshQueue), runnable -> {
+                    Thread thread = new Thread(runnable, "route-guide-stale-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            lookups = new StaleWhileRevalidateFeatureStore(lookups, staleRefreshExecutor, staleBudgetMillis,
+                Integer.parseInt(System.getenv().getOrDefault(
+                    "STALE_MAX_ENTRIES", Integer.toString(DEFAULT_STALE_MAX_ENTRIES))),
+                hotTier != null
+                    ? point -> hotTier.isResident(FeatureRepository.partitionKey(point))
+                    : point -> false,
+                StaleResponseInterceptor::markStale);
+        } else {
+            this.staleRefreshExecutor = null;
+        }
 
+        // Track per-partition traffic in front of every cache layer
+        this.hotCells = new HotCellTracker(
+            Integer.parseInt(System.getenv().getOrDefault("HOT_CELLS_TOP_K",
+                Integer.toString(DEFAULT_HOT_CELLS_TOP_K))),
+            Long.parseLong(System.getenv().getOrDefault("HOT_CELLS_WINDOW_SECONDS",
+                Long.toString(DEFAULT_HOT_CELLS_WINDOW_SECONDS))),
+            TimeUnit.SECONDS);
+
+        this.changeFeedConsumer = createChangeFeedConsumer(hotTier);
+
+        // Point lookups with no feature answered from a Bloom filter, if enabled
+        this.featureFilter = createFeatureFilter(lookups, hotTier, changeFeedConsumer != null);
+        if (featureFilter != null) {
+            lookups = featureFilter;
+        }
+        FeatureStore tracked = new TrackingFeatureStore(lookups, hotCells);
+
+        // Rectangle queries from an in-memory index of every feature, if enabled
+        this.spatialIndex = createSpatialIndex(tracked, hotTier, changeFeedConsumer != null);
+        this.repository = spatialIndex != null ? spatialIndex : tracked;
+
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "route-guide-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Periodic full-table rebuilds of the spatial index and feature filter, one
+        // at a time and apart from maintenance, so a slow Scan cannot delay rotations
+        this.rebuildScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "route-guide-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Route prediction loads partitions ahead of RecordRoute streams into the hot tier
+        double prefetchRatio = Double.parseDouble(
+            System.getenv().getOrDefault("PREFETCH_MAX_RATIO", Double.toString(DEFAULT_PREFETCH_RATIO)));
+        this.prefetchExecutor = new ThreadPoolExecutor(PREFETCH_THREADS, PREFETCH_THREADS,
+            0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(PREFETCH_QUEUE_SIZE), runnable -> {
+                Thread thread = new Thread(runnable, "route-guide-prefetch");
+                thread.setDaemon(true);
+                return thread;
+            });
+        RoutePrefetcher prefetcher = hotTier != null && prefetchRatio > 0
+            ? new RoutePrefetcher(hotTier, prefetchExecutor, prefetchRatio)
+            : null;
+
+        // ExportFeatures reads the table directly, bypassing every cache layer
+        this.exportScheduler = Executors.newScheduledThreadPool(
+            Integer.parseInt(System.getenv().getOrDefault("EXPORT_THREADS", Integer.toString(DEFAULT_EXPORT_THREADS))),
+            runnable -> {
+                Thread thread = new Thread(runnable, "route-guide-export");
+                thread.setDaemon(true);
+                return thread;
+            });
+        FeatureExporter exporter = new FeatureExporter(backend, exportScheduler,
+            Integer.parseInt(System.getenv().getOrDefault(
+                "EXPORT_SEGMENTS", Integer.toString(DEFAULT_EXPORT_SEGMENTS))),
+            Double.parseDouble(System.getenv().getOrDefault(
+                "EXPORT_MAX_READ_CAPACITY_UNITS", Double.toString(DEFAULT_EXPORT_MAX_READ_CAPACITY_UNITS))),
+            Integer.parseInt(System.getenv().getOrDefault(
+                "EXPORT_PAGE_ITEMS", Integer.toString(DEFAULT_EXPORT_PAGE_ITEMS))));
+
+        // ImportFeatures writes the table directly and then updates the local caches
+        this.importScheduler = Executors.newScheduledThreadPool(
+            Integer.parseInt(System.getenv().getOrDefault("IMPORT_THREADS", Integer.toString(DEFAULT_IMPORT_THREADS))),
+            runnable -> {
+                Thread thread = new Thread(runnable, "route-guide-import");
+                thread.setDaemon(true);
+                return thread;
+            });
+        FeatureImporter importer = new FeatureImporter(backend, importScheduler,
+            Integer.parseInt(System.getenv().getOrDefault(
+                "IMPORT_MAX_CONCURRENT_BATCHES", Integer.toString(DEFAULT_IMPORT_MAX_CONCURRENT_BATCHES))),
+            features -> {
+                if (hotTier != null) {
+                    hotTier.applyChanges(features, Collections.emptyList(), Collections.emptyList());
+                }
+                if (spatialIndex != null) {
+                    spatialIndex.applyChanges(features);
+                }
+                if (featureFilter != null) {
+                    featureFilter.applyChanges(features);
+                }
+            });
+
+        // Report NOT_SERVING until warm-up is done. Health checks bypass the
+        // interceptors so injected latency cannot fail them.
+        this.health = new HealthStatusManager();
+        health.setStatus("", ServingStatus.NOT_SERVING);
+        health.setStatus(RouteGuideGrpc.SERVICE_NAME, ServingStatus.NOT_SERVING);
+        // Visit counts of all RecordRoute streams, rotated by the maintenance thread
+        this.heatmap = new RouteHeatmap(
+            Long.parseLong(System.getenv().getOrDefault("HEATMAP_WINDOW_SECONDS",
+                Long.toString(DEFAULT_HEATMAP_WINDOW_SECONDS))),
+            TimeUnit.SECONDS,
+            Integer.parseInt(System.getenv().getOrDefault("HEATMAP_WINDOWS",
+                Integer.toString(DEFAULT_HEATMAP_WINDOWS))),
+            Integer.parseInt(System.getenv().getOrDefault("HEATMAP_MAX_CELLS",
+                Integer.toString(DEFAULT_HEATMAP_MAX_CELLS))));
+        // Sends partial ListFeatureBatches batches that waited too long
+        this.batchFlushTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "route-guide-batch-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        RouteGuideService routeGuideService = new RouteGuideService(repository, prefetcher, heatmap, exporter,
+            importer, batchFlushTimer);
+        ServerServiceDefinition routeGuideDefinition = routeGuideService.bindService();
+        long responseCacheBytes = Long.parseLong(System.getenv().getOrDefault(
+            "RESPONSE_CACHE_MAX_BYTES", Long.toString(DEFAULT_RESPONSE_CACHE_BYTES)));
+        if (hotTier != null && responseCacheBytes > 0) {
+            // Only in front of the hot tier and only for the partitions it keeps, whose
+            // change notifications keep the cache coherent
+            this.responseCache = new SerializedResponseCache(responseCacheBytes, hotTier::admits);
+            hotTier.addChangeListener(responseCache);
+            routeGuideDefinition = routeGuideService.bindService(responseCache, hotCells);
+        } else {
+            this.responseCache = null;
+        }
+        this.routeGuideDefinition = routeGuideDefinition;
+
+        // LATENCY_INJECTION=false turns the injected delays off, e.g. for performance tests
+        LatencyInjectionInterceptor latencyInjectionInterceptor =
+            !"false".equalsIgnoreCase(System.getenv("LATENCY_INJECTION")) ? new LatencyInjectionInterceptor() : null;
+        // Listed last so it runs first and its span covers the other interceptors
+        TracingServerInterceptor tracingServerInterceptor = new TracingServerInterceptor();
+        // Over-limit calls are rejected before any injected latency or lookups
+        this.rateLimiter = createRateLimiter();
+        List<ServerInterceptor> routeGuideInterceptors = new ArrayList<>();
+        List<ServerInterceptor> adminInterceptors = new ArrayList<>();
+        if (unaryBulkhead != null || streamingBulkhead != null) {
+            routeGuideInterceptors.add(new BulkheadInterceptor(method ->
+                method.getType() == MethodDescriptor.MethodType.UNARY ? unaryBulkhead : streamingBulkhead));
+        }
+        if (latencyInjectionInterceptor != null) {
+            routeGuideInterceptors.add(latencyInjectionInterceptor);
+            adminInterceptors.add(latencyInjectionInterceptor);
+        }
+        if (rateLimiter != null) {
+            routeGuideInterceptors.add(new RateLimitInterceptor(rateLimiter,
+                System.getenv().getOrDefault("RATE_LIMIT_CLIENT_HEADER", DEFAULT_RATE_LIMIT_CLIENT_HEADER)));
+        }
+        routeGuideInterceptors.add(new StaleResponseInterceptor());
+        routeGuideInterceptors.add(headerServerInterceptor);
+        routeGuideInterceptors.add(tracingServerInterceptor);
+        adminInterceptors.add(headerServerInterceptor);
+        // Runs before the header interceptor, which logs every header, and takes the token out
+        adminInterceptors.add(createAdminAuth());
+        adminInterceptors.add(tracingServerInterceptor);
         server = serverBuilder
-            .addService(new RouteGuideService(repository))
-            .intercept(new LatencyInjectionInterceptor())
-            .intercept(headerServerInterceptor)
+            .addService(ServerInterceptors.intercept(routeGuideDefinition, routeGuideInterceptors))
+            .addService(ServerInterceptors.intercept(
+                new RouteGuideAdminService(hotCells, hotTier != null ? hotTier::pinned : null, heatmap,
+                    shardAdmission, this::evictUnownedShards),
+                adminInterceptors))
+            .addService(health.getHealthService())
             .build();
     }
 
+    /**
+     * Bind the port, then prepare caches and warm up before reporting SERVING.
+     *
+     * The DynamoDB client is created on a background thread while the port is
+     * bound. With FAST_START=true the server reports SERVING as soon as the port
+     * is bound and prepares in the background, trading slower first calls for
+     * joining the load balancer without waiting for warm-up.
+     */
     public void start () throws IOException {
+        Thread clientInit = new Thread(() -> {
+            try {
+                backend.initialize();
+            } catch (RuntimeException e) {
+                logger.warning("Creating the DynamoDB client failed, retrying on first use: " + e.getMessage());
+            }
+        }, "route-guide-client-init");
+        clientInit.setDaemon(true);
+        clientInit.start();
+
         server.start();
-        logger.info("Server started, listening on " + port);
+        logger.info("Server started, listening on " + port + ", warming up");
+        if (changeFeedConsumer != null) {
+            changeFeedConsumer.start(Long.parseLong(System.getenv().getOrDefault(
+                "CHANGE_FEED_POLL_MILLIS", Long.toString(DEFAULT_CHANGE_FEED_POLL_MILLIS))));
+        }
         Runtime.getRuntime().addShutdownHook(new Thread() {
         @Override
         public void run() {
@@ -60,17 +412,514 @@ public class RouteGuideServer {
             System.err.println("*** server shut down");
         }
         });
+
+        if (Boolean.parseBoolean(System.getenv("FAST_START"))) {
+            reportServing();
+            Thread startup = new Thread(this::prepare, "route-guide-startup");
+            startup.setDaemon(true);
+            startup.start();
+        } else {
+            prepare();
+        }
+    }
+
+    /**
+     * Build the in-memory indexes, warm up and report SERVING.
+     */
+    private void prepare() {
+        buildSpatialIndex();
+        buildFeatureFilter();
+        warmUp();
+        scheduleHotCellMaintenance();
+        if (rateLimiter != null) {
+            long idleSeconds = rateLimiterIdleSeconds();
+            maintenance.scheduleWithFixedDelay(rateLimiter::evictIdle, idleSeconds, idleSeconds, TimeUnit.SECONDS);
+        }
+        maintenance.scheduleAtFixedRate(heatmap::rotate,
+            heatmap.windowMillis(), heatmap.windowMillis(), TimeUnit.MILLISECONDS);
+        reportServing();
+    }
+
+    private void reportServing() {
+        health.setStatus("", ServingStatus.SERVING);
+        health.setStatus(RouteGuideGrpc.SERVICE_NAME, ServingStatus.SERVING);
+        logger.info("Server is SERVING");
+    }
+
+    /**
+     * Build the spatial index before reporting SERVING.
+     *
+     * SPATIAL_INDEX=scan reads the whole table and rebuilds every
+     * SPATIAL_INDEX_REFRESH_SECONDS (0 never rebuilds), which brings partitions
+     * changed in unknown ways back into the index. SPATIAL_INDEX=snapshot loads
+     * route_guide_db.json once, and is only correct when the table holds
+     * nothing else.
+     */
+    private void buildSpatialIndex() {
+        if (spatialIndex == null) {
+            return;
+        }
+        scheduleRebuild("spatial index", "ListFeatures reads DynamoDB", System.getenv("SPATIAL_INDEX"),
+            Long.parseLong(System.getenv().getOrDefault(
+                "SPATIAL_INDEX_REFRESH_SECONDS", Long.toString(DEFAULT_SPATIAL_INDEX_REFRESH_SECONDS))),
+            spatialIndex::rebuild);
+    }
+
+    /**
+     * Build the feature filter before reporting SERVING.
+     *
+     * FEATURE_FILTER=scan reads the whole table and rebuilds every
+     * FEATURE_FILTER_REFRESH_SECONDS (0 never rebuilds), which resizes the
+     * filter and forgets deleted features. FEATURE_FILTER=snapshot loads
+     * route_guide_db.json once, and is only correct when the table holds
+     * nothing else.
+     */
+    private void buildFeatureFilter() {
+        if (featureFilter == null) {
+            return;
+        }
+        scheduleRebuild("feature filter", "every lookup reads DynamoDB", System.getenv("FEATURE_FILTER"),
+            Long.parseLong(System.getenv().getOrDefault(
+                "FEATURE_FILTER_REFRESH_SECONDS", Long.toString(DEFAULT_FEATURE_FILTER_REFRESH_SECONDS))),
+            featureFilter::rebuild);
+    }
+
+    /**
+     * Build an in-memory structure from every feature now, then again every
+     * refreshSeconds on the rebuild scheduler unless the source is a snapshot
+     * or refreshSeconds is 0.
+     *
+     * @param name What is built, for logging
+     * @param fallback What serves requests while the first build is missing, for logging
+     * @param source "scan" or "snapshot", see featureLoader
+     * @param rebuild Replaces the structure with one built from the loaded features
+     */
+    private void scheduleRebuild(String name, String fallback, String source, long refreshSeconds,
+            Consumer<Supplier<List<Feature>>> rebuild) {
+        Supplier<List<Feature>> loader = featureLoader(source);
+        try {
+            rebuild.accept(loader);
+        } catch (RuntimeException e) {
+            logger.warning("Building the " + name + " failed, " + fallback + ": " + e.getMessage());
+        }
+
+        if (!"snapshot".equalsIgnoreCase(source) && refreshSeconds > 0) {
+            rebuildScheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    rebuild.accept(loader);
+                } catch (RuntimeException e) {
+                    logger.warning("Rebuilding the " + name + " failed: " + e.getMessage());
+                }
+            }, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Reads every feature from route_guide_db.json for "snapshot", or else by
+     * scanning the table.
+     */
+    private Supplier<List<Feature>> featureLoader(String source) {
+        if ("snapshot".equalsIgnoreCase(source)) {
+            return () -> {
+                try {
+                    return RouteGuideUtil.parseFeatures(RouteGuideUtil.getDefaultFeaturesFile());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+        }
+        return () -> {
+            List<Feature> features = new ArrayList<>();
+            backend.scanFeatures(features::add);
+            return features;
+        };
+    }
+
+    /**
+     * Warm DynamoDB connections, the hot tier and the JIT before reporting SERVING.
+     *
+     * WARMUP_MAX_MILLIS and WARMUP_MAX_ITERATIONS bound the replay of a synthetic
+     * workload from route_guide_db.json (WARMUP_MAX_ITERATIONS=0 skips it),
+     * WARMUP_THREADS sets its concurrency and WARMUP_PRELOAD_PARTITIONS how many of
+     * the densest partitions are loaded into the hot tier first.
+     */
+    private void warmUp() {
+        long start = System.nanoTime();
+        backend.warmUp(DYNAMODB_WARMUP_BUDGET_MILLIS);
+
+        long maxMillis = Long.parseLong(System.getenv().getOrDefault(
+            "WARMUP_MAX_MILLIS", Long.toString(DEFAULT_WARMUP_MAX_MILLIS)));
+        int maxIterations = Integer.parseInt(System.getenv().getOrDefault(
+            "WARMUP_MAX_ITERATIONS", Integer.toString(DEFAULT_WARMUP_MAX_ITERATIONS)));
+        int threads = Integer.parseInt(System.getenv().getOrDefault(
+            "WARMUP_THREADS", Integer.toString(DEFAULT_WARMUP_THREADS)));
+        int preloadPartitions = Integer.parseInt(System.getenv().getOrDefault(
+            "WARMUP_PRELOAD_PARTITIONS", Integer.toString(DEFAULT_WARMUP_PRELOAD_PARTITIONS)));
+
+        List<Feature> features;
+        try {
+            features = RouteGuideUtil.parseFeatures(RouteGuideUtil.getDefaultFeaturesFile());
+        } catch (IOException e) {
+            logger.warning("Skipping warm-up, cannot read feature database: " + e.getMessage());
+            return;
+        }
+
+        if (hotTier != null && preloadPartitions > 0) {
+            int loaded = ServerWarmup.preloadDensestPartitions(hotTier, features, preloadPartitions);
+            logger.info("Preloaded " + loaded + " partitions into the hot tier");
+        }
+        if (maxIterations > 0 && maxMillis > 0) {
+            try {
+                new ServerWarmup(routeGuideDefinition, features, maxMillis, maxIterations, threads).run();
+            } catch (IOException e) {
+                logger.warning("Warm-up replay failed: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Synthetic traffic must not decide which cells get pinned or show in the heatmap
+        hotCells.rotate();
+        hotCells.rotate();
+        heatmap.clear();
+        logger.info("Warm-up finished in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+    }
+
+    /**
+     * Rotate the hot-cell counting window and, unless HOT_CELLS_AUTO_PIN is "false",
+     * pin the current top cells in the hot tier so hot keys stop reaching DynamoDB.
+     */
+    private void scheduleHotCellMaintenance() {
+        boolean autoPin = hotTier != null
+            && !"false".equalsIgnoreCase(System.getenv("HOT_CELLS_AUTO_PIN"));
+        long windowMillis = hotCells.windowMillis();
+        maintenance.scheduleAtFixedRate(() -> {
+            hotCells.rotate();
+            if (autoPin) {
+                List<String> cells = new ArrayList<>();
+                for (HotCellTracker.CellRate rate : hotCells.topCells(Integer.MAX_VALUE)) {
+                    cells.add(rate.getCell());
+                }
+                try {
+                    hotTier.pin(cells);
+                } catch (RuntimeException e) {
+                    logger.warning("Pinning hot cells failed: " + e.getMessage());
+                }
+            }
+        }, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * With CHANGE_FEED=dynamodb, follow the table's DynamoDB Stream so updates made
+     * through other replicas refresh this replica's hot tier. The stream ARN is taken
+     * from CHANGE_FEED_STREAM_ARN or looked up from the table.
+     */
+    private static ChangeFeedConsumer createChangeFeedConsumer(TieredFeatureStore hotTier) {
+        if (hotTier == null || !"dynamodb".equalsIgnoreCase(System.getenv("CHANGE_FEED"))) {
+            return null;
+        }
+        AwsClientFactory factory = AwsClientFactoryProvider.getFactory();
+        String streamArn = System.getenv("CHANGE_FEED_STREAM_ARN");
+        if (streamArn == null || streamArn.isEmpty()) {
+            try (DynamoDbClient dynamoDbClient = factory.createDynamoDbClient()) {
+                streamArn = DynamoDbStreamsChangeFeedSource.latestStreamArn(dynamoDbClient, FeatureRepository.TABLE_NAME);
+            }
+        }
+        if (streamArn == null) {
+            logger.warning("CHANGE_FEED=dynamodb but RouteGuideFeatures has no stream; replicas may serve stale data");
+            return null;
+        }
+        logger.info("Following change feed " + streamArn);
+        return new ChangeFeedConsumer(
+            new DynamoDbStreamsChangeFeedSource(factory.createDynamoDbStreamsClient(), streamArn),
+            hotTier, CHANGE_FEED_BATCH_SIZE);
+    }
+
+    /**
+     * Bloom filter of feature locations in front of the lookups, with
+     * FEATURE_FILTER=scan or snapshot (see buildFeatureFilter).
+     *
+     * A feature created through another replica must reach the filter before
+     * its next rebuild, or lookups of it answer "no feature". So the filter is
+     * only enabled when the change feed feeds it through the hot tier, or with
+     * FEATURE_FILTER_SINGLE_NODE=true when this server is the table's only writer.
+     */
+    private static FeatureFilterStore createFeatureFilter(FeatureStore lookups, TieredFeatureStore hotTier,
+            boolean changeFeed) {
+        String source = System.getenv("FEATURE_FILTER");
+        if (source == null || source.isEmpty()) {
+            return null;
+        }
+        if (!changeFeed && !Boolean.parseBoolean(System.getenv("FEATURE_FILTER_SINGLE_NODE"))) {
+            logger.warning("FEATURE_FILTER needs CHANGE_FEED=dynamodb and the hot tier, or "
+                + "FEATURE_FILTER_SINGLE_NODE=true; feature filter disabled");
+            return null;
+        }
+        FeatureFilterStore filter = new FeatureFilterStore(lookups, Double.parseDouble(System.getenv().getOrDefault(
+            "FEATURE_FILTER_FALSE_POSITIVE_RATE", Double.toString(DEFAULT_FEATURE_FILTER_FALSE_POSITIVE_RATE))));
+        if (hotTier != null) {
+            // Hears about features created through other replicas from the change feed
+            hotTier.addChangeListener(filter);
+        }
+        return filter;
+    }
+
+    /**
+     * In-memory index answering ListFeatures, with SPATIAL_INDEX=scan or
+     * snapshot (see buildSpatialIndex).
+     *
+     * Writes made through other replicas must reach the index, or ListFeatures
+     * misses them until the next rebuild. So, like the feature filter, the index
+     * is only enabled when the change feed feeds it through the hot tier, or with
+     * SPATIAL_INDEX_SINGLE_NODE=true when this server is the table's only writer.
+     */
+    private static SpatialIndexFeatureStore createSpatialIndex(FeatureStore tracked, TieredFeatureStore hotTier,
+            boolean changeFeed) {
+        String source = System.getenv("SPATIAL_INDEX");
+        if (source == null || source.isEmpty()) {
+            return null;
+        }
+        if (!changeFeed && !Boolean.parseBoolean(System.getenv("SPATIAL_INDEX_SINGLE_NODE"))) {
+            logger.warning("SPATIAL_INDEX needs CHANGE_FEED=dynamodb and the hot tier, or "
+                + "SPATIAL_INDEX_SINGLE_NODE=true; spatial index disabled");
+            return null;
+        }
+        SpatialIndexFeatureStore index = new SpatialIndexFeatureStore(tracked);
+        if (hotTier != null) {
+            // Hears about writes made through other replicas from the change feed
+            hotTier.addChangeListener(index);
+        }
+        return index;
+    }
+
+    /**
+     * Per-client token buckets for the RouteGuide service.
+     *
+     * RATE_LIMIT_READS_PER_SECOND, RATE_LIMIT_UPDATES_PER_SECOND and
+     * RATE_LIMIT_POINTS_PER_SECOND set each client's sustained rate of read calls,
+     * UpdateFeature calls and imported features, and RecordRoute points (0 leaves
+     * that kind unlimited; bulk imports need a higher update rate or none);
+     * the matching RATE_LIMIT_*_BURST defaults to two seconds' worth. Clients idle
+     * for RATE_LIMIT_IDLE_SECONDS are forgotten, and beyond RATE_LIMIT_MAX_CLIENTS
+     * new clients share one bucket. Returns null if every kind is unlimited.
+     */
+    private static ClientRateLimiter createRateLimiter() {
+        TokenBucket[] buckets = {
+            rateLimitBucket("READS", "READ", DEFAULT_RATE_LIMIT_READS_PER_SECOND),
+            rateLimitBucket("UPDATES", "UPDATE", DEFAULT_RATE_LIMIT_UPDATES_PER_SECOND),
+            rateLimitBucket("POINTS", "POINT", DEFAULT_RATE_LIMIT_POINTS_PER_SECOND)
+        };
+        if (buckets[0] == null && buckets[1] == null && buckets[2] == null) {
+            logger.info("Rate limiting disabled");
+            return null;
+        }
+        int maxClients = Integer.parseInt(System.getenv().getOrDefault(
+            "RATE_LIMIT_MAX_CLIENTS", Integer.toString(DEFAULT_RATE_LIMIT_MAX_CLIENTS)));
+        return new ClientRateLimiter(buckets, TimeUnit.SECONDS.toNanos(rateLimiterIdleSeconds()), maxClients);
+    }
+
+    private static TokenBucket rateLimitBucket(String rateName, String burstName, double defaultRate) {
+        double rate = Double.parseDouble(System.getenv().getOrDefault(
+            "RATE_LIMIT_" + rateName + "_PER_SECOND", Double.toString(defaultRate)));
+        if (rate <= 0) {
+            return null;
+        }
+        int burst = Integer.parseInt(System.getenv().getOrDefault(
+            "RATE_LIMIT_" + burstName + "_BURST", Integer.toString((int) Math.max(1, rate * 2))));
+        return new TokenBucket(rate, burst);
+    }
+
+    /**
+     * Admin calls must send ADMIN_TOKEN in the x-admin-token header when it is
+     * set; without it SetShardNodes is refused and only the read-only admin
+     * RPCs are served.
+     */
+    private static AdminAuthInterceptor createAdminAuth() {
+        String token = System.getenv("ADMIN_TOKEN");
+        if (token == null || token.isEmpty()) {
+            logger.info("ADMIN_TOKEN not set, SetShardNodes disabled");
+        }
+        return new AdminAuthInterceptor(token);
+    }
+
+    private static long rateLimiterIdleSeconds() {
+        return Long.parseLong(System.getenv().getOrDefault(
+            "RATE_LIMIT_IDLE_SECONDS", Long.toString(DEFAULT_RATE_LIMIT_IDLE_SECONDS)));
+    }
+
+    private static int bulkheadThreads(Bulkhead bulkhead, int defaultThreads) {
+        return bulkhead != null ? bulkhead.threads() : defaultThreads;
+    }
+
+    /**
+     * Create a bulkhead from BULKHEAD_<NAME>_THREADS (0 disables it) and
+     * BULKHEAD_<NAME>_MAX_CALLS, the calls it holds before refusing more.
+     */
+    private static Bulkhead createBulkhead(String name, int defaultThreads, int defaultMaxCalls) {
+        String prefix = "BULKHEAD_" + name.toUpperCase() + "_";
+        int threads = Integer.parseInt(System.getenv().getOrDefault(
+            prefix + "THREADS", Integer.toString(defaultThreads)));
+        if (threads <= 0) {
+            logger.info("No " + name + " bulkhead, its calls run on the server executor");
+            return null;
+        }
+        int maxCalls = Integer.parseInt(System.getenv().getOrDefault(
+            prefix + "MAX_CALLS", Integer.toString(defaultMaxCalls)));
+        logger.info(name + " bulkhead with " + threads + " threads and " + maxCalls + " calls");
+        return new Bulkhead(name, threads, maxCalls);
+    }
+
+    /**
+     * Create the circuit breaker around DynamoDB calls from the environment.
+     *
+     * DYNAMODB_BREAKER_FAILURE_RATIO is the failed share of calls in the last
+     * DYNAMODB_BREAKER_WINDOW_SECONDS that opens it, once the window holds
+     * DYNAMODB_BREAKER_MIN_CALLS calls (0 disables the breaker). It stays open
+     * for DYNAMODB_BREAKER_OPEN_MILLIS before a trial call.
+     */
+    private static CircuitBreaker createCircuitBreaker() {
+        double failureRatio = Double.parseDouble(System.getenv().getOrDefault(
+            "DYNAMODB_BREAKER_FAILURE_RATIO", Double.toString(DEFAULT_DYNAMODB_BREAKER_FAILURE_RATIO)));
+        if (failureRatio <= 0) {
+            logger.info("DynamoDB circuit breaker disabled");
+            return null;
+        }
+        return new CircuitBreaker("dynamodb", failureRatio,
+            Integer.parseInt(System.getenv().getOrDefault(
+                "DYNAMODB_BREAKER_MIN_CALLS", Integer.toString(DEFAULT_DYNAMODB_BREAKER_MIN_CALLS))),
+            TimeUnit.SECONDS.toMillis(Long.parseLong(System.getenv().getOrDefault(
+                "DYNAMODB_BREAKER_WINDOW_SECONDS", Long.toString(DEFAULT_DYNAMODB_BREAKER_WINDOW_SECONDS)))),
+            Long.parseLong(System.getenv().getOrDefault(
+                "DYNAMODB_BREAKER_OPEN_MILLIS", Long.toString(DEFAULT_DYNAMODB_BREAKER_OPEN_MILLIS))));
+    }
+
+    /**
+     * Create the hedger of DynamoDB partition Queries from the environment.
+     *
+     * DYNAMODB_HEDGE_READS_PER_SECOND caps the duplicate Queries per second, with
+     * bursts of DYNAMODB_HEDGE_BURST (0 disables hedging). A Query is duplicated
+     * after DYNAMODB_HEDGE_DELAY_MILLIS, or when 0 after the
+     * DYNAMODB_HEDGE_PERCENTILE of recent Query latencies. DYNAMODB_HEDGE_THREADS
+     * bounds the Queries in flight.
+     */
+    private static ReadHedger createReadHedger() {
+        double hedgesPerSecond = Double.parseDouble(System.getenv().getOrDefault(
+            "DYNAMODB_HEDGE_READS_PER_SECOND", Double.toString(DEFAULT_DYNAMODB_HEDGE_READS_PER_SECOND)));
+        if (hedgesPerSecond <= 0) {
+            return null;
+        }
+        ReadHedger hedger = new ReadHedger("dynamodb",
+            Long.parseLong(System.getenv().getOrDefault(
+                "DYNAMODB_HEDGE_DELAY_MILLIS", Long.toString(DEFAULT_DYNAMODB_HEDGE_DELAY_MILLIS))),
+            Double.parseDouble(System.getenv().getOrDefault(
+                "DYNAMODB_HEDGE_PERCENTILE", Double.toString(DEFAULT_DYNAMODB_HEDGE_PERCENTILE))),
+            hedgesPerSecond,
+            Integer.parseInt(System.getenv().getOrDefault(
+                "DYNAMODB_HEDGE_BURST", Integer.toString(DEFAULT_DYNAMODB_HEDGE_BURST))),
+            Integer.parseInt(System.getenv().getOrDefault(
+                "DYNAMODB_HEDGE_THREADS", Integer.toString(DEFAULT_DYNAMODB_HEDGE_THREADS))));
+        logger.info("DynamoDB reads hedged by " + hedger + ", at most " + hedgesPerSecond + " hedges/s");
+        return hedger;
+    }
+
+    /**
+     * Shards this node caches, when SHARD_NODES lists the cluster (e.g.
+     * "localhost:8980,localhost:8981"); SHARD_SELF names this node and defaults
+     * to localhost:port. Null when the server is not sharded.
+     *
+     * SHARD_NODES is only the initial membership. When nodes join or leave, send
+     * the new list to every node through the admin SetShardNodes RPC, which
+     * needs ADMIN_TOKEN, as well as to the clients' ShardRouter; otherwise new owners never cache their shards
+     * and old owners keep copies nothing invalidates any more.
+     */
+    private static ShardAdmission createShardAdmission(int port) {
+        String shardNodes = System.getenv("SHARD_NODES");
+        if (shardNodes == null || shardNodes.isEmpty()) {
+            return null;
+        }
+        ShardAdmission admission = new ShardAdmission(
+            System.getenv().getOrDefault("SHARD_SELF", "localhost:" + port), Arrays.asList(shardNodes.split(",")));
+        logger.info("Caching only shards owned by " + admission.self() + " of " + admission.ring().nodes());
+        return admission;
+    }
+
+    /**
+     * Wrap the DynamoDB repository in a TieredFeatureStore.
+     *
+     * HOT_TIER_MAX_BYTES sets the memory budget (0 disables the hot tier).
+     * With shard admission, only partitions of shards this node owns are kept resident.
+     */
+    private static TieredFeatureStore createHotTier(FeatureRepository backend, ShardAdmission shardAdmission) {
+        long maxBytes = Long.parseLong(
+            System.getenv().getOrDefault("HOT_TIER_MAX_BYTES", Long.toString(DEFAULT_HOT_TIER_BYTES)));
+        if (maxBytes <= 0) {
+            logger.info("Hot tier disabled");
+            return null;
+        }
+
+        Predicate<String> admission = shardAdmission != null ? shardAdmission : geoHash -> true;
+        logger.info("Hot tier enabled with " + maxBytes + " bytes");
+        return new TieredFeatureStore(backend, maxBytes, admission);
+    }
+
+    /**
+     * After a shard membership change, drop cached data of shards this node no
+     * longer owns: their changes may now go to the new owner only.
+     *
+     * @return Number of hot-tier partitions dropped
+     */
+    private int evictUnownedShards() {
+        int evicted = hotTier != null ? hotTier.evictUnadmitted() : 0;
+        if (responseCache != null) {
+            responseCache.evictUnadmitted();
+        }
+        logger.info("Shard membership changed, dropped " + evicted + " hot-tier partitions");
+        return evicted;
+    }
+
+    /**
+     * Port the server is bound to, once started; resolves port 0.
+     */
+    public int getPort() {
+        return server.getPort();
     }
 
     /** Stop serving requests and shutdown resources. */
     public void stop() throws InterruptedException {
+        health.enterTerminalState();
+        maintenance.shutdownNow();
+        rebuildScheduler.shutdownNow();
+        prefetchExecutor.shutdownNow();
+        exportScheduler.shutdownNow();
+        importScheduler.shutdownNow();
+        batchFlushTimer.shutdownNow();
+        if (staleRefreshExecutor != null) {
+            staleRefreshExecutor.shutdownNow();
+        }
+        if (readHedger != null) {
+            readHedger.shutdownNow();
+        }
+        if (unaryBulkhead != null) {
+            unaryBulkhead.shutdownNow();
+        }
+        if (streamingBulkhead != null) {
+            streamingBulkhead.shutdownNow();
+        }
+        if (changeFeedConsumer != null) {
+            changeFeedConsumer.stop();
+        }
         if (server != null) {
             server.shutdown().awaitTermination(30, TimeUnit.SECONDS);
         }
+        if (transportConfig != null) {
+            transportConfig.shutdownEventLoops();
+        }
         // Close DynamoDB clients
         if (repository != null) {
             repository.close();
         }
+        Tracer.getDefault().close();
+        logger.info("Final metrics: " + MetricsRegistry.getDefault().snapshot());
     }
 
     /**
@@ -83,20 +932,40 @@ public class RouteGuideServer {
     }
 
     public static void main(String[] args) throws Exception {
-        RouteGuideServer server = new RouteGuideServer(8980);
+        // Several local shards can be started side by side: RouteGuideServer 8981
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8980;
+        RouteGuideServer server = new RouteGuideServer(port);
         server.start();
         server.blockUntilShutdown();
     }
 
     private static class RouteGuideService extends RouteGuideGrpc.RouteGuideImplBase {
-        private final FeatureRepository repository;
+        private final FeatureStore repository;
+        private final RoutePrefetcher prefetcher;
+        private final RouteHeatmap heatmap;
+        private final FeatureExporter exporter;
+        private final FeatureImporter importer;
+        private final ScheduledExecutorService batchFlushTimer;
+        private final LongAdder skippedRoutePoints =
+            MetricsRegistry.getDefault().counter("recordRoute.points.skipped_cancelled");
 
-        RouteGuideService(FeatureRepository repository) {
+        RouteGuideService(FeatureStore repository, RoutePrefetcher prefetcher, RouteHeatmap heatmap,
+                FeatureExporter exporter, FeatureImporter importer, ScheduledExecutorService batchFlushTimer) {
             this.repository = repository;
+            this.prefetcher = prefetcher;
+            this.heatmap = heatmap;
+            this.exporter = exporter;
+            this.importer = importer;
+            this.batchFlushTimer = batchFlushTimer;
         }
 
         @Override
         public void getFeature(GetFeatureRequest request, StreamObserver<Feature> responseObserver) {
+            responseObserver.onNext(lookUpFeature(request));
+            responseObserver.onCompleted();
+        }
+
+        private Feature lookUpFeature(GetFeatureRequest request) {
             Feature feature = repository.getFeature(request.getPoint());
 
             // If field mask is provided and not empty, apply it
@@ -106,26 +975,79 @@ public class RouteGuideServer {
                 FieldMaskUtil.merge(request.getFieldMask(), feature, featureWithMaskedFields);
                 Feature maskedFeature = featureWithMaskedFields.build();
                 logger.info("Returning masked feature: " + maskedFeature);
-                responseObserver.onNext(maskedFeature);
-            } else {
-                // No field mask, return full feature
-                logger.info("No field mask provided, returning full feature: " + feature);
-                responseObserver.onNext(feature);
+                return maskedFeature;
+            }
+            // No field mask, return full feature
+            logger.info("No field mask provided, returning full feature: " + feature);
+            return feature;
+        }
+
+        /**
+         * Bind the service with GetFeature answered from a cache of serialized
+         * responses. Hits are still reported to the hot-cell tracker, which would
+         * otherwise lose sight of the hottest cells.
+         */
+        ServerServiceDefinition bindService(SerializedResponseCache cache, HotCellTracker hotCells) {
+            MethodDescriptor<GetFeatureRequest, Feature> getFeature = RouteGuideGrpc.getGetFeatureMethod();
+            ServerServiceDefinition.Builder builder = ServerServiceDefinition.builder(RouteGuideGrpc.SERVICE_NAME);
+            for (ServerMethodDefinition<?, ?> method : bindService().getMethods()) {
+                if (!method.getMethodDescriptor().getFullMethodName().equals(getFeature.getFullMethodName())) {
+                    builder.addMethod(method);
+                }
             }
+            builder.addMethod(
+                getFeature.toBuilder(getFeature.getRequestMarshaller(), SerializedMessageMarshaller.INSTANCE).build(),
+                ServerCalls.asyncUnaryCall((GetFeatureRequest request, StreamObserver<SerializedMessage> observer) -> {
+                    Point point = request.getPoint();
+                    String fingerprint = SerializedResponseCache.fingerprint(request.getFieldMask());
+                    SerializedResponseCache.CachedResponse cached = cache.get(point, fingerprint);
+                    if (cached != null) {
+                        hotCells.recordRead(cached.getGeoHash());
+                        observer.onNext(cached.getMessage());
+                    } else {
+                        long stamp = cache.stamp();
+                        byte[] response = lookUpFeature(request).toByteArray();
+                        // A stale fallback must not outlive the incident in the cache
+                        observer.onNext(StaleResponseInterceptor.isStale()
+                            ? new SerializedMessage(response)
+                            : cache.put(stamp, point, fingerprint, response));
+                    }
+                    observer.onCompleted();
+                }));
+            return builder.build();
+        }
 
+        @Override
+        public void listFeatures(final Rectangle rectangle, StreamObserver<Feature> responseObserver) {
+            // Each feature waits for the client, so a slow reader holds the query back
+            repository.listFeatures(rectangle, feature -> {
+                FlowControl.awaitReady(responseObserver);
+                responseObserver.onNext(feature);
+            });
             responseObserver.onCompleted();
         }
 
-        // @Override
-        // public void listFeatures(final Rectangle rectangle, StreamObserver<Feature> responseObserver) {
-        //     for (Feature feature: features) {
-        //         if (isFeatureInRectangle(feature, rectangle)) {
-        //             responseObserver.onNext(feature);
-        //         }
-        //     }
-        //     responseObserver.onCompleted();
-        // }
+        @Override
+        public void listFeatureBatches(ListFeatureBatchesRequest request,
+                StreamObserver<FeatureBatch> responseObserver) {
+            boolean compressed = false;
+            if (!request.getCompression().isEmpty()) {
+                try {
+                    ((ServerCallStreamObserver<FeatureBatch>) responseObserver)
+                        .setCompression(request.getCompression());
+                    compressed = true;
+                } catch (IllegalArgumentException e) {
+                    // Unknown compressor: fall back to uncompressed batches
+                    logger.warning("Unsupported compression requested: " + request.getCompression());
+                }
+            }
 
+            FeatureBatcher batcher = new FeatureBatcher(responseObserver, batchFlushTimer,
+                request.getMaxBatchBytes(), request.getMaxFlushMillis(), compressed);
+            repository.listFeatures(request.getRectangle(), batcher);
+            batcher.flush();
+            responseObserver.onCompleted();
+        }
 
         @Override
         public StreamObserver<Point> recordRoute(StreamObserver<RouteSummary> responseObserver) {
@@ -134,13 +1056,24 @@ public class RouteGuideServer {
 
                 int pointCount = 0;
                 int featureCount = 0;
+                final RoutePrefetcher.Route route = prefetcher != null ? prefetcher.newRoute() : null;
 
                 @Override
                 public void onNext(Point value) {
                     pointCount++;
-                    if (repository.hasFeature(value)) {
+                    // Points still buffered after the client went away need no lookup
+                    if (Context.current().isCancelled()) {
+                        skippedRoutePoints.increment();
+                        return;
+                    }
+                    if (route != null) {
+                        route.onPoint(value);
+                    }
+                    boolean isFeature = repository.hasFeature(value);
+                    if (isFeature) {
                         featureCount++;
                     }
+                    heatmap.record(value, isFeature);
                 }
                 @Override
                 public void onError(Throwable t) {
@@ -203,6 +1136,17 @@ public class RouteGuideServer {
             responseObserver.onCompleted();
         }
 
+        @Override
+        public void exportFeatures(ExportFeaturesRequest request,
+                StreamObserver<ExportFeaturesResponse> responseObserver) {
+            exporter.export(request, responseObserver);
+        }
+
+        @Override
+        public StreamObserver<Feature> importFeatures(StreamObserver<ImportSummary> responseObserver) {
+            return importer.importFeatures(responseObserver);
+        }
+
         private boolean isFeatureInRectangle(Feature feature, final Rectangle rectangle) {
             Point lo = rectangle.getLo();
             Point hi = rectangle.getHi();
@@ -6,9 +6,11 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.List;
 
 import com.google.protobuf.util.JsonFormat;
+import io.grpc.examples.routeguide.geo.GeoHashCodec;
 
 public class RouteGuideUtil {
 
@@ -54,6 +56,25 @@ public class RouteGuideUtil {
     return RouteGuideServer.class.getResource("route_guide_db.json");
   }
 
+  /**
+   * Gets the geohash cells of the given precision that intersect the bounding box
+   * of E7 coordinates. Cells are listed row by row from the south-west corner.
+   *
+   * @return the cells, or null if more than maxCells would be needed
+   */
+  public static List<String> coverGeoHashes(int southE7, int westE7, int northE7, int eastE7,
+      int precision, int maxCells) {
+    long[] cells = GeoHashCodec.cover(southE7, westE7, northE7, eastE7, precision, maxCells);
+    if (cells == null) {
+      return null;
+    }
+    List<String> geoHashes = new ArrayList<>(cells.length);
+    for (long cell : cells) {
+      geoHashes.add(GeoHashCodec.toBase32(cell, precision));
+    }
+    return geoHashes;
+  }
+
   public static boolean exists(Feature feature) {
     return feature != null && !feature.getName().isEmpty();
   }
@@ -0,0 +1,61 @@
+package io.grpc.examples.routeguide.admin;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCall.Listener;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import io.grpc.examples.routeguide.RouteGuideAdminGrpc;
+
+/**
+ * Guards the RouteGuideAdmin service, which shares the public port.
+ *
+ * With a token configured every admin call must send it in the x-admin-token
+ * header, or fails with UNAUTHENTICATED. Without one the read-only RPCs stay
+ * open and SetShardNodes, which decides what the node caches and evicts, fails
+ * with PERMISSION_DENIED. The header is removed before later interceptors see
+ * it, so the token never reaches the request log.
+ */
+public class AdminAuthInterceptor implements ServerInterceptor {
+
+    public static final Metadata.Key<String> ADMIN_TOKEN_KEY =
+        Metadata.Key.of("x-admin-token", Metadata.ASCII_STRING_MARSHALLER);
+
+    private static final String SET_SHARD_NODES =
+        RouteGuideAdminGrpc.getSetShardNodesMethod().getFullMethodName();
+
+    private final byte[] token;
+
+    /**
+     * @param token Token admin calls must send, null or empty for none
+     */
+    public AdminAuthInterceptor(String token) {
+        this.token = token == null || token.isEmpty() ? null : token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <ReqT, RespT> Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+            ServerCallHandler<ReqT, RespT> next) {
+        String presented = headers.get(ADMIN_TOKEN_KEY);
+        headers.discardAll(ADMIN_TOKEN_KEY);
+        if (token == null) {
+            if (call.getMethodDescriptor().getFullMethodName().equals(SET_SHARD_NODES)) {
+                call.close(Status.PERMISSION_DENIED
+                    .withDescription("SetShardNodes is disabled until the server is given an ADMIN_TOKEN"),
+                    new Metadata());
+                return new Listener<ReqT>() { };
+            }
+            return next.startCall(call, headers);
+        }
+        // Constant time, so the response time does not reveal how much of a guess matched
+        if (presented == null || !MessageDigest.isEqual(token, presented.getBytes(StandardCharsets.UTF_8))) {
+            call.close(Status.UNAUTHENTICATED.withDescription("Missing or wrong x-admin-token"), new Metadata());
+            return new Listener<ReqT>() { };
+        }
+        return next.startCall(call, headers);
+    }
+}
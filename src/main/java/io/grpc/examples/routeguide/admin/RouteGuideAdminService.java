@@ -0,0 +1,142 @@
+package io.grpc.examples.routeguide.admin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+import io.grpc.Status;
+import io.grpc.examples.routeguide.FeatureVisits;
+import io.grpc.examples.routeguide.HeatmapCell;
+import io.grpc.examples.routeguide.HotCell;
+import io.grpc.examples.routeguide.HotCellsRequest;
+import io.grpc.examples.routeguide.HotCellsResponse;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.RouteGuideAdminGrpc;
+import io.grpc.examples.routeguide.RouteHeatmapRequest;
+import io.grpc.examples.routeguide.RouteHeatmapResponse;
+import io.grpc.examples.routeguide.ShardNodesRequest;
+import io.grpc.examples.routeguide.ShardNodesResponse;
+import io.grpc.examples.routeguide.metrics.HotCellTracker;
+import io.grpc.examples.routeguide.metrics.RouteHeatmap;
+import io.grpc.examples.routeguide.shard.ShardAdmission;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Operational RPCs for inspecting a running RouteGuide server and updating
+ * its shard membership.
+ */
+public class RouteGuideAdminService extends RouteGuideAdminGrpc.RouteGuideAdminImplBase {
+
+    private static final int MAX_CELLS = 1000;
+    private static final int DEFAULT_HEATMAP_LIMIT = 100;
+    private static final int MAX_HEATMAP_LIMIT = 10_000;
+
+    private final HotCellTracker hotCells;
+    private final Supplier<Set<String>> pinnedCells;
+    private final RouteHeatmap heatmap;
+    private final ShardAdmission shardAdmission;
+    private final IntSupplier evictUnadmitted;
+
+    /**
+     * @param hotCells Tracker fed by the server's FeatureStore
+     * @param pinnedCells Partitions currently pinned in the hot tier, empty if there is none
+     * @param heatmap Visit counts fed by RecordRoute
+     * @param shardAdmission Shards this node caches, null if the server is not sharded
+     * @param evictUnadmitted Drops cached data of shards this node no longer owns and
+     *        returns the number of hot-tier partitions dropped
+     */
+    public RouteGuideAdminService(HotCellTracker hotCells, Supplier<Set<String>> pinnedCells,
+            RouteHeatmap heatmap, ShardAdmission shardAdmission, IntSupplier evictUnadmitted) {
+        this.hotCells = hotCells;
+        this.pinnedCells = pinnedCells != null ? pinnedCells : Collections::emptySet;
+        this.heatmap = heatmap;
+        this.shardAdmission = shardAdmission;
+        this.evictUnadmitted = evictUnadmitted;
+    }
+
+    @Override
+    public void getHotCells(HotCellsRequest request, StreamObserver<HotCellsResponse> responseObserver) {
+        int limit = request.getLimit() > 0 ? Math.min(request.getLimit(), MAX_CELLS) : MAX_CELLS;
+        Set<String> pinned = pinnedCells.get();
+
+        HotCellsResponse.Builder response = HotCellsResponse.newBuilder()
+            .setWindowMillis(hotCells.windowMillis());
+        for (HotCellTracker.CellRate rate : hotCells.topCells(limit)) {
+            response.addCell(HotCell.newBuilder()
+                .setGeoHash(rate.getCell())
+                .setReadsPerSecond(rate.getReadsPerSecond())
+                .setWritesPerSecond(rate.getWritesPerSecond())
+                .setPinned(pinned.contains(rate.getCell())));
+        }
+
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void getRouteHeatmap(RouteHeatmapRequest request, StreamObserver<RouteHeatmapResponse> responseObserver) {
+        int limit = request.getLimit() > 0 ? Math.min(request.getLimit(), MAX_HEATMAP_LIMIT) : DEFAULT_HEATMAP_LIMIT;
+        int precision = request.getPrecision() > 0 ? request.getPrecision() : RouteHeatmap.MAX_PRECISION;
+        if (precision > RouteHeatmap.MAX_PRECISION) {
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                .withDescription("precision must be at most " + RouteHeatmap.MAX_PRECISION)
+                .asRuntimeException());
+            return;
+        }
+
+        RouteHeatmap.Snapshot snapshot = heatmap.query(request.hasArea() ? request.getArea() : null,
+            precision, TimeUnit.SECONDS.toMillis(request.getWindowSeconds()), limit);
+
+        RouteHeatmapResponse.Builder response = RouteHeatmapResponse.newBuilder()
+            .setWindowMillis(snapshot.getCoveredMillis())
+            .setTotalVisits(snapshot.getTotalVisits());
+        for (RouteHeatmap.CellCount cell : snapshot.getCells()) {
+            response.addCell(HeatmapCell.newBuilder()
+                .setGeoHash(cell.getGeoHash())
+                .setVisits(cell.getVisits()));
+        }
+        for (RouteHeatmap.PointCount feature : snapshot.getFeatures()) {
+            response.addFeature(FeatureVisits.newBuilder()
+                .setLocation(Point.newBuilder()
+                    .setLatitude(feature.getLatitude())
+                    .setLongitude(feature.getLongitude()))
+                .setVisits(feature.getVisits()));
+        }
+
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void setShardNodes(ShardNodesRequest request, StreamObserver<ShardNodesResponse> responseObserver) {
+        if (shardAdmission == null) {
+            responseObserver.onError(Status.FAILED_PRECONDITION
+                .withDescription("Server was not started with SHARD_NODES")
+                .asRuntimeException());
+            return;
+        }
+        List<String> nodes = new ArrayList<>();
+        for (String node : request.getNodeList()) {
+            if (!node.trim().isEmpty()) {
+                nodes.add(node.trim());
+            }
+        }
+        if (nodes.isEmpty()) {
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                .withDescription("node must list at least one node")
+                .asRuntimeException());
+            return;
+        }
+
+        shardAdmission.setNodes(nodes);
+        responseObserver.onNext(ShardNodesResponse.newBuilder()
+            .setSelf(shardAdmission.self())
+            .setEvictedPartitions(evictUnadmitted.getAsInt())
+            .build());
+        responseObserver.onCompleted();
+    }
+}
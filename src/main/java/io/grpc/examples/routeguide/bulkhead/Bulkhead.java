@@ -0,0 +1,107 @@
+package io.grpc.examples.routeguide.bulkhead;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.grpc.examples.routeguide.metrics.MetricsRegistry;
+
+/**
+ * A thread pool of its own for a group of RPC methods, with a cap on the calls
+ * it holds, so one kind of traffic cannot starve another of threads.
+ *
+ * A call takes a slot when it starts and gives it back when it ends; when no
+ * slot is free it is refused at once rather than queued behind the others. A
+ * call's work runs on the pool one callback at a time, so the pool never holds
+ * more tasks than admitted calls and its bounded queue cannot overflow.
+ *
+ * Metrics, under bulkhead.NAME: calls (admitted calls in flight), busy_threads,
+ * queued_tasks, and the admitted and rejected counters.
+ */
+public final class Bulkhead {
+
+    private final String name;
+    private final int maxCalls;
+    private final ThreadPoolExecutor executor;
+    private final Semaphore slots;
+    private final LongAdder admitted;
+    private final LongAdder rejected;
+
+    /**
+     * @param name Label of the pool threads and metrics, e.g. "unary"
+     * @param threads Threads running the calls' work
+     * @param maxCalls Calls held at once, running or waiting; at least threads
+     */
+    public Bulkhead(String name, int threads, int maxCalls) {
+        if (threads < 1 || maxCalls < threads) {
+            throw new IllegalArgumentException(
+                name + " bulkhead needs 1 <= threads <= maxCalls, got " + threads + " and " + maxCalls);
+        }
+        this.name = name;
+        this.maxCalls = maxCalls;
+        this.slots = new Semaphore(maxCalls);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(maxCalls), runnable -> {
+                Thread thread = new Thread(runnable, "route-guide-" + name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        MetricsRegistry registry = MetricsRegistry.getDefault();
+        this.admitted = registry.counter("bulkhead." + name + ".admitted");
+        this.rejected = registry.counter("bulkhead." + name + ".rejected");
+        registry.gauge("bulkhead." + name + ".calls", this::calls);
+        registry.gauge("bulkhead." + name + ".busy_threads", executor::getActiveCount);
+        registry.gauge("bulkhead." + name + ".queued_tasks", () -> executor.getQueue().size());
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int threads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public int maxCalls() {
+        return maxCalls;
+    }
+
+    /**
+     * Take a slot for a new call.
+     *
+     * @return False if the bulkhead is full
+     */
+    boolean tryAdmit() {
+        if (slots.tryAcquire()) {
+            admitted.increment();
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Give back the slot of an ended call.
+     */
+    void release() {
+        slots.release();
+    }
+
+    Executor executor() {
+        return executor;
+    }
+
+    /**
+     * Admitted calls in flight.
+     */
+    public int calls() {
+        return maxCalls - slots.availablePermits();
+    }
+
+    public void shutdownNow() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,178 @@
+package io.grpc.examples.routeguide.bulkhead;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.grpc.Context;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCall.Listener;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+/**
+ * Moves each call onto the bulkhead of its method.
+ *
+ * The rest of the interceptor chain and every listener callback then run on
+ * the bulkhead's threads, in order and one at a time per call, with the call's
+ * Context; the thread delivering the callbacks only hands them over. Methods
+ * without a bulkhead stay where they are. A call arriving at a full bulkhead
+ * fails at once with RESOURCE_EXHAUSTED.
+ */
+public class BulkheadInterceptor implements ServerInterceptor {
+
+    private static final Logger logger = Logger.getLogger(BulkheadInterceptor.class.getName());
+
+    private final Function<MethodDescriptor<?, ?>, Bulkhead> router;
+
+    /**
+     * @param router Bulkhead for each method, or null to leave its calls alone
+     */
+    public BulkheadInterceptor(Function<MethodDescriptor<?, ?>, Bulkhead> router) {
+        this.router = router;
+    }
+
+    @Override
+    public <ReqT, RespT> Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+            ServerCallHandler<ReqT, RespT> next) {
+        Bulkhead bulkhead = router.apply(call.getMethodDescriptor());
+        if (bulkhead == null) {
+            return next.startCall(call, headers);
+        }
+        if (!bulkhead.tryAdmit()) {
+            call.close(Status.RESOURCE_EXHAUSTED.withDescription(bulkhead.name() + " bulkhead is full"),
+                new Metadata());
+            return new Listener<ReqT>() { };
+        }
+        return new HoppingListener<>(bulkhead, call, headers, next);
+    }
+
+    /**
+     * Replays the callbacks of one call on its bulkhead, after starting the
+     * call there.
+     */
+    private static final class HoppingListener<ReqT, RespT> extends Listener<ReqT> implements Runnable {
+
+        private final Bulkhead bulkhead;
+        private final ServerCall<ReqT, RespT> call;
+        private final Context context = Context.current();
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean released = new AtomicBoolean();
+        private Listener<ReqT> delegate; // Only touched by tasks, which run one at a time
+
+        HoppingListener(Bulkhead bulkhead, ServerCall<ReqT, RespT> call, Metadata headers,
+                ServerCallHandler<ReqT, RespT> next) {
+            this.bulkhead = bulkhead;
+            this.call = call;
+            submit(() -> {
+                try {
+                    delegate = next.startCall(call, headers);
+                } catch (RuntimeException e) {
+                    delegate = new Listener<ReqT>() { };
+                    throw e;
+                }
+            });
+        }
+
+        @Override
+        public void onMessage(ReqT message) {
+            submit(() -> delegate.onMessage(message));
+        }
+
+        @Override
+        public void onHalfClose() {
+            submit(() -> delegate.onHalfClose());
+        }
+
+        @Override
+        public void onReady() {
+            submit(() -> delegate.onReady());
+        }
+
+        @Override
+        public void onCancel() {
+            submit(() -> {
+                try {
+                    delegate.onCancel();
+                } finally {
+                    release();
+                }
+            });
+        }
+
+        @Override
+        public void onComplete() {
+            submit(() -> {
+                try {
+                    delegate.onComplete();
+                } finally {
+                    release();
+                }
+            });
+        }
+
+        private void submit(Runnable task) {
+            tasks.add(task);
+            schedule();
+        }
+
+        private void schedule() {
+            if (!tasks.isEmpty() && draining.compareAndSet(false, true)) {
+                try {
+                    bulkhead.executor().execute(this);
+                } catch (RejectedExecutionException e) {
+                    // Only when shutting down: admission keeps the queue below its bound
+                    draining.set(false);
+                    tasks.clear();
+                    release();
+                    call.close(Status.UNAVAILABLE.withDescription(bulkhead.name() + " bulkhead is shut down"),
+                        new Metadata());
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            Context previous = context.attach();
+            try {
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        // As gRPC does for a throwing listener: fail the call, keep the thread
+                        logger.log(Level.WARNING, "Call on " + bulkhead.name() + " bulkhead failed", e);
+                        closeQuietly(Status.UNKNOWN.withCause(e));
+                    }
+                }
+            } finally {
+                context.detach(previous);
+                draining.set(false);
+            }
+            // A task added after the last poll but before draining was cleared
+            schedule();
+        }
+
+        private void closeQuietly(Status status) {
+            try {
+                call.close(status, new Metadata());
+            } catch (RuntimeException e) {
+                // Already closed
+            }
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                bulkhead.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package io.grpc.examples.routeguide.cache;
+
+import io.grpc.Drainable;
+import io.grpc.KnownLength;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * An already serialized protobuf message. Immutable, so one instance can be sent
+ * on any number of calls.
+ */
+public final class SerializedMessage {
+
+    private final byte[] bytes;
+
+    public SerializedMessage(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    public int size() {
+        return bytes.length;
+    }
+
+    /**
+     * A fresh stream over the bytes. It is Drainable, so the transport copies the
+     * array into its buffer in one write, and KnownLength, so no size probing is needed.
+     */
+    public InputStream stream() {
+        return new DrainableStream(bytes);
+    }
+
+    private static final class DrainableStream extends ByteArrayInputStream implements KnownLength, Drainable {
+
+        DrainableStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public synchronized int drainTo(OutputStream target) throws IOException {
+            int length = count - pos;
+            target.write(buf, pos, length);
+            pos = count;
+            return length;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package io.grpc.examples.routeguide.cache;
+
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Marshaller passing pre-serialized bytes to the transport as they are. Clients keep
+ * using the regular protobuf marshaller; the wire format is the same.
+ */
+public final class SerializedMessageMarshaller implements MethodDescriptor.Marshaller<SerializedMessage> {
+
+    public static final SerializedMessageMarshaller INSTANCE = new SerializedMessageMarshaller();
+
+    private SerializedMessageMarshaller() {
+    }
+
+    @Override
+    public InputStream stream(SerializedMessage value) {
+        return value.stream();
+    }
+
+    @Override
+    public SerializedMessage parse(InputStream stream) {
+        try {
+            return new SerializedMessage(stream.readAllBytes());
+        } catch (IOException e) {
+            throw Status.INTERNAL.withDescription("Reading message failed").withCause(e).asRuntimeException();
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package io.grpc.examples.routeguide.cache;
+
+import com.google.protobuf.FieldMask;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.db.FeatureChangeListener;
+import io.grpc.examples.routeguide.db.FeatureRepository;
+import io.grpc.examples.routeguide.metrics.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Cache of serialized GetFeature responses keyed by (point, field-mask fingerprint).
+ *
+ * A hit hands out the cached bytes without building, masking or serializing a
+ * Feature. Entries are dropped through FeatureChangeListener when the underlying
+ * feature changes. A lookup that started before an invalidation does not store
+ * its (possibly old) result: put() checks the stamp taken before the lookup.
+ * Only points in partitions the admission predicate accepts are stored; it
+ * must match the store whose change notifications the cache receives, since
+ * changes elsewhere would never reach the cache.
+ *
+ * Memory is bounded by maxBytes; when exceeded, entries are evicted in map
+ * iteration order, which is effectively random.
+ */
+public class SerializedResponseCache implements FeatureChangeListener {
+
+    // Map entry, key and list node overhead besides the payload
+    private static final long ENTRY_OVERHEAD_BYTES = 128;
+
+    private final long maxBytes;
+    private final Predicate<String> admission;
+    private final ConcurrentHashMap<Long, CachedResponse> responses = new ConcurrentHashMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = MetricsRegistry.getDefault().counter("responseCache.hits");
+    private final LongAdder misses = MetricsRegistry.getDefault().counter("responseCache.misses");
+    private final LongAdder evictions = MetricsRegistry.getDefault().counter("responseCache.evictions");
+
+    /**
+     * @param admission Decides which partitions' points may be cached
+     */
+    public SerializedResponseCache(long maxBytes, Predicate<String> admission) {
+        this.maxBytes = maxBytes;
+        this.admission = admission;
+        MetricsRegistry.getDefault().gauge("responseCache.bytes", bytes::get);
+    }
+
+    /**
+     * Fingerprint of a field mask, the same for any order of its paths; the
+     * empty string for no mask.
+     */
+    public static String fingerprint(FieldMask mask) {
+        if (mask == null || mask.getPathsCount() == 0) {
+            return "";
+        }
+        if (mask.getPathsCount() == 1) {
+            return mask.getPaths(0);
+        }
+        List<String> paths = new ArrayList<>(mask.getPathsList());
+        Collections.sort(paths);
+        return String.join(",", paths);
+    }
+
+    /**
+     * Take before looking up a response that will be passed to put().
+     */
+    public long stamp() {
+        return generation.get();
+    }
+
+    /**
+     * @return The cached response, or null
+     */
+    public CachedResponse get(Point point, String fingerprint) {
+        for (CachedResponse response = responses.get(key(point)); response != null; response = response.next) {
+            if (response.fingerprint.equals(fingerprint)) {
+                hits.increment();
+                return response;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Cache a serialized response unless the cache was invalidated since stamp
+     * or the point's partition is not admitted.
+     *
+     * @return The message to send, cached or not
+     */
+    public SerializedMessage put(long stamp, Point point, String fingerprint, byte[] serialized) {
+        SerializedMessage message = new SerializedMessage(serialized);
+        if (generation.get() != stamp) {
+            return message;
+        }
+        String geoHash = FeatureRepository.partitionKey(point);
+        if (!admission.test(geoHash)) {
+            return message;
+        }
+        long size = serialized.length + fingerprint.length() + ENTRY_OVERHEAD_BYTES;
+        responses.compute(key(point), (key, head) -> {
+            CachedResponse rest = remove(head, fingerprint);
+            return new CachedResponse(geoHash, fingerprint, message, size, rest);
+        });
+        bytes.addAndGet(size);
+        // An invalidation racing with the insert may have missed it; drop it again
+        if (generation.get() != stamp) {
+            featureChanged(point);
+        }
+        if (bytes.get() > maxBytes) {
+            evict();
+        }
+        return message;
+    }
+
+    @Override
+    public void featureChanged(Point location) {
+        generation.incrementAndGet();
+        release(responses.remove(key(location)));
+    }
+
+    @Override
+    public void partitionChanged(String geoHash) {
+        generation.incrementAndGet();
+        Iterator<CachedResponse> it = responses.values().iterator();
+        while (it.hasNext()) {
+            CachedResponse response = it.next();
+            if (response.geoHash.equals(geoHash)) {
+                it.remove();
+                release(response);
+            }
+        }
+    }
+
+    @Override
+    public void allChanged() {
+        generation.incrementAndGet();
+        Iterator<CachedResponse> it = responses.values().iterator();
+        while (it.hasNext()) {
+            release(it.next());
+            it.remove();
+        }
+    }
+
+    /**
+     * Drop entries of partitions the admission predicate no longer accepts, whose
+     * changes the cache may stop hearing about.
+     */
+    public void evictUnadmitted() {
+        generation.incrementAndGet();
+        Iterator<CachedResponse> it = responses.values().iterator();
+        while (it.hasNext()) {
+            CachedResponse response = it.next();
+            if (!admission.test(response.geoHash)) {
+                it.remove();
+                release(response);
+            }
+        }
+    }
+
+    private void evict() {
+        long target = maxBytes - maxBytes / 10;
+        Iterator<CachedResponse> it = responses.values().iterator();
+        while (bytes.get() > target && it.hasNext()) {
+            release(it.next());
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    private CachedResponse remove(CachedResponse head, String fingerprint) {
+        if (head == null) {
+            return null;
+        }
+        if (head.fingerprint.equals(fingerprint)) {
+            bytes.addAndGet(-head.size);
+            return head.next;
+        }
+        CachedResponse rest = remove(head.next, fingerprint);
+        return rest == head.next ? head : new CachedResponse(head.geoHash, head.fingerprint, head.message, head.size, rest);
+    }
+
+    private void release(CachedResponse head) {
+        for (CachedResponse response = head; response != null; response = response.next) {
+            bytes.addAndGet(-response.size);
+        }
+    }
+
+    private static Long key(Point point) {
+        return ((long) point.getLatitude() << 32) | (point.getLongitude() & 0xffffffffL);
+    }
+
+    /**
+     * One cached response. Responses for the same point under different masks are
+     * chained through next; chains are immutable and replaced as a whole.
+     */
+    public static final class CachedResponse {
+        private final String geoHash;
+        private final String fingerprint;
+        private final SerializedMessage message;
+        private final long size;
+        private final CachedResponse next;
+
+        CachedResponse(String geoHash, String fingerprint, SerializedMessage message, long size,
+                CachedResponse next) {
+            this.geoHash = geoHash;
+            this.fingerprint = fingerprint;
+            this.message = message;
+            this.size = size;
+            this.next = next;
+        }
+
+        /**
+         * Partition of the point, precomputed so a hit can be tracked without geohashing.
+         */
+        public String getGeoHash() {
+            return geoHash;
+        }
+
+        public SerializedMessage getMessage() {
+            return message;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package io.grpc.examples.routeguide.changefeed;
+
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.db.TieredFeatureStore;
+import io.grpc.examples.routeguide.metrics.MetricsRegistry;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Keeps this replica's hot tier coherent with writes made by other replicas.
+ *
+ * Polls a ChangeFeedSource every pollMillis, and again at once while batches
+ * come back full, applying each batch to the TieredFeatureStore under a single lock: new images refresh resident entries,
+ * deletions remove them, and changes without details invalidate the partition.
+ * The last applied sequence number per shard is tracked, so when the source is
+ * reopened or a poll fails, reading resumes where it stopped instead of flushing
+ * the cache. Only a gap in the feed forces a full flush.
+ */
+public class ChangeFeedConsumer {
+
+    private static final Logger logger = Logger.getLogger(ChangeFeedConsumer.class.getName());
+
+    private final ChangeFeedSource source;
+    private final TieredFeatureStore store;
+    private final int maxBatchSize;
+    private final Map<String, String> checkpoints = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService poller;
+
+    private final AtomicLong lagMillis = new AtomicLong();
+    private final LongAdder recordsApplied = MetricsRegistry.getDefault().counter("changeFeed.records_applied");
+    private final LongAdder batchesApplied = MetricsRegistry.getDefault().counter("changeFeed.batches");
+    private final LongAdder pollFailures = MetricsRegistry.getDefault().counter("changeFeed.poll_failures");
+    private final LongAdder fullFlushes = MetricsRegistry.getDefault().counter("changeFeed.full_flushes");
+
+    /**
+     * @param source Where change records are read from
+     * @param store Hot tier to keep coherent
+     * @param maxBatchSize Most records applied per poll
+     */
+    public ChangeFeedConsumer(ChangeFeedSource source, TieredFeatureStore store, int maxBatchSize) {
+        this.source = source;
+        this.store = store;
+        this.maxBatchSize = maxBatchSize;
+        this.poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "route-guide-change-feed");
+            thread.setDaemon(true);
+            return thread;
+        });
+        MetricsRegistry.getDefault().gauge("changeFeed.lag_millis", lagMillis::get);
+    }
+
+    /**
+     * Start polling. Each tick reads until a batch comes back short, so lag is
+     * bounded by roughly pollMillis plus the time to apply the backlog, at any
+     * write rate the consumer can keep up with.
+     */
+    public void start(long pollMillis) {
+        poller.scheduleWithFixedDelay(this::catchUp, 0, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        poller.shutdownNow();
+        source.close();
+    }
+
+    /**
+     * Last applied sequence number per shard.
+     */
+    public Map<String, String> checkpoints() {
+        return Collections.unmodifiableMap(checkpoints);
+    }
+
+    /**
+     * Read and apply one batch.
+     *
+     * @return Number of records applied
+     */
+    public int pollOnce() {
+        List<ChangeRecord> batch;
+        try {
+            batch = source.poll(checkpoints, maxBatchSize);
+        } catch (ChangeFeedGapException e) {
+            logger.warning("Change feed gap, flushing hot tier: " + e.getMessage());
+            fullFlushes.increment();
+            store.invalidateAll();
+            checkpoints.clear();
+            return 0;
+        }
+        if (batch.isEmpty()) {
+            lagMillis.set(0);
+            return 0;
+        }
+
+        List<Feature> upserts = new ArrayList<>();
+        List<Point> removals = new ArrayList<>();
+        List<String> invalidations = new ArrayList<>();
+        Map<String, String> newCheckpoints = new HashMap<>();
+        long oldestCreated = Long.MAX_VALUE;
+
+        for (ChangeRecord record : batch) {
+            String checkpoint = checkpoints.get(record.getShardId());
+            if (checkpoint != null && compare(record.getSequenceNumber(), checkpoint) <= 0) {
+                continue; // Already applied before a retry
+            }
+            if (record.getType() == ChangeRecord.Type.REMOVE && record.getLocation() != null) {
+                removals.add(record.getLocation());
+            } else if (record.getType() == ChangeRecord.Type.UPSERT && record.getNewImage() != null) {
+                upserts.add(record.getNewImage());
+            } else {
+                invalidations.add(record.getGeoHash());
+            }
+            newCheckpoints.merge(record.getShardId(), record.getSequenceNumber(),
+                (a, b) -> compare(a, b) >= 0 ? a : b);
+            oldestCreated = Math.min(oldestCreated, record.getCreatedMillis());
+        }
+
+        store.applyChanges(upserts, removals, invalidations);
+        checkpoints.putAll(newCheckpoints);
+
+        int applied = upserts.size() + removals.size() + invalidations.size();
+        recordsApplied.add(applied);
+        batchesApplied.increment();
+        if (oldestCreated != Long.MAX_VALUE) {
+            lagMillis.set(Math.max(0, System.currentTimeMillis() - oldestCreated));
+        }
+        return applied;
+    }
+
+    /**
+     * Poll until a batch comes back short of maxBatchSize.
+     */
+    private void catchUp() {
+        try {
+            int applied;
+            do {
+                applied = pollOnce();
+            } while (applied >= maxBatchSize && !Thread.currentThread().isInterrupted());
+        } catch (RuntimeException e) {
+            // Checkpoints are unchanged, so the next poll retries the same records
+            pollFailures.increment();
+            logger.warning("Change feed poll failed: " + e.getMessage());
+        }
+    }
+
+    private static int compare(String a, String b) {
+        return new BigInteger(a).compareTo(new BigInteger(b));
+    }
+}
@@ -0,0 +1,15 @@
+package io.grpc.examples.routeguide.changefeed;
+
+/**
+ * Thrown when a ChangeFeedSource can no longer deliver every change after a checkpoint,
+ * for example because the stream retention window has passed. Consumers must assume
+ * any cached data is stale.
+ */
+public class ChangeFeedGapException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ChangeFeedGapException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,29 @@
+package io.grpc.examples.routeguide.changefeed;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Source of change records for the RouteGuideFeatures table.
+ * DynamoDbStreamsChangeFeedSource reads DynamoDB Streams; InProcessChangeFeed
+ * is a local stand-in for tests and single-process runs.
+ */
+public interface ChangeFeedSource {
+
+    /**
+     * Read the next records after the given checkpoints.
+     * Records of one shard are returned in sequence order.
+     *
+     * @param checkpoints Last applied sequence number per shard; shards not present start
+     *                    at the source's default position
+     * @param maxRecords Upper bound on the number of records returned
+     * @return The records, possibly empty
+     * @throws ChangeFeedGapException if records after a checkpoint are no longer available
+     */
+    List<ChangeRecord> poll(Map<String, String> checkpoints, int maxRecords);
+
+    /**
+     * Release resources held by the source.
+     */
+    void close();
+}
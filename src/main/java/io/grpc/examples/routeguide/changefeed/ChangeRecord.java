@@ -0,0 +1,83 @@
+package io.grpc.examples.routeguide.changefeed;
+
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.Point;
+
+/**
+ * One change to the RouteGuideFeatures table, as delivered by a ChangeFeedSource.
+ */
+public final class ChangeRecord {
+
+    public enum Type {
+        /** Item inserted or modified; the new image is available. */
+        UPSERT,
+        /** Item deleted. */
+        REMOVE
+    }
+
+    private final String shardId;
+    private final String sequenceNumber;
+    private final Type type;
+    private final String geoHash;
+    private final Point location;
+    private final Feature newImage;
+    private final long createdMillis;
+
+    /**
+     * @param shardId Stream shard the record was read from
+     * @param sequenceNumber Position within the shard; numeric, increasing
+     * @param type Kind of change
+     * @param geoHash Partition key of the changed item
+     * @param location E7 coordinates of the changed feature, null if the stream only carries keys
+     * @param newImage Feature after the change, null for REMOVE or if the stream only carries keys
+     * @param createdMillis When the change was made, epoch millis
+     */
+    public ChangeRecord(String shardId, String sequenceNumber, Type type, String geoHash,
+            Point location, Feature newImage, long createdMillis) {
+        this.shardId = shardId;
+        this.sequenceNumber = sequenceNumber;
+        this.type = type;
+        this.geoHash = geoHash;
+        this.location = location;
+        this.newImage = newImage;
+        this.createdMillis = createdMillis;
+    }
+
+    public String getShardId() {
+        return shardId;
+    }
+
+    public String getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getGeoHash() {
+        return geoHash;
+    }
+
+    public Point getLocation() {
+        return location;
+    }
+
+    public Feature getNewImage() {
+        return newImage;
+    }
+
+    public long getCreatedMillis() {
+        return createdMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeRecord{" +
+                "shardId='" + shardId + '\'' +
+                ", sequenceNumber='" + sequenceNumber + '\'' +
+                ", type=" + type +
+                ", geoHash='" + geoHash + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,199 @@
+package io.grpc.examples.routeguide.changefeed;
+
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.db.FeatureEntity;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.DescribeStreamRequest;
+import software.amazon.awssdk.services.dynamodb.model.DescribeStreamResponse;
+import software.amazon.awssdk.services.dynamodb.model.DescribeTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.ExpiredIteratorException;
+import software.amazon.awssdk.services.dynamodb.model.GetRecordsRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetRecordsResponse;
+import software.amazon.awssdk.services.dynamodb.model.GetShardIteratorRequest;
+import software.amazon.awssdk.services.dynamodb.model.OperationType;
+import software.amazon.awssdk.services.dynamodb.model.Record;
+import software.amazon.awssdk.services.dynamodb.model.Shard;
+import software.amazon.awssdk.services.dynamodb.model.ShardIteratorType;
+import software.amazon.awssdk.services.dynamodb.model.StreamRecord;
+import software.amazon.awssdk.services.dynamodb.model.TrimmedDataAccessException;
+import software.amazon.awssdk.services.dynamodb.streams.DynamoDbStreamsClient;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * ChangeFeedSource reading the DynamoDB Stream of the RouteGuideFeatures table.
+ *
+ * Shards are rediscovered periodically so children of split shards are picked up.
+ * Shards open when the source starts are read from LATEST (there is nothing cached
+ * yet that could be stale); shards found later, or with a checkpoint, are read from
+ * TRIM_HORIZON or after the checkpoint so no change is skipped.
+ */
+public class DynamoDbStreamsChangeFeedSource implements ChangeFeedSource {
+
+    private static final Logger logger = Logger.getLogger(DynamoDbStreamsChangeFeedSource.class.getName());
+    private static final long SHARD_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final DynamoDbStreamsClient streams;
+    private final String streamArn;
+    private final TableSchema<FeatureEntity> schema = TableSchema.fromBean(FeatureEntity.class);
+
+    private final Map<String, String> iterators = new HashMap<>(); // shardId -> shard iterator
+    private boolean initialized;
+    private long lastShardRefreshNanos;
+
+    public DynamoDbStreamsChangeFeedSource(DynamoDbStreamsClient streams, String streamArn) {
+        this.streams = streams;
+        this.streamArn = streamArn;
+    }
+
+    /**
+     * Look up the ARN of the latest stream enabled on a table.
+     *
+     * @return The stream ARN, or null if the table has no stream
+     */
+    public static String latestStreamArn(DynamoDbClient dynamoDbClient, String tableName) {
+        return dynamoDbClient.describeTable(DescribeTableRequest.builder()
+                .tableName(tableName)
+                .build())
+            .table()
+            .latestStreamArn();
+    }
+
+    @Override
+    public synchronized List<ChangeRecord> poll(Map<String, String> checkpoints, int maxRecords) {
+        if (!initialized || System.nanoTime() - lastShardRefreshNanos > SHARD_REFRESH_NANOS) {
+            refreshShards(checkpoints);
+        }
+
+        List<ChangeRecord> batch = new ArrayList<>();
+        Iterator<Map.Entry<String, String>> shards = iterators.entrySet().iterator();
+        while (shards.hasNext() && batch.size() < maxRecords) {
+            Map.Entry<String, String> shard = shards.next();
+            GetRecordsResponse response;
+            try {
+                response = streams.getRecords(GetRecordsRequest.builder()
+                    .shardIterator(shard.getValue())
+                    .limit(Math.min(1000, maxRecords - batch.size()))
+                    .build());
+            } catch (ExpiredIteratorException e) {
+                shard.setValue(shardIterator(shard.getKey(), checkpoints.get(shard.getKey()),
+                    ShardIteratorType.TRIM_HORIZON));
+                continue;
+            } catch (TrimmedDataAccessException e) {
+                // Start over from the tip once the consumer has flushed
+                iterators.clear();
+                initialized = false;
+                throw new ChangeFeedGapException("Shard " + shard.getKey() + " trimmed past checkpoint", e);
+            }
+
+            for (Record record : response.records()) {
+                batch.add(toChangeRecord(shard.getKey(), record));
+            }
+            if (response.nextShardIterator() == null) {
+                // Shard closed and fully read; its children are found on the next refresh
+                shards.remove();
+                lastShardRefreshNanos = 0;
+            } else {
+                shard.setValue(response.nextShardIterator());
+            }
+        }
+        return batch;
+    }
+
+    @Override
+    public void close() {
+        streams.close();
+    }
+
+    private void refreshShards(Map<String, String> checkpoints) {
+        String startShardId = null;
+        do {
+            DescribeStreamResponse response = streams.describeStream(DescribeStreamRequest.builder()
+                .streamArn(streamArn)
+                .exclusiveStartShardId(startShardId)
+                .build());
+            for (Shard shard : response.streamDescription().shards()) {
+                if (iterators.containsKey(shard.shardId())) {
+                    continue;
+                }
+                String checkpoint = checkpoints.get(shard.shardId());
+                boolean open = shard.sequenceNumberRange().endingSequenceNumber() == null;
+                if (checkpoint == null && !open && !initialized) {
+                    continue; // Closed before we started: nothing in it can be cached
+                }
+                ShardIteratorType start = !initialized && checkpoint == null
+                    ? ShardIteratorType.LATEST
+                    : ShardIteratorType.TRIM_HORIZON;
+                try {
+                    String iterator = shardIterator(shard.shardId(), checkpoint, start);
+                    if (iterator != null) {
+                        iterators.put(shard.shardId(), iterator);
+                    }
+                } catch (TrimmedDataAccessException e) {
+                    iterators.clear();
+                    throw new ChangeFeedGapException("Shard " + shard.shardId() + " trimmed past checkpoint", e);
+                }
+            }
+            startShardId = response.streamDescription().lastEvaluatedShardId();
+        } while (startShardId != null);
+
+        if (!initialized) {
+            logger.info("Reading " + iterators.size() + " shards of " + streamArn);
+        }
+        initialized = true;
+        lastShardRefreshNanos = System.nanoTime();
+    }
+
+    private String shardIterator(String shardId, String checkpoint, ShardIteratorType withoutCheckpoint) {
+        GetShardIteratorRequest.Builder request = GetShardIteratorRequest.builder()
+            .streamArn(streamArn)
+            .shardId(shardId);
+        if (checkpoint != null) {
+            request.shardIteratorType(ShardIteratorType.AFTER_SEQUENCE_NUMBER).sequenceNumber(checkpoint);
+        } else {
+            request.shardIteratorType(withoutCheckpoint);
+        }
+        return streams.getShardIterator(request.build()).shardIterator();
+    }
+
+    private ChangeRecord toChangeRecord(String shardId, Record record) {
+        StreamRecord change = record.dynamodb();
+        boolean removed = record.eventName() == OperationType.REMOVE;
+        Map<String, AttributeValue> image = removed ? change.oldImage() : change.newImage();
+        if (image == null || image.isEmpty()) {
+            image = change.keys();
+        }
+        FeatureEntity entity = schema.mapToItem(image);
+
+        Point location = null;
+        Feature newImage = null;
+        if (entity.getLatitude() != null && entity.getLongitude() != null) {
+            location = Point.newBuilder()
+                .setLatitude(entity.getLatitude())
+                .setLongitude(entity.getLongitude())
+                .build();
+            if (!removed && entity.getName() != null) {
+                newImage = Feature.newBuilder()
+                    .setName(entity.getName())
+                    .setLocation(location)
+                    .build();
+            }
+        }
+        long createdMillis = change.approximateCreationDateTime() != null
+            ? change.approximateCreationDateTime().toEpochMilli()
+            : System.currentTimeMillis();
+
+        return new ChangeRecord(shardId, change.sequenceNumber(),
+            removed ? ChangeRecord.Type.REMOVE : ChangeRecord.Type.UPSERT,
+            entity.getGeoHash(), location, newImage, createdMillis);
+    }
+}
@@ -0,0 +1,87 @@
+package io.grpc.examples.routeguide.changefeed;
+
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.db.FeatureRepository;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory single-shard change feed.
+ * Stand-in for DynamoDB Streams in tests and local runs: writers publish changes,
+ * consumers poll them exactly like a real stream. Only the most recent
+ * retention records are kept, so slow consumers can hit a gap.
+ */
+public class InProcessChangeFeed implements ChangeFeedSource {
+
+    public static final String SHARD_ID = "local";
+    private static final int DEFAULT_RETENTION = 10_000;
+
+    private final int retention;
+    private final ArrayDeque<ChangeRecord> records = new ArrayDeque<>();
+    private long nextSequence = 1;
+
+    public InProcessChangeFeed() {
+        this(DEFAULT_RETENTION);
+    }
+
+    public InProcessChangeFeed(int retention) {
+        this.retention = retention;
+    }
+
+    /**
+     * Publish an insert or modification of the feature.
+     */
+    public void publishUpsert(Feature feature) {
+        publish(ChangeRecord.Type.UPSERT, feature.getLocation(), feature);
+    }
+
+    /**
+     * Publish the deletion of the feature at the location.
+     */
+    public void publishRemove(Point location) {
+        publish(ChangeRecord.Type.REMOVE, location, null);
+    }
+
+    private synchronized void publish(ChangeRecord.Type type, Point location, Feature newImage) {
+        records.addLast(new ChangeRecord(SHARD_ID, Long.toString(nextSequence++), type,
+            FeatureRepository.partitionKey(location), location, newImage, System.currentTimeMillis()));
+        if (records.size() > retention) {
+            records.removeFirst();
+        }
+    }
+
+    /**
+     * Without a checkpoint, reading starts at the oldest retained record.
+     */
+    @Override
+    public synchronized List<ChangeRecord> poll(Map<String, String> checkpoints, int maxRecords) {
+        List<ChangeRecord> batch = new ArrayList<>();
+        if (records.isEmpty()) {
+            return batch;
+        }
+        String checkpoint = checkpoints.get(SHARD_ID);
+        long after = checkpoint != null ? Long.parseLong(checkpoint) : 0;
+        long oldest = Long.parseLong(records.peekFirst().getSequenceNumber());
+        if (checkpoint != null && after < oldest - 1) {
+            throw new ChangeFeedGapException("Records " + (after + 1) + " to " + (oldest - 1)
+                + " are no longer retained", null);
+        }
+        for (ChangeRecord record : records) {
+            if (batch.size() >= maxRecords) {
+                break;
+            }
+            if (Long.parseLong(record.getSequenceNumber()) > after) {
+                batch.add(record);
+            }
+        }
+        return batch;
+    }
+
+    @Override
+    public void close() {
+    }
+}
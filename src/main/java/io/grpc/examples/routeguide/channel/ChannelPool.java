@@ -0,0 +1,226 @@
+package io.grpc.examples.routeguide.channel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.ConnectivityState;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+/**
+ * A channel spreading calls over several channels, and so over several
+ * connections and server event loops.
+ *
+ * One channel multiplexes every call over a single HTTP/2 connection, where
+ * the server's concurrent stream limit and head-of-line blocking cap a busy
+ * client. Here unary calls and streaming calls use separate groups of
+ * channels, so long RecordRoute or export streams never hold the stream slots
+ * latency-sensitive unary calls need. Within a group each new call goes to the
+ * channel with the fewest calls in flight, starting from a rotating position so
+ * that ties are shared round-robin.
+ *
+ * The pool owns its channels: shutting it down shuts them all down.
+ */
+public class ChannelPool extends ManagedChannel {
+
+    private final PooledChannel[] unaryChannels;
+    private final PooledChannel[] streamingChannels;
+    private final List<ManagedChannel> channels = new ArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * @param channelFactory Creates each channel, all to the same target
+     * @param unaryChannels Channels for unary calls, at least 1
+     * @param streamingChannels Channels for streaming calls, 0 to share the unary ones
+     */
+    public ChannelPool(Supplier<ManagedChannel> channelFactory, int unaryChannels, int streamingChannels) {
+        if (unaryChannels < 1 || streamingChannels < 0) {
+            throw new IllegalArgumentException(
+                "Need at least one unary channel, got " + unaryChannels + " unary/" + streamingChannels + " streaming");
+        }
+        this.unaryChannels = createChannels(channelFactory, unaryChannels);
+        this.streamingChannels = streamingChannels > 0
+            ? createChannels(channelFactory, streamingChannels)
+            : this.unaryChannels;
+    }
+
+    private PooledChannel[] createChannels(Supplier<ManagedChannel> channelFactory, int count) {
+        PooledChannel[] group = new PooledChannel[count];
+        for (int i = 0; i < count; i++) {
+            group[i] = new PooledChannel(channelFactory.get());
+            channels.add(group[i].channel);
+        }
+        return group;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(MethodDescriptor<ReqT, RespT> method,
+            CallOptions callOptions) {
+        PooledChannel pooled = leastLoaded(
+            method.getType() == MethodDescriptor.MethodType.UNARY ? unaryChannels : streamingChannels);
+        return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(
+                pooled.channel.newCall(method, callOptions)) {
+            @Override
+            public void start(Listener<RespT> responseListener, Metadata headers) {
+                pooled.inFlight.incrementAndGet();
+                try {
+                    super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(
+                            responseListener) {
+                        @Override
+                        public void onClose(Status status, Metadata trailers) {
+                            pooled.inFlight.decrementAndGet();
+                            super.onClose(status, trailers);
+                        }
+                    }, headers);
+                } catch (RuntimeException | Error e) {
+                    pooled.inFlight.decrementAndGet();
+                    throw e;
+                }
+            }
+        };
+    }
+
+    private PooledChannel leastLoaded(PooledChannel[] group) {
+        int start = Math.floorMod(next.getAndIncrement(), group.length);
+        PooledChannel best = group[start];
+        for (int i = 1; i < group.length && best.inFlight.get() > 0; i++) {
+            PooledChannel candidate = group[(start + i) % group.length];
+            if (candidate.inFlight.get() < best.inFlight.get()) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Calls in flight on each channel, unary channels first.
+     */
+    public int[] inFlight() {
+        int[] counts = new int[channels.size()];
+        int i = 0;
+        for (PooledChannel pooled : unaryChannels) {
+            counts[i++] = pooled.inFlight.get();
+        }
+        if (streamingChannels != unaryChannels) {
+            for (PooledChannel pooled : streamingChannels) {
+                counts[i++] = pooled.inFlight.get();
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public String authority() {
+        return unaryChannels[0].channel.authority();
+    }
+
+    /**
+     * The most usable state of any channel: READY if one is ready.
+     */
+    @Override
+    public ConnectivityState getState(boolean requestConnection) {
+        ConnectivityState best = ConnectivityState.SHUTDOWN;
+        for (ManagedChannel channel : channels) {
+            ConnectivityState state = channel.getState(requestConnection);
+            if (rank(state) < rank(best)) {
+                best = state;
+            }
+        }
+        return best;
+    }
+
+    private static int rank(ConnectivityState state) {
+        switch (state) {
+            case READY:
+                return 0;
+            case CONNECTING:
+                return 1;
+            case IDLE:
+                return 2;
+            case TRANSIENT_FAILURE:
+                return 3;
+            default:
+                return 4;
+        }
+    }
+
+    @Override
+    public void resetConnectBackoff() {
+        for (ManagedChannel channel : channels) {
+            channel.resetConnectBackoff();
+        }
+    }
+
+    @Override
+    public void enterIdle() {
+        for (ManagedChannel channel : channels) {
+            channel.enterIdle();
+        }
+    }
+
+    @Override
+    public ManagedChannel shutdown() {
+        for (ManagedChannel channel : channels) {
+            channel.shutdown();
+        }
+        return this;
+    }
+
+    @Override
+    public ManagedChannel shutdownNow() {
+        for (ManagedChannel channel : channels) {
+            channel.shutdownNow();
+        }
+        return this;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        for (ManagedChannel channel : channels) {
+            if (!channel.isShutdown()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        for (ManagedChannel channel : channels) {
+            if (!channel.isTerminated()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ManagedChannel channel : channels) {
+            if (!channel.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class PooledChannel {
+
+        final ManagedChannel channel;
+        final AtomicInteger inFlight = new AtomicInteger();
+
+        PooledChannel(ManagedChannel channel) {
+            this.channel = channel;
+        }
+    }
+}
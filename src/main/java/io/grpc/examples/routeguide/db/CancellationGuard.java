@@ -0,0 +1,164 @@
+package io.grpc.examples.routeguide.db;
+
+import io.grpc.Context;
+import io.grpc.Deadline;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.examples.routeguide.metrics.MetricsRegistry;
+import software.amazon.awssdk.awscore.AwsRequestOverrideConfiguration;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Ties DynamoDB calls to the gRPC call that triggered them.
+ *
+ * - Calls for an already cancelled or expired gRPC call are skipped.
+ * - The remaining gRPC deadline becomes the DynamoDB api call timeout.
+ * - A call cancelled while a request is in flight interrupts the calling
+ *   thread. The SDK checks for interrupts between its stages, so this stops
+ *   retries, backoff and further pages. It does not unblock a request already
+ *   waiting in a socket read, which the sync HTTP clients do not interrupt:
+ *   that request runs until it completes or reaches its api call timeout.
+ *   This is why the timeout comes from the gRPC deadline.
+ */
+public final class CancellationGuard {
+
+    private static final Logger logger = Logger.getLogger(CancellationGuard.class.getName());
+
+    private static final LongAdder skippedCalls =
+        MetricsRegistry.getDefault().counter("dynamodb.calls.skipped_cancelled");
+    private static final LongAdder abandonedCalls =
+        MetricsRegistry.getDefault().counter("dynamodb.calls.abandoned_inflight");
+
+    private CancellationGuard() {
+    }
+
+    /**
+     * Whether the current gRPC call has been cancelled or has run out of time.
+     */
+    public static boolean isCancelled() {
+        return Context.current().isCancelled();
+    }
+
+    /**
+     * Request override carrying the remaining gRPC deadline as api call timeout.
+     * Without a deadline the client defaults apply.
+     */
+    public static AwsRequestOverrideConfiguration requestOverride() {
+        AwsRequestOverrideConfiguration.Builder builder = AwsRequestOverrideConfiguration.builder();
+        Deadline deadline = Context.current().getDeadline();
+        if (deadline != null) {
+            long remainingMillis = Math.max(1, deadline.timeRemaining(TimeUnit.MILLISECONDS));
+            builder.apiCallTimeout(Duration.ofMillis(remainingMillis));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Run a DynamoDB call on behalf of the current gRPC call.
+     *
+     * @param operation Short name of the operation, used for logging
+     * @param dynamoCall The blocking SDK call
+     * @return Result of the call
+     * @throws StatusRuntimeException CANCELLED or DEADLINE_EXCEEDED if the gRPC call went away
+     */
+    public static <T> T run(String operation, Supplier<T> dynamoCall) {
+        Context context = Context.current();
+        if (context.isCancelled()) {
+            skippedCalls.increment();
+            logger.fine("Skipping " + operation + " for cancelled call");
+            throw cancelledStatus(context, operation);
+        }
+
+        InFlight inFlight = new InFlight(Thread.currentThread());
+        context.addListener(inFlight, Runnable::run);
+        try {
+            return dynamoCall.get();
+        } catch (SdkClientException e) {
+            if (context.isCancelled()) {
+                // The SDK gave up on the request (interrupt check or api call timeout)
+                abandonedCalls.increment();
+                logger.fine("Abandoned in-flight " + operation + " for cancelled call");
+                throw cancelledStatus(context, operation);
+            }
+            throw e;
+        } finally {
+            context.removeListener(inFlight);
+            inFlight.finish();
+        }
+    }
+
+    /**
+     * Wait for a result shared with other callers (e.g. a load another call
+     * started), giving up when the current gRPC call is cancelled or its
+     * deadline passes. Giving up leaves the shared result running.
+     *
+     * @throws StatusRuntimeException CANCELLED or DEADLINE_EXCEEDED if the gRPC call went away
+     * @throws java.util.concurrent.CompletionException if the shared result failed
+     */
+    public static <T> T await(String operation, CompletableFuture<T> shared) {
+        Context context = Context.current();
+        if (context.isCancelled()) {
+            throw cancelledStatus(context, operation);
+        }
+        CompletableFuture<T> waiter = shared.thenApply(result -> result);
+        Context.CancellationListener listener = cancelled -> waiter.cancel(false);
+        context.addListener(listener, Runnable::run);
+        try {
+            return waiter.join();
+        } catch (CancellationException e) {
+            if (context.isCancelled()) {
+                throw cancelledStatus(context, operation);
+            }
+            throw e;
+        } finally {
+            context.removeListener(listener);
+        }
+    }
+
+    private static StatusRuntimeException cancelledStatus(Context context, String operation) {
+        Status status = context.getDeadline() != null && context.getDeadline().isExpired()
+            ? Status.DEADLINE_EXCEEDED
+            : Status.CANCELLED;
+        return status.withDescription(operation + " abandoned: call no longer active")
+            .withCause(context.cancellationCause())
+            .asRuntimeException();
+    }
+
+    /**
+     * Interrupts the calling thread if the call is cancelled while the request
+     * is running, so the SDK stops at its next interrupt check.
+     */
+    private static final class InFlight implements Context.CancellationListener {
+        private final Thread caller;
+        private boolean running = true;
+        private boolean interrupted;
+
+        InFlight(Thread caller) {
+            this.caller = caller;
+        }
+
+        @Override
+        public synchronized void cancelled(Context context) {
+            if (running) {
+                interrupted = true;
+                caller.interrupt();
+            }
+        }
+
+        synchronized void finish() {
+            running = false;
+            if (interrupted) {
+                // Clear the flag we set so the executor thread is reusable.
+                Thread.interrupted();
+            }
+        }
+    }
+}
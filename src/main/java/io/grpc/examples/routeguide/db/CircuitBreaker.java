@@ -0,0 +1,224 @@
+package io.grpc.examples.routeguide.db;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import io.grpc.Context;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.examples.routeguide.metrics.MetricsRegistry;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+/**
+ * Circuit breaker around the DynamoDB client: after sustained failures, calls
+ * fail fast for a while instead of piling up behind a struggling backend.
+ *
+ * Outcomes are counted over a sliding window of BUCKETS buckets. The breaker
+ * opens once the window holds at least minCalls calls and the failed share
+ * reaches failureRatio. While open every call throws OpenException, an
+ * UNAVAILABLE status, without reaching DynamoDB. After openMillis a single
+ * trial call is let through: success closes the breaker, failure opens it
+ * again.
+ *
+ * Only failures that say something about the backend count: throttling, 5xx
+ * responses, and client-side timeouts or connection errors. Rejected requests
+ * and abandoned gRPC calls do not.
+ */
+public final class CircuitBreaker {
+
+    private static final Logger logger = Logger.getLogger(CircuitBreaker.class.getName());
+
+    private static final int BUCKETS = 10;
+
+    /**
+     * Breaker state; the ordinal is reported as the state gauge.
+     */
+    public enum State {
+        CLOSED,
+        HALF_OPEN,
+        OPEN
+    }
+
+    /**
+     * Thrown instead of calling DynamoDB while the breaker is open.
+     */
+    public static final class OpenException extends StatusRuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        OpenException(String name) {
+            super(Status.UNAVAILABLE.withDescription(name + " circuit breaker is open"));
+        }
+    }
+
+    private final String name;
+    private final double failureRatio;
+    private final int minCalls;
+    private final long bucketNanos;
+    private final long openNanos;
+    private final long[] calls = new long[BUCKETS];
+    private final long[] failures = new long[BUCKETS];
+    private final LongAdder opened;
+    private final LongAdder rejected;
+
+    // Guarded by this
+    private long bucketStart = System.nanoTime();
+    private int bucket;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    /**
+     * @param name Prefix of the breaker's metrics, e.g. "dynamodb"
+     * @param failureRatio Share of failed calls in the window that opens the breaker
+     * @param minCalls Calls the window must hold before the ratio is judged
+     * @param windowMillis Length of the sliding window
+     * @param openMillis Time the breaker stays open before a trial call
+     */
+    public CircuitBreaker(String name, double failureRatio, int minCalls, long windowMillis, long openMillis) {
+        this.name = name;
+        this.failureRatio = failureRatio;
+        this.minCalls = Math.max(1, minCalls);
+        this.bucketNanos = Math.max(1, TimeUnit.MILLISECONDS.toNanos(windowMillis) / BUCKETS);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.opened = MetricsRegistry.getDefault().counter(name + ".breaker.opened");
+        this.rejected = MetricsRegistry.getDefault().counter(name + ".breaker.rejected");
+        MetricsRegistry.getDefault().gauge(name + ".breaker.state", () -> state().ordinal());
+    }
+
+    /**
+     * Run a backend call through the breaker.
+     *
+     * @throws OpenException If the breaker is open
+     */
+    public <T> T call(Supplier<T> backendCall) {
+        boolean trial = acquire();
+        try {
+            T result = backendCall.get();
+            record(trial, true);
+            return result;
+        } catch (RuntimeException e) {
+            if (isBackendFailure(e)) {
+                record(trial, false);
+            } else {
+                release(trial);
+            }
+            throw e;
+        } catch (Error e) {
+            release(trial);
+            throw e;
+        }
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    /**
+     * Whether the failure says the backend is unhealthy, as opposed to a bad
+     * request or a call given up by the client.
+     */
+    static boolean isBackendFailure(RuntimeException e) {
+        if (e instanceof AwsServiceException) {
+            AwsServiceException serviceException = (AwsServiceException) e;
+            return serviceException.isThrottlingException() || serviceException.statusCode() >= 500;
+        }
+        // CancellationGuard reports abandoned calls as a status; an abort seen
+        // outside it, e.g. a cancelled hedge, says nothing about the backend either
+        return e instanceof SdkClientException && !Context.current().isCancelled();
+    }
+
+    /**
+     * @return Whether this call is the trial of a half-open breaker
+     */
+    private synchronized boolean acquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                rejected.increment();
+                throw new OpenException(name);
+            }
+            state = State.HALF_OPEN;
+            logger.info(name + " circuit breaker half-open, letting a trial call through");
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialInFlight) {
+                rejected.increment();
+                throw new OpenException(name);
+            }
+            trialInFlight = true;
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized void release(boolean trial) {
+        if (trial) {
+            trialInFlight = false;
+        }
+    }
+
+    private synchronized void record(boolean trial, boolean success) {
+        if (trial) {
+            trialInFlight = false;
+            if (success) {
+                state = State.CLOSED;
+                clearWindow();
+                logger.info(name + " circuit breaker closed");
+            } else {
+                open();
+            }
+            return;
+        }
+        if (state != State.CLOSED) {
+            return; // A call started before the breaker opened
+        }
+        advanceWindow();
+        calls[bucket]++;
+        if (!success) {
+            failures[bucket]++;
+            long totalCalls = 0;
+            long totalFailures = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                totalCalls += calls[i];
+                totalFailures += failures[i];
+            }
+            if (totalCalls >= minCalls && totalFailures >= failureRatio * totalCalls) {
+                logger.warning(name + " circuit breaker opened: " + totalFailures + " of " + totalCalls
+                    + " recent calls failed");
+                open();
+            }
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        opened.increment();
+        clearWindow();
+    }
+
+    private void advanceWindow() {
+        long now = System.nanoTime();
+        long elapsedBuckets = (now - bucketStart) / bucketNanos;
+        if (elapsedBuckets <= 0) {
+            return;
+        }
+        for (long i = 0; i < Math.min(elapsedBuckets, BUCKETS); i++) {
+            bucket = (bucket + 1) % BUCKETS;
+            calls[bucket] = 0;
+            failures[bucket] = 0;
+        }
+        bucketStart += elapsedBuckets * bucketNanos;
+    }
+
+    private void clearWindow() {
+        for (int i = 0; i < BUCKETS; i++) {
+            calls[i] = 0;
+            failures[i] = 0;
+        }
+        bucketStart = System.nanoTime();
+    }
+}
@@ -1,11 +1,12 @@
 package io.grpc.examples.routeguide.db;
 
-import ch.hsr.geohash.GeoHash;
 import com.google.protobuf.util.JsonFormat;
 import io.grpc.examples.routeguide.Feature;
 import io.grpc.examples.routeguide.FeatureDatabase;
+import io.grpc.examples.routeguide.Point;
 import io.grpc.examples.routeguide.factory.AwsClientFactory;
 import io.grpc.examples.routeguide.factory.AwsClientFactoryProvider;
+import io.grpc.examples.routeguide.geo.GeoHashCodec;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
@@ -17,6 +18,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -123,9 +125,9 @@ public class DataMigration {
     }
 
     /**
-     * Convert protobuf Feature to DynamoDB entity.
+     * Convert protobuf Feature to DynamoDB entity, keyed by featureId().
      */
-    private static FeatureEntity convertToEntity(Feature feature) {
+    public static FeatureEntity convertToEntity(Feature feature) {
         int latitude = feature.getLocation().getLatitude();
         int longitude = feature.getLocation().getLongitude();
 
@@ -134,11 +136,12 @@ public class DataMigration {
         double lon = longitude / 1e7;
 
         // Calculate geohashes
-        String geoHash = GeoHash.geoHashStringWithCharacterPrecision(lat, lon, GEOHASH_PRECISION);
-        String fullGeoHash = GeoHash.geoHashStringWithCharacterPrecision(lat, lon, FULL_GEOHASH_PRECISION);
+        long fullCell = GeoHashCodec.encode(latitude, longitude, FULL_GEOHASH_PRECISION);
+        String geoHash = GeoHashCodec.toBase32(
+            GeoHashCodec.parent(fullCell, FULL_GEOHASH_PRECISION, GEOHASH_PRECISION), GEOHASH_PRECISION);
+        String fullGeoHash = GeoHashCodec.toBase32(fullCell, FULL_GEOHASH_PRECISION);
 
-        // Generate unique feature ID
-        String featureId = UUID.randomUUID().toString();
+        String featureId = featureId(feature.getLocation());
 
         logger.fine("Converting: " + feature.getName() + " at (" + lat + ", " + lon +
                    ") -> geoHash=" + geoHash + ", featureId=" + featureId);
@@ -147,6 +150,16 @@ public class DataMigration {
                                 latitude, longitude, fullGeoHash);
     }
 
+    /**
+     * Feature id of the feature at a location; one feature per point. Derived
+     * from the coordinates so that writing a feature again, by a migration or
+     * an import, overwrites the row instead of adding a second one.
+     */
+    public static String featureId(Point location) {
+        return UUID.nameUUIDFromBytes((location.getLatitude() + "," + location.getLongitude())
+            .getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
     /**
      * Write entities to DynamoDB in batches of 25.
      */
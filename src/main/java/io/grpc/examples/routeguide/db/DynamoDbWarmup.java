@@ -0,0 +1,83 @@
+package io.grpc.examples.routeguide.db;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.DescribeTableRequest;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Opens DynamoDB connections before traffic arrives.
+ *
+ * A fresh client pays DNS, TCP and TLS setup, credential resolution and SDK class
+ * loading on its first requests. Issuing cheap DescribeTable calls from several
+ * threads at once forces the pool to open that many connections, so the first real
+ * requests after a deploy find them ready.
+ */
+public final class DynamoDbWarmup {
+
+    private static final Logger logger = Logger.getLogger(DynamoDbWarmup.class.getName());
+
+    private DynamoDbWarmup() {
+    }
+
+    /**
+     * Open up to connections pooled connections with concurrent DescribeTable calls.
+     * Failures are logged, not thrown: warm-up is an optimization only.
+     *
+     * @param client Client whose pool is warmed
+     * @param tableName Table to describe
+     * @param connections Number of concurrent calls, i.e. connections opened
+     * @param budgetMillis Upper bound on the time spent warming
+     * @return Number of successful calls
+     */
+    public static int warm(DynamoDbClient client, String tableName, int connections, long budgetMillis) {
+        if (connections <= 0) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        DescribeTableRequest request = DescribeTableRequest.builder().tableName(tableName).build();
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(connections);
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicLong slowestNanos = new AtomicLong();
+
+        for (int i = 0; i < connections; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    go.await();
+                    long callStart = System.nanoTime();
+                    client.describeTable(request);
+                    slowestNanos.accumulateAndGet(System.nanoTime() - callStart, Math::max);
+                    succeeded.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException e) {
+                    logger.fine("Warm-up call failed: " + e.getMessage());
+                } finally {
+                    done.countDown();
+                }
+            }, "dynamodb-warmup-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        go.countDown();
+        try {
+            if (!done.await(budgetMillis, TimeUnit.MILLISECONDS)) {
+                logger.warning("DynamoDB warm-up exceeded its " + budgetMillis + " ms budget");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        logger.info(String.format("Warmed %d/%d DynamoDB connections in %d ms (slowest call %d ms)",
+            succeeded.get(), connections,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+            TimeUnit.NANOSECONDS.toMillis(slowestNanos.get())));
+        return succeeded.get();
+    }
+}
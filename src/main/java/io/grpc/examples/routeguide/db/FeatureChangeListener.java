@@ -0,0 +1,34 @@
+package io.grpc.examples.routeguide.db;
+
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.Point;
+
+/**
+ * Notified when features held by a TieredFeatureStore may have changed, so caches
+ * derived from it can drop their copies.
+ */
+public interface FeatureChangeListener {
+
+    /**
+     * The feature at this location was updated, created or deleted.
+     */
+    void featureChanged(Point location);
+
+    /**
+     * The feature was updated or created and this is its new version. Listeners
+     * that only drop copies need not tell this apart from featureChanged().
+     */
+    default void featureUpdated(Feature feature) {
+        featureChanged(feature.getLocation());
+    }
+
+    /**
+     * Any feature in this geohash partition may have changed.
+     */
+    void partitionChanged(String geoHash);
+
+    /**
+     * Any feature may have changed.
+     */
+    void allChanged();
+}
@@ -0,0 +1,244 @@
+package io.grpc.examples.routeguide.db;
+
+import com.google.protobuf.FieldMask;
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.Rectangle;
+import io.grpc.examples.routeguide.geo.PointBloomFilter;
+import io.grpc.examples.routeguide.metrics.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * FeatureStore answering point lookups with no feature from a Bloom filter of
+ * every feature location, without reaching any cache layer or DynamoDB.
+ *
+ * Most RecordRoute points and many GetFeature lookups have no feature; the
+ * filter tells most of them apart in nanoseconds. Points the filter may hold
+ * go to the delegate. The filter is built by rebuild() from a table scan or a
+ * snapshot; until the first build finishes every lookup goes to the delegate.
+ * Features written while a rebuild is loading are replayed onto the new filter
+ * before it replaces the old one.
+ *
+ * New features must be reported with applyChanges() or through the change
+ * listener, or lookups of them answer "no feature" until the next rebuild.
+ * Features written through other replicas only arrive through a change feed,
+ * so without one the filter is only correct on the table's single writer.
+ * Partitions changed in unknown ways skip the filter until the next rebuild,
+ * and an unknown change to everything switches it off until then.
+ */
+public class FeatureFilterStore implements FeatureStore, FeatureChangeListener {
+
+    private static final Logger logger = Logger.getLogger(FeatureFilterStore.class.getName());
+
+    private static final long MIN_EXPECTED_POINTS = 1_024;
+
+    private final FeatureStore delegate;
+    private final double falsePositiveRate;
+    private volatile PointBloomFilter filter;
+    // Partitions whose changes are unknown, looked up in the delegate until the next rebuild
+    private final Set<String> unfiltered = ConcurrentHashMap.newKeySet();
+    private Rebuild rebuilding; // Guarded by this, non-null while a rebuild is loading
+
+    private final LongAdder avoided = MetricsRegistry.getDefault().counter("featureFilter.avoided_lookups");
+    private final LongAdder falsePositives = MetricsRegistry.getDefault().counter("featureFilter.false_positives");
+    private final LongAdder rebuilds = MetricsRegistry.getDefault().counter("featureFilter.rebuilds");
+
+    /**
+     * @param falsePositiveRate Target share of points with no feature still looked up
+     */
+    public FeatureFilterStore(FeatureStore delegate, double falsePositiveRate) {
+        this.delegate = delegate;
+        this.falsePositiveRate = falsePositiveRate;
+        MetricsRegistry.getDefault().gauge("featureFilter.points", () -> {
+            PointBloomFilter current = filter;
+            return current == null ? 0 : current.points();
+        });
+        MetricsRegistry.getDefault().gauge("featureFilter.bytes", () -> {
+            PointBloomFilter current = filter;
+            return current == null ? 0 : current.sizeInBytes();
+        });
+        // Parts per million of the points without a feature that the filter let through
+        MetricsRegistry.getDefault().gauge("featureFilter.false_positive_ppm", () -> {
+            long fp = falsePositives.sum();
+            long negatives = fp + avoided.sum();
+            return negatives == 0 ? 0 : fp * 1_000_000 / negatives;
+        });
+        MetricsRegistry.getDefault().gauge("featureFilter.expected_false_positive_ppm", () -> {
+            PointBloomFilter current = filter;
+            return current == null ? 0 : Math.round(current.expectedFalsePositiveRate() * 1_000_000);
+        });
+    }
+
+    /**
+     * Replace the filter with one built from the loaded features. Blocks while loading.
+     *
+     * @param loader Reads every named feature, e.g. with FeatureRepository.scanFeatures
+     */
+    public void rebuild(Supplier<List<Feature>> loader) {
+        Rebuild rebuild = new Rebuild();
+        synchronized (this) {
+            if (rebuilding != null) {
+                throw new IllegalStateException("Rebuild already running");
+            }
+            rebuilding = rebuild;
+        }
+        try {
+            long start = System.nanoTime();
+            List<Feature> features = loader.get();
+            // Headroom for features added before the next rebuild
+            PointBloomFilter rebuilt = new PointBloomFilter(
+                Math.max(MIN_EXPECTED_POINTS, features.size() + features.size() / 4), falsePositiveRate);
+            for (Feature feature : features) {
+                if (!feature.getName().isEmpty()) {
+                    rebuilt.add(feature.getLocation().getLatitude(), feature.getLocation().getLongitude());
+                }
+            }
+            synchronized (this) {
+                for (Point location : rebuild.added) {
+                    rebuilt.add(location.getLatitude(), location.getLongitude());
+                }
+                unfiltered.retainAll(rebuild.unfiltered);
+                filter = rebuild.allChanged ? null : rebuilt;
+            }
+            rebuilds.increment();
+            logger.info("Feature filter built with " + rebuilt.points() + " features in "
+                + rebuilt.sizeInBytes() / 1024 + " KiB in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } finally {
+            synchronized (this) {
+                rebuilding = null;
+            }
+        }
+    }
+
+    private enum Answer {
+        ABSENT,
+        MAYBE_PRESENT,
+        NOT_FILTERED
+    }
+
+    private Answer check(Point point) {
+        PointBloomFilter current = filter;
+        if (current == null || point == null) {
+            return Answer.NOT_FILTERED;
+        }
+        if (!unfiltered.isEmpty() && unfiltered.contains(FeatureRepository.partitionKey(point))) {
+            return Answer.NOT_FILTERED;
+        }
+        return current.mightContain(point.getLatitude(), point.getLongitude())
+            ? Answer.MAYBE_PRESENT
+            : Answer.ABSENT;
+    }
+
+    @Override
+    public Feature getFeature(Point point) {
+        Answer answer = check(point);
+        if (answer == Answer.ABSENT) {
+            avoided.increment();
+            return Feature.newBuilder().setName("").setLocation(point).build();
+        }
+        Feature feature = delegate.getFeature(point);
+        if (answer == Answer.MAYBE_PRESENT && feature != null && feature.getName().isEmpty()) {
+            falsePositives.increment();
+        }
+        return feature;
+    }
+
+    @Override
+    public boolean hasFeature(Point point) {
+        Answer answer = check(point);
+        if (answer == Answer.ABSENT) {
+            avoided.increment();
+            return false;
+        }
+        boolean found = delegate.hasFeature(point);
+        if (answer == Answer.MAYBE_PRESENT && !found) {
+            falsePositives.increment();
+        }
+        return found;
+    }
+
+    @Override
+    public Feature updateFeature(Feature feature, FieldMask fieldMask) {
+        Feature updated = delegate.updateFeature(feature, fieldMask);
+        if (updated != null && !updated.getName().isEmpty()) {
+            add(updated.getLocation());
+        }
+        return updated;
+    }
+
+    /**
+     * Apply features written to the table without going through this store,
+     * e.g. by ImportFeatures.
+     */
+    public void applyChanges(Collection<Feature> upserts) {
+        for (Feature feature : upserts) {
+            if (!feature.getName().isEmpty()) {
+                add(feature.getLocation());
+            }
+        }
+    }
+
+    private synchronized void add(Point location) {
+        if (filter != null) {
+            filter.add(location.getLatitude(), location.getLongitude());
+        }
+        if (rebuilding != null) {
+            rebuilding.added.add(location);
+        }
+    }
+
+    @Override
+    public void featureChanged(Point location) {
+        // May be a new feature; a deleted one stays in the filter until the next rebuild
+        add(location);
+    }
+
+    @Override
+    public synchronized void partitionChanged(String geoHash) {
+        unfiltered.add(geoHash);
+        if (rebuilding != null) {
+            rebuilding.unfiltered.add(geoHash);
+        }
+    }
+
+    @Override
+    public synchronized void allChanged() {
+        if (filter != null) {
+            logger.warning("Feature filter off until the next rebuild, changes are unknown");
+        }
+        filter = null;
+        if (rebuilding != null) {
+            rebuilding.allChanged = true;
+        }
+    }
+
+    @Override
+    public void listFeatures(Rectangle rectangle, Consumer<Feature> consumer) {
+        delegate.listFeatures(rectangle, consumer);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    /**
+     * Changes reported while a rebuild is loading, replayed onto its filter.
+     */
+    private static final class Rebuild {
+
+        final List<Point> added = new ArrayList<>();
+        final Set<String> unfiltered = new HashSet<>();
+        boolean allChanged;
+    }
+}
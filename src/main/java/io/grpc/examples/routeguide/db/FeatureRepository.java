@@ -1,33 +1,56 @@
 package io.grpc.examples.routeguide.db;
 
-import ch.hsr.geohash.GeoHash;
 import io.grpc.examples.routeguide.Feature;
 import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.Rectangle;
+import io.grpc.examples.routeguide.RouteGuideUtil;
 import io.grpc.examples.routeguide.factory.AwsClientFactory;
 import io.grpc.examples.routeguide.factory.AwsClientFactoryProvider;
+import io.grpc.examples.routeguide.geo.GeoHashCodec;
+import io.grpc.examples.routeguide.tracing.Span;
+import io.grpc.examples.routeguide.tracing.Tracer;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
-import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
-import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
-import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 /**
  * Repository for accessing geographical features stored in DynamoDB.
  * Uses geohash-based partitioning for efficient spatial queries.
  */
-public class FeatureRepository {
+public class FeatureRepository implements FeatureStore {
 
     private static final Logger logger = Logger.getLogger(FeatureRepository.class.getName());
     private static final int GEOHASH_PRECISION = 6; // 6 chars for partition key (~600m x 1.2km)
+    public static final String TABLE_NAME = "RouteGuideFeatures";
+    private static final int MAX_RANGE_PARTITIONS = 256; // Above this a filtered Scan is cheaper
 
-    private final DynamoDbTable<FeatureEntity> table;
-    private final DynamoDbClient dynamoDbClient;
+    private final AwsClientFactory factory;
+    private volatile Clients clients; // Created on first use, see clients()
+    private final Tracer tracer = Tracer.getDefault();
+    private final CircuitBreaker circuitBreaker;
+    private final ReadHedger hedger;
 
     /**
      * Create repository using the default factory from AwsClientFactoryProvider.
@@ -41,21 +64,97 @@ public class FeatureRepository {
      * Useful for testing or custom configurations.
      */
     public FeatureRepository(AwsClientFactory factory) {
-        this.dynamoDbClient = factory.createDynamoDbClient();
-        DynamoDbEnhancedClient enhancedClient = DynamoDbEnhancedClient.builder()
-                .dynamoDbClient(dynamoDbClient)
-                .build();
-        this.table = enhancedClient.table("RouteGuideFeatures",
-                                         TableSchema.fromBean(FeatureEntity.class));
+        this(factory, null);
+    }
+
+    /**
+     * Create repository whose DynamoDB calls go through a circuit breaker.
+     *
+     * @param circuitBreaker Breaker around every traced call, or null for none
+     */
+    public FeatureRepository(AwsClientFactory factory, CircuitBreaker circuitBreaker) {
+        this(factory, circuitBreaker, null);
+    }
+
+    /**
+     * Create repository whose partition Queries are also hedged.
+     *
+     * @param circuitBreaker Breaker around every traced call, or null for none
+     * @param hedger Hedger of partition Queries, or null for none
+     */
+    public FeatureRepository(AwsClientFactory factory, CircuitBreaker circuitBreaker, ReadHedger hedger) {
+        this.circuitBreaker = circuitBreaker;
+        this.hedger = hedger;
+        this.factory = factory;
+    }
+
+    /**
+     * The DynamoDB client and table, created on first use.
+     *
+     * Building the SDK client and introspecting the FeatureEntity bean loads a
+     * few thousand classes, so it is left out of the constructor: the server
+     * binds its port first and calls initialize() from a background thread.
+     * A failed creation is retried by the next call.
+     */
+    private Clients clients() {
+        Clients current = clients;
+        if (current == null) {
+            synchronized (this) {
+                current = clients;
+                if (current == null) {
+                    long start = System.nanoTime();
+                    DynamoDbClient dynamoDbClient = factory.createDynamoDbClient();
+                    DynamoDbEnhancedClient enhancedClient = DynamoDbEnhancedClient.builder()
+                            .dynamoDbClient(dynamoDbClient)
+                            .build();
+                    current = new Clients(dynamoDbClient,
+                        enhancedClient.table(TABLE_NAME, TableSchema.fromBean(FeatureEntity.class)));
+                    clients = current;
+                    logger.info("DynamoDB client created in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Create the DynamoDB client now rather than on the first call.
+     */
+    public void initialize() {
+        clients();
+    }
+
+    private DynamoDbClient dynamoDbClient() {
+        return clients().dynamoDbClient;
+    }
+
+    private DynamoDbTable<FeatureEntity> table() {
+        return clients().table;
+    }
+
+    /**
+     * Pre-open the client's connection pool, see DynamoDbWarmup.
+     *
+     * @param budgetMillis Upper bound on the time spent warming
+     * @return Number of connections opened
+     */
+    public int warmUp(long budgetMillis) {
+        return DynamoDbWarmup.warm(dynamoDbClient(), TABLE_NAME, factory.getClientConfig().getWarmupConnections(),
+            budgetMillis);
     }
 
     /**
      * Close the DynamoDB client.
      * Should be called when the repository is no longer needed.
      */
+    @Override
     public void close() {
-        if (dynamoDbClient != null) {
-            dynamoDbClient.close();
+        Clients current;
+        synchronized (this) {
+            current = clients;
+        }
+        if (current != null) {
+            current.dynamoDbClient.close();
         }
     }
 
@@ -65,6 +164,8 @@ public class FeatureRepository {
      * @param point The geographical point to look up
      * @return The feature at that point, or a Feature with empty name if not found
      */
+    @Override
+    @SuppressWarnings("try") // The scope is never read, it only keeps the span current
     public Feature getFeature(Point point) {
         if (point == null) {
             return Feature.newBuilder().setName("").setLocation(point).build();
@@ -74,33 +175,24 @@ public class FeatureRepository {
         double lat = point.getLatitude() / 1e7;
         double lon = point.getLongitude() / 1e7;
 
-        // Calculate geohash for partition key
-        String geoHash = GeoHash.geoHashStringWithCharacterPrecision(lat, lon, GEOHASH_PRECISION);
-
-        logger.info("Looking up feature at (" + lat + ", " + lon + ") with geohash: " + geoHash);
-
-        // Query all items in this partition
-        QueryEnhancedRequest queryRequest = QueryEnhancedRequest.builder()
-                .queryConditional(QueryConditional.keyEqualTo(
-                    Key.builder()
-                        .partitionValue(geoHash)
-                        .build()))
-                .build();
+        try (Span span = tracer.startSpan("FeatureRepository.getFeature");
+                Tracer.Scope scope = tracer.withSpan(span)) {
+            // Calculate geohash for partition key
+            long geoHashStart = span.isRecording() ? System.nanoTime() : 0;
+            String geoHash = partitionKey(point);
+            if (span.isRecording()) {
+                span.setAttribute("geohash", geoHash)
+                    .setAttribute("geohash_nanos", System.nanoTime() - geoHashStart);
+            }
 
-        // Scan results and find exact coordinate match
-        for (FeatureEntity entity : table.query(queryRequest).items()) {
-            if (entity.getLatitude().equals(point.getLatitude()) &&
-                entity.getLongitude().equals(point.getLongitude())) {
+            logger.info("Looking up feature at (" + lat + ", " + lon + ") with geohash: " + geoHash);
 
+            // Scan the partition for an exact coordinate match
+            FeatureEntity entity = findInPartition(geoHash, point.getLatitude(), point.getLongitude());
+            span.setAttribute("features_returned", entity != null ? 1 : 0);
+            if (entity != null) {
                 logger.info("Found feature: " + entity.getName());
-
-                return Feature.newBuilder()
-                        .setName(entity.getName())
-                        .setLocation(Point.newBuilder()
-                                .setLatitude(entity.getLatitude())
-                                .setLongitude(entity.getLongitude())
-                                .build())
-                        .build();
+                return toFeature(entity);
             }
         }
 
@@ -118,11 +210,321 @@ public class FeatureRepository {
      * @param point The geographical point to check
      * @return true if a named feature exists at this point
      */
+    @Override
     public boolean hasFeature(Point point) {
         Feature feature = getFeature(point);
         return feature != null && !feature.getName().isEmpty();
     }
 
+    /**
+     * Stream every named feature inside the rectangle to the consumer.
+     *
+     * Small rectangles are answered by querying each geohash partition that covers them.
+     * Rectangles spanning more than MAX_RANGE_PARTITIONS partitions fall back to a
+     * filtered table Scan, which is cheaper than thousands of mostly empty Queries.
+     *
+     * @param rectangle The area to search, corners in any order
+     * @param consumer Receives each matching feature as it is read
+     */
+    @Override
+    @SuppressWarnings("try") // The scope is never read, it only keeps the span current
+    public void listFeatures(Rectangle rectangle, Consumer<Feature> consumer) {
+        int latLo = Math.min(rectangle.getLo().getLatitude(), rectangle.getHi().getLatitude());
+        int latHi = Math.max(rectangle.getLo().getLatitude(), rectangle.getHi().getLatitude());
+        int lonLo = Math.min(rectangle.getLo().getLongitude(), rectangle.getHi().getLongitude());
+        int lonHi = Math.max(rectangle.getLo().getLongitude(), rectangle.getHi().getLongitude());
+
+        try (Span span = tracer.startSpan("FeatureRepository.listFeatures");
+                Tracer.Scope scope = tracer.withSpan(span)) {
+            long[] returned = new long[1];
+            Consumer<Feature> counted = span.isRecording()
+                ? feature -> {
+                    returned[0]++;
+                    consumer.accept(feature);
+                }
+                : consumer;
+
+            List<String> partitions = partitionKeys(rectangle);
+            if (partitions == null) {
+                logger.info("Rectangle spans more than " + MAX_RANGE_PARTITIONS + " partitions, scanning table");
+                span.setAttribute("partitions", -1);
+                scanRectangle(latLo, latHi, lonLo, lonHi, counted);
+                span.setAttribute("features_returned", returned[0]);
+                return;
+            }
+
+            logger.info("Querying " + partitions.size() + " partitions for rectangle");
+            span.setAttribute("partitions", partitions.size());
+            for (String geoHash : partitions) {
+                queryPartition(geoHash, entity -> {
+                    int lat = entity.getLatitude();
+                    int lon = entity.getLongitude();
+                    if (lat >= latLo && lat <= latHi && lon >= lonLo && lon <= lonHi
+                        && entity.getName() != null && !entity.getName().isEmpty()) {
+                        counted.accept(toFeature(entity));
+                    }
+                    return true;
+                });
+            }
+            span.setAttribute("features_returned", returned[0]);
+        }
+    }
+
+    /**
+     * Scan the whole table with a server-side filter on the E7 coordinates.
+     */
+    private void scanRectangle(int latLo, int latHi, int lonLo, int lonHi, Consumer<Feature> consumer) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":latLo", AttributeValue.builder().n(Integer.toString(latLo)).build());
+        values.put(":latHi", AttributeValue.builder().n(Integer.toString(latHi)).build());
+        values.put(":lonLo", AttributeValue.builder().n(Integer.toString(lonLo)).build());
+        values.put(":lonHi", AttributeValue.builder().n(Integer.toString(lonHi)).build());
+
+        Map<String, AttributeValue> startKey = null;
+        do {
+            ScanRequest scanRequest = ScanRequest.builder()
+                    .tableName(TABLE_NAME)
+                    .filterExpression("latitude BETWEEN :latLo AND :latHi"
+                        + " AND longitude BETWEEN :lonLo AND :lonHi")
+                    .expressionAttributeValues(values)
+                    .exclusiveStartKey(startKey)
+                    .overrideConfiguration(CancellationGuard.requestOverride())
+                    .build();
+            ScanResponse response;
+            try (Span span = tracer.startSpan("DynamoDB Scan")) {
+                response = traced(span, "Scan " + TABLE_NAME, () -> dynamoDbClient().scan(scanRequest));
+                span.setAttribute("items_scanned", response.scannedCount())
+                    .setAttribute("items_returned", response.count());
+            }
+
+            for (Map<String, AttributeValue> item : response.items()) {
+                FeatureEntity entity = table().tableSchema().mapToItem(item);
+                if (entity.getName() != null && !entity.getName().isEmpty()) {
+                    consumer.accept(toFeature(entity));
+                }
+            }
+            startKey = response.hasLastEvaluatedKey() && !response.lastEvaluatedKey().isEmpty()
+                ? response.lastEvaluatedKey()
+                : null;
+        } while (startKey != null);
+    }
+
+    /**
+     * Read every named feature of the table with a paged Scan.
+     * Used to build in-memory indexes; costs one read of the whole table.
+     */
+    public void scanFeatures(Consumer<Feature> consumer) {
+        Map<String, AttributeValue> startKey = null;
+        do {
+            ScanRequest scanRequest = ScanRequest.builder()
+                    .tableName(TABLE_NAME)
+                    .exclusiveStartKey(startKey)
+                    .overrideConfiguration(CancellationGuard.requestOverride())
+                    .build();
+            ScanResponse response;
+            try (Span span = tracer.startSpan("DynamoDB Scan")) {
+                response = traced(span, "Scan " + TABLE_NAME, () -> dynamoDbClient().scan(scanRequest));
+                span.setAttribute("items_scanned", response.scannedCount())
+                    .setAttribute("items_returned", response.count());
+            }
+
+            for (Map<String, AttributeValue> item : response.items()) {
+                FeatureEntity entity = table().tableSchema().mapToItem(item);
+                if (entity.getName() != null && !entity.getName().isEmpty()) {
+                    consumer.accept(toFeature(entity));
+                }
+            }
+            startKey = response.hasLastEvaluatedKey() && !response.lastEvaluatedKey().isEmpty()
+                ? response.lastEvaluatedKey()
+                : null;
+        } while (startKey != null);
+    }
+
+    /**
+     * Read one page of one segment of a parallel Scan.
+     *
+     * @param startKey Exclusive start key from the previous page, null for the first
+     * @param limit Items to evaluate at most, which bounds the page's read capacity
+     * @return The named features of the page and where the segment continues
+     */
+    public ScanPage scanSegment(int segment, int totalSegments, Map<String, AttributeValue> startKey, int limit) {
+        ScanRequest scanRequest = ScanRequest.builder()
+                .tableName(TABLE_NAME)
+                .segment(segment)
+                .totalSegments(totalSegments)
+                .exclusiveStartKey(startKey)
+                .limit(limit)
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .overrideConfiguration(CancellationGuard.requestOverride())
+                .build();
+        ScanResponse response;
+        try (Span span = tracer.startSpan("DynamoDB Scan").setAttribute("segment", segment)) {
+            response = traced(span, "Scan " + TABLE_NAME + " segment " + segment,
+                () -> dynamoDbClient().scan(scanRequest));
+            span.setAttribute("items_scanned", response.scannedCount())
+                .setAttribute("items_returned", response.count());
+        }
+
+        List<Feature> features = new ArrayList<>(response.count());
+        for (Map<String, AttributeValue> item : response.items()) {
+            FeatureEntity entity = table().tableSchema().mapToItem(item);
+            if (entity.getName() != null && !entity.getName().isEmpty()) {
+                features.add(toFeature(entity));
+            }
+        }
+        return new ScanPage(features,
+            response.hasLastEvaluatedKey() && !response.lastEvaluatedKey().isEmpty()
+                ? response.lastEvaluatedKey()
+                : null,
+            response.consumedCapacity() != null && response.consumedCapacity().capacityUnits() != null
+                ? response.consumedCapacity().capacityUnits()
+                : 0);
+    }
+
+    /**
+     * Put up to 25 entities with one BatchWriteItem.
+     *
+     * @param puts Items to write, built with toPutRequest()
+     * @return Items DynamoDB left unprocessed, typically because of throttling;
+     *         empty when everything was written
+     */
+    public List<WriteRequest> batchWrite(List<WriteRequest> puts) {
+        BatchWriteItemRequest batchRequest = BatchWriteItemRequest.builder()
+                .requestItems(Collections.singletonMap(TABLE_NAME, puts))
+                .overrideConfiguration(CancellationGuard.requestOverride())
+                .build();
+        BatchWriteItemResponse response;
+        try (Span span = tracer.startSpan("DynamoDB BatchWriteItem").setAttribute("items", puts.size())) {
+            response = traced(span, "BatchWriteItem " + TABLE_NAME, () -> dynamoDbClient().batchWriteItem(batchRequest));
+            List<WriteRequest> unprocessed = response.hasUnprocessedItems()
+                ? response.unprocessedItems().getOrDefault(TABLE_NAME, Collections.emptyList())
+                : Collections.emptyList();
+            span.setAttribute("unprocessed", unprocessed.size());
+            return unprocessed;
+        }
+    }
+
+    /**
+     * Write request putting the entity, for batchWrite().
+     */
+    public WriteRequest toPutRequest(FeatureEntity entity) {
+        return WriteRequest.builder()
+                .putRequest(PutRequest.builder().item(table().tableSchema().itemToMap(entity, true)).build())
+                .build();
+    }
+
+    /**
+     * Partition key (6-char geohash) of the partition holding the point.
+     */
+    public static String partitionKey(Point point) {
+        return GeoHashCodec.toBase32(
+            GeoHashCodec.encode(point.getLatitude(), point.getLongitude(), GEOHASH_PRECISION), GEOHASH_PRECISION);
+    }
+
+    /**
+     * Partition keys of all partitions intersecting the rectangle.
+     *
+     * @return The partition keys, or null if the rectangle spans more than MAX_RANGE_PARTITIONS
+     */
+    public static List<String> partitionKeys(Rectangle rectangle) {
+        int latLo = Math.min(rectangle.getLo().getLatitude(), rectangle.getHi().getLatitude());
+        int latHi = Math.max(rectangle.getLo().getLatitude(), rectangle.getHi().getLatitude());
+        int lonLo = Math.min(rectangle.getLo().getLongitude(), rectangle.getHi().getLongitude());
+        int lonHi = Math.max(rectangle.getLo().getLongitude(), rectangle.getHi().getLongitude());
+        return RouteGuideUtil.coverGeoHashes(latLo, lonLo, latHi, lonHi, GEOHASH_PRECISION, MAX_RANGE_PARTITIONS);
+    }
+
+    /**
+     * Read every feature of a partition in one paged Query.
+     * Used by caching stores to keep whole partitions resident.
+     *
+     * @param geoHash The partition key
+     * @return All features stored in the partition, including unnamed ones
+     */
+    public List<Feature> loadPartition(String geoHash) {
+        List<Feature> features = new ArrayList<>();
+        queryPartition(geoHash, entity -> {
+            features.add(toFeature(entity));
+            return true;
+        });
+        return features;
+    }
+
+    /**
+     * Find the entity at the exact coordinates within a geohash partition.
+     *
+     * @return The matching entity, or null if the partition has none
+     */
+    private FeatureEntity findInPartition(String geoHash, int latitude, int longitude) {
+        FeatureEntity[] match = new FeatureEntity[1];
+        queryPartition(geoHash, entity -> {
+            if (entity.getLatitude().equals(latitude) &&
+                entity.getLongitude().equals(longitude)) {
+                match[0] = entity;
+                return false;
+            }
+            return true;
+        });
+        return match[0];
+    }
+
+    /**
+     * Query a geohash partition page by page, handing each entity to the visitor.
+     * Every page is issued through CancellationGuard so a cancelled call stops paging
+     * and in-flight requests are bounded by the remaining deadline. With a hedger a
+     * slow page is requested a second time and the first answer used.
+     *
+     * @param visitor Returns false to stop reading further items
+     */
+    private void queryPartition(String geoHash, Predicate<FeatureEntity> visitor) {
+        Map<String, AttributeValue> startKey = null;
+        do {
+            QueryRequest queryRequest = QueryRequest.builder()
+                    .tableName(TABLE_NAME)
+                    .keyConditionExpression("geoHash = :geoHash")
+                    .expressionAttributeValues(Collections.singletonMap(
+                        ":geoHash", AttributeValue.builder().s(geoHash).build()))
+                    .exclusiveStartKey(startKey)
+                    .overrideConfiguration(CancellationGuard.requestOverride())
+                    .build();
+            // Each attempt of a hedged Query has its own span, so a cancelled loser
+            // cannot mark the read that answered as failed
+            Supplier<QueryResponse> query = () -> {
+                try (Span span = tracer.startSpan("DynamoDB Query").setAttribute("partition", geoHash)) {
+                    QueryResponse page = traced(span, "Query " + geoHash, () -> dynamoDbClient().query(queryRequest));
+                    span.setAttribute("items_scanned", page.scannedCount())
+                        .setAttribute("items_returned", page.count());
+                    return page;
+                }
+            };
+            QueryResponse response = hedger != null ? hedger.call(query) : query.get();
+
+            for (Map<String, AttributeValue> item : response.items()) {
+                if (!visitor.test(table().tableSchema().mapToItem(item))) {
+                    return;
+                }
+            }
+            startKey = response.hasLastEvaluatedKey() && !response.lastEvaluatedKey().isEmpty()
+                ? response.lastEvaluatedKey()
+                : null;
+        } while (startKey != null);
+    }
+
+    /**
+     * Issue a DynamoDB call through the circuit breaker and CancellationGuard,
+     * marking the span with the exception type if it fails.
+     */
+    private <T> T traced(Span span, String operation, Supplier<T> dynamoCall) {
+        try {
+            return circuitBreaker != null
+                ? circuitBreaker.call(() -> CancellationGuard.run(operation, dynamoCall))
+                : CancellationGuard.run(operation, dynamoCall);
+        } catch (RuntimeException e) {
+            span.setStatus(e.getClass().getSimpleName());
+            throw e;
+        }
+    }
+
     /**
      * Convert FeatureEntity to protobuf Feature.
      */
@@ -149,6 +551,7 @@ public class FeatureRepository {
      * @param fieldMask The FieldMask specifying which fields to update
      * @return The updated feature, or null if the feature doesn't exist at that location
      */
+    @Override
     public Feature updateFeature(Feature feature, com.google.protobuf.FieldMask fieldMask) {
         if (feature == null || !feature.hasLocation()) {
             logger.warning("Cannot update feature without location");
@@ -160,27 +563,13 @@ public class FeatureRepository {
         // Calculate geohash for lookup
         double lat = location.getLatitude() / 1e7;
         double lon = location.getLongitude() / 1e7;
-        String geoHash = GeoHash.geoHashStringWithCharacterPrecision(lat, lon, GEOHASH_PRECISION);
+        String geoHash = partitionKey(location);
 
         logger.info("Updating feature at (" + lat + ", " + lon + ") with geohash: " + geoHash);
         logger.info("FieldMask paths: " + fieldMask.getPathsList());
 
         // Find existing entity
-        QueryEnhancedRequest queryRequest = QueryEnhancedRequest.builder()
-                .queryConditional(QueryConditional.keyEqualTo(
-                    Key.builder()
-                        .partitionValue(geoHash)
-                        .build()))
-                .build();
-
-        FeatureEntity existingEntity = null;
-        for (FeatureEntity entity : table.query(queryRequest).items()) {
-            if (entity.getLatitude().equals(location.getLatitude()) &&
-                entity.getLongitude().equals(location.getLongitude())) {
-                existingEntity = entity;
-                break;
-            }
-        }
+        FeatureEntity existingEntity = findInPartition(geoHash, location.getLatitude(), location.getLongitude());
 
         if (existingEntity == null) {
             logger.warning("Feature not found at this location - cannot update");
@@ -217,9 +606,62 @@ public class FeatureRepository {
 
         // Save updated entity back to DynamoDB
         logger.info("Saving updated entity: " + existingEntity);
-        table.putItem(existingEntity);
+        PutItemRequest putRequest = PutItemRequest.builder()
+                .tableName(TABLE_NAME)
+                .item(table().tableSchema().itemToMap(existingEntity, true))
+                .overrideConfiguration(CancellationGuard.requestOverride())
+                .build();
+        try (Span span = tracer.startSpan("DynamoDB PutItem")) {
+            span.setAttribute("partition", geoHash);
+            traced(span, "PutItem " + geoHash, () -> dynamoDbClient().putItem(putRequest));
+        }
 
         // Return the updated feature
         return toFeature(existingEntity);
     }
+
+    /**
+     * One page of a segment scan.
+     */
+    public static final class ScanPage {
+
+        private final List<Feature> features;
+        private final Map<String, AttributeValue> lastEvaluatedKey;
+        private final double consumedCapacity;
+
+        ScanPage(List<Feature> features, Map<String, AttributeValue> lastEvaluatedKey, double consumedCapacity) {
+            this.features = features;
+            this.lastEvaluatedKey = lastEvaluatedKey;
+            this.consumedCapacity = consumedCapacity;
+        }
+
+        public List<Feature> getFeatures() {
+            return features;
+        }
+
+        /**
+         * @return Start key of the segment's next page, null after its last page
+         */
+        public Map<String, AttributeValue> getLastEvaluatedKey() {
+            return lastEvaluatedKey;
+        }
+
+        /**
+         * @return Read capacity units the page cost, 0 if DynamoDB did not report it
+         */
+        public double getConsumedCapacity() {
+            return consumedCapacity;
+        }
+    }
+
+    private static final class Clients {
+
+        final DynamoDbClient dynamoDbClient;
+        final DynamoDbTable<FeatureEntity> table;
+
+        Clients(DynamoDbClient dynamoDbClient, DynamoDbTable<FeatureEntity> table) {
+            this.dynamoDbClient = dynamoDbClient;
+            this.table = table;
+        }
+    }
 }
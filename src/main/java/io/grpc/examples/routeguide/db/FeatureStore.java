@@ -0,0 +1,48 @@
+package io.grpc.examples.routeguide.db;
+
+import com.google.protobuf.FieldMask;
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.Rectangle;
+
+import java.util.function.Consumer;
+
+/**
+ * Storage for geographical features as seen by RouteGuideService.
+ * FeatureRepository is the DynamoDB implementation; other implementations
+ * layer caches in front of it or replace it entirely.
+ */
+public interface FeatureStore {
+
+    /**
+     * Get the feature at an exact point.
+     *
+     * @return The feature, or a Feature with empty name if there is none
+     */
+    Feature getFeature(Point point);
+
+    /**
+     * Check if a named feature exists at the given point.
+     */
+    default boolean hasFeature(Point point) {
+        Feature feature = getFeature(point);
+        return feature != null && !feature.getName().isEmpty();
+    }
+
+    /**
+     * Update the fields of an existing feature selected by the mask.
+     *
+     * @return The updated feature, or null if there is no feature at that location
+     */
+    Feature updateFeature(Feature feature, FieldMask fieldMask);
+
+    /**
+     * Stream every named feature inside the rectangle to the consumer.
+     */
+    void listFeatures(Rectangle rectangle, Consumer<Feature> consumer);
+
+    /**
+     * Release backend resources.
+     */
+    void close();
+}
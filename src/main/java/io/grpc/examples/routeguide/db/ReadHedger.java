@@ -0,0 +1,259 @@
+package io.grpc.examples.routeguide.db;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import io.grpc.Context;
+import io.grpc.Status;
+import io.grpc.examples.routeguide.metrics.MetricsRegistry;
+import io.grpc.examples.routeguide.ratelimit.TokenBucket;
+
+/**
+ * Hedged backend reads: a read still running after the hedge delay gets a
+ * duplicate, the first successful answer is returned and the other attempt
+ * is cancelled.
+ *
+ * The delay is either fixed or the given percentile of recent read latencies,
+ * so only the slowest reads are duplicated. A token bucket caps the hedges
+ * per second and with it the extra read capacity; without a token the read
+ * simply keeps waiting. Until WINDOW_MIN_SAMPLES reads have completed an
+ * adaptive hedger does not hedge.
+ *
+ * Each attempt runs on the hedger's pool in its own cancellable child of the
+ * caller's Context, so CancellationGuard stops the losing request at the
+ * SDK's next interrupt check and a cancelled gRPC call cancels both. A losing
+ * request blocked in a socket read keeps its thread until its api call
+ * timeout. A read arriving while every thread is busy runs on the caller's
+ * thread, unhedged. A failure is only returned once no attempt can succeed
+ * any more.
+ *
+ * Metrics, under NAME.hedge: issued, won (hedges that answered first),
+ * budget_exhausted (reads that were due a hedge but had no token), and the
+ * delay_micros gauge.
+ */
+public final class ReadHedger {
+
+    private static final int WINDOW = 1_024;
+    private static final int WINDOW_MIN_SAMPLES = 100;
+    private static final int RECOMPUTE_EVERY = 128;
+
+    private final String name;
+    private final long fixedDelayNanos;
+    private final double percentile;
+    private final TokenBucket budget;
+    private final AtomicLong budgetState;
+    private final ThreadPoolExecutor executor;
+    private final LongAdder issued;
+    private final LongAdder won;
+    private final LongAdder budgetExhausted;
+
+    // Recent attempt latencies; racy writes only blur the percentile
+    private final long[] latencies = new long[WINDOW];
+    private final AtomicLong samples = new AtomicLong();
+    private volatile long adaptiveDelayNanos = Long.MAX_VALUE;
+
+    /**
+     * @param name Prefix of the hedger's metrics and thread names, e.g. "dynamodb"
+     * @param delayMillis Fixed hedge delay, or 0 to follow the percentile
+     * @param percentile Latency percentile used as the adaptive delay, e.g. 0.95
+     * @param hedgesPerSecond Sustained rate of hedges allowed
+     * @param burst Hedges allowed at once after a quiet period
+     * @param threads Reads in flight at most, counting hedges
+     */
+    public ReadHedger(String name, long delayMillis, double percentile, double hedgesPerSecond, int burst,
+            int threads) {
+        if (percentile <= 0 || percentile >= 1) {
+            throw new IllegalArgumentException("Hedge percentile must be between 0 and 1, got " + percentile);
+        }
+        this.name = name;
+        this.fixedDelayNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        this.percentile = percentile;
+        this.budget = new TokenBucket(hedgesPerSecond, burst);
+        this.budgetState = TokenBucket.newState(System.nanoTime());
+        this.executor = new ThreadPoolExecutor(0, threads, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "route-guide-" + name + "-read");
+                thread.setDaemon(true);
+                return thread;
+            });
+        MetricsRegistry registry = MetricsRegistry.getDefault();
+        this.issued = registry.counter(name + ".hedge.issued");
+        this.won = registry.counter(name + ".hedge.won");
+        this.budgetExhausted = registry.counter(name + ".hedge.budget_exhausted");
+        registry.gauge(name + ".hedge.delay_micros", () -> {
+            long delay = delayNanos();
+            return delay == Long.MAX_VALUE ? -1 : TimeUnit.NANOSECONDS.toMicros(delay);
+        });
+    }
+
+    /**
+     * Run a read, hedging it if it is slow.
+     *
+     * The read must be idempotent and safe to run twice concurrently.
+     */
+    public <T> T call(Supplier<T> read) {
+        Race<T> race = new Race<>();
+        Context context = Context.current();
+        Attempt<T> primary = new Attempt<>(race, context, read);
+        if (!primary.submit()) {
+            return read.get();
+        }
+        Attempt<T> hedge = null;
+        try {
+            long delay = delayNanos();
+            if (delay != Long.MAX_VALUE) {
+                try {
+                    return race.get(delay, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    if (budget.tryAcquire(budgetState, System.nanoTime(), 1) == 0) {
+                        hedge = new Attempt<>(race, context, read);
+                        if (hedge.submit()) {
+                            issued.increment();
+                        } else {
+                            hedge = null;
+                        }
+                    } else {
+                        budgetExhausted.increment();
+                    }
+                }
+            }
+            T result = race.get();
+            if (hedge != null && race.winner.get() == hedge) {
+                won.increment();
+            }
+            return result;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Status.CANCELLED.withDescription("Interrupted waiting for a read").withCause(e)
+                .asRuntimeException();
+        } finally {
+            primary.cancel();
+            if (hedge != null) {
+                hedge.cancel();
+            }
+        }
+    }
+
+    /**
+     * Current hedge delay, Long.MAX_VALUE while there are too few samples.
+     */
+    long delayNanos() {
+        return fixedDelayNanos > 0 ? fixedDelayNanos : adaptiveDelayNanos;
+    }
+
+    private void record(long latencyNanos) {
+        long n = samples.incrementAndGet();
+        latencies[(int) ((n - 1) % WINDOW)] = latencyNanos;
+        if (fixedDelayNanos == 0
+                && (n == WINDOW_MIN_SAMPLES || (n > WINDOW_MIN_SAMPLES && n % RECOMPUTE_EVERY == 0))) {
+            long[] sorted = Arrays.copyOf(latencies, (int) Math.min(n, WINDOW));
+            Arrays.sort(sorted);
+            adaptiveDelayNanos = sorted[Math.min(sorted.length - 1, (int) (percentile * sorted.length))];
+        }
+    }
+
+    public void shutdownNow() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Completed by the first attempt to succeed, or failed with the first
+     * error once every attempt has failed.
+     */
+    private static final class Race<T> extends CompletableFuture<T> {
+
+        private final AtomicInteger running = new AtomicInteger();
+        private volatile Throwable firstError;
+        final AtomicReference<Attempt<T>> winner = new AtomicReference<>();
+
+        void succeeded(Attempt<T> attempt, T result) {
+            // The winner is known before the caller wakes up
+            if (winner.compareAndSet(null, attempt)) {
+                complete(result);
+            }
+        }
+
+        void failed(Throwable error) {
+            if (firstError == null) {
+                firstError = error;
+            }
+            if (running.decrementAndGet() == 0) {
+                completeExceptionally(firstError);
+            }
+        }
+    }
+
+    private final class Attempt<T> implements Runnable {
+
+        private final Race<T> race;
+        private final Context.CancellableContext context;
+        private final Supplier<T> read;
+
+        Attempt(Race<T> race, Context parent, Supplier<T> read) {
+            this.race = race;
+            this.context = parent.withCancellation();
+            this.read = read;
+        }
+
+        /**
+         * @return False if the pool is full or shut down
+         */
+        boolean submit() {
+            race.running.incrementAndGet();
+            try {
+                executor.execute(this);
+                return true;
+            } catch (RejectedExecutionException e) {
+                race.running.decrementAndGet();
+                context.cancel(null);
+                return false;
+            }
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            Context previous = context.attach();
+            try {
+                T result = read.get();
+                record(System.nanoTime() - start);
+                race.succeeded(this, result);
+            } catch (Throwable t) {
+                race.failed(t);
+            } finally {
+                context.detach(previous);
+            }
+        }
+
+        void cancel() {
+            context.cancel(null);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + " hedger (" + (fixedDelayNanos > 0
+            ? TimeUnit.NANOSECONDS.toMillis(fixedDelayNanos) + " ms" : "p" + Math.round(percentile * 100))
+            + " delay)";
+    }
+}
@@ -0,0 +1,163 @@
+package io.grpc.examples.routeguide.db;
+
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.metrics.MetricsRegistry;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Prefetches the geohash partitions a RecordRoute stream is about to enter.
+ *
+ * Each stream keeps its last few points and extrapolates heading and speed a few
+ * steps ahead. Partitions on the predicted path that are not resident in the hot
+ * tier are loaded on a background executor, so the first point in a new partition
+ * is usually answered from memory.
+ *
+ * A shared budget caps speculative work: prefetches may not exceed the number of
+ * real partition loads times maxPrefetchRatio. A real load of a partition whose
+ * prefetch was refused by the budget is counted as a cut-off miss.
+ */
+public class RoutePrefetcher {
+
+    private static final Logger logger = Logger.getLogger(RoutePrefetcher.class.getName());
+    private static final int HISTORY = 4;           // Points used for heading and speed
+    private static final int LOOKAHEAD_STEPS = 3;   // Predicted points per update
+    private static final int MAX_REFUSED_TRACKED = 1024;
+
+    private final TieredFeatureStore store;
+    private final Executor executor;
+    private final double maxPrefetchRatio;
+
+    private final AtomicLong issued = new AtomicLong();
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private final Map<String, Boolean> refused = Collections.synchronizedMap(
+        new LinkedHashMap<String, Boolean>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > MAX_REFUSED_TRACKED;
+            }
+        });
+
+    private final LongAdder issuedCounter = MetricsRegistry.getDefault().counter("prefetch.issued");
+    private final LongAdder refusedCounter = MetricsRegistry.getDefault().counter("prefetch.refused_budget");
+    private final LongAdder cutOffMisses = MetricsRegistry.getDefault().counter("prefetch.cutoff_misses");
+
+    /**
+     * @param store Hot tier the partitions are loaded into
+     * @param executor Runs the blocking partition loads
+     * @param maxPrefetchRatio Allowed prefetches per real partition load
+     */
+    public RoutePrefetcher(TieredFeatureStore store, Executor executor, double maxPrefetchRatio) {
+        this.store = store;
+        this.executor = executor;
+        this.maxPrefetchRatio = maxPrefetchRatio;
+
+        LongAdder loads = MetricsRegistry.getDefault().counter("prefetch.loads");
+        LongAdder hits = MetricsRegistry.getDefault().counter("prefetch.hits");
+        MetricsRegistry.getDefault().gauge("prefetch.hit_rate_percent",
+            () -> loads.sum() == 0 ? 0 : hits.sum() * 100 / loads.sum());
+    }
+
+    /**
+     * Start tracking a new route.
+     */
+    public Route newRoute() {
+        return new Route();
+    }
+
+    private void maybePrefetch(String geoHash) {
+        if (store.isResident(geoHash) || inFlight.contains(geoHash)) {
+            return;
+        }
+        if (issued.get() >= maxPrefetchRatio * store.demandLoads()) {
+            refusedCounter.increment();
+            refused.put(geoHash, Boolean.TRUE);
+            return;
+        }
+        if (!inFlight.add(geoHash)) {
+            return;
+        }
+        issued.incrementAndGet();
+        issuedCounter.increment();
+        try {
+            executor.execute(() -> {
+                try {
+                    store.prefetch(geoHash);
+                } catch (RuntimeException e) {
+                    logger.fine("Prefetch of " + geoHash + " failed: " + e.getMessage());
+                } finally {
+                    inFlight.remove(geoHash);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(geoHash);
+            refusedCounter.increment();
+        }
+    }
+
+    /**
+     * Motion model of one RecordRoute stream. Not thread-safe; gRPC delivers a
+     * stream's messages one at a time.
+     */
+    public final class Route {
+        private final ArrayDeque<int[]> history = new ArrayDeque<>(); // {lat, lon}
+
+        private Route() {
+        }
+
+        /**
+         * Record the next point of the route, before it is looked up, and prefetch ahead.
+         */
+        public void onPoint(Point point) {
+            String current = FeatureRepository.partitionKey(point);
+            if (refused.remove(current) != null && !store.isResident(current)) {
+                cutOffMisses.increment();
+            }
+
+            history.addLast(new int[] {point.getLatitude(), point.getLongitude()});
+            if (history.size() > HISTORY) {
+                history.removeFirst();
+            }
+            if (history.size() < 2) {
+                return;
+            }
+
+            // Heading and speed as the average displacement per point over the history window
+            int[] first = history.peekFirst();
+            int[] last = history.peekLast();
+            int steps = history.size() - 1;
+            double latStep = ((long) last[0] - first[0]) / (double) steps;
+            double lonStep = ((long) last[1] - first[1]) / (double) steps;
+            if (latStep == 0 && lonStep == 0) {
+                return;
+            }
+
+            String previous = current;
+            for (int i = 1; i <= LOOKAHEAD_STEPS; i++) {
+                long lat = Math.round(last[0] + latStep * i);
+                long lon = Math.round(last[1] + lonStep * i);
+                if (Math.abs(lat) > 900_000_000L || Math.abs(lon) > 1_800_000_000L) {
+                    break;
+                }
+                String predicted = FeatureRepository.partitionKey(Point.newBuilder()
+                    .setLatitude((int) lat)
+                    .setLongitude((int) lon)
+                    .build());
+                if (!predicted.equals(previous)) {
+                    maybePrefetch(predicted);
+                    previous = predicted;
+                }
+            }
+        }
+    }
+}
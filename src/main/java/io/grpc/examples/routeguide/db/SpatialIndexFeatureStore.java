@@ -0,0 +1,224 @@
+package io.grpc.examples.routeguide.db;
+
+import com.google.protobuf.FieldMask;
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.Rectangle;
+import io.grpc.examples.routeguide.geo.PointQuadtree;
+import io.grpc.examples.routeguide.metrics.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * FeatureStore answering ListFeatures from an in-memory quadtree of all named
+ * features, so rectangle queries read exactly the matching features instead of
+ * whole geohash partitions and never reach DynamoDB.
+ *
+ * Point lookups and updates go to the delegate; every successful update is also
+ * applied to the index. The index is built by rebuild() from a table scan or a
+ * snapshot; until the first build finishes, ListFeatures falls through to the
+ * delegate. Updates made while a rebuild is loading are replayed onto the new
+ * index before it replaces the old one, so none are lost to the swap.
+ *
+ * Changes made through other replicas only arrive through the change listener,
+ * fed by a change feed, so without one the index is only correct on the table's
+ * single writer. Rectangles touching partitions changed in unknown ways fall
+ * through to the delegate until the next rebuild, and an unknown change to
+ * everything switches the index off until then.
+ */
+public class SpatialIndexFeatureStore implements FeatureStore, FeatureChangeListener {
+
+    private static final Logger logger = Logger.getLogger(SpatialIndexFeatureStore.class.getName());
+
+    private final FeatureStore delegate;
+    private volatile PointQuadtree<Feature> index;
+    // Partitions whose changes are unknown, listed from the delegate until the next rebuild
+    private final Set<String> unindexed = ConcurrentHashMap.newKeySet();
+    private Rebuild rebuilding; // Guarded by this, non-null while a rebuild is loading
+
+    private final LongAdder queries = MetricsRegistry.getDefault().counter("spatialIndex.queries");
+    private final LongAdder fallThroughs = MetricsRegistry.getDefault().counter("spatialIndex.fall_throughs");
+    private final LongAdder rebuilds = MetricsRegistry.getDefault().counter("spatialIndex.rebuilds");
+
+    public SpatialIndexFeatureStore(FeatureStore delegate) {
+        this.delegate = delegate;
+        MetricsRegistry.getDefault().gauge("spatialIndex.features", this::size);
+    }
+
+    /**
+     * Replace the index with one built from the loaded features. Blocks while loading.
+     *
+     * @param loader Reads every named feature, e.g. with FeatureRepository.scanFeatures
+     */
+    public void rebuild(Supplier<List<Feature>> loader) {
+        Rebuild rebuild = new Rebuild();
+        synchronized (this) {
+            if (rebuilding != null) {
+                throw new IllegalStateException("Rebuild already running");
+            }
+            rebuilding = rebuild;
+        }
+        try {
+            long start = System.nanoTime();
+            List<Feature> features = new ArrayList<>();
+            for (Feature feature : loader.get()) {
+                if (!feature.getName().isEmpty()) {
+                    features.add(feature);
+                }
+            }
+            PointQuadtree<Feature> rebuilt = PointQuadtree.build(features,
+                feature -> feature.getLocation().getLatitude(), feature -> feature.getLocation().getLongitude());
+            synchronized (this) {
+                for (Feature feature : rebuild.updated) {
+                    apply(rebuilt, feature);
+                }
+                unindexed.retainAll(rebuild.unindexed);
+                index = rebuild.allChanged ? null : rebuilt;
+            }
+            rebuilds.increment();
+            logger.info("Spatial index built with " + rebuilt.size() + " features in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } finally {
+            synchronized (this) {
+                rebuilding = null;
+            }
+        }
+    }
+
+    public long size() {
+        PointQuadtree<Feature> current = index;
+        return current == null ? 0 : current.size();
+    }
+
+    @Override
+    public Feature getFeature(Point point) {
+        return delegate.getFeature(point);
+    }
+
+    @Override
+    public boolean hasFeature(Point point) {
+        return delegate.hasFeature(point);
+    }
+
+    @Override
+    public Feature updateFeature(Feature feature, FieldMask fieldMask) {
+        Feature updated = delegate.updateFeature(feature, fieldMask);
+        if (updated != null) {
+            featureUpdated(updated);
+        }
+        return updated;
+    }
+
+    /**
+     * Apply features written to the table without going through this store,
+     * e.g. by ImportFeatures.
+     */
+    public synchronized void applyChanges(Collection<Feature> upserts) {
+        for (Feature feature : upserts) {
+            featureUpdated(feature);
+        }
+    }
+
+    @Override
+    public synchronized void featureUpdated(Feature feature) {
+        if (index != null) {
+            apply(index, feature);
+        }
+        if (rebuilding != null) {
+            rebuilding.updated.add(feature);
+        }
+    }
+
+    @Override
+    public void featureChanged(Point location) {
+        // Deleted, or changed without the new version
+        partitionChanged(FeatureRepository.partitionKey(location));
+    }
+
+    @Override
+    public synchronized void partitionChanged(String geoHash) {
+        unindexed.add(geoHash);
+        if (rebuilding != null) {
+            rebuilding.unindexed.add(geoHash);
+        }
+    }
+
+    @Override
+    public synchronized void allChanged() {
+        if (index != null) {
+            logger.warning("Spatial index off until the next rebuild, changes are unknown");
+        }
+        index = null;
+        if (rebuilding != null) {
+            rebuilding.allChanged = true;
+        }
+    }
+
+    @Override
+    public void listFeatures(Rectangle rectangle, Consumer<Feature> consumer) {
+        PointQuadtree<Feature> current = index;
+        if (current == null || coversUnindexed(rectangle)) {
+            fallThroughs.increment();
+            delegate.listFeatures(rectangle, consumer);
+            return;
+        }
+        queries.increment();
+        int latLo = Math.min(rectangle.getLo().getLatitude(), rectangle.getHi().getLatitude());
+        int latHi = Math.max(rectangle.getLo().getLatitude(), rectangle.getHi().getLatitude());
+        int lonLo = Math.min(rectangle.getLo().getLongitude(), rectangle.getHi().getLongitude());
+        int lonHi = Math.max(rectangle.getLo().getLongitude(), rectangle.getHi().getLongitude());
+        current.query(latLo, lonLo, latHi, lonHi, consumer);
+    }
+
+    private boolean coversUnindexed(Rectangle rectangle) {
+        if (unindexed.isEmpty()) {
+            return false;
+        }
+        List<String> partitions = FeatureRepository.partitionKeys(rectangle);
+        if (partitions == null) {
+            return true;
+        }
+        for (String geoHash : partitions) {
+            if (unindexed.contains(geoHash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    /**
+     * Only named features are listed, so clearing the name removes the feature.
+     */
+    private static void apply(PointQuadtree<Feature> index, Feature feature) {
+        Point location = feature.getLocation();
+        if (feature.getName().isEmpty()) {
+            index.remove(location.getLatitude(), location.getLongitude());
+        } else {
+            index.put(location.getLatitude(), location.getLongitude(), feature);
+        }
+    }
+
+    /**
+     * Changes reported while a rebuild is loading, replayed onto its index.
+     */
+    private static final class Rebuild {
+
+        final List<Feature> updated = new ArrayList<>();
+        final Set<String> unindexed = new HashSet<>();
+        boolean allChanged;
+    }
+}
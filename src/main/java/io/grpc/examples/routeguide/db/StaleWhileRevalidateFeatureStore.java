@@ -0,0 +1,260 @@
+package io.grpc.examples.routeguide.db;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+import com.google.protobuf.FieldMask;
+
+import io.grpc.Context;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.Rectangle;
+import io.grpc.examples.routeguide.metrics.MetricsRegistry;
+
+/**
+ * Keeps GetFeature answering while DynamoDB is slow or failing.
+ *
+ * Points with a known earlier answer are looked up on a refresh executor and
+ * waited for up to a latency budget. If the budget runs out or the lookup
+ * fails, the known answer is returned at once and reported as stale; the
+ * lookup carries on in the background and refreshes the known answer when it
+ * completes. Concurrent lookups of a point share one refresh, and callers
+ * joining a refresh that has used up the budget are answered at once.
+ * Points without a known answer are looked up on the caller's thread, bound by
+ * the call's deadline and cancellation like any other lookup.
+ *
+ * Lookups the delegate answers from memory (e.g. resident hot tier
+ * partitions) run inline. Updates and rectangle queries pass straight through.
+ */
+public class StaleWhileRevalidateFeatureStore implements FeatureStore {
+
+    private static final Logger logger = Logger.getLogger(StaleWhileRevalidateFeatureStore.class.getName());
+
+    private static final LongAdder staleServes = MetricsRegistry.getDefault().counter("stale.served");
+    private static final LongAdder budgetExceeded = MetricsRegistry.getDefault().counter("stale.budget_exceeded");
+    private static final LongAdder backendErrors = MetricsRegistry.getDefault().counter("stale.backend_errors");
+    private static final LongAdder refreshes = MetricsRegistry.getDefault().counter("stale.refreshes");
+
+    private final FeatureStore delegate;
+    private final Executor refreshExecutor;
+    private final long budgetNanos;
+    private final Predicate<Point> answeredFromMemory;
+    private final LongConsumer onStale;
+    private final Map<Long, Known> known; // Guarded by itself
+    private final ConcurrentHashMap<Long, Refresh> refreshing = new ConcurrentHashMap<>();
+
+    /**
+     * @param refreshExecutor Runs the refreshes of known points; a full executor
+     *        counts as a backend error, so the known answer is served
+     * @param budgetMillis How long a lookup may take before a known answer is served
+     * @param maxKnown Points whose last answer is remembered, least recently used evicted
+     * @param answeredFromMemory Lookups the delegate answers without DynamoDB
+     * @param onStale Told the age in milliseconds of every stale answer served
+     */
+    public StaleWhileRevalidateFeatureStore(FeatureStore delegate, Executor refreshExecutor, long budgetMillis,
+            int maxKnown, Predicate<Point> answeredFromMemory, LongConsumer onStale) {
+        this.delegate = delegate;
+        this.refreshExecutor = refreshExecutor;
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        this.answeredFromMemory = answeredFromMemory;
+        this.onStale = onStale;
+        this.known = new LinkedHashMap<Long, Known>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Known> eldest) {
+                return size() > maxKnown;
+            }
+        };
+        MetricsRegistry.getDefault().gauge("stale.known_points", () -> {
+            synchronized (known) {
+                return known.size();
+            }
+        });
+    }
+
+    @Override
+    public Feature getFeature(Point point) {
+        if (point == null) {
+            return delegate.getFeature(point);
+        }
+        long key = key(point);
+        Known last;
+        synchronized (known) {
+            last = known.get(key);
+        }
+        if (last == null || answeredFromMemory.test(point)) {
+            return lookUp(key, point);
+        }
+
+        Refresh refresh = refresh(key, point);
+        try {
+            // A refresh already running past the budget is not waited for again
+            long remainingNanos = budgetNanos - (System.nanoTime() - refresh.startedNanos);
+            return awaitUnlessCancelled(refresh, Math.max(0, remainingNanos));
+        } catch (TimeoutException e) {
+            budgetExceeded.increment();
+            return stale(last);
+        } catch (ExecutionException e) {
+            backendErrors.increment();
+            return stale(last);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Status.CANCELLED.withDescription("Interrupted waiting for lookup").asRuntimeException();
+        }
+    }
+
+    /**
+     * Look the point up on the caller's thread, within the caller's deadline
+     * and cancellation.
+     */
+    private Feature lookUp(long key, Point point) {
+        Feature feature;
+        try {
+            feature = delegate.getFeature(point);
+        } catch (StatusRuntimeException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            backendErrors.increment();
+            throw unavailable(e);
+        }
+        remember(key, feature);
+        return feature;
+    }
+
+    private Feature stale(Known last) {
+        long ageMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - last.fetchedNanos);
+        staleServes.increment();
+        onStale.accept(ageMillis);
+        return last.feature;
+    }
+
+    /**
+     * The background refresh in flight for the point, started if there is none.
+     */
+    private Refresh refresh(long key, Point point) {
+        Refresh refresh = refreshing.get(key);
+        if (refresh != null) {
+            return refresh;
+        }
+        Refresh mine = new Refresh(System.nanoTime());
+        refresh = refreshing.putIfAbsent(key, mine);
+        if (refresh != null) {
+            return refresh;
+        }
+        refreshes.increment();
+        // Forked so the refresh outlives the call that started it; only callers
+        // with a known answer to fall back on wait for it
+        Runnable lookup = Context.current().fork().wrap(() -> {
+            try {
+                Feature feature = delegate.getFeature(point);
+                remember(key, feature);
+                refreshing.remove(key, mine);
+                mine.complete(feature);
+            } catch (RuntimeException | Error e) {
+                refreshing.remove(key, mine);
+                mine.completeExceptionally(e);
+            }
+        });
+        try {
+            refreshExecutor.execute(lookup);
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key, mine);
+            mine.completeExceptionally(e);
+        }
+        return mine;
+    }
+
+    /**
+     * Wait for a refresh up to timeoutNanos, giving up early if the caller is cancelled.
+     */
+    private static Feature awaitUnlessCancelled(CompletableFuture<Feature> refresh, long timeoutNanos)
+            throws ExecutionException, InterruptedException, TimeoutException {
+        Context context = Context.current();
+        CompletableFuture<Object> cancelled = new CompletableFuture<>();
+        Context.CancellationListener listener = c -> cancelled.complete(null);
+        context.addListener(listener, Runnable::run);
+        try {
+            CompletableFuture.anyOf(refresh, cancelled).get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } finally {
+            context.removeListener(listener);
+        }
+        if (!refresh.isDone()) {
+            Status status = context.getDeadline() != null && context.getDeadline().isExpired()
+                ? Status.DEADLINE_EXCEEDED
+                : Status.CANCELLED;
+            throw status.withDescription("Call ended waiting for lookup").asRuntimeException();
+        }
+        return refresh.get();
+    }
+
+    private static StatusRuntimeException unavailable(Throwable cause) {
+        if (cause instanceof StatusRuntimeException) {
+            return (StatusRuntimeException) cause;
+        }
+        logger.warning("Feature lookup failed with no known answer to serve: " + cause);
+        return Status.UNAVAILABLE.withDescription("Feature lookup failed").withCause(cause).asRuntimeException();
+    }
+
+    private void remember(long key, Feature feature) {
+        Known entry = new Known(feature, System.nanoTime());
+        synchronized (known) {
+            known.put(key, entry);
+        }
+    }
+
+    @Override
+    public Feature updateFeature(Feature feature, FieldMask fieldMask) {
+        Feature updated = delegate.updateFeature(feature, fieldMask);
+        if (updated != null && updated.hasLocation()) {
+            remember(key(updated.getLocation()), updated);
+        }
+        return updated;
+    }
+
+    @Override
+    public void listFeatures(Rectangle rectangle, Consumer<Feature> consumer) {
+        delegate.listFeatures(rectangle, consumer);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    private static long key(Point point) {
+        return ((long) point.getLatitude() << 32) | (point.getLongitude() & 0xffffffffL);
+    }
+
+    private static final class Refresh extends CompletableFuture<Feature> {
+
+        final long startedNanos;
+
+        Refresh(long startedNanos) {
+            this.startedNanos = startedNanos;
+        }
+    }
+
+    private static final class Known {
+
+        final Feature feature;
+        final long fetchedNanos;
+
+        Known(Feature feature, long fetchedNanos) {
+            this.feature = feature;
+            this.fetchedNanos = fetchedNanos;
+        }
+    }
+}
@@ -0,0 +1,457 @@
+package io.grpc.examples.routeguide.db;
+
+import com.google.protobuf.FieldMask;
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.Rectangle;
+import io.grpc.examples.routeguide.metrics.MetricsRegistry;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+/**
+ * FeatureStore with an in-memory hot tier over FeatureRepository.
+ *
+ * The first lookup in a geohash partition loads the whole partition with one Query
+ * and keeps it resident, so every further lookup nearby is answered from memory.
+ * Partitions are evicted least-recently-used once the memory budget is exceeded.
+ * Partitions rejected by the admission predicate (e.g. shards owned by another node)
+ * are never kept and always fall through to DynamoDB. Pinned partitions (the current
+ * hot cells) are loaded eagerly and never evicted.
+ */
+public class TieredFeatureStore implements FeatureStore {
+
+    private static final Logger logger = Logger.getLogger(TieredFeatureStore.class.getName());
+
+    // Rough heap cost of one resident Feature (protos, boxed key, map entry) plus its name
+    private static final long FEATURE_OVERHEAD_BYTES = 160;
+    private static final long PARTITION_OVERHEAD_BYTES = 256;
+
+    private final FeatureRepository backend;
+    private final long maxResidentBytes;
+    private final Predicate<String> admission;
+
+    private final LinkedHashMap<String, Partition> resident = new LinkedHashMap<>(16, 0.75f, true);
+    private final ConcurrentHashMap<String, CompletableFuture<Partition>> loading = new ConcurrentHashMap<>();
+    private long residentBytes;
+    private volatile Set<String> pinned = Collections.emptySet();
+    private final Set<String> staleLoads = new HashSet<>(); // Guarded by this
+    private final List<FeatureChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final LongAdder hotHits = MetricsRegistry.getDefault().counter("hotTier.hits");
+    private final LongAdder partitionLoads = MetricsRegistry.getDefault().counter("hotTier.partition_loads");
+    private final LongAdder evictions = MetricsRegistry.getDefault().counter("hotTier.evictions");
+    private final LongAdder fallThroughs = MetricsRegistry.getDefault().counter("hotTier.fall_throughs");
+    private final LongAdder prefetchLoads = MetricsRegistry.getDefault().counter("prefetch.loads");
+    private final LongAdder prefetchHits = MetricsRegistry.getDefault().counter("prefetch.hits");
+
+    /**
+     * @param backend DynamoDB store answering cold lookups
+     * @param maxResidentBytes Memory budget for resident partitions
+     * @param admission Decides which partitions may become resident
+     */
+    public TieredFeatureStore(FeatureRepository backend, long maxResidentBytes, Predicate<String> admission) {
+        this.backend = backend;
+        this.maxResidentBytes = maxResidentBytes;
+        this.admission = admission;
+        MetricsRegistry.getDefault().gauge("hotTier.resident_bytes", this::residentBytes);
+        MetricsRegistry.getDefault().gauge("hotTier.resident_partitions", this::residentPartitions);
+        MetricsRegistry.getDefault().gauge("hotTier.pinned_partitions", () -> pinned.size());
+    }
+
+    @Override
+    public Feature getFeature(Point point) {
+        if (point == null) {
+            return backend.getFeature(point);
+        }
+        String geoHash = FeatureRepository.partitionKey(point);
+        if (!admission.test(geoHash)) {
+            fallThroughs.increment();
+            return backend.getFeature(point);
+        }
+
+        Feature feature = partition(geoHash).features.get(key(point));
+        if (feature != null) {
+            return feature;
+        }
+        return Feature.newBuilder()
+                .setName("")
+                .setLocation(point)
+                .build();
+    }
+
+    @Override
+    public Feature updateFeature(Feature feature, FieldMask fieldMask) {
+        Feature updated = backend.updateFeature(feature, fieldMask);
+        if (updated != null) {
+            synchronized (this) {
+                upsertResident(updated);
+                markLoadStale(FeatureRepository.partitionKey(updated.getLocation()));
+            }
+            for (FeatureChangeListener listener : listeners) {
+                listener.featureUpdated(updated);
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Register a listener told about every change applied to this store, including
+     * changes to partitions that are not resident.
+     */
+    public void addChangeListener(FeatureChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Apply a batch of changes made elsewhere (e.g. by another replica) to resident
+     * partitions under one lock. Changes to partitions that are not resident are ignored.
+     *
+     * @param upserts New versions of features
+     * @param removals Locations of deleted features
+     * @param invalidations Partitions to drop entirely because the change details are unknown
+     */
+    public synchronized void applyChanges(Collection<Feature> upserts, Collection<Point> removals,
+            Collection<String> invalidations) {
+        for (Feature feature : upserts) {
+            upsertResident(feature);
+            markLoadStale(FeatureRepository.partitionKey(feature.getLocation()));
+            for (FeatureChangeListener listener : listeners) {
+                listener.featureUpdated(feature);
+            }
+        }
+        for (Point location : removals) {
+            markLoadStale(FeatureRepository.partitionKey(location));
+            for (FeatureChangeListener listener : listeners) {
+                listener.featureChanged(location);
+            }
+            Partition partition = resident.get(FeatureRepository.partitionKey(location));
+            if (partition != null) {
+                Feature previous = partition.features.remove(key(location));
+                if (previous != null) {
+                    partition.bytes -= sizeOf(previous);
+                    residentBytes -= sizeOf(previous);
+                }
+            }
+        }
+        for (String geoHash : invalidations) {
+            markLoadStale(geoHash);
+            invalidate(geoHash);
+        }
+    }
+
+    /**
+     * A load running while a change arrives may have read the old version,
+     * so its result is served once but not admitted.
+     */
+    private void markLoadStale(String geoHash) {
+        if (loading.containsKey(geoHash)) {
+            staleLoads.add(geoHash);
+        }
+    }
+
+    /**
+     * Drop every resident partition.
+     */
+    public synchronized void invalidateAll() {
+        resident.clear();
+        residentBytes = 0;
+        staleLoads.addAll(loading.keySet());
+        for (FeatureChangeListener listener : listeners) {
+            listener.allChanged();
+        }
+    }
+
+    /**
+     * Answers from resident partitions where possible. Missing partitions are read
+     * from DynamoDB without being admitted, so a large viewport does not flush the hot tier.
+     */
+    @Override
+    public void listFeatures(Rectangle rectangle, Consumer<Feature> consumer) {
+        List<String> partitions = FeatureRepository.partitionKeys(rectangle);
+        if (partitions == null) {
+            fallThroughs.increment();
+            backend.listFeatures(rectangle, consumer);
+            return;
+        }
+
+        int latLo = Math.min(rectangle.getLo().getLatitude(), rectangle.getHi().getLatitude());
+        int latHi = Math.max(rectangle.getLo().getLatitude(), rectangle.getHi().getLatitude());
+        int lonLo = Math.min(rectangle.getLo().getLongitude(), rectangle.getHi().getLongitude());
+        int lonHi = Math.max(rectangle.getLo().getLongitude(), rectangle.getHi().getLongitude());
+
+        for (String geoHash : partitions) {
+            Partition partition;
+            synchronized (this) {
+                partition = resident.get(geoHash);
+            }
+            Iterable<Feature> features;
+            if (partition != null) {
+                hotHits.increment();
+                features = partition.features.values();
+            } else {
+                fallThroughs.increment();
+                features = backend.loadPartition(geoHash);
+            }
+            for (Feature feature : features) {
+                int lat = feature.getLocation().getLatitude();
+                int lon = feature.getLocation().getLongitude();
+                if (lat >= latLo && lat <= latHi && lon >= lonLo && lon <= lonHi
+                    && !feature.getName().isEmpty()) {
+                    consumer.accept(feature);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        backend.close();
+    }
+
+    /**
+     * Drop a partition from the hot tier so the next lookup reloads it.
+     */
+    public synchronized void invalidate(String geoHash) {
+        Partition partition = resident.remove(geoHash);
+        if (partition != null) {
+            residentBytes -= partition.bytes;
+        }
+        for (FeatureChangeListener listener : listeners) {
+            listener.partitionChanged(geoHash);
+        }
+    }
+
+    /**
+     * Keep exactly these partitions resident regardless of recency, loading any that
+     * are missing. Replaces the previously pinned set; partitions the admission
+     * predicate rejects are ignored.
+     */
+    public void pin(Collection<String> geoHashes) {
+        Set<String> toPin = new HashSet<>();
+        for (String geoHash : geoHashes) {
+            if (admission.test(geoHash)) {
+                toPin.add(geoHash);
+            }
+        }
+        pinned = Collections.unmodifiableSet(toPin);
+        for (String geoHash : toPin) {
+            partition(geoHash);
+        }
+    }
+
+    public Set<String> pinned() {
+        return pinned;
+    }
+
+    public synchronized long residentBytes() {
+        return residentBytes;
+    }
+
+    public synchronized long residentPartitions() {
+        return resident.size();
+    }
+
+    /**
+     * Whether the partition may become resident; lookups in other partitions
+     * always read DynamoDB.
+     */
+    public boolean admits(String geoHash) {
+        return admission.test(geoHash);
+    }
+
+    /**
+     * Drop resident and pinned partitions the admission predicate no longer
+     * accepts, e.g. after this node's shards moved to another node. Their data
+     * did not change, so listeners are not told.
+     *
+     * @return Number of partitions dropped
+     */
+    public synchronized int evictUnadmitted() {
+        Set<String> stillPinned = new HashSet<>();
+        for (String geoHash : pinned) {
+            if (admission.test(geoHash)) {
+                stillPinned.add(geoHash);
+            }
+        }
+        pinned = Collections.unmodifiableSet(stillPinned);
+
+        int dropped = 0;
+        Iterator<Map.Entry<String, Partition>> it = resident.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Partition> entry = it.next();
+            if (!admission.test(entry.getKey())) {
+                residentBytes -= entry.getValue().bytes;
+                it.remove();
+                dropped++;
+            }
+        }
+        for (String geoHash : loading.keySet()) {
+            if (!admission.test(geoHash)) {
+                staleLoads.add(geoHash);
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * Whether the partition is currently held in memory.
+     */
+    public synchronized boolean isResident(String geoHash) {
+        return resident.containsKey(geoHash);
+    }
+
+    /**
+     * Load a partition ahead of demand. Blocks while loading, so callers run it
+     * on a background executor. Does nothing for resident or non-admitted partitions.
+     */
+    public void prefetch(String geoHash) {
+        if (admission.test(geoHash) && !isResident(geoHash)) {
+            partition(geoHash, true);
+        }
+    }
+
+    /**
+     * Number of partition loads caused by real lookups (not prefetches).
+     */
+    public long demandLoads() {
+        return partitionLoads.sum();
+    }
+
+    private Partition partition(String geoHash) {
+        return partition(geoHash, false);
+    }
+
+    /**
+     * Get a resident partition, loading it if needed. Concurrent misses on the
+     * same partition share one load; callers waiting on another's load still
+     * give up at their own gRPC deadline or cancellation.
+     *
+     * @param prefetch Whether this is a speculative load rather than a real lookup
+     */
+    private Partition partition(String geoHash, boolean prefetch) {
+        while (true) {
+            synchronized (this) {
+                Partition partition = resident.get(geoHash);
+                if (partition != null) {
+                    if (!prefetch) {
+                        hotHits.increment();
+                        if (partition.prefetched) {
+                            partition.prefetched = false;
+                            prefetchHits.increment();
+                        }
+                    }
+                    return partition;
+                }
+            }
+
+            CompletableFuture<Partition> mine = new CompletableFuture<>();
+            CompletableFuture<Partition> inFlight = loading.putIfAbsent(geoHash, mine);
+            if (inFlight != null) {
+                try {
+                    return CancellationGuard.await("Load of partition " + geoHash, inFlight);
+                } catch (CompletionException e) {
+                    // The loading call failed or was cancelled; try again on our own behalf
+                    continue;
+                }
+            }
+
+            Partition partition;
+            try {
+                (prefetch ? prefetchLoads : partitionLoads).increment();
+                partition = new Partition(backend.loadPartition(geoHash));
+                partition.prefetched = prefetch;
+            } catch (RuntimeException | Error e) {
+                finishLoad(geoHash, mine, null);
+                mine.completeExceptionally(e);
+                throw e;
+            }
+            finishLoad(geoHash, mine, partition);
+            mine.complete(partition);
+            return partition;
+        }
+    }
+
+    /**
+     * End a load under the lock that change marks are taken under, so a mark
+     * set during this load is always consumed here and never outlives it.
+     *
+     * @param partition The loaded partition, null if the load failed
+     */
+    private synchronized void finishLoad(String geoHash, CompletableFuture<Partition> load, Partition partition) {
+        loading.remove(geoHash, load);
+        boolean stale = staleLoads.remove(geoHash);
+        if (partition != null && !stale) {
+            admit(geoHash, partition);
+        }
+    }
+
+    private void admit(String geoHash, Partition partition) {
+        if (partition.bytes > maxResidentBytes) {
+            return;
+        }
+        Partition previous = resident.put(geoHash, partition);
+        residentBytes += partition.bytes - (previous != null ? previous.bytes : 0);
+
+        Iterator<Map.Entry<String, Partition>> eldest = resident.entrySet().iterator();
+        while (residentBytes > maxResidentBytes && eldest.hasNext()) {
+            Map.Entry<String, Partition> entry = eldest.next();
+            if (pinned.contains(entry.getKey())) {
+                continue;
+            }
+            residentBytes -= entry.getValue().bytes;
+            eldest.remove();
+            evictions.increment();
+            logger.fine("Evicted partition " + entry.getKey());
+        }
+    }
+
+    private void upsertResident(Feature feature) {
+        Partition partition = resident.get(FeatureRepository.partitionKey(feature.getLocation()));
+        if (partition != null) {
+            Feature previous = partition.features.put(key(feature.getLocation()), feature);
+            long delta = sizeOf(feature) - (previous != null ? sizeOf(previous) : 0);
+            partition.bytes += delta;
+            residentBytes += delta;
+        }
+    }
+
+    private static long key(Point point) {
+        return ((long) point.getLatitude() << 32) | (point.getLongitude() & 0xffffffffL);
+    }
+
+    private static long sizeOf(Feature feature) {
+        return FEATURE_OVERHEAD_BYTES + 2L * feature.getName().length();
+    }
+
+    /**
+     * All features of one geohash partition, keyed by packed E7 coordinates.
+     */
+    private static final class Partition {
+        final Map<Long, Feature> features;
+        long bytes = PARTITION_OVERHEAD_BYTES;
+        boolean prefetched; // Loaded speculatively and not yet used by a real lookup
+
+        Partition(List<Feature> loaded) {
+            features = new ConcurrentHashMap<>();
+            for (Feature feature : loaded) {
+                features.put(key(feature.getLocation()), feature);
+                bytes += sizeOf(feature);
+            }
+        }
+    }
+}
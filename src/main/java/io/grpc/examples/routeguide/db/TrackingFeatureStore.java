@@ -0,0 +1,65 @@
+package io.grpc.examples.routeguide.db;
+
+import com.google.protobuf.FieldMask;
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.Rectangle;
+import io.grpc.examples.routeguide.metrics.HotCellTracker;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * FeatureStore decorator that reports every geohash partition touched to a HotCellTracker.
+ * Sits in front of any caching so the tracker sees demand, not just DynamoDB traffic.
+ */
+public class TrackingFeatureStore implements FeatureStore {
+
+    private final FeatureStore delegate;
+    private final HotCellTracker tracker;
+
+    public TrackingFeatureStore(FeatureStore delegate, HotCellTracker tracker) {
+        this.delegate = delegate;
+        this.tracker = tracker;
+    }
+
+    @Override
+    public Feature getFeature(Point point) {
+        if (point != null) {
+            tracker.recordRead(FeatureRepository.partitionKey(point));
+        }
+        return delegate.getFeature(point);
+    }
+
+    @Override
+    public boolean hasFeature(Point point) {
+        if (point != null) {
+            tracker.recordRead(FeatureRepository.partitionKey(point));
+        }
+        return delegate.hasFeature(point);
+    }
+
+    @Override
+    public Feature updateFeature(Feature feature, FieldMask fieldMask) {
+        if (feature != null && feature.hasLocation()) {
+            tracker.recordWrite(FeatureRepository.partitionKey(feature.getLocation()));
+        }
+        return delegate.updateFeature(feature, fieldMask);
+    }
+
+    @Override
+    public void listFeatures(Rectangle rectangle, Consumer<Feature> consumer) {
+        List<String> partitions = FeatureRepository.partitionKeys(rectangle);
+        if (partitions != null) {
+            for (String geoHash : partitions) {
+                tracker.recordRead(geoHash);
+            }
+        }
+        delegate.listFeatures(rectangle, consumer);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
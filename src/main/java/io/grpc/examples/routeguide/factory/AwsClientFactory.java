@@ -1,6 +1,7 @@
 package io.grpc.examples.routeguide.factory;
 
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.streams.DynamoDbStreamsClient;
 
 /**
  * Abstract Factory for creating AWS service clients.
@@ -14,6 +15,18 @@ public interface AwsClientFactory {
      */
     DynamoDbClient createDynamoDbClient();
 
+    /**
+     * Creates a configured DynamoDB Streams client.
+     * @return DynamoDbStreamsClient instance
+     */
+    DynamoDbStreamsClient createDynamoDbStreamsClient();
+
+    /**
+     * HTTP pool, timeout and retry settings the clients are built with.
+     * @return DynamoDbClientConfig in effect
+     */
+    DynamoDbClientConfig getClientConfig();
+
     // Future AWS services can be added here:
     // S3Client createS3Client();
     // SqsClient createSqsClient();
@@ -0,0 +1,140 @@
+package io.grpc.examples.routeguide.factory;
+
+import software.amazon.awssdk.core.client.builder.SdkClientBuilder;
+import software.amazon.awssdk.core.client.builder.SdkSyncClientBuilder;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.retry.RetryMode;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * HTTP and retry settings for the DynamoDB clients, read from environment variables.
+ *
+ * The SDK defaults (50 pooled connections, no connection TTL, no per-attempt
+ * timeout) are tuned for general use; these defaults favour a server that keeps a
+ * warm pool and prefers a fast retry over waiting on a stuck attempt.
+ *
+ * - DYNAMODB_HTTP_CLIENT: "apache" (default, pooled) or "url-connection"
+ * - DYNAMODB_MAX_CONNECTIONS, DYNAMODB_CONNECTION_TTL_MILLIS, DYNAMODB_CONNECTION_MAX_IDLE_MILLIS,
+ *   DYNAMODB_CONNECTION_ACQUIRE_MILLIS: pool settings (apache only)
+ * - DYNAMODB_CONNECTION_TIMEOUT_MILLIS, DYNAMODB_SOCKET_TIMEOUT_MILLIS: socket settings
+ * - DYNAMODB_ATTEMPT_TIMEOUT_MILLIS: timeout of a single attempt, so a slow attempt is retried
+ * - DYNAMODB_MAX_RETRIES, DYNAMODB_RETRY_MODE ("standard", "adaptive" or "legacy")
+ * - DYNAMODB_WARMUP_CONNECTIONS: connections opened at startup (0 disables warm-up)
+ */
+public class DynamoDbClientConfig {
+
+    /**
+     * HTTP client implementation.
+     */
+    public enum HttpClientType {
+        APACHE,
+        URL_CONNECTION
+    }
+
+    private final HttpClientType httpClient;
+    private final int maxConnections;
+    private final Duration connectionTimeToLive;
+    private final Duration connectionMaxIdleTime;
+    private final Duration connectionAcquisitionTimeout;
+    private final Duration connectionTimeout;
+    private final Duration socketTimeout;
+    private final Duration apiCallAttemptTimeout;
+    private final int maxRetries;
+    private final RetryMode retryMode;
+    private final int warmupConnections;
+
+    private DynamoDbClientConfig(Function<String, String> env) {
+        String client = value(env, "DYNAMODB_HTTP_CLIENT", "apache");
+        this.httpClient = "url-connection".equalsIgnoreCase(client)
+            ? HttpClientType.URL_CONNECTION
+            : HttpClientType.APACHE;
+        this.maxConnections = Integer.parseInt(value(env, "DYNAMODB_MAX_CONNECTIONS", "128"));
+        this.connectionTimeToLive = millis(env, "DYNAMODB_CONNECTION_TTL_MILLIS", 300_000);
+        this.connectionMaxIdleTime = millis(env, "DYNAMODB_CONNECTION_MAX_IDLE_MILLIS", 60_000);
+        this.connectionAcquisitionTimeout = millis(env, "DYNAMODB_CONNECTION_ACQUIRE_MILLIS", 1_000);
+        this.connectionTimeout = millis(env, "DYNAMODB_CONNECTION_TIMEOUT_MILLIS", 1_000);
+        this.socketTimeout = millis(env, "DYNAMODB_SOCKET_TIMEOUT_MILLIS", 5_000);
+        this.apiCallAttemptTimeout = millis(env, "DYNAMODB_ATTEMPT_TIMEOUT_MILLIS", 2_000);
+        this.maxRetries = Integer.parseInt(value(env, "DYNAMODB_MAX_RETRIES", "3"));
+        this.retryMode = RetryMode.valueOf(value(env, "DYNAMODB_RETRY_MODE", "standard").toUpperCase());
+        this.warmupConnections = Integer.parseInt(value(env, "DYNAMODB_WARMUP_CONNECTIONS", "16"));
+    }
+
+    /**
+     * Configuration from the process environment.
+     */
+    public static DynamoDbClientConfig fromEnvironment() {
+        return new DynamoDbClientConfig(System::getenv);
+    }
+
+    /**
+     * Configuration from an arbitrary lookup, e.g. a Map::get in benchmarks.
+     */
+    public static DynamoDbClientConfig from(Function<String, String> lookup) {
+        return new DynamoDbClientConfig(lookup);
+    }
+
+    /**
+     * Apply the HTTP client and override configuration to a sync client builder.
+     */
+    public <B extends SdkSyncClientBuilder<B, ?> & SdkClientBuilder<B, ?>> B applyTo(B builder) {
+        builder.httpClientBuilder(httpClientBuilder());
+        builder.overrideConfiguration(ClientOverrideConfiguration.builder()
+            .apiCallAttemptTimeout(apiCallAttemptTimeout)
+            .retryPolicy(RetryPolicy.builder(retryMode)
+                .numRetries(maxRetries)
+                .build())
+            .build());
+        return builder;
+    }
+
+    private SdkHttpClient.Builder<?> httpClientBuilder() {
+        if (httpClient == HttpClientType.URL_CONNECTION) {
+            return UrlConnectionHttpClient.builder()
+                .connectionTimeout(connectionTimeout)
+                .socketTimeout(socketTimeout);
+        }
+        return ApacheHttpClient.builder()
+            .maxConnections(maxConnections)
+            .connectionTimeToLive(connectionTimeToLive)
+            .connectionMaxIdleTime(connectionMaxIdleTime)
+            .connectionAcquisitionTimeout(connectionAcquisitionTimeout)
+            .connectionTimeout(connectionTimeout)
+            .socketTimeout(socketTimeout)
+            .useIdleConnectionReaper(true)
+            .tcpKeepAlive(true);
+    }
+
+    public HttpClientType getHttpClient() {
+        return httpClient;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getWarmupConnections() {
+        return Math.min(warmupConnections, maxConnections);
+    }
+
+    @Override
+    public String toString() {
+        return httpClient + " client, " + maxConnections + " connections, ttl " + connectionTimeToLive
+            + ", attempt timeout " + apiCallAttemptTimeout + ", " + retryMode + " retries x" + maxRetries;
+    }
+
+    private static String value(Function<String, String> env, String name, String defaultValue) {
+        String value = env.apply(name);
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+
+    private static Duration millis(Function<String, String> env, String name, long defaultMillis) {
+        return Duration.ofMillis(Long.parseLong(value(env, name, Long.toString(defaultMillis))));
+    }
+}
@@ -4,6 +4,7 @@ import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.streams.DynamoDbStreamsClient;
 
 import java.net.URI;
 import java.util.logging.Logger;
@@ -20,26 +21,49 @@ public class LocalDevelopmentAwsClientFactory implements AwsClientFactory {
 
     private final String endpoint;
     private final Region region;
+    private final DynamoDbClientConfig clientConfig;
 
     public LocalDevelopmentAwsClientFactory() {
         this.endpoint = System.getenv().getOrDefault("DYNAMODB_ENDPOINT", DEFAULT_ENDPOINT);
         this.region = Region.of(DEFAULT_REGION);
+        this.clientConfig = DynamoDbClientConfig.fromEnvironment();
         logger.info("Using local DynamoDB endpoint: " + endpoint);
     }
 
     public LocalDevelopmentAwsClientFactory(String endpoint) {
+        this(endpoint, DynamoDbClientConfig.fromEnvironment());
+    }
+
+    public LocalDevelopmentAwsClientFactory(String endpoint, DynamoDbClientConfig clientConfig) {
         this.endpoint = endpoint;
         this.region = Region.of(DEFAULT_REGION);
+        this.clientConfig = clientConfig;
     }
 
     @Override
     public DynamoDbClient createDynamoDbClient() {
-        logger.info("Creating local development DynamoDB client");
-        return DynamoDbClient.builder()
+        logger.info("Creating local development DynamoDB client (" + clientConfig + ")");
+        return clientConfig.applyTo(DynamoDbClient.builder())
                 .region(region)
                 .endpointOverride(URI.create(endpoint))
                 .credentialsProvider(StaticCredentialsProvider.create(
                         AwsBasicCredentials.create("dummy-key", "dummy-secret")))
                 .build();
     }
+
+    @Override
+    public DynamoDbStreamsClient createDynamoDbStreamsClient() {
+        logger.info("Creating local development DynamoDB Streams client");
+        return clientConfig.applyTo(DynamoDbStreamsClient.builder())
+                .region(region)
+                .endpointOverride(URI.create(endpoint))
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create("dummy-key", "dummy-secret")))
+                .build();
+    }
+
+    @Override
+    public DynamoDbClientConfig getClientConfig() {
+        return clientConfig;
+    }
 }
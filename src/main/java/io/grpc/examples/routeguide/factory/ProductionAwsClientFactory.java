@@ -3,6 +3,7 @@ package io.grpc.examples.routeguide.factory;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.streams.DynamoDbStreamsClient;
 
 import java.util.logging.Logger;
 
@@ -16,6 +17,7 @@ public class ProductionAwsClientFactory implements AwsClientFactory {
     private static final String DEFAULT_REGION = "us-east-1";
 
     private final Region region;
+    private final DynamoDbClientConfig clientConfig;
 
     public ProductionAwsClientFactory() {
         String regionName = System.getenv("AWS_REGION");
@@ -24,18 +26,38 @@ public class ProductionAwsClientFactory implements AwsClientFactory {
             logger.info("AWS_REGION not set, using default: " + DEFAULT_REGION);
         }
         this.region = Region.of(regionName);
+        this.clientConfig = DynamoDbClientConfig.fromEnvironment();
     }
 
     public ProductionAwsClientFactory(String regionName) {
+        this(regionName, DynamoDbClientConfig.fromEnvironment());
+    }
+
+    public ProductionAwsClientFactory(String regionName, DynamoDbClientConfig clientConfig) {
         this.region = Region.of(regionName);
+        this.clientConfig = clientConfig;
     }
 
     @Override
     public DynamoDbClient createDynamoDbClient() {
-        logger.info("Creating production DynamoDB client for region: " + region);
-        return DynamoDbClient.builder()
+        logger.info("Creating production DynamoDB client for region: " + region + " (" + clientConfig + ")");
+        return clientConfig.applyTo(DynamoDbClient.builder())
                 .region(region)
                 .credentialsProvider(DefaultCredentialsProvider.create())
                 .build();
     }
+
+    @Override
+    public DynamoDbStreamsClient createDynamoDbStreamsClient() {
+        logger.info("Creating production DynamoDB Streams client for region: " + region);
+        return clientConfig.applyTo(DynamoDbStreamsClient.builder())
+                .region(region)
+                .credentialsProvider(DefaultCredentialsProvider.create())
+                .build();
+    }
+
+    @Override
+    public DynamoDbClientConfig getClientConfig() {
+        return clientConfig;
+    }
 }
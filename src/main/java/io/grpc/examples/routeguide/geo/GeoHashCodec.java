@@ -0,0 +1,250 @@
+package io.grpc.examples.routeguide.geo;
+
+/**
+ * Allocation-free geohash codec working on E7 coordinates and long cell ids.
+ *
+ * A cell id holds the 5 * chars geohash bits right-aligned: longitude and
+ * latitude bits interleaved, longitude first, exactly as in ch.hsr.geohash.
+ * Encoding quantizes the integer coordinates directly instead of bisecting
+ * doubles; the one case where the library's double rounding lands on a cell
+ * boundary the exact value is just below is corrected explicitly, so ids and
+ * base32 strings are bit-for-bit those of GeoHash.withCharacterPrecision(lat / 1e7,
+ * lon / 1e7, chars). Strings are only needed where a geohash leaves the process,
+ * e.g. as a DynamoDB partition key.
+ *
+ * Neighbours wrap around in both directions, like the library's.
+ */
+public final class GeoHashCodec {
+
+    public static final int MAX_CHARS = 12;
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+    private static final int[] DECODE = new int[128];
+    private static final long LAT_RANGE_E7 = 1_800_000_000L;
+    private static final long LON_RANGE_E7 = 3_600_000_000L;
+
+    static {
+        java.util.Arrays.fill(DECODE, -1);
+        for (int i = 0; i < BASE32.length; i++) {
+            DECODE[BASE32[i]] = i;
+        }
+    }
+
+    private GeoHashCodec() {
+    }
+
+    /**
+     * Cell id of the cell with chars characters containing an E7 coordinate.
+     *
+     * @throws IllegalArgumentException if the coordinate is outside the globe
+     */
+    public static long encode(int latE7, int lonE7, int chars) {
+        checkChars(chars);
+        if (latE7 < -900_000_000 || latE7 > 900_000_000 || lonE7 < -1_800_000_000 || lonE7 > 1_800_000_000) {
+            throw new IllegalArgumentException("Coordinate out of range: " + latE7 + ", " + lonE7);
+        }
+        int bits = 5 * chars;
+        int lonBits = (bits + 1) / 2;
+        int latBits = bits / 2;
+        long lon = index(lonE7, 1_800_000_000L, LON_RANGE_E7, 180.0, lonBits);
+        long lat = index(latE7, 900_000_000L, LAT_RANGE_E7, 90.0, latBits);
+        return interleave(lat, latBits, lon, lonBits);
+    }
+
+    /**
+     * Base32 geohash string of a cell id.
+     */
+    public static String toBase32(long cell, int chars) {
+        checkChars(chars);
+        char[] hash = new char[chars];
+        for (int i = 0; i < chars; i++) {
+            hash[i] = BASE32[(int) (cell >>> (5 * (chars - 1 - i))) & 31];
+        }
+        return new String(hash);
+    }
+
+    /**
+     * Cell id of a base32 geohash string; its length is the precision.
+     */
+    public static long fromBase32(String geoHash) {
+        checkChars(geoHash.length());
+        long cell = 0;
+        for (int i = 0; i < geoHash.length(); i++) {
+            char c = geoHash.charAt(i);
+            int value = c < 128 ? DECODE[c] : -1;
+            if (value < 0) {
+                throw new IllegalArgumentException("Not a geohash: " + geoHash);
+            }
+            cell = (cell << 5) | value;
+        }
+        return cell;
+    }
+
+    /**
+     * Cell id of the containing cell with fewer characters.
+     */
+    public static long parent(long cell, int chars, int parentChars) {
+        return cell >>> (5 * (chars - parentChars));
+    }
+
+    /**
+     * Cell id of the cell latSteps rows north and lonSteps columns east
+     * (negative for south and west).
+     */
+    public static long neighbor(long cell, int chars, int latSteps, int lonSteps) {
+        int bits = 5 * chars;
+        int lonBits = (bits + 1) / 2;
+        int latBits = bits / 2;
+        long lat = (latIndex(cell, bits) + latSteps) & mask(latBits);
+        long lon = (lonIndex(cell, bits) + lonSteps) & mask(lonBits);
+        return interleave(lat, latBits, lon, lonBits);
+    }
+
+    /**
+     * The 8 surrounding cells in the order of GeoHash.getAdjacent():
+     * N, NE, E, SE, S, SW, W, NW.
+     *
+     * @param out Array of at least 8 elements receiving the cell ids
+     */
+    public static void neighbors(long cell, int chars, long[] out) {
+        int bits = 5 * chars;
+        int lonBits = (bits + 1) / 2;
+        int latBits = bits / 2;
+        long lat = latIndex(cell, bits);
+        long lon = lonIndex(cell, bits);
+        long north = (lat + 1) & mask(latBits);
+        long south = (lat - 1) & mask(latBits);
+        long east = (lon + 1) & mask(lonBits);
+        long west = (lon - 1) & mask(lonBits);
+        out[0] = interleave(north, latBits, lon, lonBits);
+        out[1] = interleave(north, latBits, east, lonBits);
+        out[2] = interleave(lat, latBits, east, lonBits);
+        out[3] = interleave(south, latBits, east, lonBits);
+        out[4] = interleave(south, latBits, lon, lonBits);
+        out[5] = interleave(south, latBits, west, lonBits);
+        out[6] = interleave(lat, latBits, west, lonBits);
+        out[7] = interleave(north, latBits, west, lonBits);
+    }
+
+    /**
+     * Cells intersecting a box of E7 coordinates, row by row from the south-west
+     * corner. A cell whose edge only touches the north or east side is included.
+     *
+     * @return The cell ids, or null if more than maxCells would be needed
+     */
+    public static long[] cover(int southE7, int westE7, int northE7, int eastE7, int chars, int maxCells) {
+        int bits = 5 * chars;
+        long south = latIndex(encode(southE7, westE7, chars), bits);
+        long west = lonIndex(encode(southE7, westE7, chars), bits);
+        long north = latIndex(encode(northE7, eastE7, chars), bits);
+        long east = lonIndex(encode(northE7, eastE7, chars), bits);
+        if (north < south || east < west) {
+            return new long[0];
+        }
+        long count = (north - south + 1) * (east - west + 1);
+        if (count > maxCells) {
+            return null;
+        }
+        int lonBits = (bits + 1) / 2;
+        int latBits = bits / 2;
+        long[] cells = new long[(int) count];
+        int i = 0;
+        for (long lat = south; lat <= north; lat++) {
+            for (long lon = west; lon <= east; lon++) {
+                cells[i++] = interleave(lat, latBits, lon, lonBits);
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Bounds of a cell in degrees.
+     *
+     * @param out Array of at least 4 elements receiving south, west, north, east
+     */
+    public static void bounds(long cell, int chars, double[] out) {
+        int bits = 5 * chars;
+        int lonBits = (bits + 1) / 2;
+        int latBits = bits / 2;
+        double latSize = 180.0 / (1L << latBits);
+        double lonSize = 360.0 / (1L << lonBits);
+        out[0] = -90.0 + latIndex(cell, bits) * latSize;
+        out[1] = -180.0 + lonIndex(cell, bits) * lonSize;
+        out[2] = out[0] + latSize;
+        out[3] = out[1] + lonSize;
+    }
+
+    /**
+     * Row of the cell (its latitude bits, south = 0).
+     */
+    static long latIndex(long cell, int bits) {
+        return compact(cell >>> (bits & 1));
+    }
+
+    /**
+     * Column of the cell (its longitude bits, west = 0).
+     */
+    static long lonIndex(long cell, int bits) {
+        return compact(cell >>> (1 - (bits & 1)));
+    }
+
+    /**
+     * Index of the 2^n slices a coordinate falls in, as the library's bisection on
+     * value / 1e7 would compute it.
+     */
+    private static long index(int valueE7, long offsetE7, long rangeE7, double halfRangeDegrees, int n) {
+        long slices = 1L << n;
+        long index = ((valueE7 + offsetE7) << n) / rangeE7;
+        if (index >= slices) {
+            return slices - 1;
+        }
+        // value / 1e7 may round up onto the next boundary (a double), where bisection says 1
+        double boundary = -halfRangeDegrees + (index + 1) * (2 * halfRangeDegrees / slices);
+        if (index + 1 < slices && valueE7 / 1e7 >= boundary) {
+            index++;
+        }
+        return index;
+    }
+
+    private static long interleave(long lat, int latBits, long lon, int lonBits) {
+        // The last bit is a longitude bit when lonBits > latBits, else a latitude bit
+        int latShift = lonBits - latBits;
+        return (spread(lat) << latShift) | (spread(lon) << (1 - latShift));
+    }
+
+    /**
+     * Moves bit i of the low 32 bits to bit 2i.
+     */
+    private static long spread(long x) {
+        x &= 0x00000000ffffffffL;
+        x = (x | (x << 16)) & 0x0000ffff0000ffffL;
+        x = (x | (x << 8)) & 0x00ff00ff00ff00ffL;
+        x = (x | (x << 4)) & 0x0f0f0f0f0f0f0f0fL;
+        x = (x | (x << 2)) & 0x3333333333333333L;
+        x = (x | (x << 1)) & 0x5555555555555555L;
+        return x;
+    }
+
+    /**
+     * Moves bit 2i to bit i, dropping the odd bits.
+     */
+    private static long compact(long x) {
+        x &= 0x5555555555555555L;
+        x = (x | (x >>> 1)) & 0x3333333333333333L;
+        x = (x | (x >>> 2)) & 0x0f0f0f0f0f0f0f0fL;
+        x = (x | (x >>> 4)) & 0x00ff00ff00ff00ffL;
+        x = (x | (x >>> 8)) & 0x0000ffff0000ffffL;
+        x = (x | (x >>> 16)) & 0x00000000ffffffffL;
+        return x;
+    }
+
+    private static long mask(int bits) {
+        return (1L << bits) - 1;
+    }
+
+    private static void checkChars(int chars) {
+        if (chars < 1 || chars > MAX_CHARS) {
+            throw new IllegalArgumentException("Geohash precision must be 1 to " + MAX_CHARS + " characters");
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package io.grpc.examples.routeguide.geo;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Blocked Bloom filter of E7 points: answers "definitely absent" or "maybe
+ * present" for a (latitude, longitude) pair.
+ *
+ * Every point sets its bits inside a single 512-bit block, one cache line, so
+ * a lookup costs two to four hashes and at most one cache miss. Each bit
+ * position is its own 9-bit slice of a hash; double hashing over only 512
+ * positions repeats patterns often enough to double the false positive rate.
+ *
+ * Blocking raises the false positive rate over a classic Bloom filter of the
+ * same size, because some blocks get more than their share of points. The
+ * filter is grown until the rate expected with blocking meets the target,
+ * about 5% more bits at 1% and 10% more at 0.1%.
+ *
+ * Adds and lookups are lock-free and may run concurrently; a point is seen by
+ * lookups once add() returns. Points cannot be removed.
+ */
+public final class PointBloomFilter {
+
+    private static final int BLOCK_BITS = 512;
+    private static final int WORDS_PER_BLOCK = BLOCK_BITS / Long.SIZE;
+    private static final double GROWTH = 1.05; // Per sizing step
+    private static final int MAX_HASHES = 16;
+    private static final int BIT_INDEX_BITS = 9; // log2(BLOCK_BITS)
+    // Bit positions taken from one 64-bit hash before mixing the next
+    private static final int BITS_PER_HASH = Long.SIZE / BIT_INDEX_BITS;
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private final AtomicLongArray words;
+    private final int blocks;
+    private final int hashes;
+    private final LongAdder points = new LongAdder();
+
+    /**
+     * @param expectedPoints Points the filter is sized for; more raise the false positive rate
+     * @param falsePositiveRate Target share of absent points reported as maybe present
+     */
+    public PointBloomFilter(long expectedPoints, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be in (0, 1), got " + falsePositiveRate);
+        }
+        long n = Math.max(1, expectedPoints);
+        double bitsPerPoint = -Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        int k = (int) Math.max(1, Math.min(MAX_HASHES, Math.round(bitsPerPoint * Math.log(2))));
+        // Start at the classic size and grow until blocking is paid for
+        double blockCount = Math.max(1, Math.ceil(n * bitsPerPoint / BLOCK_BITS));
+        while (blockedFalsePositiveRate(n / blockCount, k) > falsePositiveRate) {
+            blockCount = Math.ceil(blockCount * GROWTH);
+        }
+        if (blockCount > Integer.MAX_VALUE / WORDS_PER_BLOCK) {
+            throw new IllegalArgumentException("Filter for " + expectedPoints + " points is too large");
+        }
+        this.blocks = (int) blockCount;
+        this.hashes = k;
+        this.words = new AtomicLongArray(blocks * WORDS_PER_BLOCK);
+    }
+
+    public void add(int latitude, int longitude) {
+        long hash = mix(key(latitude, longitude));
+        int base = block(hash) * WORDS_PER_BLOCK;
+        long bits = hash;
+        for (int i = 0; i < hashes; i++) {
+            if (i % BITS_PER_HASH == 0) {
+                bits = mix(bits + GOLDEN_GAMMA);
+            }
+            int bit = (int) (bits >>> (i % BITS_PER_HASH * BIT_INDEX_BITS)) & (BLOCK_BITS - 1);
+            int word = base + (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(word);
+            while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+                current = words.get(word);
+            }
+        }
+        points.increment();
+    }
+
+    /**
+     * @return False if the point was never added; true if it may have been
+     */
+    public boolean mightContain(int latitude, int longitude) {
+        long hash = mix(key(latitude, longitude));
+        int base = block(hash) * WORDS_PER_BLOCK;
+        long bits = hash;
+        for (int i = 0; i < hashes; i++) {
+            if (i % BITS_PER_HASH == 0) {
+                bits = mix(bits + GOLDEN_GAMMA);
+            }
+            int bit = (int) (bits >>> (i % BITS_PER_HASH * BIT_INDEX_BITS)) & (BLOCK_BITS - 1);
+            if ((words.get(base + (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Points added so far, counting repeated points each time.
+     */
+    public long points() {
+        return points.sum();
+    }
+
+    public long sizeInBytes() {
+        return (long) words.length() * Long.BYTES;
+    }
+
+    /**
+     * False positive rate expected for the points added so far.
+     */
+    public double expectedFalsePositiveRate() {
+        return blockedFalsePositiveRate((double) points.sum() / blocks, hashes);
+    }
+
+    /**
+     * False positive rate of a blocked filter: points per block follow a Poisson
+     * distribution, and a block holding j points answers like a classic filter
+     * of BLOCK_BITS bits holding j points.
+     *
+     * @param pointsPerBlock Mean points per block
+     */
+    static double blockedFalsePositiveRate(double pointsPerBlock, int hashes) {
+        if (pointsPerBlock <= 0) {
+            return 0;
+        }
+        double rate = 0;
+        double probability = Math.exp(-pointsPerBlock); // Of a block holding j points
+        double bitClear = 1 - 1.0 / BLOCK_BITS;
+        int maxPoints = (int) Math.ceil(pointsPerBlock + 10 * Math.sqrt(pointsPerBlock) + 10);
+        for (int j = 0; j <= maxPoints; j++) {
+            if (j > 0) {
+                probability *= pointsPerBlock / j;
+            }
+            rate += probability * Math.pow(1 - Math.pow(bitClear, (double) hashes * j), hashes);
+        }
+        return rate;
+    }
+
+    private int block(long hash) {
+        // High bits scaled to the block count; positions in the block use the low bits
+        return (int) (((hash >>> 32) * blocks) >>> 32);
+    }
+
+    private static long key(int latitude, int longitude) {
+        return ((long) latitude << 32) | (longitude & 0xffffffffL);
+    }
+
+    /**
+     * MurmurHash3 finalizer: every key bit affects every hash bit.
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
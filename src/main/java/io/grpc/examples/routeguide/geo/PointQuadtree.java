@@ -0,0 +1,417 @@
+package io.grpc.examples.routeguide.geo;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Region quadtree of values at E7 points, one value per point.
+ *
+ * The globe is split at integer midpoints into quadrants until a leaf holds at
+ * most LEAF_CAPACITY points. Leaves keep coordinates in int arrays, so a query
+ * compares plain ints and emits whole leaves that lie inside the rectangle
+ * without comparing at all.
+ *
+ * Nodes are immutable. A write copies the path from the root to the changed leaf
+ * and publishes the new root, so queries never lock and always see one version
+ * of the tree; writers are serialized. This suits a read-mostly index with rare
+ * updates, where each write costs about depth * LEAF_CAPACITY words.
+ */
+public final class PointQuadtree<V> {
+
+    static final int LEAF_CAPACITY = 32;
+    private static final int MAX_DEPTH = 40;
+    private static final long MIN_LAT = -900_000_000L;
+    private static final long MAX_LAT = 900_000_000L;
+    private static final long MIN_LON = -1_800_000_000L;
+    private static final long MAX_LON = 1_800_000_000L;
+
+    private volatile Node root;
+
+    public PointQuadtree() {
+    }
+
+    private PointQuadtree(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Bulk-load a tree, much faster than putting the values one by one. When several
+     * values share a point, one of them is kept.
+     */
+    public static <V> PointQuadtree<V> build(List<? extends V> values,
+            ToIntFunction<? super V> latitude, ToIntFunction<? super V> longitude) {
+        int[] lats = new int[values.size()];
+        int[] lons = new int[values.size()];
+        Object[] items = new Object[values.size()];
+        int count = 0;
+        for (V value : values) {
+            int lat = latitude.applyAsInt(value);
+            int lon = longitude.applyAsInt(value);
+            if (inRange(lat, lon)) {
+                lats[count] = lat;
+                lons[count] = lon;
+                items[count] = value;
+                count++;
+            }
+        }
+        return new PointQuadtree<>(build(lats, lons, items, 0, count, MIN_LAT, MAX_LAT, MIN_LON, MAX_LON, 0));
+    }
+
+    public int size() {
+        Node node = root;
+        return node == null ? 0 : node.size();
+    }
+
+    /**
+     * @return The value at the point, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int lat, int lon) {
+        Node node = root;
+        long latLo = MIN_LAT;
+        long latHi = MAX_LAT;
+        long lonLo = MIN_LON;
+        long lonHi = MAX_LON;
+        while (node instanceof Branch) {
+            long latMid = Math.floorDiv(latLo + latHi, 2);
+            long lonMid = Math.floorDiv(lonLo + lonHi, 2);
+            node = ((Branch) node).children[quadrant(lat, lon, latMid, lonMid)];
+            if (lat > latMid) {
+                latLo = latMid + 1;
+            } else {
+                latHi = latMid;
+            }
+            if (lon > lonMid) {
+                lonLo = lonMid + 1;
+            } else {
+                lonHi = lonMid;
+            }
+        }
+        if (node == null) {
+            return null;
+        }
+        Leaf leaf = (Leaf) node;
+        int i = leaf.indexOf(lat, lon);
+        return i >= 0 ? (V) leaf.values[i] : null;
+    }
+
+    /**
+     * Set the value at a point, replacing any previous one.
+     *
+     * @throws IllegalArgumentException if the point is outside the globe
+     */
+    public synchronized void put(int lat, int lon, V value) {
+        if (!inRange(lat, lon)) {
+            throw new IllegalArgumentException("Coordinate out of range: " + lat + ", " + lon);
+        }
+        root = put(root, lat, lon, value, MIN_LAT, MAX_LAT, MIN_LON, MAX_LON, 0);
+    }
+
+    /**
+     * Remove the value at a point, if any.
+     */
+    public synchronized void remove(int lat, int lon) {
+        if (inRange(lat, lon)) {
+            root = remove(root, lat, lon, MIN_LAT, MAX_LAT, MIN_LON, MAX_LON);
+        }
+    }
+
+    /**
+     * Hand every value inside the rectangle, edges included, to the consumer.
+     * Runs on the version of the tree current when the query started.
+     */
+    @SuppressWarnings("unchecked")
+    public void query(int latLo, int lonLo, int latHi, int lonHi, Consumer<? super V> consumer) {
+        Node node = root;
+        if (node != null && latLo <= latHi && lonLo <= lonHi) {
+            query(node, MIN_LAT, MAX_LAT, MIN_LON, MAX_LON, latLo, lonLo, latHi, lonHi, (Consumer<Object>) consumer);
+        }
+    }
+
+    private static void query(Node node, long latLo, long latHi, long lonLo, long lonHi,
+            int qLatLo, int qLonLo, int qLatHi, int qLonHi, Consumer<Object> consumer) {
+        boolean inside = latLo >= qLatLo && latHi <= qLatHi && lonLo >= qLonLo && lonHi <= qLonHi;
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            for (int i = 0; i < leaf.values.length; i++) {
+                if (inside || (leaf.lats[i] >= qLatLo && leaf.lats[i] <= qLatHi
+                        && leaf.lons[i] >= qLonLo && leaf.lons[i] <= qLonHi)) {
+                    consumer.accept(leaf.values[i]);
+                }
+            }
+            return;
+        }
+        Node[] children = ((Branch) node).children;
+        long latMid = Math.floorDiv(latLo + latHi, 2);
+        long lonMid = Math.floorDiv(lonLo + lonHi, 2);
+        for (int q = 0; q < 4; q++) {
+            Node child = children[q];
+            if (child == null) {
+                continue;
+            }
+            long cLatLo = (q & 2) == 0 ? latLo : latMid + 1;
+            long cLatHi = (q & 2) == 0 ? latMid : latHi;
+            long cLonLo = (q & 1) == 0 ? lonLo : lonMid + 1;
+            long cLonHi = (q & 1) == 0 ? lonMid : lonHi;
+            if (cLatLo <= qLatHi && cLatHi >= qLatLo && cLonLo <= qLonHi && cLonHi >= qLonLo) {
+                query(child, cLatLo, cLatHi, cLonLo, cLonHi, qLatLo, qLonLo, qLatHi, qLonHi, consumer);
+            }
+        }
+    }
+
+    private static Node put(Node node, int lat, int lon, Object value,
+            long latLo, long latHi, long lonLo, long lonHi, int depth) {
+        if (node == null) {
+            return new Leaf(new int[] {lat}, new int[] {lon}, new Object[] {value});
+        }
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            int i = leaf.indexOf(lat, lon);
+            if (i >= 0) {
+                Object[] values = leaf.values.clone();
+                values[i] = value;
+                return new Leaf(leaf.lats, leaf.lons, values);
+            }
+            int n = leaf.values.length;
+            int[] lats = Arrays.copyOf(leaf.lats, n + 1);
+            int[] lons = Arrays.copyOf(leaf.lons, n + 1);
+            Object[] values = Arrays.copyOf(leaf.values, n + 1);
+            lats[n] = lat;
+            lons[n] = lon;
+            values[n] = value;
+            return build(lats, lons, values, 0, n + 1, latLo, latHi, lonLo, lonHi, depth);
+        }
+        Branch branch = (Branch) node;
+        long latMid = Math.floorDiv(latLo + latHi, 2);
+        long lonMid = Math.floorDiv(lonLo + lonHi, 2);
+        int q = quadrant(lat, lon, latMid, lonMid);
+        Node before = branch.children[q];
+        Node after = put(before, lat, lon, value,
+            lat > latMid ? latMid + 1 : latLo, lat > latMid ? latHi : latMid,
+            lon > lonMid ? lonMid + 1 : lonLo, lon > lonMid ? lonHi : lonMid, depth + 1);
+        Node[] children = branch.children.clone();
+        children[q] = after;
+        return new Branch(children, branch.size + after.size() - (before == null ? 0 : before.size()));
+    }
+
+    private static Node remove(Node node, int lat, int lon, long latLo, long latHi, long lonLo, long lonHi) {
+        if (node == null) {
+            return null;
+        }
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            int i = leaf.indexOf(lat, lon);
+            if (i < 0) {
+                return leaf;
+            }
+            int n = leaf.values.length - 1;
+            if (n == 0) {
+                return null;
+            }
+            int[] lats = new int[n];
+            int[] lons = new int[n];
+            Object[] values = new Object[n];
+            System.arraycopy(leaf.lats, 0, lats, 0, i);
+            System.arraycopy(leaf.lats, i + 1, lats, i, n - i);
+            System.arraycopy(leaf.lons, 0, lons, 0, i);
+            System.arraycopy(leaf.lons, i + 1, lons, i, n - i);
+            System.arraycopy(leaf.values, 0, values, 0, i);
+            System.arraycopy(leaf.values, i + 1, values, i, n - i);
+            return new Leaf(lats, lons, values);
+        }
+        Branch branch = (Branch) node;
+        long latMid = Math.floorDiv(latLo + latHi, 2);
+        long lonMid = Math.floorDiv(lonLo + lonHi, 2);
+        int q = quadrant(lat, lon, latMid, lonMid);
+        Node before = branch.children[q];
+        Node after = remove(before, lat, lon,
+            lat > latMid ? latMid + 1 : latLo, lat > latMid ? latHi : latMid,
+            lon > lonMid ? lonMid + 1 : lonLo, lon > lonMid ? lonHi : lonMid);
+        if (after == before) {
+            return branch;
+        }
+        int size = branch.size - 1;
+        if (size == 0) {
+            return null;
+        }
+        Node[] children = branch.children.clone();
+        children[q] = after;
+        Branch updated = new Branch(children, size);
+        return size <= LEAF_CAPACITY / 2 ? updated.flatten() : updated;
+    }
+
+    /**
+     * Build the subtree for points [from, to) of the arrays, reordering them in place.
+     */
+    private static Node build(int[] lats, int[] lons, Object[] values, int from, int to,
+            long latLo, long latHi, long lonLo, long lonHi, int depth) {
+        int n = to - from;
+        if (n == 0) {
+            return null;
+        }
+        if (n <= LEAF_CAPACITY || depth >= MAX_DEPTH || (latLo == latHi && lonLo == lonHi)) {
+            return Leaf.distinct(lats, lons, values, from, to);
+        }
+        long latMid = Math.floorDiv(latLo + latHi, 2);
+        long lonMid = Math.floorDiv(lonLo + lonHi, 2);
+        // South half first, then west before east within each half
+        int north = partition(lats, lons, values, from, to, true, latMid);
+        int southEast = partition(lats, lons, values, from, north, false, lonMid);
+        int northEast = partition(lats, lons, values, north, to, false, lonMid);
+
+        Node[] children = new Node[4];
+        children[0] = build(lats, lons, values, from, southEast, latLo, latMid, lonLo, lonMid, depth + 1);
+        children[1] = build(lats, lons, values, southEast, north, latLo, latMid, lonMid + 1, lonHi, depth + 1);
+        children[2] = build(lats, lons, values, north, northEast, latMid + 1, latHi, lonLo, lonMid, depth + 1);
+        children[3] = build(lats, lons, values, northEast, to, latMid + 1, latHi, lonMid + 1, lonHi, depth + 1);
+        int size = 0;
+        for (Node child : children) {
+            size += child == null ? 0 : child.size();
+        }
+        return new Branch(children, size);
+    }
+
+    /**
+     * Move points with coordinate <= mid before the others.
+     *
+     * @return Index of the first point with coordinate > mid
+     */
+    private static int partition(int[] lats, int[] lons, Object[] values, int from, int to,
+            boolean byLatitude, long mid) {
+        int[] keys = byLatitude ? lats : lons;
+        int i = from;
+        int j = to - 1;
+        while (i <= j) {
+            if (keys[i] <= mid) {
+                i++;
+            } else {
+                swap(lats, lons, values, i, j--);
+            }
+        }
+        return i;
+    }
+
+    private static void swap(int[] lats, int[] lons, Object[] values, int i, int j) {
+        int lat = lats[i];
+        lats[i] = lats[j];
+        lats[j] = lat;
+        int lon = lons[i];
+        lons[i] = lons[j];
+        lons[j] = lon;
+        Object value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+
+    private static int quadrant(int lat, int lon, long latMid, long lonMid) {
+        return (lat > latMid ? 2 : 0) | (lon > lonMid ? 1 : 0);
+    }
+
+    private static boolean inRange(int lat, int lon) {
+        return lat >= MIN_LAT && lat <= MAX_LAT && lon >= MIN_LON && lon <= MAX_LON;
+    }
+
+    private abstract static class Node {
+        abstract int size();
+    }
+
+    /**
+     * Quadrants indexed SW, SE, NW, NE; null where empty.
+     */
+    private static final class Branch extends Node {
+        final Node[] children;
+        final int size;
+
+        Branch(Node[] children, int size) {
+            this.children = children;
+            this.size = size;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        Leaf flatten() {
+            int[] lats = new int[size];
+            int[] lons = new int[size];
+            Object[] values = new Object[size];
+            int[] count = new int[1];
+            collect(this, lats, lons, values, count);
+            return new Leaf(lats, lons, values);
+        }
+
+        private static void collect(Node node, int[] lats, int[] lons, Object[] values, int[] count) {
+            if (node instanceof Leaf) {
+                Leaf leaf = (Leaf) node;
+                int n = leaf.values.length;
+                System.arraycopy(leaf.lats, 0, lats, count[0], n);
+                System.arraycopy(leaf.lons, 0, lons, count[0], n);
+                System.arraycopy(leaf.values, 0, values, count[0], n);
+                count[0] += n;
+            } else if (node != null) {
+                for (Node child : ((Branch) node).children) {
+                    collect(child, lats, lons, values, count);
+                }
+            }
+        }
+    }
+
+    /**
+     * Up to LEAF_CAPACITY points in exactly sized arrays (more only at MAX_DEPTH).
+     */
+    private static final class Leaf extends Node {
+        final int[] lats;
+        final int[] lons;
+        final Object[] values;
+
+        Leaf(int[] lats, int[] lons, Object[] values) {
+            this.lats = lats;
+            this.lons = lons;
+            this.values = values;
+        }
+
+        /**
+         * Leaf of points [from, to) of the arrays, keeping one value per point.
+         */
+        static Leaf distinct(int[] lats, int[] lons, Object[] values, int from, int to) {
+            int[] leafLats = new int[to - from];
+            int[] leafLons = new int[to - from];
+            Object[] leafValues = new Object[to - from];
+            int n = 0;
+            for (int i = from; i < to; i++) {
+                int j = 0;
+                while (j < n && (leafLats[j] != lats[i] || leafLons[j] != lons[i])) {
+                    j++;
+                }
+                leafLats[j] = lats[i];
+                leafLons[j] = lons[i];
+                leafValues[j] = values[i];
+                if (j == n) {
+                    n++;
+                }
+            }
+            if (n < to - from) {
+                return new Leaf(Arrays.copyOf(leafLats, n), Arrays.copyOf(leafLons, n),
+                    Arrays.copyOf(leafValues, n));
+            }
+            return new Leaf(leafLats, leafLons, leafValues);
+        }
+
+        @Override
+        int size() {
+            return values.length;
+        }
+
+        int indexOf(int lat, int lon) {
+            for (int i = 0; i < lats.length; i++) {
+                if (lats[i] == lat && lons[i] == lon) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package io.grpc.examples.routeguide.header;
 
+import java.util.UUID;
 import java.util.logging.Logger;
 
 import io.grpc.CallOptions;
@@ -11,6 +12,11 @@ import io.grpc.ForwardingClientCall.SimpleForwardingClientCall;
 import io.grpc.ForwardingClientCallListener.SimpleForwardingClientCallListener;
 import io.grpc.Metadata;
 
+/**
+ * Sends custom_client_header_key with every call. Its value identifies this
+ * client process, so the server's per-client rate limits give each client
+ * its own budget.
+ */
 public class HeaderClientInterceptor implements ClientInterceptor{
 
     private static final Logger logger = Logger.getLogger(HeaderClientInterceptor.class.getName());
@@ -18,6 +24,9 @@ public class HeaderClientInterceptor implements ClientInterceptor{
     static final Metadata.Key<String> CUSTOM_HEADER_KEY =
       Metadata.Key.of("custom_client_header_key", Metadata.ASCII_STRING_MARSHALLER);
 
+    // One id for all interceptors of this process, including each shard's
+    private static final String CLIENT_ID = "routeguide-client-" + UUID.randomUUID();
+
     @Override
     public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
             CallOptions callOptions, Channel next) {
@@ -27,7 +36,7 @@ public class HeaderClientInterceptor implements ClientInterceptor{
             @Override
             public void start(Listener<RespT> responseListener, Metadata headers) {
                 /* put custom header */
-                headers.put(CUSTOM_HEADER_KEY, "customRequestValue");
+                headers.put(CUSTOM_HEADER_KEY, CLIENT_ID);
                 super.start(new SimpleForwardingClientCallListener<RespT>(responseListener) {
                 @Override
                 public void onHeaders(Metadata headers) {
@@ -0,0 +1,68 @@
+package io.grpc.examples.routeguide.header;
+
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.ForwardingServerCall.SimpleForwardingServerCall;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCall.Listener;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+
+/**
+ * Marks responses served from stale data with a response header holding the
+ * age of that data in milliseconds, so clients can tell a fallback answer from
+ * a fresh one.
+ *
+ * Code answering a call reports stale data with markStale(); the header goes
+ * out with the first response message.
+ */
+public class StaleResponseInterceptor implements ServerInterceptor {
+
+    public static final Metadata.Key<String> STALE_AGE_HEADER_KEY =
+        Metadata.Key.of("route-guide-stale-age-ms", Metadata.ASCII_STRING_MARSHALLER);
+
+    private static final Context.Key<StaleAge> STALE_AGE = Context.key("route-guide-stale-age");
+
+    /**
+     * Oldest stale data used by one call, -1 while all of it is fresh.
+     */
+    private static final class StaleAge {
+        volatile long millis = -1;
+    }
+
+    /**
+     * Record that the current call is being answered from data of the given age.
+     * Does nothing outside an intercepted call.
+     */
+    public static void markStale(long ageMillis) {
+        StaleAge staleAge = STALE_AGE.get();
+        if (staleAge != null) {
+            staleAge.millis = Math.max(staleAge.millis, ageMillis);
+        }
+    }
+
+    /**
+     * Whether the current call has been answered from stale data so far.
+     */
+    public static boolean isStale() {
+        StaleAge staleAge = STALE_AGE.get();
+        return staleAge != null && staleAge.millis >= 0;
+    }
+
+    @Override
+    public <ReqT, RespT> Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+            ServerCallHandler<ReqT, RespT> next) {
+        StaleAge staleAge = new StaleAge();
+        Context context = Context.current().withValue(STALE_AGE, staleAge);
+        return Contexts.interceptCall(context, new SimpleForwardingServerCall<ReqT, RespT>(call) {
+            @Override
+            public void sendHeaders(Metadata responseHeaders) {
+                if (staleAge.millis >= 0) {
+                    responseHeaders.put(STALE_AGE_HEADER_KEY, Long.toString(staleAge.millis));
+                }
+                super.sendHeaders(responseHeaders);
+            }
+        }, headers, next);
+    }
+}
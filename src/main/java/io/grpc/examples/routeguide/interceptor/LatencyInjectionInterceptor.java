@@ -8,6 +8,8 @@ import io.grpc.ServerCall;
 import io.grpc.ServerCall.Listener;
 import io.grpc.ServerCallHandler;
 import io.grpc.ServerInterceptor;
+import io.grpc.examples.routeguide.tracing.Span;
+import io.grpc.examples.routeguide.tracing.Tracer;
 
 public class LatencyInjectionInterceptor implements ServerInterceptor{
 
@@ -28,7 +30,8 @@ public class LatencyInjectionInterceptor implements ServerInterceptor{
 
         if (delay > 0) {
             logger.info("Injecting " + delay + "ms delay for " + call.getMethodDescriptor().getFullMethodName());
-            try {
+            try (Span span = Tracer.getDefault().startSpan("latency_injection")) {
+                span.setAttribute("delay_ms", delay);
                 Thread.sleep(delay);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
@@ -0,0 +1,212 @@
+package io.grpc.examples.routeguide.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Streaming heavy-hitters tracker for geohash cells.
+ *
+ * Reads and writes per cell are counted in count-min sketches, so memory stays fixed
+ * no matter how many distinct cells are touched. Alongside, the top-k cells by total
+ * traffic are kept as candidates. Counts are windowed: rotate() starts a new window
+ * and rates are computed over the previous and current window together.
+ */
+public class HotCellTracker {
+
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_WIDTH = 4096;
+
+    private final int topK;
+    private final long windowNanos;
+
+    private volatile Window current;
+    private volatile Window previous;
+
+    /**
+     * @param topK Number of hottest cells to keep track of
+     * @param window Length of one counting window
+     * @param unit Unit of window
+     */
+    public HotCellTracker(int topK, long window, TimeUnit unit) {
+        this.topK = topK;
+        this.windowNanos = unit.toNanos(window);
+        this.current = new Window(System.nanoTime());
+        this.previous = null;
+    }
+
+    public void recordRead(String cell) {
+        current.record(cell, false);
+    }
+
+    public void recordWrite(String cell) {
+        current.record(cell, true);
+    }
+
+    /**
+     * Close the current window and start a new one. Call once per window length.
+     */
+    public void rotate() {
+        Window next = new Window(System.nanoTime());
+        previous = current;
+        current = next;
+    }
+
+    public long windowMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(windowNanos);
+    }
+
+    /**
+     * Hottest cells over the previous and current window, by total rate, descending.
+     * At most topK cells per window are tracked.
+     */
+    public List<CellRate> topCells(int limit) {
+        Window now = current;
+        Window before = previous;
+
+        Set<String> candidates = new HashSet<>(now.candidates.keySet());
+        if (before != null) {
+            candidates.addAll(before.candidates.keySet());
+        }
+
+        long elapsedNanos = System.nanoTime() - now.startNanos + (before != null ? windowNanos : 0);
+        double seconds = Math.max(1e-3, elapsedNanos / 1e9);
+
+        List<CellRate> rates = new ArrayList<>();
+        for (String cell : candidates) {
+            long reads = now.reads.estimate(cell) + (before != null ? before.reads.estimate(cell) : 0);
+            long writes = now.writes.estimate(cell) + (before != null ? before.writes.estimate(cell) : 0);
+            rates.add(new CellRate(cell, reads / seconds, writes / seconds));
+        }
+        rates.sort(Comparator.comparingDouble(CellRate::totalPerSecond).reversed());
+        return rates.size() > limit ? new ArrayList<>(rates.subList(0, limit)) : rates;
+    }
+
+    /**
+     * Estimated reads plus writes of the cell over the previous and current
+     * window. Never below the true count.
+     */
+    long estimatedCount(String cell) {
+        Window now = current;
+        Window before = previous;
+        return now.total.estimate(cell) + (before != null ? before.total.estimate(cell) : 0);
+    }
+
+    /**
+     * Estimated traffic of one cell.
+     */
+    public static final class CellRate {
+        private final String cell;
+        private final double readsPerSecond;
+        private final double writesPerSecond;
+
+        CellRate(String cell, double readsPerSecond, double writesPerSecond) {
+            this.cell = cell;
+            this.readsPerSecond = readsPerSecond;
+            this.writesPerSecond = writesPerSecond;
+        }
+
+        public String getCell() {
+            return cell;
+        }
+
+        public double getReadsPerSecond() {
+            return readsPerSecond;
+        }
+
+        public double getWritesPerSecond() {
+            return writesPerSecond;
+        }
+
+        public double totalPerSecond() {
+            return readsPerSecond + writesPerSecond;
+        }
+    }
+
+    /**
+     * Sketches and top-k candidates for one counting window.
+     */
+    private final class Window {
+        final long startNanos;
+        final CountMinSketch reads = new CountMinSketch();
+        final CountMinSketch writes = new CountMinSketch();
+        final CountMinSketch total = new CountMinSketch();
+        final Map<String, Long> candidates = new ConcurrentHashMap<>();
+        volatile long admissionThreshold;
+
+        Window(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        void record(String cell, boolean write) {
+            (write ? writes : reads).add(cell);
+            long estimate = total.add(cell);
+            // Existing candidates are refreshed without taking the lock
+            if (candidates.replace(cell, estimate) == null && estimate > admissionThreshold) {
+                offer(cell, estimate);
+            }
+        }
+
+        /**
+         * Keep the cell if it is among the k heaviest seen in this window.
+         */
+        synchronized void offer(String cell, long estimate) {
+            candidates.put(cell, estimate);
+            if (candidates.size() <= topK) {
+                return;
+            }
+            String lightest = null;
+            long lightestCount = Long.MAX_VALUE;
+            for (Map.Entry<String, Long> entry : candidates.entrySet()) {
+                if (entry.getValue() < lightestCount) {
+                    lightest = entry.getKey();
+                    lightestCount = entry.getValue();
+                }
+            }
+            candidates.remove(lightest);
+            admissionThreshold = lightestCount;
+        }
+    }
+
+    /**
+     * Count-min sketch with SKETCH_DEPTH rows of SKETCH_WIDTH counters.
+     */
+    private static final class CountMinSketch {
+        private final AtomicLongArray counters = new AtomicLongArray(SKETCH_DEPTH * SKETCH_WIDTH);
+
+        /**
+         * Increment the cell and return its new estimated count.
+         */
+        long add(String cell) {
+            int hash = cell.hashCode();
+            long estimate = Long.MAX_VALUE;
+            for (int row = 0; row < SKETCH_DEPTH; row++) {
+                long count = counters.incrementAndGet(index(hash, row));
+                estimate = Math.min(estimate, count);
+            }
+            return estimate;
+        }
+
+        long estimate(String cell) {
+            int hash = cell.hashCode();
+            long estimate = Long.MAX_VALUE;
+            for (int row = 0; row < SKETCH_DEPTH; row++) {
+                estimate = Math.min(estimate, counters.get(index(hash, row)));
+            }
+            return estimate;
+        }
+
+        private static int index(int hash, int row) {
+            // Independent-enough row hashes from one 32-bit hash
+            int h = hash * (0x9E3779B1 + 2 * row) + row * 0x85EBCA6B;
+            h ^= h >>> 15;
+            return row * SKETCH_WIDTH + (h & (SKETCH_WIDTH - 1));
+        }
+    }
+}
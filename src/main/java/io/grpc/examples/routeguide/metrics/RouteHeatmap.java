@@ -0,0 +1,289 @@
+package io.grpc.examples.routeguide.metrics;
+
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.Rectangle;
+import io.grpc.examples.routeguide.geo.GeoHashCodec;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live visit counts from all RecordRoute streams, per geohash cell and per feature.
+ *
+ * Each point is packed into a 35-bit geohash cell id (7 characters, ~150m) and counted in
+ * a LongAdder, which stripes increments across cells so concurrent streams hitting
+ * the same cell do not contend. Counts go into the current time window; rotate()
+ * closes it, and the last windowCount windows are kept for queries. Coarser cells
+ * are derived at query time by dropping low bits, since a geohash prefix is a
+ * containing cell.
+ *
+ * Each window tracks at most maxKeys cells and features; visits to further keys
+ * are counted in heatmap.dropped_points only, which bounds memory on wide routes.
+ */
+public class RouteHeatmap {
+
+    public static final int MAX_PRECISION = 7;
+
+    private final long windowMillis;
+    private final int windowCount;
+    private final int maxKeys;
+
+    private volatile Window current;
+    private final ArrayDeque<Window> closed = new ArrayDeque<>(); // Newest first, guarded by this
+
+    private final LongAdder dropped = MetricsRegistry.getDefault().counter("heatmap.dropped_points");
+    private final LongAdder recorded = MetricsRegistry.getDefault().counter("heatmap.points");
+
+    /**
+     * @param window Length of one window
+     * @param unit Unit of window
+     * @param windowCount Windows kept, including the current one
+     * @param maxKeys Most cells, and most features, counted per window
+     */
+    public RouteHeatmap(long window, TimeUnit unit, int windowCount, int maxKeys) {
+        this.windowMillis = unit.toMillis(window);
+        this.windowCount = Math.max(1, windowCount);
+        this.maxKeys = maxKeys;
+        this.current = new Window(System.currentTimeMillis());
+    }
+
+    public long windowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * Count a visit to point. Called on the RecordRoute hot path.
+     *
+     * @param isFeature Whether a feature exists at the point
+     */
+    public void record(Point point, boolean isFeature) {
+        int lat = point.getLatitude();
+        int lon = point.getLongitude();
+        if (lat < -900_000_000 || lat > 900_000_000 || lon < -1_800_000_000 || lon > 1_800_000_000) {
+            return;
+        }
+        Window window = current;
+        if (!increment(window.cells, GeoHashCodec.encode(lat, lon, MAX_PRECISION))) {
+            dropped.increment();
+            return;
+        }
+        if (isFeature) {
+            increment(window.features, ((long) lat << 32) | (lon & 0xffffffffL));
+        }
+        recorded.increment();
+    }
+
+    /**
+     * Close the current window and start a new one. Call once per window length.
+     */
+    public synchronized void rotate() {
+        Window previous = current;
+        current = new Window(System.currentTimeMillis());
+        previous.endMillis = current.startMillis;
+        closed.addFirst(previous);
+        while (closed.size() > windowCount - 1) {
+            closed.removeLast();
+        }
+    }
+
+    /**
+     * Drop all counts.
+     */
+    public synchronized void clear() {
+        closed.clear();
+        current = new Window(System.currentTimeMillis());
+    }
+
+    /**
+     * Busiest cells and features in an area.
+     *
+     * @param area Area to report, null for everywhere
+     * @param precision Geohash characters per cell, 1 to MAX_PRECISION
+     * @param lookbackMillis Windows ending before now - lookbackMillis are left out; 0 for all
+     * @param limit Most cells and most features returned
+     */
+    public Snapshot query(Rectangle area, int precision, long lookbackMillis, int limit) {
+        int chars = Math.max(1, Math.min(MAX_PRECISION, precision));
+        int shift = 5 * (MAX_PRECISION - chars);
+        long now = System.currentTimeMillis();
+
+        List<Window> windows = new ArrayList<>();
+        synchronized (this) {
+            windows.add(current);
+            for (Window window : closed) {
+                if (lookbackMillis > 0 && window.endMillis < now - lookbackMillis) {
+                    break;
+                }
+                windows.add(window);
+            }
+        }
+
+        Map<Long, Long> cells = new HashMap<>();
+        Map<Long, Long> features = new HashMap<>();
+        for (Window window : windows) {
+            window.cells.forEach((cell, count) -> cells.merge(cell >>> shift, count.sum(), Long::sum));
+            window.features.forEach((point, count) -> features.merge(point, count.sum(), Long::sum));
+        }
+
+        double[] bounds = area != null ? degrees(area) : null;
+        long total = 0;
+        List<CellCount> cellCounts = new ArrayList<>();
+        for (Map.Entry<Long, Long> entry : cells.entrySet()) {
+            if (bounds == null || intersects(entry.getKey(), chars, bounds)) {
+                total += entry.getValue();
+                cellCounts.add(new CellCount(GeoHashCodec.toBase32(entry.getKey(), chars), entry.getValue()));
+            }
+        }
+        List<PointCount> pointCounts = new ArrayList<>();
+        for (Map.Entry<Long, Long> entry : features.entrySet()) {
+            int lat = (int) (entry.getKey() >> 32);
+            int lon = (int) (long) entry.getKey();
+            if (bounds == null || contains(bounds, lat / 1e7, lon / 1e7)) {
+                pointCounts.add(new PointCount(lat, lon, entry.getValue()));
+            }
+        }
+        cellCounts.sort(Comparator.comparingLong(CellCount::getVisits).reversed());
+        pointCounts.sort(Comparator.comparingLong(PointCount::getVisits).reversed());
+
+        long covered = now - windows.get(windows.size() - 1).startMillis;
+        return new Snapshot(
+            cellCounts.size() > limit ? new ArrayList<>(cellCounts.subList(0, limit)) : cellCounts,
+            pointCounts.size() > limit ? new ArrayList<>(pointCounts.subList(0, limit)) : pointCounts,
+            covered, total);
+    }
+
+    private boolean increment(ConcurrentHashMap<Long, LongAdder> counters, long key) {
+        LongAdder counter = counters.get(key);
+        if (counter == null) {
+            if (counters.size() >= maxKeys) {
+                return false;
+            }
+            counter = counters.computeIfAbsent(key, k -> new LongAdder());
+        }
+        counter.increment();
+        return true;
+    }
+
+    /**
+     * Whether a cell of chars characters overlaps bounds {south, west, north, east}.
+     */
+    private static boolean intersects(long cell, int chars, double[] bounds) {
+        double[] box = new double[4];
+        GeoHashCodec.bounds(cell, chars, box);
+        return box[0] <= bounds[2] && box[2] >= bounds[0] && box[1] <= bounds[3] && box[3] >= bounds[1];
+    }
+
+    private static double[] degrees(Rectangle area) {
+        int lo = Math.min(area.getLo().getLatitude(), area.getHi().getLatitude());
+        int hi = Math.max(area.getLo().getLatitude(), area.getHi().getLatitude());
+        int left = Math.min(area.getLo().getLongitude(), area.getHi().getLongitude());
+        int right = Math.max(area.getLo().getLongitude(), area.getHi().getLongitude());
+        return new double[] {lo / 1e7, left / 1e7, hi / 1e7, right / 1e7};
+    }
+
+    private static boolean contains(double[] bounds, double lat, double lon) {
+        return lat >= bounds[0] && lat <= bounds[2] && lon >= bounds[1] && lon <= bounds[3];
+    }
+
+    /**
+     * Counters of one time window.
+     */
+    private static final class Window {
+        final long startMillis;
+        volatile long endMillis = Long.MAX_VALUE;
+        final ConcurrentHashMap<Long, LongAdder> cells = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<Long, LongAdder> features = new ConcurrentHashMap<>();
+
+        Window(long startMillis) {
+            this.startMillis = startMillis;
+        }
+    }
+
+    /**
+     * Result of a query.
+     */
+    public static final class Snapshot {
+        private final List<CellCount> cells;
+        private final List<PointCount> features;
+        private final long coveredMillis;
+        private final long totalVisits;
+
+        Snapshot(List<CellCount> cells, List<PointCount> features, long coveredMillis, long totalVisits) {
+            this.cells = cells;
+            this.features = features;
+            this.coveredMillis = coveredMillis;
+            this.totalVisits = totalVisits;
+        }
+
+        public List<CellCount> getCells() {
+            return cells;
+        }
+
+        public List<PointCount> getFeatures() {
+            return features;
+        }
+
+        public long getCoveredMillis() {
+            return coveredMillis;
+        }
+
+        public long getTotalVisits() {
+            return totalVisits;
+        }
+    }
+
+    /**
+     * Visits to one geohash cell.
+     */
+    public static final class CellCount {
+        private final String geoHash;
+        private final long visits;
+
+        CellCount(String geoHash, long visits) {
+            this.geoHash = geoHash;
+            this.visits = visits;
+        }
+
+        public String getGeoHash() {
+            return geoHash;
+        }
+
+        public long getVisits() {
+            return visits;
+        }
+    }
+
+    /**
+     * Visits to one feature location.
+     */
+    public static final class PointCount {
+        private final int latitude;
+        private final int longitude;
+        private final long visits;
+
+        PointCount(int latitude, int longitude, long visits) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.visits = visits;
+        }
+
+        public int getLatitude() {
+            return latitude;
+        }
+
+        public int getLongitude() {
+            return longitude;
+        }
+
+        public long getVisits() {
+            return visits;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package io.grpc.examples.routeguide.ratelimit;
+
+import io.grpc.examples.routeguide.metrics.MetricsRegistry;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token buckets per client and kind of work.
+ *
+ * Client state lives in a ConcurrentHashMap, so lookups of known clients take
+ * no lock and updates only contend when the same client calls concurrently.
+ * evictIdle() drops clients whose buckets have all refilled and that were not
+ * seen for idleNanos; since a full bucket equals a new one, evicting loses
+ * nothing. Once maxClients are tracked, further clients share one overflow
+ * bucket until eviction makes room, which bounds memory against callers that
+ * invent a new client id per call.
+ */
+public class ClientRateLimiter {
+
+    /**
+     * What a call spends tokens on; each has its own rate.
+     */
+    public enum Kind {
+        READ,
+        UPDATE,
+        POINT
+    }
+
+    private static final String OVERFLOW_CLIENT = "";
+
+    private final TokenBucket[] buckets; // By Kind ordinal, null for unlimited
+    private final long idleNanos;
+    private final int maxClients;
+    private final ConcurrentHashMap<String, ClientState> clients = new ConcurrentHashMap<>();
+
+    private final LongAdder[] rejected = new LongAdder[Kind.values().length];
+    private final LongAdder evicted = MetricsRegistry.getDefault().counter("rateLimit.evicted_clients");
+    private final LongAdder overflowed = MetricsRegistry.getDefault().counter("rateLimit.overflow_calls");
+
+    /**
+     * @param buckets Rate per Kind ordinal; null leaves that kind unlimited
+     * @param idleNanos How long a client with full buckets is kept
+     * @param maxClients Clients tracked individually
+     */
+    public ClientRateLimiter(TokenBucket[] buckets, long idleNanos, int maxClients) {
+        if (buckets.length != Kind.values().length) {
+            throw new IllegalArgumentException("Need one bucket per kind, got " + buckets.length);
+        }
+        this.buckets = buckets.clone();
+        this.idleNanos = idleNanos;
+        this.maxClients = maxClients;
+        for (Kind kind : Kind.values()) {
+            rejected[kind.ordinal()] = MetricsRegistry.getDefault()
+                .counter("rateLimit.rejected." + kind.name().toLowerCase());
+        }
+        MetricsRegistry.getDefault().gauge("rateLimit.clients", clients::mappingCount);
+    }
+
+    public boolean isLimited(Kind kind) {
+        return buckets[kind.ordinal()] != null;
+    }
+
+    /**
+     * Spend permits tokens of the client's kind bucket.
+     *
+     * @return 0 if allowed, otherwise nanoseconds until the call would be
+     */
+    public long tryAcquire(String client, Kind kind, int permits) {
+        TokenBucket bucket = buckets[kind.ordinal()];
+        if (bucket == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        ClientState state = clients.get(client);
+        if (state == null) {
+            state = newClient(client, now);
+        }
+        state.lastSeen = now;
+        long wait = bucket.tryAcquire(state.buckets[kind.ordinal()], now, permits);
+        if (wait > 0) {
+            rejected[kind.ordinal()].increment();
+        }
+        return wait;
+    }
+
+    /**
+     * Forget clients that were idle for idleNanos and whose buckets are full.
+     *
+     * @return Number of clients evicted
+     */
+    public int evictIdle() {
+        long now = System.nanoTime();
+        int count = 0;
+        for (ClientState state : clients.values()) {
+            if (now - state.lastSeen > idleNanos && state.isFull(now)
+                    && clients.remove(state.client, state)) {
+                count++;
+            }
+        }
+        evicted.add(count);
+        return count;
+    }
+
+    public long size() {
+        return clients.mappingCount();
+    }
+
+    private ClientState newClient(String client, long now) {
+        if (clients.mappingCount() >= maxClients) {
+            overflowed.increment();
+            client = OVERFLOW_CLIENT;
+        }
+        return clients.computeIfAbsent(client, key -> new ClientState(key, now));
+    }
+
+    private static final class ClientState {
+
+        final String client;
+        final AtomicLong[] buckets = new AtomicLong[Kind.values().length];
+        volatile long lastSeen;
+
+        ClientState(String client, long now) {
+            this.client = client;
+            this.lastSeen = now;
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = TokenBucket.newState(now);
+            }
+        }
+
+        boolean isFull(long now) {
+            for (AtomicLong bucket : buckets) {
+                if (!TokenBucket.isFull(bucket, now)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
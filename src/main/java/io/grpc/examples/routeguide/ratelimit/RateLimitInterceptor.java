@@ -0,0 +1,136 @@
+package io.grpc.examples.routeguide.ratelimit;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import io.grpc.ForwardingServerCallListener.SimpleForwardingServerCallListener;
+import io.grpc.Grpc;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCall.Listener;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import io.grpc.examples.routeguide.RouteGuideGrpc;
+
+/**
+ * Rejects RouteGuide calls from clients that exceed their rate.
+ *
+ * Clients are told apart by a request header (custom_client_header_key unless
+ * configured otherwise), or by their address when they do not send it or send
+ * the fixed value older RouteGuideClients sent, which every client would share.
+ * UpdateFeature spends an update token, ImportFeatures one update token per
+ * imported feature, RecordRoute one point token per streamed point, and every
+ * other call a read token. A rejected call fails with RESOURCE_EXHAUSTED and
+ * trailers saying how long to back off: retry-after-ms for applications and
+ * grpc-retry-pushback-ms, which gRPC's retry and hedging policies honour. A
+ * RecordRoute or ImportFeatures stream is cut off at the first message over
+ * the limit; features already imported stay written.
+ */
+public class RateLimitInterceptor implements ServerInterceptor {
+
+    public static final Metadata.Key<String> RETRY_AFTER_MS_KEY =
+        Metadata.Key.of("retry-after-ms", Metadata.ASCII_STRING_MARSHALLER);
+    static final Metadata.Key<String> RETRY_PUSHBACK_MS_KEY =
+        Metadata.Key.of("grpc-retry-pushback-ms", Metadata.ASCII_STRING_MARSHALLER);
+
+    private static final int MAX_CLIENT_ID_LENGTH = 128;
+    // Sent by every RouteGuideClient before clients sent their own id
+    private static final String SHARED_CLIENT_ID = "customRequestValue";
+    private static final String UPDATE_FEATURE = RouteGuideGrpc.getUpdateFeatureMethod().getFullMethodName();
+    private static final String IMPORT_FEATURES = RouteGuideGrpc.getImportFeaturesMethod().getFullMethodName();
+    private static final String RECORD_ROUTE = RouteGuideGrpc.getRecordRouteMethod().getFullMethodName();
+
+    private final ClientRateLimiter limiter;
+    private final Metadata.Key<String> clientIdKey;
+
+    /**
+     * @param clientIdHeader Request header identifying the client
+     */
+    public RateLimitInterceptor(ClientRateLimiter limiter, String clientIdHeader) {
+        this.limiter = limiter;
+        this.clientIdKey = Metadata.Key.of(clientIdHeader, Metadata.ASCII_STRING_MARSHALLER);
+    }
+
+    @Override
+    public <ReqT, RespT> Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+            ServerCallHandler<ReqT, RespT> next) {
+        String method = call.getMethodDescriptor().getFullMethodName();
+        if (method.equals(RECORD_ROUTE) || method.equals(IMPORT_FEATURES)) {
+            ClientRateLimiter.Kind kind = method.equals(RECORD_ROUTE)
+                ? ClientRateLimiter.Kind.POINT
+                : ClientRateLimiter.Kind.UPDATE;
+            if (!limiter.isLimited(kind)) {
+                return next.startCall(call, headers);
+            }
+            return limitMessages(call, headers, next, clientId(call, headers), kind);
+        }
+
+        ClientRateLimiter.Kind kind = method.equals(UPDATE_FEATURE)
+            ? ClientRateLimiter.Kind.UPDATE
+            : ClientRateLimiter.Kind.READ;
+        if (limiter.isLimited(kind)) {
+            long wait = limiter.tryAcquire(clientId(call, headers), kind, 1);
+            if (wait > 0) {
+                reject(call, kind, wait);
+                return new Listener<ReqT>() { };
+            }
+        }
+        return next.startCall(call, headers);
+    }
+
+    /**
+     * Charge one token of the kind per streamed request message.
+     */
+    private <ReqT, RespT> Listener<ReqT> limitMessages(ServerCall<ReqT, RespT> call, Metadata headers,
+            ServerCallHandler<ReqT, RespT> next, String client, ClientRateLimiter.Kind kind) {
+        return new SimpleForwardingServerCallListener<ReqT>(next.startCall(call, headers)) {
+
+            boolean rejected;
+
+            @Override
+            public void onMessage(ReqT message) {
+                if (rejected) {
+                    return;
+                }
+                long wait = limiter.tryAcquire(client, kind, 1);
+                if (wait > 0) {
+                    // The service never sees the half-close, so it cannot answer a closed call
+                    rejected = true;
+                    reject(call, kind, wait);
+                    return;
+                }
+                super.onMessage(message);
+            }
+
+            @Override
+            public void onHalfClose() {
+                if (!rejected) {
+                    super.onHalfClose();
+                }
+            }
+        };
+    }
+
+    private String clientId(ServerCall<?, ?> call, Metadata headers) {
+        String id = headers.get(clientIdKey);
+        if (id != null && !id.isEmpty() && !id.equals(SHARED_CLIENT_ID)) {
+            return id.length() > MAX_CLIENT_ID_LENGTH ? id.substring(0, MAX_CLIENT_ID_LENGTH) : id;
+        }
+        SocketAddress address = call.getAttributes().get(Grpc.TRANSPORT_ATTR_REMOTE_ADDR);
+        if (address instanceof InetSocketAddress && ((InetSocketAddress) address).getAddress() != null) {
+            return ((InetSocketAddress) address).getAddress().getHostAddress();
+        }
+        return String.valueOf(address);
+    }
+
+    private static void reject(ServerCall<?, ?> call, ClientRateLimiter.Kind kind, long waitNanos) {
+        String retryAfterMillis = Long.toString(TimeUnit.NANOSECONDS.toMillis(waitNanos + 999_999));
+        Metadata trailers = new Metadata();
+        trailers.put(RETRY_AFTER_MS_KEY, retryAfterMillis);
+        trailers.put(RETRY_PUSHBACK_MS_KEY, retryAfterMillis);
+        call.close(Status.RESOURCE_EXHAUSTED.withDescription(
+            kind.name().toLowerCase() + " rate limit exceeded, retry after " + retryAfterMillis + " ms"), trailers);
+    }
+}
@@ -0,0 +1,71 @@
+package io.grpc.examples.routeguide.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket rate, applied to state the caller keeps in an AtomicLong.
+ *
+ * Implemented as the generic cell rate algorithm: instead of a token count and
+ * a refill time, the state is the single "theoretical arrival time" at which
+ * the bucket would be full again. Taking n tokens pushes it n intervals into
+ * the future, and a request is allowed while that stays within burst intervals
+ * of now. One long per bucket means a lock-free compareAndSet update and no
+ * refill work, and the wait until a rejected request would fit falls out of
+ * the same arithmetic.
+ */
+public final class TokenBucket {
+
+    private final long intervalNanos;
+    private final long burstNanos;
+
+    /**
+     * @param permitsPerSecond Sustained rate, must be positive
+     * @param burst Tokens a full bucket holds, at least 1
+     */
+    public TokenBucket(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate and burst must be positive: "
+                + permitsPerSecond + "/s, burst " + burst);
+        }
+        this.intervalNanos = Math.max(1, (long) (1_000_000_000 / permitsPerSecond));
+        this.burstNanos = intervalNanos * burst;
+    }
+
+    /**
+     * State of a new, full bucket.
+     */
+    public static AtomicLong newState(long nowNanos) {
+        return new AtomicLong(nowNanos);
+    }
+
+    /**
+     * Take permits tokens if the bucket holds them.
+     *
+     * @param state Bucket state from newState()
+     * @param nowNanos Current System.nanoTime()
+     * @return 0 if the tokens were taken, otherwise nanoseconds until they
+     *         would be available; nothing is taken then
+     */
+    public long tryAcquire(AtomicLong state, long nowNanos, int permits) {
+        long cost = intervalNanos * permits;
+        while (true) {
+            long arrival = state.get();
+            long next = (arrival - nowNanos > 0 ? arrival : nowNanos) + cost;
+            long wait = next - nowNanos - burstNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (state.compareAndSet(arrival, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * @return Whether the bucket has refilled completely by nowNanos, so the
+     *         state is indistinguishable from a new one
+     */
+    public static boolean isFull(AtomicLong state, long nowNanos) {
+        return state.get() - nowNanos <= 0;
+    }
+}
@@ -0,0 +1,90 @@
+package io.grpc.examples.routeguide.shard;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.geo.GeoHashCodec;
+
+/**
+ * Immutable consistent-hash ring assigning geohash prefixes (shards) to server nodes.
+ *
+ * Each node is placed on the ring at several virtual positions so shards spread
+ * evenly, and adding or removing a node only moves the shards adjacent to its
+ * positions. Membership changes build a new ring rather than mutating this one.
+ */
+public final class ConsistentHashRing {
+
+    /** Geohash prefix length of a shard (~39km x 20km); coarser than the 6-char partition key. */
+    public static final int SHARD_PRECISION = 4;
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+    private final Set<String> nodes;
+
+    public ConsistentHashRing(Collection<String> nodes) {
+        this(nodes, DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("Ring needs at least one node");
+        }
+        this.nodes = Collections.unmodifiableSet(new LinkedHashSet<>(nodes));
+        for (String node : this.nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    /**
+     * Node that owns the given shard key.
+     */
+    public String ownerOf(String shardKey) {
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(shardKey));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * Node that owns the shard containing the point.
+     */
+    public String ownerOf(Point point) {
+        return ownerOf(shardKey(point));
+    }
+
+    public Set<String> nodes() {
+        return nodes;
+    }
+
+    /**
+     * Shard key (geohash prefix) of a point in E7 coordinates.
+     */
+    public static String shardKey(Point point) {
+        return GeoHashCodec.toBase32(
+            GeoHashCodec.encode(point.getLatitude(), point.getLongitude(), SHARD_PRECISION), SHARD_PRECISION);
+    }
+
+    /**
+     * 64-bit FNV-1a followed by a murmur3 finalizer to spread short, similar keys.
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
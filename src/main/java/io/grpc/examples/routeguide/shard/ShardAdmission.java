@@ -0,0 +1,55 @@
+package io.grpc.examples.routeguide.shard;
+
+import java.util.Collection;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+/**
+ * Server-side admission predicate accepting only partitions of shards this node
+ * owns on the cluster's ConsistentHashRing.
+ *
+ * setNodes() swaps in a new ring, the server-side counterpart of
+ * ShardRouter.setNodes(). Membership changes have to reach every server as well
+ * as the clients; the caller then drops what this node no longer owns (see
+ * TieredFeatureStore.evictUnadmitted()).
+ */
+public class ShardAdmission implements Predicate<String> {
+
+    private static final Logger logger = Logger.getLogger(ShardAdmission.class.getName());
+
+    private final String self;
+    private volatile ConsistentHashRing ring;
+
+    /**
+     * @param self This node as named in the membership, e.g. "localhost:8980"
+     * @param nodes Initial cluster membership
+     */
+    public ShardAdmission(String self, Collection<String> nodes) {
+        this.self = self;
+        this.ring = new ConsistentHashRing(nodes);
+    }
+
+    /**
+     * @param geoHash Partition key, at least SHARD_PRECISION characters
+     */
+    @Override
+    public boolean test(String geoHash) {
+        return self.equals(ring.ownerOf(geoHash.substring(0, ConsistentHashRing.SHARD_PRECISION)));
+    }
+
+    /**
+     * Replace the cluster membership. A node missing from it owns no shards.
+     */
+    public void setNodes(Collection<String> nodes) {
+        ring = new ConsistentHashRing(nodes);
+        logger.info("Caching only shards owned by " + self + " of " + ring.nodes());
+    }
+
+    public ConsistentHashRing ring() {
+        return ring;
+    }
+
+    public String self() {
+        return self;
+    }
+}
@@ -0,0 +1,335 @@
+package io.grpc.examples.routeguide.shard;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import io.grpc.ClientInterceptor;
+import io.grpc.ManagedChannel;
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.Rectangle;
+import io.grpc.examples.routeguide.RouteGuideGrpc;
+import io.grpc.examples.routeguide.RouteGuideGrpc.RouteGuideBlockingStub;
+import io.grpc.examples.routeguide.RouteGuideGrpc.RouteGuideStub;
+import io.grpc.examples.routeguide.RouteSummary;
+import io.grpc.examples.routeguide.geo.GeoHashCodec;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Client-side routing across sharded RouteGuide servers.
+ *
+ * Every call is sent to the node owning its geohash shard on a ConsistentHashRing,
+ * so each server only ever sees (and caches) keys of its own shards.
+ * - GetFeature / UpdateFeature go to the owner of the point.
+ * - RecordRoute opens one sub-stream per owner and merges their summaries.
+ * - ListFeatures is split into one sub-rectangle per shard cell.
+ *
+ * setNodes() rebalances: a new ring is swapped in, channels to new nodes are
+ * opened and channels to removed nodes are shut down after in-flight calls finish.
+ * The servers decide what they cache from their own copy of the membership, so
+ * the same list must also be sent to every server (admin SetShardNodes).
+ */
+public class ShardRouter {
+
+    private static final Logger logger = Logger.getLogger(ShardRouter.class.getName());
+    private static final int MAX_SHARD_CELLS = 512; // Larger rectangles are sent to every node
+
+    private final Function<String, ManagedChannel> channelFactory;
+    private final ClientInterceptor[] interceptors;
+    private final Map<String, ManagedChannel> channels = new ConcurrentHashMap<>();
+    private volatile ConsistentHashRing ring;
+
+    /**
+     * @param nodes Initial server targets, e.g. "localhost:8980"
+     * @param channelFactory Creates the channel for a target
+     * @param interceptors Applied to every stub
+     */
+    public ShardRouter(Collection<String> nodes, Function<String, ManagedChannel> channelFactory,
+            ClientInterceptor... interceptors) {
+        this.channelFactory = channelFactory;
+        this.interceptors = interceptors;
+        setNodes(nodes);
+    }
+
+    /**
+     * Replace the cluster membership and rebalance shards onto the new ring.
+     */
+    public synchronized void setNodes(Collection<String> nodes) {
+        ConsistentHashRing newRing = new ConsistentHashRing(nodes);
+        for (String node : newRing.nodes()) {
+            channels.computeIfAbsent(node, channelFactory);
+        }
+        ConsistentHashRing oldRing = ring;
+        ring = newRing;
+
+        if (oldRing != null) {
+            for (String node : oldRing.nodes()) {
+                if (!newRing.nodes().contains(node)) {
+                    ManagedChannel channel = channels.remove(node);
+                    if (channel != null) {
+                        channel.shutdown();
+                    }
+                }
+            }
+        }
+        logger.info("Shard ring now has nodes " + newRing.nodes());
+    }
+
+    public ConsistentHashRing ring() {
+        return ring;
+    }
+
+    /**
+     * The router's channel to a node, opened if there is none yet.
+     */
+    public ManagedChannel channel(String node) {
+        return channelFor(node);
+    }
+
+    /**
+     * Blocking stub for the node owning the point.
+     */
+    public RouteGuideBlockingStub blockingStub(Point point) {
+        return RouteGuideGrpc.newBlockingStub(channelFor(ring.ownerOf(point)))
+            .withInterceptors(interceptors);
+    }
+
+    /**
+     * RecordRoute fanned out to one sub-stream per owning node.
+     * The returned observer accepts points in order; the merged summary is
+     * delivered to responseObserver once every sub-stream has finished.
+     */
+    public StreamObserver<Point> recordRoute(StreamObserver<RouteSummary> responseObserver) {
+        return new FanOutRoute(responseObserver);
+    }
+
+    /**
+     * ListFeatures split into per-shard sub-rectangles, each sent to its owner.
+     * Features on a cell edge may be returned by both neighbouring queries; only
+     * the one from the cell containing the feature is kept.
+     */
+    public Iterator<Feature> listFeatures(Rectangle rectangle) {
+        int latLo = Math.min(rectangle.getLo().getLatitude(), rectangle.getHi().getLatitude());
+        int latHi = Math.max(rectangle.getLo().getLatitude(), rectangle.getHi().getLatitude());
+        int lonLo = Math.min(rectangle.getLo().getLongitude(), rectangle.getHi().getLongitude());
+        int lonHi = Math.max(rectangle.getLo().getLongitude(), rectangle.getHi().getLongitude());
+
+        ConsistentHashRing current = ring;
+        int precision = ConsistentHashRing.SHARD_PRECISION;
+        long[] cells = GeoHashCodec.cover(latLo, lonLo, latHi, lonHi, precision, MAX_SHARD_CELLS);
+
+        List<SubQuery> queries = new ArrayList<>();
+        if (cells == null) {
+            // Too many cells: ask every node for the whole rectangle, keep what it owns
+            for (String node : current.nodes()) {
+                queries.add(new SubQuery(node, null, rectangle));
+            }
+        } else {
+            double[] box = new double[4];
+            for (long cell : cells) {
+                GeoHashCodec.bounds(cell, precision, box);
+                String geoHash = GeoHashCodec.toBase32(cell, precision);
+                Rectangle sub = Rectangle.newBuilder()
+                    .setLo(Point.newBuilder()
+                        .setLatitude(Math.max(latLo, (int) Math.floor(box[0] * 1e7)))
+                        .setLongitude(Math.max(lonLo, (int) Math.floor(box[1] * 1e7))))
+                    .setHi(Point.newBuilder()
+                        .setLatitude(Math.min(latHi, (int) Math.ceil(box[2] * 1e7)))
+                        .setLongitude(Math.min(lonHi, (int) Math.ceil(box[3] * 1e7))))
+                    .build();
+                queries.add(new SubQuery(current.ownerOf(geoHash), geoHash, sub));
+            }
+        }
+        return new ChainedIterator(current, queries);
+    }
+
+    /**
+     * Shut down all channels.
+     */
+    public synchronized void shutdown() {
+        for (ManagedChannel channel : channels.values()) {
+            channel.shutdown();
+        }
+        channels.clear();
+    }
+
+    private ManagedChannel channelFor(String node) {
+        return channels.computeIfAbsent(node, channelFactory);
+    }
+
+    private RouteGuideStub asyncStub(String node) {
+        return RouteGuideGrpc.newStub(channelFor(node)).withInterceptors(interceptors);
+    }
+
+    private static final class SubQuery {
+        final String node;
+        final String cell; // null when the node is asked for the whole rectangle
+        final Rectangle rectangle;
+
+        SubQuery(String node, String cell, Rectangle rectangle) {
+            this.node = node;
+            this.cell = cell;
+            this.rectangle = rectangle;
+        }
+    }
+
+    /**
+     * Runs the sub-queries one after another, filtering each to the shard it was sent for.
+     */
+    private final class ChainedIterator implements Iterator<Feature> {
+        private final ConsistentHashRing ring;
+        private final Iterator<SubQuery> queries;
+        private SubQuery query;
+        private Iterator<Feature> current = Collections.emptyIterator();
+        private Feature next;
+
+        ChainedIterator(ConsistentHashRing ring, List<SubQuery> queries) {
+            this.ring = ring;
+            this.queries = queries.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (current.hasNext()) {
+                    Feature candidate = current.next();
+                    if (belongsToQuery(candidate)) {
+                        next = candidate;
+                    }
+                } else if (queries.hasNext()) {
+                    query = queries.next();
+                    current = RouteGuideGrpc.newBlockingStub(channelFor(query.node))
+                        .withInterceptors(interceptors)
+                        .listFeatures(query.rectangle);
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Feature next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Feature result = next;
+            next = null;
+            return result;
+        }
+
+        private boolean belongsToQuery(Feature feature) {
+            String shardKey = ConsistentHashRing.shardKey(feature.getLocation());
+            return query.cell != null
+                ? query.cell.equals(shardKey)
+                : query.node.equals(ring.ownerOf(shardKey));
+        }
+    }
+
+    /**
+     * Client side of a fanned-out RecordRoute.
+     *
+     * Sub-stream callbacks arrive on other threads, so every call on the
+     * sub-streams and on responseObserver is made holding this object's lock;
+     * StreamObserver is not thread-safe.
+     */
+    private final class FanOutRoute implements StreamObserver<Point> {
+        private final StreamObserver<RouteSummary> responseObserver;
+        private final Map<String, StreamObserver<Point>> streams = new HashMap<>();
+        private int openStreams;
+        private boolean halfClosed;
+        private boolean finished;
+        private int pointCount;
+        private int featureCount;
+
+        FanOutRoute(StreamObserver<RouteSummary> responseObserver) {
+            this.responseObserver = responseObserver;
+        }
+
+        @Override
+        public synchronized void onNext(Point point) {
+            if (finished) {
+                return;
+            }
+            String owner = ring.ownerOf(point);
+            StreamObserver<Point> stream = streams.get(owner);
+            if (stream == null) {
+                openStreams++;
+                stream = asyncStub(owner).recordRoute(new PartialSummary());
+                streams.put(owner, stream);
+            }
+            stream.onNext(point);
+        }
+
+        @Override
+        public synchronized void onError(Throwable t) {
+            for (StreamObserver<Point> stream : new ArrayList<>(streams.values())) {
+                stream.onError(t);
+            }
+        }
+
+        @Override
+        public synchronized void onCompleted() {
+            halfClosed = true;
+            for (StreamObserver<Point> stream : new ArrayList<>(streams.values())) {
+                stream.onCompleted();
+            }
+            maybeFinish();
+        }
+
+        private synchronized void maybeFinish() {
+            if (finished || !halfClosed || openStreams > 0) {
+                return;
+            }
+            finished = true;
+            responseObserver.onNext(RouteSummary.newBuilder()
+                .setPointCount(pointCount)
+                .setFeatureCount(featureCount)
+                .build());
+            responseObserver.onCompleted();
+        }
+
+        private synchronized void fail(Throwable t) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            for (StreamObserver<Point> stream : new ArrayList<>(streams.values())) {
+                stream.onError(t);
+            }
+            responseObserver.onError(t);
+        }
+
+        private final class PartialSummary implements StreamObserver<RouteSummary> {
+            @Override
+            public void onNext(RouteSummary summary) {
+                synchronized (FanOutRoute.this) {
+                    pointCount += summary.getPointCount();
+                    featureCount += summary.getFeatureCount();
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                fail(t);
+            }
+
+            @Override
+            public void onCompleted() {
+                synchronized (FanOutRoute.this) {
+                    openStreams--;
+                    maybeFinish();
+                }
+            }
+        }
+    }
+}
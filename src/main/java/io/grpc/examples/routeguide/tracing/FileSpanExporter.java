@@ -0,0 +1,112 @@
+package io.grpc.examples.routeguide.tracing;
+
+import io.grpc.examples.routeguide.metrics.MetricsRegistry;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Appends spans as JSON lines to a file, for local runs.
+ *
+ * Spans are queued and written by a background thread, so ending a span never
+ * waits for disk; when the queue is full the span is dropped and counted in
+ * tracing.dropped_spans.
+ */
+public class FileSpanExporter implements SpanExporter {
+
+    private static final Logger logger = Logger.getLogger(FileSpanExporter.class.getName());
+    private static final int QUEUE_SIZE = 10_000;
+
+    private final Path path;
+    private final BlockingQueue<Span> queue;
+    private final BufferedWriter writer;
+    private final Thread thread;
+    private volatile boolean closed;
+
+    private final LongAdder dropped = MetricsRegistry.getDefault().counter("tracing.dropped_spans");
+
+    public FileSpanExporter(Path path) {
+        this(path, QUEUE_SIZE);
+    }
+
+    /**
+     * @param queueSize Most spans waiting to be written
+     */
+    FileSpanExporter(Path path, int queueSize) {
+        this.path = path;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        try {
+            this.writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open span file " + path, e);
+        }
+        this.thread = new Thread(this::writeLoop, "route-guide-span-exporter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void export(Span span) {
+        if (!queue.offer(span)) {
+            dropped.increment();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "file " + path;
+    }
+
+    private void writeLoop() {
+        List<Span> batch = new ArrayList<>();
+        try {
+            while (!closed || !queue.isEmpty()) {
+                Span first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch);
+                for (Span span : batch) {
+                    writer.write(span.toJson());
+                    writer.newLine();
+                }
+                writer.flush();
+                batch.clear();
+            }
+        } catch (IOException e) {
+            logger.warning("Writing spans to " + path + " failed, tracing output stops: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                logger.fine("Closing " + path + " failed: " + e.getMessage());
+            }
+        }
+    }
+}
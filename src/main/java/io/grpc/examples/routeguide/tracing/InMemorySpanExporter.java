@@ -0,0 +1,45 @@
+package io.grpc.examples.routeguide.tracing;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the most recent spans in memory, for local runs and tests.
+ */
+public class InMemorySpanExporter implements SpanExporter {
+
+    private final int capacity;
+    private final ArrayDeque<Span> spans = new ArrayDeque<>(); // Guarded by this
+
+    /**
+     * @param capacity Most spans kept; older ones are dropped
+     */
+    public InMemorySpanExporter(int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public synchronized void export(Span span) {
+        if (spans.size() >= capacity) {
+            spans.removeFirst();
+        }
+        spans.addLast(span);
+    }
+
+    /**
+     * Spans kept, oldest first.
+     */
+    public synchronized List<Span> getSpans() {
+        return new ArrayList<>(spans);
+    }
+
+    public synchronized void reset() {
+        spans.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "memory (" + capacity + " spans)";
+    }
+}
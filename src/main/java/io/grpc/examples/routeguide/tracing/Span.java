@@ -0,0 +1,202 @@
+package io.grpc.examples.routeguide.tracing;
+
+import io.grpc.Context;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One timed operation of a trace.
+ *
+ * Only sampled spans record anything. A span that is not sampled ignores
+ * attributes and end(), and starting a child under it returns the same span,
+ * so instrumented code costs a few field reads on unsampled calls.
+ *
+ * Spans are used from one thread at a time, except end(), which may race
+ * between call completion and cancellation and only takes effect once.
+ */
+public final class Span implements AutoCloseable {
+
+    public enum Kind {
+        SERVER,
+        CLIENT,
+        INTERNAL
+    }
+
+    /**
+     * Span of no trace; what current() returns outside traced calls.
+     */
+    public static final Span INVALID = new Span(null, null, 0, "", Kind.INTERNAL);
+
+    static final Context.Key<Span> CONTEXT_KEY = Context.key("route-guide-span");
+
+    private final Tracer tracer;
+    private final SpanContext context;
+    private final long parentSpanId;
+    private final String name;
+    private final Kind kind;
+    private final long startEpochMicros;
+    private final long startNanos;
+    private List<Object> attributes; // Alternating keys and values, created on first use
+    private String status = "OK";
+    private long durationNanos = -1;
+
+    Span(Tracer tracer, SpanContext context, long parentSpanId, String name, Kind kind) {
+        this.tracer = tracer;
+        this.context = context;
+        this.parentSpanId = parentSpanId;
+        this.name = name;
+        this.kind = kind;
+        boolean recording = context != null && context.isSampled();
+        this.startEpochMicros = recording ? System.currentTimeMillis() * 1000 : 0;
+        this.startNanos = recording ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Span of the current gRPC call or the innermost span made current with
+     * Tracer.withSpan(); INVALID if there is none.
+     */
+    public static Span current() {
+        Span span = CONTEXT_KEY.get();
+        return span != null ? span : INVALID;
+    }
+
+    public boolean isRecording() {
+        return context != null && context.isSampled();
+    }
+
+    /**
+     * @return The propagated identity, null for INVALID
+     */
+    public SpanContext getContext() {
+        return context;
+    }
+
+    /**
+     * @return Span id of the parent, null for the head of a trace
+     */
+    public String getParentSpanId() {
+        return parentSpanId != 0 ? SpanContext.hex(parentSpanId) : null;
+    }
+
+    Tracer getTracer() {
+        return tracer;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public Span setAttribute(String key, long value) {
+        if (isRecording()) {
+            addAttribute(key, value);
+        }
+        return this;
+    }
+
+    public Span setAttribute(String key, String value) {
+        if (isRecording()) {
+            addAttribute(key, value);
+        }
+        return this;
+    }
+
+    /**
+     * @param status Outcome of the operation, e.g. a gRPC status code name
+     */
+    public Span setStatus(String status) {
+        if (isRecording()) {
+            this.status = status;
+        }
+        return this;
+    }
+
+    /**
+     * Finish the span and hand it to the exporter. Later calls do nothing.
+     */
+    public void end() {
+        if (!isRecording()) {
+            return;
+        }
+        synchronized (this) {
+            if (durationNanos >= 0) {
+                return;
+            }
+            durationNanos = System.nanoTime() - startNanos;
+        }
+        tracer.export(this);
+    }
+
+    @Override
+    public void close() {
+        end();
+    }
+
+    /**
+     * One JSON object per span, as written by FileSpanExporter.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder(256)
+            .append("{\"traceId\":\"").append(context.traceId())
+            .append("\",\"spanId\":\"").append(context.spanId()).append('"');
+        if (parentSpanId != 0) {
+            json.append(",\"parentSpanId\":\"").append(SpanContext.hex(parentSpanId)).append('"');
+        }
+        json.append(",\"name\":");
+        appendString(json, name);
+        json.append(",\"kind\":\"").append(kind)
+            .append("\",\"startEpochMicros\":").append(startEpochMicros)
+            .append(",\"durationMicros\":").append(durationNanos / 1000)
+            .append(",\"status\":");
+        appendString(json, status);
+        json.append(",\"attributes\":{");
+        if (attributes != null) {
+            for (int i = 0; i < attributes.size(); i += 2) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                appendString(json, (String) attributes.get(i));
+                json.append(':');
+                Object value = attributes.get(i + 1);
+                if (value instanceof Long) {
+                    json.append(value);
+                } else {
+                    appendString(json, String.valueOf(value));
+                }
+            }
+        }
+        return json.append("}}").toString();
+    }
+
+    @Override
+    public String toString() {
+        return isRecording() ? toJson() : "Span{not sampled}";
+    }
+
+    private void addAttribute(String key, Object value) {
+        if (attributes == null) {
+            attributes = new ArrayList<>(8);
+        }
+        attributes.add(key);
+        attributes.add(value);
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
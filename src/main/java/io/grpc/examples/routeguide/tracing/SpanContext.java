@@ -0,0 +1,100 @@
+package io.grpc.examples.routeguide.tracing;
+
+import io.grpc.Metadata;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Identity of a span as propagated between processes: a 128-bit trace id, a
+ * 64-bit span id and the head sampling decision.
+ *
+ * Sent in the W3C traceparent format, "00-{trace id}-{span id}-{flags}", in the
+ * traceparent request header next to the custom headers.
+ */
+public final class SpanContext {
+
+    public static final Metadata.Key<String> TRACEPARENT_KEY =
+        Metadata.Key.of("traceparent", Metadata.ASCII_STRING_MARSHALLER);
+
+    private final long traceIdHigh;
+    private final long traceIdLow;
+    private final long spanId;
+    private final boolean sampled;
+
+    SpanContext(long traceIdHigh, long traceIdLow, long spanId, boolean sampled) {
+        this.traceIdHigh = traceIdHigh;
+        this.traceIdLow = traceIdLow;
+        this.spanId = spanId;
+        this.sampled = sampled;
+    }
+
+    /**
+     * Context of a new trace.
+     */
+    static SpanContext newTrace(boolean sampled) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new SpanContext(random.nextLong(), random.nextLong() | 1, newSpanId(), sampled);
+    }
+
+    /**
+     * Context of a new span in the same trace.
+     */
+    SpanContext child() {
+        return new SpanContext(traceIdHigh, traceIdLow, newSpanId(), sampled);
+    }
+
+    public String traceId() {
+        return hex(traceIdHigh) + hex(traceIdLow);
+    }
+
+    public String spanId() {
+        return hex(spanId);
+    }
+
+    long spanIdValue() {
+        return spanId;
+    }
+
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    public String toTraceparent() {
+        return "00-" + traceId() + "-" + spanId() + (sampled ? "-01" : "-00");
+    }
+
+    /**
+     * @return The parsed context, or null if the header is missing or malformed
+     */
+    public static SpanContext fromTraceparent(String traceparent) {
+        if (traceparent == null || traceparent.length() != 55 || !traceparent.startsWith("00-")
+                || traceparent.charAt(35) != '-' || traceparent.charAt(52) != '-') {
+            return null;
+        }
+        try {
+            long high = Long.parseUnsignedLong(traceparent.substring(3, 19), 16);
+            long low = Long.parseUnsignedLong(traceparent.substring(19, 35), 16);
+            long span = Long.parseUnsignedLong(traceparent.substring(36, 52), 16);
+            int flags = Integer.parseInt(traceparent.substring(53, 55), 16);
+            if ((high == 0 && low == 0) || span == 0) {
+                return null;
+            }
+            return new SpanContext(high, low, span, (flags & 1) != 0);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    static String hex(long value) {
+        String digits = Long.toHexString(value);
+        return "0000000000000000".substring(digits.length()) + digits;
+    }
+
+    private static long newSpanId() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0);
+        return id;
+    }
+}
@@ -0,0 +1,16 @@
+package io.grpc.examples.routeguide.tracing;
+
+/**
+ * Destination of finished, sampled spans. export() is called on the thread that
+ * ended the span, so implementations must not block.
+ */
+public interface SpanExporter {
+
+    void export(Span span);
+
+    /**
+     * Flush buffered spans and release resources.
+     */
+    default void close() {
+    }
+}
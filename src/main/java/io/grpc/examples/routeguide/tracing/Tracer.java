@@ -0,0 +1,169 @@
+package io.grpc.examples.routeguide.tracing;
+
+import io.grpc.Context;
+import io.grpc.examples.routeguide.metrics.MetricsRegistry;
+
+import java.nio.file.Paths;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Starts spans and hands finished ones to a SpanExporter.
+ *
+ * Sampling is decided once per trace, at its head: a call that arrives with a
+ * traceparent header follows the caller's decision, anything else is sampled
+ * with probability sampleRate. Without an exporter tracing is disabled and the
+ * interceptors pass calls through untouched.
+ */
+public final class Tracer {
+
+    private static final Logger logger = Logger.getLogger(Tracer.class.getName());
+    private static final double DEFAULT_SAMPLE_RATE = 0.01;
+    private static final int DEFAULT_MEMORY_SPANS = 10_000;
+    private static final Tracer DEFAULT = fromEnvironment();
+
+    private final SpanExporter exporter;
+    private final double sampleRate;
+
+    private final LongAdder sampledTraces = MetricsRegistry.getDefault().counter("tracing.sampled_traces");
+    private final LongAdder exportedSpans = MetricsRegistry.getDefault().counter("tracing.exported_spans");
+
+    /**
+     * @param exporter Receives finished spans; null disables tracing
+     * @param sampleRate Fraction of new traces recorded, 0 to 1
+     */
+    public Tracer(SpanExporter exporter, double sampleRate) {
+        this.exporter = exporter;
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Get the process-wide tracer, configured by TRACING_EXPORTER ("memory" or
+     * "file", unset disables tracing), TRACING_SAMPLE_RATE, TRACING_FILE and
+     * TRACING_MEMORY_SPANS.
+     */
+    public static Tracer getDefault() {
+        return DEFAULT;
+    }
+
+    private static Tracer fromEnvironment() {
+        String type = System.getenv().getOrDefault("TRACING_EXPORTER", "");
+        double sampleRate = Double.parseDouble(System.getenv().getOrDefault(
+            "TRACING_SAMPLE_RATE", Double.toString(DEFAULT_SAMPLE_RATE)));
+        SpanExporter exporter;
+        switch (type.toLowerCase()) {
+            case "":
+            case "none":
+                return new Tracer(null, 0);
+            case "memory":
+                exporter = new InMemorySpanExporter(Integer.parseInt(System.getenv().getOrDefault(
+                    "TRACING_MEMORY_SPANS", Integer.toString(DEFAULT_MEMORY_SPANS))));
+                break;
+            case "file":
+                exporter = new FileSpanExporter(Paths.get(
+                    System.getenv().getOrDefault("TRACING_FILE", "route-guide-spans.jsonl")));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown TRACING_EXPORTER: " + type);
+        }
+        logger.info("Tracing " + sampleRate * 100 + "% of new traces to " + exporter);
+        return new Tracer(exporter, sampleRate);
+    }
+
+    public boolean isEnabled() {
+        return exporter != null;
+    }
+
+    public SpanExporter getExporter() {
+        return exporter;
+    }
+
+    /**
+     * Span of an incoming call.
+     *
+     * @param remoteParent Context sent by the caller, null if none
+     */
+    public Span startServerSpan(String name, SpanContext remoteParent) {
+        if (remoteParent != null) {
+            return start(remoteParent.child(), remoteParent.spanIdValue(), name, Span.Kind.SERVER);
+        }
+        return start(SpanContext.newTrace(sample()), 0, name, Span.Kind.SERVER);
+    }
+
+    /**
+     * Span of an outgoing call: a child of the current span, or the head of a new
+     * trace. Its context is propagated even when not sampled, so the server
+     * follows the same decision.
+     */
+    public Span startClientSpan(String name) {
+        Span parent = Span.current();
+        if (parent.getContext() != null) {
+            return start(parent.getContext().child(), parent.getContext().spanIdValue(), name, Span.Kind.CLIENT);
+        }
+        return start(SpanContext.newTrace(sample()), 0, name, Span.Kind.CLIENT);
+    }
+
+    /**
+     * Child of the current span, exported with it by the parent's tracer.
+     * Outside a sampled trace this is the current span itself (or INVALID),
+     * which records nothing.
+     */
+    public Span startSpan(String name) {
+        Span parent = Span.current();
+        if (!parent.isRecording()) {
+            return parent;
+        }
+        return new Span(parent.getTracer(), parent.getContext().child(), parent.getContext().spanIdValue(),
+            name, Span.Kind.INTERNAL);
+    }
+
+    /**
+     * Make span the current span until the returned scope is closed, so spans
+     * started meanwhile become its children. Does nothing for spans that are not
+     * recording.
+     */
+    public Scope withSpan(Span span) {
+        if (!span.isRecording()) {
+            return Scope.NOOP;
+        }
+        Context previous = Context.current().withValue(Span.CONTEXT_KEY, span).attach();
+        return () -> Context.current().detach(previous);
+    }
+
+    /**
+     * Flush and close the exporter.
+     */
+    public void close() {
+        if (exporter != null) {
+            exporter.close();
+        }
+    }
+
+    void export(Span span) {
+        exportedSpans.increment();
+        exporter.export(span);
+    }
+
+    private Span start(SpanContext context, long parentSpanId, String name, Span.Kind kind) {
+        if (context.isSampled() && parentSpanId == 0) {
+            sampledTraces.increment();
+        }
+        return new Span(this, context, parentSpanId, name, kind);
+    }
+
+    private boolean sample() {
+        return sampleRate > 0 && (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+
+    /**
+     * Restores the previous current span when closed.
+     */
+    public interface Scope extends AutoCloseable {
+
+        Scope NOOP = () -> { };
+
+        @Override
+        void close();
+    }
+}
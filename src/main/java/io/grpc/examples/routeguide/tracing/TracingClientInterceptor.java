@@ -0,0 +1,50 @@
+package io.grpc.examples.routeguide.tracing;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall.SimpleForwardingClientCall;
+import io.grpc.ForwardingClientCallListener.SimpleForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+/**
+ * Opens a CLIENT span per call and sends its context in the traceparent header,
+ * so the server continues the trace and follows this side's sampling decision.
+ */
+public class TracingClientInterceptor implements ClientInterceptor {
+
+    private final Tracer tracer;
+
+    public TracingClientInterceptor() {
+        this(Tracer.getDefault());
+    }
+
+    public TracingClientInterceptor(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+            CallOptions callOptions, Channel next) {
+        if (!tracer.isEnabled()) {
+            return next.newCall(method, callOptions);
+        }
+        Span span = tracer.startClientSpan(method.getFullMethodName());
+        return new SimpleForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions)) {
+            @Override
+            public void start(Listener<RespT> responseListener, Metadata headers) {
+                headers.put(SpanContext.TRACEPARENT_KEY, span.getContext().toTraceparent());
+                super.start(new SimpleForwardingClientCallListener<RespT>(responseListener) {
+                    @Override
+                    public void onClose(Status status, Metadata trailers) {
+                        span.setStatus(status.getCode().name()).end();
+                        super.onClose(status, trailers);
+                    }
+                }, headers);
+            }
+        };
+    }
+}
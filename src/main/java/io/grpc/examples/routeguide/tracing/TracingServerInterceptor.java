@@ -0,0 +1,108 @@
+package io.grpc.examples.routeguide.tracing;
+
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.ForwardingServerCall.SimpleForwardingServerCall;
+import io.grpc.ForwardingServerCallListener.SimpleForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCall.Listener;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+/**
+ * Opens a SERVER span per call, continuing the caller's trace from the
+ * traceparent header, and makes it current for the rest of the call so
+ * interceptors and the service can add children.
+ *
+ * Install it outermost: the "interceptors" child span then covers everything
+ * the interceptors behind it do before the call reaches the service, including
+ * injected latency. Calls that are not sampled pass through untouched.
+ */
+public class TracingServerInterceptor implements ServerInterceptor {
+
+    private final Tracer tracer;
+
+    public TracingServerInterceptor() {
+        this(Tracer.getDefault());
+    }
+
+    public TracingServerInterceptor(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    @Override
+    public <ReqT, RespT> Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+            ServerCallHandler<ReqT, RespT> next) {
+        if (!tracer.isEnabled()) {
+            return next.startCall(call, headers);
+        }
+        Span span = tracer.startServerSpan(call.getMethodDescriptor().getFullMethodName(),
+            SpanContext.fromTraceparent(headers.get(SpanContext.TRACEPARENT_KEY)));
+        if (!span.isRecording()) {
+            return next.startCall(call, headers);
+        }
+
+        int[] messages = new int[2]; // Received, sent
+        ServerCall<ReqT, RespT> tracedCall = new SimpleForwardingServerCall<ReqT, RespT>(call) {
+            @Override
+            public void sendMessage(RespT message) {
+                messages[1]++;
+                super.sendMessage(message);
+            }
+
+            @Override
+            public void close(Status status, Metadata trailers) {
+                finish(span, status.getCode().name(), messages);
+                super.close(status, trailers);
+            }
+        };
+
+        Context context = Context.current().withValue(Span.CONTEXT_KEY, span);
+        Listener<ReqT> listener;
+        Span interceptors = new Span(tracer, span.getContext().child(),
+            span.getContext().spanIdValue(), "interceptors", Span.Kind.INTERNAL);
+        try {
+            listener = Contexts.interceptCall(context, tracedCall, headers, next);
+        } finally {
+            interceptors.end();
+        }
+        return new SimpleForwardingServerCallListener<ReqT>(listener) {
+            @Override
+            public void onMessage(ReqT message) {
+                messages[0]++;
+                try {
+                    super.onMessage(message);
+                } catch (RuntimeException | Error e) {
+                    finish(span, Status.Code.UNKNOWN.name(), messages);
+                    throw e;
+                }
+            }
+
+            @Override
+            public void onHalfClose() {
+                // Exceptions thrown by the service fail the call without ServerCall.close
+                try {
+                    super.onHalfClose();
+                } catch (RuntimeException | Error e) {
+                    finish(span, Status.Code.UNKNOWN.name(), messages);
+                    throw e;
+                }
+            }
+
+            @Override
+            public void onCancel() {
+                finish(span, Status.Code.CANCELLED.name(), messages);
+                super.onCancel();
+            }
+        };
+    }
+
+    private static void finish(Span span, String status, int[] messages) {
+        span.setAttribute("messages_received", messages[0])
+            .setAttribute("messages_sent", messages[1])
+            .setStatus(status)
+            .end();
+    }
+}
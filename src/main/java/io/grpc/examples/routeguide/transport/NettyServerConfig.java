@@ -0,0 +1,185 @@
+package io.grpc.examples.routeguide.transport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.epoll.Epoll;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollServerSocketChannel;
+import io.grpc.netty.shaded.io.netty.channel.nio.NioEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.grpc.netty.shaded.io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * Netty transport settings for the server, read from environment variables.
+ *
+ * The grpc-java defaults (NIO even on Linux, unlimited concurrent calls per
+ * connection, no keepalive, connections that never age out) accept anything;
+ * these defaults use epoll where available, bound what one connection can
+ * occupy, and find dead peers instead of holding their calls open.
+ *
+ * - SERVER_TRANSPORT: "auto" (default, epoll when available), "epoll" or "nio"
+ * - SERVER_BOSS_THREADS (1), SERVER_WORKER_THREADS (0 for Netty's default, twice the cores)
+ * - SERVER_FLOW_CONTROL_WINDOW_BYTES: initial HTTP/2 window per stream; 0 (default)
+ *   keeps gRPC's window, which grows with the measured bandwidth-delay product
+ * - SERVER_MAX_CONCURRENT_CALLS_PER_CONNECTION (1000, 0 for unlimited)
+ * - SERVER_MAX_INBOUND_MESSAGE_BYTES (4 MiB)
+ * - SERVER_KEEPALIVE_TIME_SECONDS (60), SERVER_KEEPALIVE_TIMEOUT_SECONDS (20): pings on quiet connections
+ * - SERVER_PERMIT_KEEPALIVE_TIME_SECONDS (10): clients pinging more often are disconnected
+ * - SERVER_MAX_CONNECTION_IDLE_SECONDS, SERVER_MAX_CONNECTION_AGE_SECONDS and
+ *   SERVER_MAX_CONNECTION_AGE_GRACE_SECONDS: 0 (default) for no limit
+ */
+public class NettyServerConfig {
+
+    private static final Logger logger = Logger.getLogger(NettyServerConfig.class.getName());
+
+    /**
+     * Netty channel implementation.
+     */
+    public enum Transport {
+        EPOLL,
+        NIO
+    }
+
+    private final Transport transport;
+    private final int bossThreads;
+    private final int workerThreads;
+    private final int flowControlWindow;
+    private final int maxConcurrentCallsPerConnection;
+    private final int maxInboundMessageSize;
+    private final long keepAliveTimeSeconds;
+    private final long keepAliveTimeoutSeconds;
+    private final long permitKeepAliveTimeSeconds;
+    private final long maxConnectionIdleSeconds;
+    private final long maxConnectionAgeSeconds;
+    private final long maxConnectionAgeGraceSeconds;
+    private final List<EventLoopGroup> eventLoopGroups = new ArrayList<>();
+
+    private NettyServerConfig(Function<String, String> env) {
+        String transport = value(env, "SERVER_TRANSPORT", "auto").toLowerCase();
+        switch (transport) {
+            case "epoll":
+                Epoll.ensureAvailability();
+                this.transport = Transport.EPOLL;
+                break;
+            case "nio":
+                this.transport = Transport.NIO;
+                break;
+            case "auto":
+                this.transport = Epoll.isAvailable() ? Transport.EPOLL : Transport.NIO;
+                if (this.transport == Transport.NIO) {
+                    logger.info("Epoll unavailable, using NIO: " + Epoll.unavailabilityCause());
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown SERVER_TRANSPORT: " + transport);
+        }
+        this.bossThreads = Integer.parseInt(value(env, "SERVER_BOSS_THREADS", "1"));
+        this.workerThreads = Integer.parseInt(value(env, "SERVER_WORKER_THREADS", "0"));
+        this.flowControlWindow = Integer.parseInt(value(env, "SERVER_FLOW_CONTROL_WINDOW_BYTES", "0"));
+        this.maxConcurrentCallsPerConnection =
+            Integer.parseInt(value(env, "SERVER_MAX_CONCURRENT_CALLS_PER_CONNECTION", "1000"));
+        this.maxInboundMessageSize =
+            Integer.parseInt(value(env, "SERVER_MAX_INBOUND_MESSAGE_BYTES", Integer.toString(4 * 1024 * 1024)));
+        this.keepAliveTimeSeconds = Long.parseLong(value(env, "SERVER_KEEPALIVE_TIME_SECONDS", "60"));
+        this.keepAliveTimeoutSeconds = Long.parseLong(value(env, "SERVER_KEEPALIVE_TIMEOUT_SECONDS", "20"));
+        this.permitKeepAliveTimeSeconds = Long.parseLong(value(env, "SERVER_PERMIT_KEEPALIVE_TIME_SECONDS", "10"));
+        this.maxConnectionIdleSeconds = Long.parseLong(value(env, "SERVER_MAX_CONNECTION_IDLE_SECONDS", "0"));
+        this.maxConnectionAgeSeconds = Long.parseLong(value(env, "SERVER_MAX_CONNECTION_AGE_SECONDS", "0"));
+        this.maxConnectionAgeGraceSeconds =
+            Long.parseLong(value(env, "SERVER_MAX_CONNECTION_AGE_GRACE_SECONDS", "0"));
+    }
+
+    /**
+     * Configuration from the process environment.
+     */
+    public static NettyServerConfig fromEnvironment() {
+        return new NettyServerConfig(System::getenv);
+    }
+
+    /**
+     * Configuration from an arbitrary lookup, e.g. a Map::get in benchmarks.
+     */
+    public static NettyServerConfig from(Function<String, String> lookup) {
+        return new NettyServerConfig(lookup);
+    }
+
+    /**
+     * Create a server builder with these settings. Its event loops belong to
+     * this configuration and are released by shutdownEventLoops() once the
+     * server has terminated.
+     */
+    public synchronized NettyServerBuilder newServerBuilder(int port) {
+        EventLoopGroup boss;
+        EventLoopGroup worker;
+        NettyServerBuilder builder = NettyServerBuilder.forPort(port);
+        if (transport == Transport.EPOLL) {
+            boss = new EpollEventLoopGroup(bossThreads, new DefaultThreadFactory("route-guide-boss", true));
+            worker = new EpollEventLoopGroup(workerThreads, new DefaultThreadFactory("route-guide-worker", true));
+            builder.channelType(EpollServerSocketChannel.class);
+        } else {
+            boss = new NioEventLoopGroup(bossThreads, new DefaultThreadFactory("route-guide-boss", true));
+            worker = new NioEventLoopGroup(workerThreads, new DefaultThreadFactory("route-guide-worker", true));
+            builder.channelType(NioServerSocketChannel.class);
+        }
+        eventLoopGroups.add(boss);
+        eventLoopGroups.add(worker);
+        builder.bossEventLoopGroup(boss)
+            .workerEventLoopGroup(worker)
+            .maxInboundMessageSize(maxInboundMessageSize)
+            .permitKeepAliveTime(permitKeepAliveTimeSeconds, TimeUnit.SECONDS);
+        if (flowControlWindow > 0) {
+            builder.flowControlWindow(flowControlWindow);
+        }
+        if (maxConcurrentCallsPerConnection > 0) {
+            builder.maxConcurrentCallsPerConnection(maxConcurrentCallsPerConnection);
+        }
+        if (keepAliveTimeSeconds > 0) {
+            builder.keepAliveTime(keepAliveTimeSeconds, TimeUnit.SECONDS)
+                .keepAliveTimeout(keepAliveTimeoutSeconds, TimeUnit.SECONDS);
+        }
+        if (maxConnectionIdleSeconds > 0) {
+            builder.maxConnectionIdle(maxConnectionIdleSeconds, TimeUnit.SECONDS);
+        }
+        if (maxConnectionAgeSeconds > 0) {
+            builder.maxConnectionAge(maxConnectionAgeSeconds, TimeUnit.SECONDS)
+                .maxConnectionAgeGrace(maxConnectionAgeGraceSeconds, TimeUnit.SECONDS);
+        }
+        return builder;
+    }
+
+    /**
+     * Shut down the event loops of every builder created, after their servers.
+     */
+    public synchronized void shutdownEventLoops() throws InterruptedException {
+        for (EventLoopGroup group : eventLoopGroups) {
+            group.shutdownGracefully(0, 5, TimeUnit.SECONDS);
+        }
+        for (EventLoopGroup group : eventLoopGroups) {
+            group.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        eventLoopGroups.clear();
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    @Override
+    public String toString() {
+        return transport + " transport, " + bossThreads + " boss/" + (workerThreads > 0 ? workerThreads : "default")
+            + " worker threads, flow control window " + (flowControlWindow > 0 ? flowControlWindow : "auto")
+            + ", max " + (maxConcurrentCallsPerConnection > 0 ? maxConcurrentCallsPerConnection : "unlimited")
+            + " calls/connection, keepalive " + keepAliveTimeSeconds + "s";
+    }
+
+    private static String value(Function<String, String> env, String name, String defaultValue) {
+        String value = env.apply(name);
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+}
@@ -0,0 +1,256 @@
+package io.grpc.examples.routeguide.warmup;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.GetFeatureRequest;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.Rectangle;
+import io.grpc.examples.routeguide.RouteGuideGrpc;
+import io.grpc.examples.routeguide.RouteSummary;
+import io.grpc.examples.routeguide.db.FeatureRepository;
+import io.grpc.examples.routeguide.db.TieredFeatureStore;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Warms a server before it reports SERVING.
+ *
+ * Replays a synthetic workload built from the feature database through the real
+ * service over an in-process channel: lookups of known and unknown points, small
+ * ListFeatures rectangles and short RecordRoute streams. This gets the hot paths
+ * JIT-compiled and the hot tier populated before external traffic arrives.
+ * Optionally the densest partitions of the database are preloaded first.
+ *
+ * The same sample of GetFeature calls is timed at the start and at the end, and
+ * the difference is logged as the latency warm-up saved.
+ */
+public class ServerWarmup {
+
+    private static final Logger logger = Logger.getLogger(ServerWarmup.class.getName());
+    private static final int LATENCY_SAMPLE = 50;
+    private static final int ROUTE_LENGTH = 10;
+    private static final double RECTANGLE_DEGREES = 0.01;
+    private static final long CALL_TIMEOUT_MILLIS = 5_000;
+
+    private final ServerServiceDefinition service;
+    private final List<Feature> features;
+    private final long maxMillis;
+    private final int maxIterations;
+    private final int threads;
+
+    /**
+     * @param service Service to warm, bound the same way the server exposes it
+     * @param features Feature database the workload is built from
+     * @param maxMillis Time budget for the replay
+     * @param maxIterations Most RPCs issued by the replay
+     * @param threads Concurrent callers
+     */
+    public ServerWarmup(ServerServiceDefinition service, List<Feature> features,
+            long maxMillis, int maxIterations, int threads) {
+        this.service = service;
+        this.features = new ArrayList<>(features);
+        this.maxMillis = maxMillis;
+        this.maxIterations = maxIterations;
+        this.threads = Math.max(1, threads);
+        Collections.shuffle(this.features, new Random(42));
+    }
+
+    /**
+     * Load the partitions holding the most features into the hot tier.
+     * Without traffic history, density is the best guess at what will be hot.
+     *
+     * @return Number of partitions loaded
+     */
+    public static int preloadDensestPartitions(TieredFeatureStore hotTier, List<Feature> features, int limit) {
+        Map<String, Integer> density = new HashMap<>();
+        for (Feature feature : features) {
+            density.merge(FeatureRepository.partitionKey(feature.getLocation()), 1, Integer::sum);
+        }
+        List<Map.Entry<String, Integer>> densest = new ArrayList<>(density.entrySet());
+        densest.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+
+        int loaded = 0;
+        for (Map.Entry<String, Integer> entry : densest.subList(0, Math.min(limit, densest.size()))) {
+            try {
+                hotTier.prefetch(entry.getKey());
+                loaded++;
+            } catch (RuntimeException e) {
+                logger.fine("Preloading " + entry.getKey() + " failed: " + e.getMessage());
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Run the workload until the time or iteration budget is used up.
+     */
+    public void run() throws IOException, InterruptedException {
+        if (features.isEmpty()) {
+            return;
+        }
+        String name = InProcessServerBuilder.generateName();
+        Server server = InProcessServerBuilder.forName(name).addService(service).build().start();
+        ManagedChannel channel = InProcessChannelBuilder.forName(name).build();
+        try {
+            long start = System.nanoTime();
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(maxMillis);
+            RouteGuideGrpc.RouteGuideBlockingStub blockingStub = RouteGuideGrpc.newBlockingStub(channel);
+            RouteGuideGrpc.RouteGuideStub asyncStub = RouteGuideGrpc.newStub(channel);
+
+            double[] cold = sampleLatency(blockingStub);
+
+            AtomicInteger iterations = new AtomicInteger(LATENCY_SAMPLE);
+            AtomicInteger failures = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(threads);
+            for (int t = 0; t < threads; t++) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        int i;
+                        while (System.nanoTime() < deadline && (i = iterations.getAndIncrement()) < maxIterations) {
+                            try {
+                                call(i, blockingStub, asyncStub);
+                            } catch (RuntimeException e) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }, "route-guide-warmup-" + t);
+                thread.setDaemon(true);
+                thread.start();
+            }
+            done.await();
+
+            double[] warm = sampleLatency(blockingStub);
+            long tookMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            logger.info(String.format(
+                "Warm-up took %d ms, %d calls (%d failed); GetFeature p50 %.2f -> %.2f ms, p99 %.2f -> %.2f ms "
+                    + "(saved %.2f ms at p50)",
+                tookMillis, Math.min(iterations.get(), maxIterations) + LATENCY_SAMPLE, failures.get(),
+                percentile(cold, 0.5), percentile(warm, 0.5), percentile(cold, 0.99), percentile(warm, 0.99),
+                percentile(cold, 0.5) - percentile(warm, 0.5)));
+        } finally {
+            channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+            server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Time GetFeature for the first LATENCY_SAMPLE features, sorted ascending.
+     */
+    private double[] sampleLatency(RouteGuideGrpc.RouteGuideBlockingStub stub) {
+        int size = Math.min(LATENCY_SAMPLE, features.size());
+        double[] millis = new double[size];
+        for (int i = 0; i < size; i++) {
+            long start = System.nanoTime();
+            try {
+                getFeature(stub, features.get(i).getLocation());
+            } catch (RuntimeException e) {
+                logger.fine("Warm-up lookup failed: " + e.getMessage());
+            }
+            millis[i] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(millis);
+        return millis;
+    }
+
+    /**
+     * Issue the i-th call of the mixed workload.
+     */
+    private void call(int i, RouteGuideGrpc.RouteGuideBlockingStub blockingStub,
+            RouteGuideGrpc.RouteGuideStub asyncStub) {
+        Feature feature = features.get(i % features.size());
+        Point location = feature.getLocation();
+        switch (i % 8) {
+            case 5:
+                // Unknown point next to a known one
+                getFeature(blockingStub, Point.newBuilder()
+                    .setLatitude(location.getLatitude() + 1)
+                    .setLongitude(location.getLongitude())
+                    .build());
+                break;
+            case 6:
+                listFeatures(blockingStub, location);
+                break;
+            case 7:
+                recordRoute(asyncStub, i);
+                break;
+            default:
+                getFeature(blockingStub, location);
+                break;
+        }
+    }
+
+    private static void getFeature(RouteGuideGrpc.RouteGuideBlockingStub stub, Point point) {
+        stub.withDeadlineAfter(CALL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+            .getFeature(GetFeatureRequest.newBuilder().setPoint(point).build());
+    }
+
+    private static void listFeatures(RouteGuideGrpc.RouteGuideBlockingStub stub, Point center) {
+        int half = (int) (RECTANGLE_DEGREES / 2 * 1e7);
+        Rectangle rectangle = Rectangle.newBuilder()
+            .setLo(Point.newBuilder()
+                .setLatitude(center.getLatitude() - half)
+                .setLongitude(center.getLongitude() - half))
+            .setHi(Point.newBuilder()
+                .setLatitude(center.getLatitude() + half)
+                .setLongitude(center.getLongitude() + half))
+            .build();
+        stub.withDeadlineAfter(CALL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+            .listFeatures(rectangle)
+            .forEachRemaining(feature -> { });
+    }
+
+    private void recordRoute(RouteGuideGrpc.RouteGuideStub stub, int i) {
+        CountDownLatch finished = new CountDownLatch(1);
+        StreamObserver<Point> points = stub.withDeadlineAfter(CALL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+            .recordRoute(new StreamObserver<RouteSummary>() {
+                @Override
+                public void onNext(RouteSummary summary) {
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    finished.countDown();
+                }
+
+                @Override
+                public void onCompleted() {
+                    finished.countDown();
+                }
+            });
+        for (int step = 0; step < ROUTE_LENGTH; step++) {
+            points.onNext(features.get((i + step) % features.size()).getLocation());
+        }
+        points.onCompleted();
+        try {
+            finished.await(CALL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static double percentile(double[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.floor(p * sorted.length))];
+    }
+}
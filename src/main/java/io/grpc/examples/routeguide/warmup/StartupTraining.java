@@ -0,0 +1,175 @@
+package io.grpc.examples.routeguide.warmup;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import com.google.protobuf.FieldMask;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Metadata;
+import io.grpc.examples.routeguide.ExportFeaturesRequest;
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.GetFeatureRequest;
+import io.grpc.examples.routeguide.HotCellsRequest;
+import io.grpc.examples.routeguide.ListFeatureBatchesRequest;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.Rectangle;
+import io.grpc.examples.routeguide.RouteGuideAdminGrpc;
+import io.grpc.examples.routeguide.RouteGuideGrpc;
+import io.grpc.examples.routeguide.RouteGuideServer;
+import io.grpc.examples.routeguide.RouteHeatmapRequest;
+import io.grpc.examples.routeguide.ShardNodesRequest;
+import io.grpc.examples.routeguide.admin.AdminAuthInterceptor;
+import io.grpc.examples.routeguide.UpdateFeatureRequest;
+import io.grpc.examples.routeguide.factory.AwsClientFactoryProvider;
+import io.grpc.examples.routeguide.factory.DynamoDbClientConfig;
+import io.grpc.examples.routeguide.factory.LocalDevelopmentAwsClientFactory;
+import io.grpc.stub.MetadataUtils;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Training run for the AppCDS archive of the container image.
+ *
+ * Starts the real server against a stub DynamoDB endpoint and issues each
+ * RouteGuide and RouteGuideAdmin RPC once over the network, each with its own
+ * deadline, so the archive holds the classes loaded by startup, the AWS SDK
+ * request path and the Netty transport. Run
+ * with -XX:DumpLoadedClassList and the same classpath as the server. A short
+ * warm-up replay is enough to load its classes; injected latency only slows
+ * the run down.
+ *
+ * Usage:
+ *   LATENCY_INJECTION=false WARMUP_MAX_ITERATIONS=200 \
+ *   java -XX:DumpLoadedClassList=classes.lst -cp target/route-guide-1.0-SNAPSHOT.jar \
+ *     io.grpc.examples.routeguide.warmup.StartupTraining
+ */
+public class StartupTraining {
+
+    private static final Logger logger = Logger.getLogger(StartupTraining.class.getName());
+    private static final long CALL_TIMEOUT_SECONDS = 10;
+
+    public static void main(String[] args) throws Exception {
+        StubDynamoDbEndpoint dynamoDb = new StubDynamoDbEndpoint();
+        AwsClientFactoryProvider.setFactory(
+            new LocalDevelopmentAwsClientFactory(dynamoDb.endpoint(), DynamoDbClientConfig.fromEnvironment()));
+        RouteGuideServer server = new RouteGuideServer(0);
+        server.start();
+        ManagedChannel channel = ManagedChannelBuilder.forAddress("localhost", server.getPort())
+            .usePlaintext()
+            .build();
+        try {
+            exercise(channel);
+        } finally {
+            channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+        logger.info("Startup training finished");
+        // The server's shutdown hook stops it, which also trains the shutdown path
+        System.exit(0);
+    }
+
+    private static void exercise(ManagedChannel channel) throws InterruptedException {
+        Point point = Point.newBuilder().setLatitude(409_146_138).setLongitude(-746_188_906).build();
+        Rectangle rectangle = Rectangle.newBuilder()
+            .setLo(Point.newBuilder().setLatitude(400_000_000).setLongitude(-750_000_000))
+            .setHi(Point.newBuilder().setLatitude(420_000_000).setLongitude(-730_000_000))
+            .build();
+        Feature feature = Feature.newBuilder().setName("Training").setLocation(point).build();
+
+        run("GetFeature", () -> blockingStub(channel).getFeature(
+            GetFeatureRequest.newBuilder().setPoint(point).build()));
+        run("ListFeatures", () -> drain(blockingStub(channel).listFeatures(rectangle)));
+        run("ListFeatureBatches", () -> drain(blockingStub(channel).listFeatureBatches(
+            ListFeatureBatchesRequest.newBuilder().setRectangle(rectangle).build())));
+        run("UpdateFeature", () -> blockingStub(channel).updateFeature(UpdateFeatureRequest.newBuilder()
+            .setFeature(feature)
+            .setUpdateMask(FieldMask.newBuilder().addPaths("name"))
+            .build()));
+        run("ExportFeatures", () -> drain(blockingStub(channel).exportFeatures(
+            ExportFeaturesRequest.getDefaultInstance())));
+
+        List<Point> route = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            route.add(Point.newBuilder(point).setLatitude(point.getLatitude() + i).build());
+        }
+        stream("RecordRoute", asyncStub(channel)::recordRoute, route);
+        stream("ImportFeatures", asyncStub(channel)::importFeatures, List.of(feature));
+
+        Metadata adminHeaders = new Metadata();
+        String adminToken = System.getenv("ADMIN_TOKEN");
+        if (adminToken != null && !adminToken.isEmpty()) {
+            adminHeaders.put(AdminAuthInterceptor.ADMIN_TOKEN_KEY, adminToken);
+        }
+        RouteGuideAdminGrpc.RouteGuideAdminBlockingStub admin = RouteGuideAdminGrpc.newBlockingStub(channel)
+            .withInterceptors(MetadataUtils.newAttachHeadersInterceptor(adminHeaders));
+        run("GetHotCells", () -> admin.withDeadlineAfter(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+            .getHotCells(HotCellsRequest.newBuilder().setLimit(10).build()));
+        run("GetRouteHeatmap", () -> admin.withDeadlineAfter(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+            .getRouteHeatmap(RouteHeatmapRequest.newBuilder().setArea(rectangle).build()));
+        // No nodes is rejected, so the training run never changes the membership
+        run("SetShardNodes", () -> admin.withDeadlineAfter(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+            .setShardNodes(ShardNodesRequest.getDefaultInstance()));
+    }
+
+    /**
+     * Stubs are made per call: a deadline set on a stub is an absolute time
+     * shared by every call made with it.
+     */
+    private static RouteGuideGrpc.RouteGuideBlockingStub blockingStub(ManagedChannel channel) {
+        return RouteGuideGrpc.newBlockingStub(channel).withDeadlineAfter(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static RouteGuideGrpc.RouteGuideStub asyncStub(ManagedChannel channel) {
+        return RouteGuideGrpc.newStub(channel).withDeadlineAfter(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Send requests on a client-streaming call and wait for its response.
+     */
+    private static <ReqT, RespT> void stream(String name,
+            Function<StreamObserver<RespT>, StreamObserver<ReqT>> call, List<ReqT> requests)
+            throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        StreamObserver<ReqT> requestObserver = call.apply(new StreamObserver<RespT>() {
+            @Override
+            public void onNext(RespT response) {
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                logger.warning(name + " failed: " + t.getMessage());
+                done.countDown();
+            }
+
+            @Override
+            public void onCompleted() {
+                done.countDown();
+            }
+        });
+        for (ReqT request : requests) {
+            requestObserver.onNext(request);
+        }
+        requestObserver.onCompleted();
+        done.await(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static void drain(Iterator<?> responses) {
+        while (responses.hasNext()) {
+            responses.next();
+        }
+    }
+
+    private static void run(String name, Runnable call) {
+        try {
+            call.run();
+        } catch (RuntimeException e) {
+            // An error response still loads the classes of the failure path
+            logger.warning(name + " failed: " + e.getMessage());
+        }
+    }
+}
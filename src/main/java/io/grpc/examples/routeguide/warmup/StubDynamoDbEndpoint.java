@@ -0,0 +1,95 @@
+package io.grpc.examples.routeguide.warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP endpoint answering the DynamoDB JSON protocol as an empty, active
+ * table, for runs that must exercise the whole SDK path without AWS: the AppCDS
+ * training run and the startup benchmark.
+ *
+ * Every read finds nothing and every write succeeds; unknown operations fail
+ * with UnknownOperationException.
+ */
+public class StubDynamoDbEndpoint implements AutoCloseable {
+
+    private static final String TARGET_PREFIX = "DynamoDB_20120810.";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public StubDynamoDbEndpoint() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.executor = Executors.newFixedThreadPool(4, runnable -> {
+            Thread thread = new Thread(runnable, "stub-dynamodb");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * Endpoint URI for DYNAMODB_ENDPOINT or LocalDevelopmentAwsClientFactory.
+     */
+    public String endpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            body.readAllBytes();
+        }
+        String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+        String operation = target != null && target.startsWith(TARGET_PREFIX)
+            ? target.substring(TARGET_PREFIX.length())
+            : "";
+        int status = 200;
+        String response;
+        switch (operation) {
+            case "DescribeTable":
+                response = "{\"Table\":{\"TableName\":\"RouteGuideFeatures\",\"TableStatus\":\"ACTIVE\",\"ItemCount\":0}}";
+                break;
+            case "Query":
+            case "Scan":
+                response = "{\"Count\":0,\"ScannedCount\":0,\"Items\":[]}";
+                break;
+            case "BatchWriteItem":
+                response = "{\"UnprocessedItems\":{}}";
+                break;
+            case "GetItem":
+            case "PutItem":
+            case "UpdateItem":
+            case "DeleteItem":
+                response = "{}";
+                break;
+            default:
+                status = 400;
+                response = "{\"__type\":\"com.amazon.coral.service#UnknownOperationException\","
+                    + "\"message\":\"Stub does not support " + operation + "\"}";
+                break;
+        }
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/x-amz-json-1.0");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
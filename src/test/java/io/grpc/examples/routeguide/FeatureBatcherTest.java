@@ -0,0 +1,208 @@
+package io.grpc.examples.routeguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+
+class FeatureBatcherTest {
+
+    private static final int FEATURES = 20_000;
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    private Server server;
+    private ManagedChannel channel;
+
+    @AfterEach
+    void shutDown() throws InterruptedException {
+        if (channel != null) {
+            channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+        if (server != null) {
+            server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+        timer.shutdownNow();
+    }
+
+    @Test
+    void sendsPartialBatchWhileProducerIsStalled() throws Exception {
+        LinkedBlockingQueue<FeatureBatch> sent = new LinkedBlockingQueue<>();
+        FeatureBatcher batcher = new FeatureBatcher(collect(sent), timer, 0, 20, false);
+
+        batcher.accept(feature(1));
+        // No further feature arrives, as while the next partition is read
+        FeatureBatch batch = sent.poll(2, TimeUnit.SECONDS);
+        assertEquals(1, batch.getFeatureCount());
+
+        batcher.accept(feature(2));
+        batcher.flush();
+        assertEquals(1, sent.poll(2, TimeUnit.SECONDS).getFeatureCount());
+        assertTrue(sent.isEmpty());
+    }
+
+    @Test
+    void keepsBatchesWithinByteBudget() {
+        List<FeatureBatch> sent = new CopyOnWriteArrayList<>();
+        FeatureBatcher batcher = new FeatureBatcher(collect(sent), timer, 4096, 60_000, false);
+        for (int i = 0; i < 1_000; i++) {
+            batcher.accept(feature(i));
+        }
+        batcher.flush();
+
+        int features = 0;
+        for (FeatureBatch batch : sent) {
+            assertTrue(batch.getSerializedSize() <= 4096);
+            features += batch.getFeatureCount();
+        }
+        assertEquals(1_000, features);
+        assertTrue(sent.size() > 1);
+    }
+
+    @Test
+    void slowClientHoldsBackBatchedProducer() throws Exception {
+        AtomicInteger produced = new AtomicInteger();
+        startServer(new RouteGuideGrpc.RouteGuideImplBase() {
+            @Override
+            public void listFeatureBatches(ListFeatureBatchesRequest request,
+                    StreamObserver<FeatureBatch> responseObserver) {
+                FeatureBatcher batcher = new FeatureBatcher(responseObserver, timer, 1024, 0, false);
+                for (int i = 0; i < FEATURES; i++) {
+                    batcher.accept(feature(i));
+                    produced.incrementAndGet();
+                }
+                batcher.flush();
+                responseObserver.onCompleted();
+            }
+        });
+
+        SlowReader<FeatureBatch> reader = new SlowReader<>();
+        RouteGuideGrpc.newStub(channel).listFeatureBatches(ListFeatureBatchesRequest.getDefaultInstance(), reader);
+        assertHeldBack(produced, reader);
+
+        int features = 0;
+        for (FeatureBatch batch : reader.readAll()) {
+            features += batch.getFeatureCount();
+        }
+        assertEquals(FEATURES, features);
+    }
+
+    @Test
+    void slowClientHoldsBackListFeatures() throws Exception {
+        AtomicInteger produced = new AtomicInteger();
+        startServer(new RouteGuideGrpc.RouteGuideImplBase() {
+            @Override
+            public void listFeatures(Rectangle request, StreamObserver<Feature> responseObserver) {
+                for (int i = 0; i < FEATURES; i++) {
+                    FlowControl.awaitReady(responseObserver);
+                    responseObserver.onNext(feature(i));
+                    produced.incrementAndGet();
+                }
+                responseObserver.onCompleted();
+            }
+        });
+
+        SlowReader<Feature> reader = new SlowReader<>();
+        RouteGuideGrpc.newStub(channel).listFeatures(Rectangle.getDefaultInstance(), reader);
+        assertHeldBack(produced, reader);
+        assertEquals(FEATURES, reader.readAll().size());
+    }
+
+    /**
+     * The producer stalls after a few messages while the client reads nothing.
+     */
+    private static void assertHeldBack(AtomicInteger produced, SlowReader<?> reader) throws InterruptedException {
+        assertTrue(reader.first.await(5, TimeUnit.SECONDS));
+        Thread.sleep(200);
+        int stalledAt = produced.get();
+        Thread.sleep(200);
+        assertEquals(stalledAt, produced.get(), "producer kept going without the client");
+        assertTrue(stalledAt < FEATURES / 10, "produced " + stalledAt + " features ahead of the client");
+    }
+
+    private void startServer(RouteGuideGrpc.RouteGuideImplBase service) throws Exception {
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name).addService(service).build().start();
+        channel = InProcessChannelBuilder.forName(name).build();
+    }
+
+    private static StreamObserver<FeatureBatch> collect(java.util.Collection<FeatureBatch> sent) {
+        return new StreamObserver<FeatureBatch>() {
+            @Override
+            public void onNext(FeatureBatch batch) {
+                sent.add(batch);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        };
+    }
+
+    private static Feature feature(int i) {
+        return Feature.newBuilder()
+            .setName("Feature " + i)
+            .setLocation(Point.newBuilder().setLatitude(400_000_000 + i).setLongitude(-740_000_000))
+            .build();
+    }
+
+    /**
+     * Requests one message, then nothing until readAll().
+     */
+    private static final class SlowReader<T> implements ClientResponseObserver<Object, T> {
+
+        final CountDownLatch first = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        final List<T> received = new CopyOnWriteArrayList<>();
+        private ClientCallStreamObserver<Object> call;
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<Object> requestStream) {
+            call = requestStream;
+            requestStream.disableAutoRequestWithInitial(1);
+        }
+
+        @Override
+        public void onNext(T value) {
+            received.add(value);
+            first.countDown();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            done.countDown();
+        }
+
+        @Override
+        public void onCompleted() {
+            done.countDown();
+        }
+
+        List<T> readAll() throws InterruptedException {
+            call.request(Integer.MAX_VALUE);
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            return received;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package io.grpc.examples.routeguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.protobuf.ByteString;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.examples.routeguide.db.DataMigration;
+import io.grpc.examples.routeguide.db.FeatureRepository;
+import io.grpc.examples.routeguide.factory.FakeAwsClientFactory;
+import io.grpc.examples.routeguide.factory.FakeDynamoDbClient;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+class FeatureExporterTest {
+
+    private static final int FEATURES = 600;
+    private static final int SEGMENTS = 4;
+    private static final int PAGE_ITEMS = 7;
+
+    private final FakeDynamoDbClient dynamoDb =
+        new FakeDynamoDbClient(FeatureRepository.TABLE_NAME, "geoHash", "featureId");
+    private final FeatureRepository repository = new FeatureRepository(new FakeAwsClientFactory(dynamoDb));
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    private final List<Feature> features = new ArrayList<>();
+    private Server server;
+    private ManagedChannel channel;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        for (int i = 0; i < FEATURES; i++) {
+            Feature feature = Feature.newBuilder()
+                .setName("Feature " + i)
+                .setLocation(Point.newBuilder()
+                    .setLatitude(400_000_000 + (i / 30) * 1_000_000)
+                    .setLongitude(-740_000_000 + (i % 30) * 1_000_000))
+                .build();
+            features.add(feature);
+            dynamoDb.load(repository.toPutRequest(DataMigration.convertToEntity(feature)).putRequest().item());
+        }
+
+        FeatureExporter exporter = new FeatureExporter(repository, scheduler, SEGMENTS, 1_000_000, PAGE_ITEMS);
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name)
+            .addService(new RouteGuideGrpc.RouteGuideImplBase() {
+                @Override
+                public void exportFeatures(ExportFeaturesRequest request,
+                        StreamObserver<ExportFeaturesResponse> responseObserver) {
+                    exporter.export(request, responseObserver);
+                }
+            })
+            .build()
+            .start();
+        channel = InProcessChannelBuilder.forName(name).build();
+    }
+
+    @AfterEach
+    void stopServer() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void exportsEveryFeatureOnce() throws Exception {
+        ExportResult export = export(ByteString.EMPTY, Integer.MAX_VALUE);
+        assertTrue(export.completed);
+        assertExactlyOnce(export.features);
+    }
+
+    @Test
+    void resumedExportsReturnEveryFeatureOnce() throws Exception {
+        List<Feature> received = new ArrayList<>();
+        ByteString token = ByteString.EMPTY;
+        int calls = 0;
+        while (true) {
+            // Each call is cut off after a few responses and resumed from the last token
+            ExportResult export = export(token, 3);
+            received.addAll(export.features);
+            calls++;
+            if (export.completed) {
+                break;
+            }
+            assertTrue(calls < FEATURES, "export made no progress");
+            if (export.lastToken != null) {
+                token = export.lastToken;
+            }
+        }
+        assertTrue(calls > 2, "export finished in " + calls + " calls");
+        assertExactlyOnce(received);
+    }
+
+    @Test
+    void rejectsInvalidResumeToken() {
+        Throwable error = assertThrows(StatusRuntimeException.class,
+            () -> RouteGuideGrpc.newBlockingStub(channel)
+                .exportFeatures(ExportFeaturesRequest.newBuilder()
+                    .setResumeToken(ByteString.copyFromUtf8("not a token"))
+                    .build())
+                .hasNext());
+        assertEquals(Status.Code.INVALID_ARGUMENT, ((StatusRuntimeException) error).getStatus().getCode());
+    }
+
+    @Test
+    void rejectsBudgetsThatCannotPacePages() {
+        for (double budget : new double[] {0, -1, Double.NaN, Double.POSITIVE_INFINITY}) {
+            assertThrows(IllegalArgumentException.class,
+                () -> new FeatureExporter(repository, scheduler, SEGMENTS, budget, PAGE_ITEMS), "budget " + budget);
+        }
+    }
+
+    @Test
+    void cursorKeepsStartKeyTypes() {
+        Map<String, AttributeValue> startKey = new HashMap<>();
+        startKey.put("geoHash", AttributeValue.builder().s("dr5reg").build());
+        startKey.put("version", AttributeValue.builder().n("42").build());
+
+        ExportSegmentCursor cursor = FeatureExporter.toCursor(startKey, false);
+        assertEquals(startKey, FeatureExporter.fromCursor(cursor));
+        assertNull(FeatureExporter.fromCursor(FeatureExporter.toCursor(null, true)));
+    }
+
+    private void assertExactlyOnce(List<Feature> received) {
+        Set<Feature> unique = new HashSet<>(received);
+        assertEquals(received.size(), unique.size(), "features exported more than once");
+        assertEquals(new HashSet<>(features), unique);
+    }
+
+    /**
+     * Export from the token, cancelling the call after maxResponses responses.
+     */
+    private ExportResult export(ByteString token, int maxResponses) throws Exception {
+        ExportResult result = new ExportResult();
+        CompletableFuture<ExportResult> done = new CompletableFuture<>();
+        ExportFeaturesRequest request = ExportFeaturesRequest.newBuilder()
+            .setSegments(SEGMENTS)
+            .setResumeToken(token)
+            .build();
+        RouteGuideGrpc.newStub(channel).exportFeatures(request,
+            new ClientResponseObserver<ExportFeaturesRequest, ExportFeaturesResponse>() {
+                private ClientCallStreamObserver<ExportFeaturesRequest> call;
+                private int responses;
+
+                @Override
+                public void beforeStart(ClientCallStreamObserver<ExportFeaturesRequest> requestStream) {
+                    call = requestStream;
+                }
+
+                @Override
+                public void onNext(ExportFeaturesResponse response) {
+                    if (responses == maxResponses) {
+                        return;
+                    }
+                    result.features.addAll(response.getFeatureList());
+                    result.lastToken = response.getResumeToken();
+                    if (++responses == maxResponses) {
+                        call.cancel("Interrupted by the test", null);
+                        done.complete(result);
+                    }
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    done.complete(result);
+                }
+
+                @Override
+                public void onCompleted() {
+                    result.completed = true;
+                    done.complete(result);
+                }
+            });
+        return done.get(10, TimeUnit.SECONDS);
+    }
+
+    private static final class ExportResult {
+        final List<Feature> features = new ArrayList<>();
+        ByteString lastToken;
+        boolean completed;
+    }
+}
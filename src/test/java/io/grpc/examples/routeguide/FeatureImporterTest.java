@@ -0,0 +1,115 @@
+package io.grpc.examples.routeguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.examples.routeguide.db.DataMigration;
+import io.grpc.examples.routeguide.db.FeatureRepository;
+import io.grpc.examples.routeguide.factory.FakeAwsClientFactory;
+import io.grpc.examples.routeguide.factory.FakeDynamoDbClient;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+class FeatureImporterTest {
+
+    private static final Point POINT = Point.newBuilder().setLatitude(409_146_138).setLongitude(-746_188_906).build();
+
+    private final FakeDynamoDbClient dynamoDb =
+        new FakeDynamoDbClient(FeatureRepository.TABLE_NAME, "geoHash", "featureId");
+    private final FeatureRepository repository = new FeatureRepository(new FakeAwsClientFactory(dynamoDb));
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    private final List<Feature> written = Collections.synchronizedList(new ArrayList<>());
+    private Server server;
+    private ManagedChannel channel;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        FeatureImporter importer = new FeatureImporter(repository, scheduler, 4, written::addAll);
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name)
+            .addService(new RouteGuideGrpc.RouteGuideImplBase() {
+                @Override
+                public StreamObserver<Feature> importFeatures(StreamObserver<ImportSummary> responseObserver) {
+                    return importer.importFeatures(responseObserver);
+                }
+            })
+            .build()
+            .start();
+        channel = InProcessChannelBuilder.forName(name).build();
+    }
+
+    @AfterEach
+    void stopServer() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void importOverwritesMigratedFeature() throws Exception {
+        Feature migrated = Feature.newBuilder().setName("Migrated").setLocation(POINT).build();
+        dynamoDb.load(repository.toPutRequest(DataMigration.convertToEntity(migrated)).putRequest().item());
+
+        Feature imported = Feature.newBuilder().setName("Imported").setLocation(POINT).build();
+        ImportSummary summary = importAll(Collections.singletonList(imported));
+
+        assertEquals(1, summary.getAcceptedCount());
+        assertEquals(1, dynamoDb.itemCount());
+        assertEquals(imported, repository.getFeature(POINT));
+        assertEquals(Collections.singletonList(imported), written);
+    }
+
+    @Test
+    void importTwiceKeepsOneRowPerPoint() throws Exception {
+        List<Feature> features = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            features.add(Feature.newBuilder()
+                .setName("Feature " + i)
+                .setLocation(Point.newBuilder().setLatitude(400_000_000 + i * 10_000).setLongitude(-745_000_000))
+                .build());
+        }
+
+        assertEquals(60, importAll(features).getAcceptedCount());
+        assertEquals(60, importAll(features).getAcceptedCount());
+        assertEquals(60, dynamoDb.itemCount());
+    }
+
+    private ImportSummary importAll(List<Feature> features) throws Exception {
+        CompletableFuture<ImportSummary> result = new CompletableFuture<>();
+        StreamObserver<Feature> requests = RouteGuideGrpc.newStub(channel).importFeatures(
+            new StreamObserver<ImportSummary>() {
+                @Override
+                public void onNext(ImportSummary summary) {
+                    result.complete(summary);
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    result.completeExceptionally(t);
+                }
+
+                @Override
+                public void onCompleted() {
+                }
+            });
+        for (Feature feature : features) {
+            requests.onNext(feature);
+        }
+        requests.onCompleted();
+        return result.get(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,361 @@
+package io.grpc.examples.routeguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.google.protobuf.FieldMask;
+
+import io.grpc.ManagedChannel;
+import io.grpc.examples.routeguide.db.DataMigration;
+import io.grpc.examples.routeguide.db.FeatureRepository;
+import io.grpc.examples.routeguide.factory.AwsClientFactoryProvider;
+import io.grpc.examples.routeguide.factory.FakeAwsClientFactory;
+import io.grpc.examples.routeguide.factory.FakeDynamoDbClient;
+import io.grpc.examples.routeguide.factory.LatencyModel;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Throughput and p99 latency budgets for every RouteGuide RPC, measured
+ * against the whole server running in-process on FakeDynamoDbClient, so a
+ * performance regression fails the build without AWS or a network.
+ *
+ * The fake table answers in about 2 ms with a 10 ms p99. Budgets are set for a
+ * busy single-CPU build machine and catch regressions of several times, not
+ * noise; -Dperf.budgetScale=2 halves every throughput floor and doubles every
+ * latency ceiling. Surefire turns off the injected latency, the rate limits and
+ * the warm-up replay through the environment (see pom.xml).
+ */
+class RouteGuidePerformanceTest {
+
+    private static final Logger logger = Logger.getLogger(RouteGuidePerformanceTest.class.getName());
+
+    private static final int FEATURES = 20_000;
+    private static final int LAT_LO = 400_000_000;
+    private static final int LAT_SPAN = 5_000_000;
+    private static final int LON_LO = -745_000_000;
+    private static final int LON_SPAN = 10_000_000;
+    private static final int RECTANGLE_SPAN = 200_000; // 0.02 degrees
+    private static final double BUDGET_SCALE = Double.parseDouble(System.getProperty("perf.budgetScale", "1"));
+
+    private static final List<Feature> features = new ArrayList<>();
+    private static FakeDynamoDbClient dynamoDb;
+    private static RouteGuideServer server;
+    private static ManagedChannel channel;
+
+    @BeforeAll
+    static void startServer() throws Exception {
+        dynamoDb = new FakeDynamoDbClient(FeatureRepository.TABLE_NAME, "geoHash", "featureId")
+            .withLatency(LatencyModel.logNormal(Duration.ofMillis(2), Duration.ofMillis(10)));
+        FakeAwsClientFactory factory = new FakeAwsClientFactory(dynamoDb);
+
+        // Items are written in the repository's own format
+        FeatureRepository seeder = new FeatureRepository(factory);
+        Random random = new Random(42);
+        for (int i = 0; i < FEATURES; i++) {
+            Feature feature = Feature.newBuilder()
+                .setName("Feature " + i)
+                .setLocation(Point.newBuilder()
+                    .setLatitude(LAT_LO + random.nextInt(LAT_SPAN))
+                    .setLongitude(LON_LO + random.nextInt(LON_SPAN)))
+                .build();
+            dynamoDb.load(seeder.toPutRequest(DataMigration.convertToEntity(feature)).putRequest().item());
+            features.add(feature);
+        }
+
+        AwsClientFactoryProvider.setFactory(factory);
+        String name = InProcessServerBuilder.generateName();
+        server = new RouteGuideServer(InProcessServerBuilder.forName(name), 0);
+        server.start();
+        channel = InProcessChannelBuilder.forName(name).build();
+    }
+
+    @AfterAll
+    static void stopServer() throws InterruptedException {
+        if (channel != null) {
+            channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+        if (server != null) {
+            server.stop();
+        }
+        AwsClientFactoryProvider.reset();
+    }
+
+    @Test
+    void getFeature() throws Exception {
+        RouteGuideGrpc.RouteGuideBlockingStub stub = RouteGuideGrpc.newBlockingStub(channel);
+        Result result = run("GetFeature", 8, 500, () -> {
+            // One lookup in five misses
+            Point point = ThreadLocalRandom.current().nextInt(5) == 0
+                ? randomPoint()
+                : randomFeature().getLocation();
+            stub.getFeature(GetFeatureRequest.newBuilder().setPoint(point).build());
+            return 1;
+        });
+        result.assertWithin(400, 100);
+    }
+
+    @Test
+    void listFeatures() throws Exception {
+        RouteGuideGrpc.RouteGuideBlockingStub stub = RouteGuideGrpc.newBlockingStub(channel);
+        Result result = run("ListFeatures", 4, 100, () -> {
+            int count = 0;
+            for (Iterator<Feature> it = stub.listFeatures(randomRectangle()); it.hasNext(); it.next()) {
+                count++;
+            }
+            return count;
+        });
+        result.assertWithin(20, 500);
+    }
+
+    @Test
+    void listFeatureBatches() throws Exception {
+        RouteGuideGrpc.RouteGuideBlockingStub stub = RouteGuideGrpc.newBlockingStub(channel);
+        Result result = run("ListFeatureBatches", 4, 100, () -> {
+            int count = 0;
+            for (Iterator<FeatureBatch> it = stub.listFeatureBatches(ListFeatureBatchesRequest.newBuilder()
+                    .setRectangle(randomRectangle()).build()); it.hasNext(); ) {
+                count += it.next().getFeatureCount();
+            }
+            return count;
+        });
+        result.assertWithin(20, 500);
+    }
+
+    @Test
+    void recordRoute() throws Exception {
+        RouteGuideGrpc.RouteGuideStub stub = RouteGuideGrpc.newStub(channel);
+        Result result = run("RecordRoute", 4, 100, () -> {
+            CompletableFuture<RouteSummary> summary = new CompletableFuture<>();
+            StreamObserver<Point> points = stub.recordRoute(observer(summary));
+            for (int i = 0; i < 50; i++) {
+                points.onNext(i % 2 == 0 ? randomFeature().getLocation() : randomPoint());
+            }
+            points.onCompleted();
+            return summary.get(30, TimeUnit.SECONDS).getPointCount();
+        });
+        result.assertWithin(30, 500);
+    }
+
+    @Test
+    void updateFeature() throws Exception {
+        RouteGuideGrpc.RouteGuideBlockingStub stub = RouteGuideGrpc.newBlockingStub(channel);
+        Result result = run("UpdateFeature", 4, 100, () -> {
+            Feature feature = randomFeature();
+            stub.updateFeature(UpdateFeatureRequest.newBuilder()
+                .setFeature(feature.toBuilder().setName(feature.getName() + " (renamed)"))
+                .setUpdateMask(FieldMask.newBuilder().addPaths("name"))
+                .build());
+            return 1;
+        });
+        result.assertWithin(120, 100);
+    }
+
+    @Test
+    void exportFeatures() throws Exception {
+        RouteGuideGrpc.RouteGuideBlockingStub stub = RouteGuideGrpc.newBlockingStub(channel);
+        Result result = run("ExportFeatures", 1, 3, () -> {
+            int count = 0;
+            for (Iterator<ExportFeaturesResponse> it = stub.exportFeatures(
+                    ExportFeaturesRequest.newBuilder().setSegments(4).build()); it.hasNext(); ) {
+                count += it.next().getFeatureCount();
+            }
+            // Imports may have added features
+            assertTrue(count >= FEATURES, "exported " + count + " of " + FEATURES + " features");
+            return count;
+        });
+        result.assertItemsWithin(15_000, 1_500);
+    }
+
+    @Test
+    void importFeatures() throws Exception {
+        RouteGuideGrpc.RouteGuideStub stub = RouteGuideGrpc.newStub(channel);
+        int batch = 2_000;
+        Result result = run("ImportFeatures", 1, 3, () -> {
+            CompletableFuture<ImportSummary> summary = new CompletableFuture<>();
+            StreamObserver<Feature> imported = stub.importFeatures(observer(summary));
+            // North of the seeded features, so every import adds new ones
+            Random random = ThreadLocalRandom.current();
+            for (int i = 0; i < batch; i++) {
+                imported.onNext(Feature.newBuilder()
+                    .setName("Imported " + i)
+                    .setLocation(Point.newBuilder()
+                        .setLatitude(LAT_LO + LAT_SPAN + random.nextInt(LAT_SPAN))
+                        .setLongitude(LON_LO + random.nextInt(LON_SPAN)))
+                    .build());
+            }
+            imported.onCompleted();
+            ImportSummary done = summary.get(60, TimeUnit.SECONDS);
+            assertEquals(0, done.getFailedCount());
+            return (int) done.getAcceptedCount();
+        });
+        result.assertItemsWithin(4_000, 750);
+    }
+
+    private static Feature randomFeature() {
+        return features.get(ThreadLocalRandom.current().nextInt(features.size()));
+    }
+
+    private static Point randomPoint() {
+        return Point.newBuilder()
+            .setLatitude(LAT_LO + ThreadLocalRandom.current().nextInt(LAT_SPAN))
+            .setLongitude(LON_LO + ThreadLocalRandom.current().nextInt(LON_SPAN))
+            .build();
+    }
+
+    private static Rectangle randomRectangle() {
+        Point lo = randomFeature().getLocation();
+        return Rectangle.newBuilder()
+            .setLo(lo)
+            .setHi(Point.newBuilder()
+                .setLatitude(lo.getLatitude() + RECTANGLE_SPAN)
+                .setLongitude(lo.getLongitude() + RECTANGLE_SPAN))
+            .build();
+    }
+
+    private static <T> StreamObserver<T> observer(CompletableFuture<T> result) {
+        return new StreamObserver<T>() {
+            @Override
+            public void onNext(T value) {
+                result.complete(value);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                result.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+                result.completeExceptionally(new IllegalStateException("Completed without a response"));
+            }
+        };
+    }
+
+    /**
+     * One call of an RPC.
+     */
+    private interface Call {
+
+        /**
+         * @return Features the call returned or sent
+         */
+        int run() throws Exception;
+    }
+
+    /**
+     * Run calls from several threads, after a quarter as many warm-up calls.
+     */
+    private static Result run(String rpc, int threads, int callsPerThread, Call call) throws Exception {
+        measure(threads, Math.max(1, callsPerThread / 4), call);
+        Result result = measure(threads, callsPerThread, call);
+        result.rpc = rpc;
+        logger.info(String.format("%s: %d calls on %d threads, %.0f calls/s, %.0f features/s, p50 %.1f ms, p99 %.1f ms",
+            rpc, result.latencies.length, threads, result.callsPerSecond(), result.itemsPerSecond(),
+            result.percentileMillis(0.50), result.percentileMillis(0.99)));
+        return result;
+    }
+
+    private static Result measure(int threads, int callsPerThread, Call call) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<long[]>> workers = new ArrayList<>();
+            long[] items = new long[threads];
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                workers.add(executor.submit(() -> {
+                    long[] latencies = new long[callsPerThread];
+                    start.await();
+                    for (int i = 0; i < callsPerThread; i++) {
+                        long begin = System.nanoTime();
+                        items[thread] += call.run();
+                        latencies[i] = System.nanoTime() - begin;
+                    }
+                    return latencies;
+                }));
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            Result result = new Result();
+            result.latencies = new long[threads * callsPerThread];
+            for (int t = 0; t < threads; t++) {
+                System.arraycopy(workers.get(t).get(5, TimeUnit.MINUTES), 0,
+                    result.latencies, t * callsPerThread, callsPerThread);
+            }
+            result.elapsedNanos = System.nanoTime() - begin;
+            result.items = Arrays.stream(items).sum();
+            Arrays.sort(result.latencies);
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static final class Result {
+
+        String rpc;
+        long[] latencies;
+        long elapsedNanos;
+        long items;
+
+        double callsPerSecond() {
+            return latencies.length / (elapsedNanos / 1e9);
+        }
+
+        double itemsPerSecond() {
+            return items / (elapsedNanos / 1e9);
+        }
+
+        double percentileMillis(double percentile) {
+            int index = (int) Math.ceil(percentile * latencies.length) - 1;
+            return latencies[Math.max(0, index)] / 1e6;
+        }
+
+        /**
+         * Budget for calls: throughput floor in calls per second, p99 ceiling.
+         */
+        void assertWithin(double minCallsPerSecond, double maxP99Millis) {
+            assertTrue(callsPerSecond() >= minCallsPerSecond / BUDGET_SCALE, String.format(
+                "%s throughput %.0f calls/s is below the budget of %.0f", rpc, callsPerSecond(),
+                minCallsPerSecond / BUDGET_SCALE));
+            assertP99(maxP99Millis);
+        }
+
+        /**
+         * Budget for streams: throughput floor in features per second, p99 ceiling per call.
+         */
+        void assertItemsWithin(double minItemsPerSecond, double maxP99Millis) {
+            assertTrue(itemsPerSecond() >= minItemsPerSecond / BUDGET_SCALE, String.format(
+                "%s throughput %.0f features/s is below the budget of %.0f", rpc, itemsPerSecond(),
+                minItemsPerSecond / BUDGET_SCALE));
+            assertP99(maxP99Millis);
+        }
+
+        private void assertP99(double maxP99Millis) {
+            assertTrue(percentileMillis(0.99) <= maxP99Millis * BUDGET_SCALE, String.format(
+                "%s p99 %.1f ms is over the budget of %.0f ms", rpc, percentileMillis(0.99),
+                maxP99Millis * BUDGET_SCALE));
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package io.grpc.examples.routeguide.admin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.examples.routeguide.HotCellsRequest;
+import io.grpc.examples.routeguide.HotCellsResponse;
+import io.grpc.examples.routeguide.RouteGuideAdminGrpc;
+import io.grpc.examples.routeguide.ShardNodesRequest;
+import io.grpc.examples.routeguide.ShardNodesResponse;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.MetadataUtils;
+import io.grpc.stub.StreamObserver;
+
+class AdminAuthInterceptorTest {
+
+    private static final ShardNodesRequest NODES = ShardNodesRequest.newBuilder().addNode("localhost:8980").build();
+
+    private final AtomicInteger membershipChanges = new AtomicInteger();
+    private final AtomicReference<Metadata> headersPassedOn = new AtomicReference<>();
+    private Server server;
+    private ManagedChannel channel;
+
+    @AfterEach
+    void shutDown() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void withoutATokenOnlyReadsAreServed() throws Exception {
+        start(null);
+
+        stub(null).getHotCells(HotCellsRequest.getDefaultInstance());
+        assertCode(Status.Code.PERMISSION_DENIED, () -> stub("guess").setShardNodes(NODES));
+        assertEquals(0, membershipChanges.get());
+    }
+
+    @Test
+    void withATokenEveryCallMustSendIt() throws Exception {
+        start("s3cret");
+
+        assertCode(Status.Code.UNAUTHENTICATED, () -> stub(null).getHotCells(HotCellsRequest.getDefaultInstance()));
+        assertCode(Status.Code.UNAUTHENTICATED, () -> stub(null).setShardNodes(NODES));
+        assertCode(Status.Code.UNAUTHENTICATED, () -> stub("s3cre").setShardNodes(NODES));
+        assertCode(Status.Code.UNAUTHENTICATED, () -> stub("s3cret ").setShardNodes(NODES));
+        assertEquals(0, membershipChanges.get());
+
+        stub("s3cret").getHotCells(HotCellsRequest.getDefaultInstance());
+        stub("s3cret").setShardNodes(NODES);
+        assertEquals(1, membershipChanges.get());
+    }
+
+    @Test
+    void tokenIsNotPassedOn() throws Exception {
+        start("s3cret");
+
+        stub("s3cret").getHotCells(HotCellsRequest.getDefaultInstance());
+        assertNull(headersPassedOn.get().get(AdminAuthInterceptor.ADMIN_TOKEN_KEY));
+    }
+
+    private void start(String token) throws Exception {
+        ServerInterceptor captureHeaders = new ServerInterceptor() {
+            @Override
+            public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call,
+                    Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+                headersPassedOn.set(headers);
+                return next.startCall(call, headers);
+            }
+        };
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name).directExecutor()
+            .addService(ServerInterceptors.intercept(new RouteGuideAdminGrpc.RouteGuideAdminImplBase() {
+                @Override
+                public void getHotCells(HotCellsRequest request, StreamObserver<HotCellsResponse> observer) {
+                    observer.onNext(HotCellsResponse.getDefaultInstance());
+                    observer.onCompleted();
+                }
+
+                @Override
+                public void setShardNodes(ShardNodesRequest request, StreamObserver<ShardNodesResponse> observer) {
+                    membershipChanges.incrementAndGet();
+                    observer.onNext(ShardNodesResponse.getDefaultInstance());
+                    observer.onCompleted();
+                }
+            }, captureHeaders, new AdminAuthInterceptor(token)))
+            .build()
+            .start();
+        channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+    }
+
+    private RouteGuideAdminGrpc.RouteGuideAdminBlockingStub stub(String token) {
+        Metadata headers = new Metadata();
+        if (token != null) {
+            headers.put(AdminAuthInterceptor.ADMIN_TOKEN_KEY, token);
+        }
+        return RouteGuideAdminGrpc.newBlockingStub(channel)
+            .withInterceptors(MetadataUtils.newAttachHeadersInterceptor(headers));
+    }
+
+    private static void assertCode(Status.Code code, Runnable call) {
+        StatusRuntimeException e = assertThrows(StatusRuntimeException.class, call::run);
+        assertEquals(code, e.getStatus().getCode());
+    }
+}
@@ -0,0 +1,99 @@
+package io.grpc.examples.routeguide.bulkhead;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import io.grpc.Context;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.GetFeatureRequest;
+import io.grpc.examples.routeguide.RouteGuideGrpc;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+class BulkheadInterceptorTest {
+
+    @Test
+    void bulkheadRefusesCallsPastMax() {
+        Bulkhead bulkhead = new Bulkhead("test-max", 1, 2);
+        try {
+            assertTrue(bulkhead.tryAdmit());
+            assertTrue(bulkhead.tryAdmit());
+            assertFalse(bulkhead.tryAdmit());
+            assertEquals(2, bulkhead.calls());
+            bulkhead.release();
+            assertTrue(bulkhead.tryAdmit());
+        } finally {
+            bulkhead.shutdownNow();
+        }
+    }
+
+    @Test
+    void refusesCallsPastMaxAndReleasesTheSlotOnCancel() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("test-cancel", 1, 1);
+        AtomicBoolean hold = new AtomicBoolean(true);
+        CountDownLatch entered = new CountDownLatch(1);
+        String name = InProcessServerBuilder.generateName();
+        Server server = InProcessServerBuilder.forName(name).directExecutor()
+            .addService(ServerInterceptors.intercept(new RouteGuideGrpc.RouteGuideImplBase() {
+                @Override
+                public void getFeature(GetFeatureRequest request, StreamObserver<Feature> observer) {
+                    if (hold.get()) {
+                        // Keep the bulkhead's only slot until the client gives up
+                        entered.countDown();
+                        CountDownLatch cancelled = new CountDownLatch(1);
+                        Context.current().addListener(context -> cancelled.countDown(), Runnable::run);
+                        try {
+                            cancelled.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return;
+                    }
+                    observer.onNext(Feature.getDefaultInstance());
+                    observer.onCompleted();
+                }
+            }, new BulkheadInterceptor(method -> bulkhead)))
+            .build()
+            .start();
+        ManagedChannel channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+        try {
+            GetFeatureRequest request = GetFeatureRequest.getDefaultInstance();
+            ListenableFuture<Feature> held = RouteGuideGrpc.newFutureStub(channel).getFeature(request);
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+            assertEquals(1, bulkhead.calls());
+
+            RouteGuideGrpc.RouteGuideBlockingStub stub = RouteGuideGrpc.newBlockingStub(channel);
+            StatusRuntimeException e = assertThrows(StatusRuntimeException.class, () -> stub.getFeature(request));
+            assertEquals(Status.Code.RESOURCE_EXHAUSTED, e.getStatus().getCode());
+
+            hold.set(false);
+            held.cancel(true);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (bulkhead.calls() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(0, bulkhead.calls());
+            assertEquals(Feature.getDefaultInstance(), stub.getFeature(request));
+        } finally {
+            channel.shutdownNow();
+            server.shutdownNow();
+            bulkhead.shutdownNow();
+        }
+    }
+}
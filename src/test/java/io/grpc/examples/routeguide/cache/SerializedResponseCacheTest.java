@@ -0,0 +1,71 @@
+package io.grpc.examples.routeguide.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.protobuf.FieldMask;
+
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.db.FeatureRepository;
+
+class SerializedResponseCacheTest {
+
+    private static final Point ADMITTED = Point.newBuilder().setLatitude(409_146_138).setLongitude(-746_188_906).build();
+    private static final Point NOT_ADMITTED = Point.newBuilder().setLatitude(-409_146_138).setLongitude(746_188_906).build();
+    private static final byte[] RESPONSE = {1, 2, 3};
+
+    private final String admittedPartition = FeatureRepository.partitionKey(ADMITTED);
+    private final SerializedResponseCache cache =
+        new SerializedResponseCache(1024 * 1024, admittedPartition::equals);
+
+    @Test
+    void fingerprintIgnoresPathOrder() {
+        FieldMask nameFirst = FieldMask.newBuilder().addPaths("name").addPaths("location").build();
+        FieldMask locationFirst = FieldMask.newBuilder().addPaths("location").addPaths("name").build();
+        assertEquals(SerializedResponseCache.fingerprint(nameFirst), SerializedResponseCache.fingerprint(locationFirst));
+        assertEquals("", SerializedResponseCache.fingerprint(FieldMask.getDefaultInstance()));
+        assertEquals("name", SerializedResponseCache.fingerprint(FieldMask.newBuilder().addPaths("name").build()));
+    }
+
+    @Test
+    void cachesOnlyAdmittedPartitions() {
+        SerializedMessage cached = cache.put(cache.stamp(), ADMITTED, "", RESPONSE);
+        assertSame(cached, cache.get(ADMITTED, "").getMessage());
+
+        SerializedMessage uncached = cache.put(cache.stamp(), NOT_ADMITTED, "", RESPONSE);
+        assertEquals(RESPONSE.length, uncached.size());
+        assertNull(cache.get(NOT_ADMITTED, ""));
+    }
+
+    @Test
+    void keepsOneEntryPerMask() {
+        cache.put(cache.stamp(), ADMITTED, "", RESPONSE);
+        cache.put(cache.stamp(), ADMITTED, "name", new byte[] {4});
+        assertEquals(RESPONSE.length, cache.get(ADMITTED, "").getMessage().size());
+        assertEquals(1, cache.get(ADMITTED, "name").getMessage().size());
+    }
+
+    @Test
+    void skipsResultOfLookupRacingAnInvalidation() {
+        long stamp = cache.stamp();
+        cache.featureChanged(ADMITTED);
+        cache.put(stamp, ADMITTED, "", RESPONSE);
+        assertNull(cache.get(ADMITTED, ""));
+    }
+
+    @Test
+    void dropsEntriesOfChangedFeatureAndPartition() {
+        cache.put(cache.stamp(), ADMITTED, "", RESPONSE);
+        cache.featureChanged(ADMITTED);
+        assertNull(cache.get(ADMITTED, ""));
+
+        cache.put(cache.stamp(), ADMITTED, "", RESPONSE);
+        assertNotNull(cache.get(ADMITTED, ""));
+        cache.partitionChanged(admittedPartition);
+        assertNull(cache.get(ADMITTED, ""));
+    }
+}
@@ -0,0 +1,178 @@
+package io.grpc.examples.routeguide.changefeed;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.db.DataMigration;
+import io.grpc.examples.routeguide.db.FeatureChangeListener;
+import io.grpc.examples.routeguide.db.FeatureRepository;
+import io.grpc.examples.routeguide.db.TieredFeatureStore;
+import io.grpc.examples.routeguide.factory.FakeAwsClientFactory;
+import io.grpc.examples.routeguide.factory.FakeDynamoDbClient;
+
+class ChangeFeedConsumerTest {
+
+    private static final int BATCH_SIZE = 10;
+    private static final Point POINT = Point.newBuilder().setLatitude(409_146_138).setLongitude(-746_188_906).build();
+    private static final Feature OLD = Feature.newBuilder().setName("Old").setLocation(POINT).build();
+
+    private final FakeDynamoDbClient dynamoDb =
+        new FakeDynamoDbClient(FeatureRepository.TABLE_NAME, "geoHash", "featureId");
+    private final FeatureRepository repository = new FeatureRepository(new FakeAwsClientFactory(dynamoDb));
+    private final TieredFeatureStore hotTier = new TieredFeatureStore(repository, 1024 * 1024, geoHash -> true);
+    private ChangeFeedConsumer consumer;
+
+    @AfterEach
+    void stop() {
+        if (consumer != null) {
+            consumer.stop();
+        }
+    }
+
+    @Test
+    void appliesEachRecordOnce() {
+        InProcessChangeFeed feed = new InProcessChangeFeed();
+        consumer = new ChangeFeedConsumer(feed, hotTier, BATCH_SIZE);
+        loadResident(OLD);
+
+        feed.publishUpsert(renamed("New"));
+        feed.publishUpsert(renamed("Newer"));
+        assertEquals(2, consumer.pollOnce());
+        assertEquals("Newer", hotTier.getFeature(POINT).getName());
+        assertEquals("2", consumer.checkpoints().get(InProcessChangeFeed.SHARD_ID));
+        assertEquals(0, consumer.pollOnce());
+    }
+
+    @Test
+    void skipsRecordsRedeliveredBeforeCheckpoint() {
+        // A source that hands back everything, as a reopened shard iterator may
+        InProcessChangeFeed feed = new InProcessChangeFeed();
+        ChangeFeedSource replaying = new ChangeFeedSource() {
+            @Override
+            public List<ChangeRecord> poll(Map<String, String> checkpoints, int maxRecords) {
+                return feed.poll(Collections.emptyMap(), maxRecords);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        consumer = new ChangeFeedConsumer(replaying, hotTier, BATCH_SIZE);
+        loadResident(OLD);
+
+        feed.publishUpsert(renamed("New"));
+        assertEquals(1, consumer.pollOnce());
+        assertEquals(0, consumer.pollOnce());
+
+        feed.publishRemove(POINT);
+        assertEquals(1, consumer.pollOnce());
+        assertTrue(hotTier.getFeature(POINT).getName().isEmpty());
+    }
+
+    @Test
+    void retriesAfterFailedPoll() throws Exception {
+        InProcessChangeFeed feed = new InProcessChangeFeed();
+        AtomicInteger failuresLeft = new AtomicInteger(1);
+        ChangeFeedSource flaky = new ChangeFeedSource() {
+            @Override
+            public List<ChangeRecord> poll(Map<String, String> checkpoints, int maxRecords) {
+                if (failuresLeft.getAndDecrement() > 0) {
+                    throw new IllegalStateException("Stream read failed");
+                }
+                return feed.poll(checkpoints, maxRecords);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        consumer = new ChangeFeedConsumer(flaky, hotTier, BATCH_SIZE);
+        loadResident(OLD);
+        feed.publishUpsert(renamed("New"));
+
+        consumer.start(10);
+        awaitTrue(() -> "New".equals(hotTier.getFeature(POINT).getName()));
+        assertTrue(failuresLeft.get() < 0, "first poll failed");
+        assertEquals("1", consumer.checkpoints().get(InProcessChangeFeed.SHARD_ID));
+    }
+
+    @Test
+    void gapFlushesHotTier() {
+        InProcessChangeFeed feed = new InProcessChangeFeed(2);
+        consumer = new ChangeFeedConsumer(feed, hotTier, BATCH_SIZE);
+        AtomicInteger allChanged = new AtomicInteger();
+        hotTier.addChangeListener(new FeatureChangeListener() {
+            @Override
+            public void featureChanged(Point location) {
+            }
+
+            @Override
+            public void partitionChanged(String geoHash) {
+            }
+
+            @Override
+            public void allChanged() {
+                allChanged.incrementAndGet();
+            }
+        });
+        loadResident(OLD);
+
+        feed.publishUpsert(renamed("New"));
+        assertEquals(1, consumer.pollOnce());
+        // Records 2 and 3 fall out of retention before the consumer reads them
+        for (int i = 0; i < 4; i++) {
+            feed.publishUpsert(renamed("Name " + i));
+        }
+        assertEquals(0, consumer.pollOnce());
+        assertEquals(1, allChanged.get());
+        assertEquals(0, hotTier.residentPartitions());
+        assertTrue(consumer.checkpoints().isEmpty());
+
+        // Reading restarts at the oldest retained record
+        assertEquals(2, consumer.pollOnce());
+        assertEquals("5", consumer.checkpoints().get(InProcessChangeFeed.SHARD_ID));
+    }
+
+    @Test
+    void drainsBacklogWithinOneTick() throws Exception {
+        InProcessChangeFeed feed = new InProcessChangeFeed();
+        for (int i = 0; i < BATCH_SIZE * 25 + 3; i++) {
+            feed.publishUpsert(renamed("Name " + i));
+        }
+        consumer = new ChangeFeedConsumer(feed, hotTier, BATCH_SIZE);
+        // The first tick runs at once; the next would be an hour later
+        consumer.start(TimeUnit.HOURS.toMillis(1));
+        awaitTrue(() -> Integer.toString(BATCH_SIZE * 25 + 3)
+            .equals(consumer.checkpoints().get(InProcessChangeFeed.SHARD_ID)));
+    }
+
+    private void loadResident(Feature feature) {
+        dynamoDb.load(repository.toPutRequest(DataMigration.convertToEntity(feature)).putRequest().item());
+        assertEquals(feature, hotTier.getFeature(feature.getLocation()));
+        assertTrue(hotTier.isResident(FeatureRepository.partitionKey(feature.getLocation())));
+    }
+
+    private static Feature renamed(String name) {
+        return OLD.toBuilder().setName(name).build();
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met within 5 s");
+            Thread.sleep(5);
+        }
+    }
+}
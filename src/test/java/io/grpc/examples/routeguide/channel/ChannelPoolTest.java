@@ -0,0 +1,194 @@
+package io.grpc.examples.routeguide.channel;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.GetFeatureRequest;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.Rectangle;
+import io.grpc.examples.routeguide.RouteGuideGrpc;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+class ChannelPoolTest {
+
+    private static final Point FAIL = Point.newBuilder().setLatitude(1).build();
+
+    private final List<StreamObserver<Feature>> held = new CopyOnWriteArrayList<>();
+    private String name;
+    private Server server;
+    private ChannelPool pool;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name).directExecutor()
+            .addService(new RouteGuideGrpc.RouteGuideImplBase() {
+                @Override
+                public void getFeature(GetFeatureRequest request, StreamObserver<Feature> observer) {
+                    if (request.getPoint().equals(FAIL)) {
+                        observer.onError(Status.UNAVAILABLE.asRuntimeException());
+                    } else {
+                        held.add(observer);
+                    }
+                }
+
+                @Override
+                public void listFeatures(Rectangle request, StreamObserver<Feature> observer) {
+                    held.add(observer);
+                }
+            })
+            .build()
+            .start();
+    }
+
+    @AfterEach
+    void shutDown() throws InterruptedException {
+        pool.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void streamingCallsKeepOffTheUnaryChannels() {
+        pool = pool(2, 1);
+        for (int i = 0; i < 3; i++) {
+            getFeature(false);
+        }
+        listFeatures();
+        listFeatures();
+
+        int[] inFlight = pool.inFlight();
+        assertEquals(3, inFlight.length);
+        assertEquals(3, inFlight[0] + inFlight[1]);
+        assertEquals(2, inFlight[2]);
+    }
+
+    @Test
+    void streamingCallsShareTheUnaryChannelsWithoutTheirOwn() {
+        pool = pool(2, 0);
+        getFeature(false);
+        listFeatures();
+
+        assertArrayEquals(new int[] {1, 1}, pool.inFlight());
+    }
+
+    @Test
+    void tiesAreSharedRoundRobin() {
+        pool = pool(4, 0);
+        int[] used = new int[4];
+        for (int i = 0; i < 8; i++) {
+            int channel = startedOn(() -> getFeature(false));
+            used[channel]++;
+            release(i);
+        }
+        assertArrayEquals(new int[] {2, 2, 2, 2}, used);
+        assertArrayEquals(new int[] {0, 0, 0, 0}, pool.inFlight());
+    }
+
+    @Test
+    void newCallsGoToTheLeastLoadedChannel() {
+        pool = pool(3, 0);
+        int[] channelOfCall = new int[6];
+        for (int i = 0; i < 6; i++) {
+            channelOfCall[i] = startedOn(() -> getFeature(false));
+        }
+        assertArrayEquals(new int[] {2, 2, 2}, pool.inFlight());
+
+        // Whichever channel the rotation starts from, the drained one wins
+        for (int i = 0; i < 3; i++) {
+            release(i);
+            assertEquals(channelOfCall[i], startedOn(() -> getFeature(false)));
+        }
+    }
+
+    @Test
+    void closedCallsLeaveTheCount() {
+        pool = pool(1, 1);
+        getFeature(false);
+        listFeatures();
+        assertArrayEquals(new int[] {1, 1}, pool.inFlight());
+
+        release(0);
+        held.get(1).onError(Status.ABORTED.asRuntimeException());
+        getFeature(true);
+        assertArrayEquals(new int[] {0, 0}, pool.inFlight());
+    }
+
+    @Test
+    void callsThatFailToStartLeaveTheCount() {
+        pool = pool(2, 0);
+        ClientCall<GetFeatureRequest, Feature> call =
+            pool.newCall(RouteGuideGrpc.getGetFeatureMethod(), CallOptions.DEFAULT);
+        call.cancel("cancelled before start", null);
+
+        assertThrows(IllegalStateException.class, () -> call.start(new ClientCall.Listener<Feature>() {
+        }, new Metadata()));
+        assertArrayEquals(new int[] {0, 0}, pool.inFlight());
+    }
+
+    private ChannelPool pool(int unary, int streaming) {
+        return new ChannelPool(() -> InProcessChannelBuilder.forName(name).directExecutor().build(),
+            unary, streaming);
+    }
+
+    /**
+     * @return The channel a call started by start went to
+     */
+    private int startedOn(Runnable start) {
+        int[] before = pool.inFlight();
+        start.run();
+        int[] after = pool.inFlight();
+        for (int i = 0; i < after.length; i++) {
+            if (after[i] == before[i] + 1) {
+                return i;
+            }
+        }
+        throw new AssertionError("No call started");
+    }
+
+    private void getFeature(boolean fail) {
+        RouteGuideGrpc.newStub(pool).getFeature(
+            GetFeatureRequest.newBuilder().setPoint(fail ? FAIL : Point.getDefaultInstance()).build(),
+            new Ignored());
+    }
+
+    private void listFeatures() {
+        RouteGuideGrpc.newStub(pool).listFeatures(Rectangle.getDefaultInstance(), new Ignored());
+    }
+
+    private void release(int call) {
+        held.get(call).onNext(Feature.getDefaultInstance());
+        held.get(call).onCompleted();
+    }
+
+    private static final class Ignored implements StreamObserver<Feature> {
+
+        @Override
+        public void onNext(Feature feature) {
+        }
+
+        @Override
+        public void onError(Throwable t) {
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package io.grpc.examples.routeguide.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.grpc.Context;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.examples.routeguide.metrics.MetricsRegistry;
+import software.amazon.awssdk.core.exception.AbortedException;
+
+class CancellationGuardTest {
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+
+    @AfterEach
+    void shutDown() {
+        timer.shutdownNow();
+        // Never leave an interrupt behind for the next test on this thread
+        Thread.interrupted();
+    }
+
+    @Test
+    void skipsCallsForCancelledContext() {
+        long skipped = counter("dynamodb.calls.skipped_cancelled");
+        AtomicBoolean called = new AtomicBoolean();
+        Context.CancellableContext context = Context.current().withCancellation();
+        context.cancel(null);
+
+        StatusRuntimeException e = assertThrows(StatusRuntimeException.class,
+            () -> context.run(() -> CancellationGuard.run("GetItem", () -> called.getAndSet(true))));
+        assertEquals(Status.Code.CANCELLED, e.getStatus().getCode());
+        assertFalse(called.get(), "DynamoDB was called for a cancelled call");
+        assertEquals(skipped + 1, counter("dynamodb.calls.skipped_cancelled"));
+    }
+
+    @Test
+    void skipsCallsPastTheDeadline() {
+        Context.CancellableContext context = Context.current().withDeadlineAfter(0, TimeUnit.NANOSECONDS, timer);
+        StatusRuntimeException e = assertThrows(StatusRuntimeException.class,
+            () -> context.run(() -> CancellationGuard.run("GetItem", () -> "item")));
+        assertEquals(Status.Code.DEADLINE_EXCEEDED, e.getStatus().getCode());
+    }
+
+    @Test
+    void deadlineBecomesApiCallTimeout() throws Exception {
+        assertFalse(CancellationGuard.requestOverride().apiCallTimeout().isPresent());
+
+        Context.CancellableContext context = Context.current().withDeadlineAfter(2, TimeUnit.SECONDS, timer);
+        try {
+            Duration timeout = context.call(() -> CancellationGuard.requestOverride().apiCallTimeout().get());
+            assertTrue(timeout.compareTo(Duration.ofSeconds(1)) > 0 && timeout.compareTo(Duration.ofSeconds(2)) <= 0,
+                "api call timeout " + timeout);
+        } finally {
+            context.cancel(null);
+        }
+    }
+
+    @Test
+    void cancellationInFlightInterruptsAndClearsTheFlag() {
+        long abandoned = counter("dynamodb.calls.abandoned_inflight");
+        Context.CancellableContext context = Context.current().withCancellation();
+
+        StatusRuntimeException e = assertThrows(StatusRuntimeException.class,
+            () -> context.run(() -> CancellationGuard.run("Query", () -> {
+                context.cancel(null);
+                assertTrue(Thread.currentThread().isInterrupted(), "caller was not interrupted");
+                // What the SDK throws at its next interrupt check
+                throw AbortedException.builder().message("Query interrupted").build();
+            })));
+        assertEquals(Status.Code.CANCELLED, e.getStatus().getCode());
+        assertFalse(Thread.currentThread().isInterrupted(), "interrupt set by the guard was left behind");
+        assertEquals(abandoned + 1, counter("dynamodb.calls.abandoned_inflight"));
+    }
+
+    @Test
+    void keepsInterruptsItDidNotSet() {
+        assertEquals("item", CancellationGuard.run("GetItem", () -> {
+            Thread.currentThread().interrupt();
+            return "item";
+        }));
+        assertTrue(Thread.interrupted(), "caller's own interrupt was cleared");
+    }
+
+    private static long counter(String name) {
+        return MetricsRegistry.getDefault().counter(name).sum();
+    }
+}
@@ -0,0 +1,88 @@
+package io.grpc.examples.routeguide.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import io.grpc.examples.routeguide.metrics.MetricsRegistry;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+
+class CircuitBreakerTest {
+
+    private static final long OPEN_MILLIS = 50;
+
+    @Test
+    void tripsOnceTheFailureRatioIsReached() {
+        CircuitBreaker breaker = new CircuitBreaker("breaker-trip", 0.5, 4, 60_000, 60_000);
+        succeed(breaker);
+        succeed(breaker);
+        fail(breaker);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        fail(breaker);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertEquals(1, counter("breaker-trip.breaker.opened"));
+
+        AtomicInteger backendCalls = new AtomicInteger();
+        assertThrows(CircuitBreaker.OpenException.class, () -> breaker.call(backendCalls::incrementAndGet));
+        assertEquals(0, backendCalls.get());
+        assertEquals(1, counter("breaker-trip.breaker.rejected"));
+    }
+
+    @Test
+    void requestErrorsDoNotCount() {
+        CircuitBreaker breaker = new CircuitBreaker("breaker-request", 0.01, 1, 60_000, 60_000);
+        for (int i = 0; i < 10; i++) {
+            assertThrows(ConditionalCheckFailedException.class, () -> breaker.call(() -> {
+                throw ConditionalCheckFailedException.builder().statusCode(400).build();
+            }));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void halfOpensAfterOpenMillisAndRecovers() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("breaker-recover", 0.5, 1, 60_000, OPEN_MILLIS);
+        fail(breaker);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        Thread.sleep(OPEN_MILLIS * 2);
+
+        // A single trial goes through; others are refused while it runs
+        String result = breaker.call(() -> {
+            assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+            assertThrows(CircuitBreaker.OpenException.class, () -> succeed(breaker));
+            return "trial";
+        });
+        assertEquals("trial", result);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        succeed(breaker);
+    }
+
+    @Test
+    void failedTrialOpensAgain() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("breaker-retrip", 0.5, 1, 60_000, OPEN_MILLIS);
+        fail(breaker);
+        Thread.sleep(OPEN_MILLIS * 2);
+        fail(breaker);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertEquals(2, counter("breaker-retrip.breaker.opened"));
+        assertThrows(CircuitBreaker.OpenException.class, () -> succeed(breaker));
+    }
+
+    private static void succeed(CircuitBreaker breaker) {
+        breaker.call(() -> null);
+    }
+
+    private static void fail(CircuitBreaker breaker) {
+        assertThrows(DynamoDbException.class, () -> breaker.call(() -> {
+            throw DynamoDbException.builder().statusCode(500).message("Internal server error").build();
+        }));
+    }
+
+    private static long counter(String name) {
+        return MetricsRegistry.getDefault().counter(name).sum();
+    }
+}
@@ -0,0 +1,165 @@
+package io.grpc.examples.routeguide.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+
+import io.grpc.Context;
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.factory.FakeAwsClientFactory;
+import io.grpc.examples.routeguide.factory.FakeDynamoDbClient;
+import io.grpc.examples.routeguide.metrics.MetricsRegistry;
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+class ReadHedgerTest {
+
+    private static final long SLOW_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    @Test
+    void hedgesOnlyReadsPastThePercentile() {
+        ReadHedger hedger = new ReadHedger("hedge-percentile", 0, 0.9, 1_000, 100, 8);
+        try {
+            // Too few samples to know what slow is
+            assertEquals("primary", hedger.call(firstAttemptTakes(TimeUnit.MILLISECONDS.toNanos(50))));
+            for (int i = 1; i < 100; i++) {
+                hedger.call(() -> sleep(TimeUnit.MILLISECONDS.toNanos(10)));
+            }
+            assertEquals(0, counter("hedge-percentile.hedge.issued"));
+            long delay = hedger.delayNanos();
+            assertTrue(delay >= TimeUnit.MILLISECONDS.toNanos(10) && delay < TimeUnit.SECONDS.toNanos(1),
+                "p90 delay " + delay);
+
+            assertEquals("primary", hedger.call(() -> "primary"));
+            assertEquals(0, counter("hedge-percentile.hedge.issued"));
+
+            assertEquals("hedge", hedger.call(firstAttemptTakes(SLOW_NANOS)));
+            assertEquals(1, counter("hedge-percentile.hedge.issued"));
+            assertEquals(1, counter("hedge-percentile.hedge.won"));
+        } finally {
+            hedger.shutdownNow();
+        }
+    }
+
+    @Test
+    void hedgesOnlyWithinTheTokenBudget() {
+        // One token, refilled every 1000 seconds
+        ReadHedger hedger = new ReadHedger("hedge-budget", 10, 0.95, 0.001, 1, 8);
+        try {
+            assertEquals("hedge", hedger.call(firstAttemptTakes(TimeUnit.MILLISECONDS.toNanos(200))));
+            assertEquals("primary", hedger.call(firstAttemptTakes(TimeUnit.MILLISECONDS.toNanos(200))));
+            assertEquals(1, counter("hedge-budget.hedge.issued"));
+            assertEquals(1, counter("hedge-budget.hedge.budget_exhausted"));
+        } finally {
+            hedger.shutdownNow();
+        }
+    }
+
+    @Test
+    void cancelsTheLoser() throws Exception {
+        ReadHedger hedger = new ReadHedger("hedge-cancel", 10, 0.95, 1_000, 100, 8);
+        CountDownLatch loserCancelled = new CountDownLatch(1);
+        AtomicInteger attempts = new AtomicInteger();
+        try {
+            String result = hedger.call(() -> {
+                if (attempts.getAndIncrement() > 0) {
+                    return "hedge";
+                }
+                Context.current().addListener(context -> loserCancelled.countDown(), Runnable::run);
+                return sleep(SLOW_NANOS);
+            });
+            assertEquals("hedge", result);
+            assertTrue(loserCancelled.await(5, TimeUnit.SECONDS), "losing attempt cancelled");
+        } finally {
+            hedger.shutdownNow();
+        }
+    }
+
+    @Test
+    void cancelledLoserNeverCountsAsBreakerFailure() throws Exception {
+        // Every primary Query is slow and every hedge fast
+        AtomicInteger queries = new AtomicInteger();
+        FakeDynamoDbClient dynamoDb = new FakeDynamoDbClient(FeatureRepository.TABLE_NAME, "geoHash", "featureId")
+            .withLatency("Query", () -> queries.getAndIncrement() % 2 == 0 ? SLOW_NANOS : 0);
+        // Opens on the first failure
+        CircuitBreaker breaker = new CircuitBreaker("hedge-loser", 0.01, 1, 60_000, 60_000);
+        ReadHedger hedger = new ReadHedger("hedge-loser", 20, 0.95, 1_000, 100, 8);
+        FeatureRepository repository = new FeatureRepository(new FakeAwsClientFactory(dynamoDb), breaker, hedger);
+        LongAdder abandoned = MetricsRegistry.getDefault().counter("dynamodb.calls.abandoned_inflight");
+        long abandonedBefore = abandoned.sum();
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        // Otherwise the first primary may still be creating the client when its hedge starts
+        repository.initialize();
+        try {
+            for (int i = 0; i < 5; i++) {
+                Point point = Point.newBuilder().setLatitude(409_146_138 + i).setLongitude(-746_188_906).build();
+                long start = System.nanoTime();
+                // The deadline becomes the losers' api call timeout, which is what ends them
+                Feature feature = Context.current().withDeadlineAfter(1, TimeUnit.SECONDS, timer)
+                    .call(() -> repository.getFeature(point));
+                assertEquals("", feature.getName());
+                assertTrue(System.nanoTime() - start < SLOW_NANOS / 2, "hedge answered before the slow primary");
+            }
+            assertEquals(5, counter("hedge-loser.hedge.won"));
+            // The losers time out in the background
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (abandoned.sum() - abandonedBefore < 5 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(5, abandoned.sum() - abandonedBefore);
+            assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+            assertEquals(0, counter("hedge-loser.breaker.opened"));
+        } finally {
+            hedger.shutdownNow();
+            timer.shutdownNow();
+        }
+    }
+
+    @Test
+    void abortUnderCancelledContextIsNotABackendFailure() {
+        CircuitBreaker breaker = new CircuitBreaker("hedge-abort", 0.01, 1, 60_000, 60_000);
+        Context.CancellableContext cancelled = Context.current().withCancellation();
+        cancelled.cancel(null);
+        cancelled.run(() -> {
+            for (int i = 0; i < 10; i++) {
+                assertThrows(SdkClientException.class, () -> breaker.call(() -> {
+                    throw AbortedException.builder().message("Query interrupted").build();
+                }));
+            }
+        });
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    /**
+     * A read whose first attempt takes the given time, or until it is
+     * cancelled, and whose hedge answers at once.
+     */
+    private static Supplier<String> firstAttemptTakes(long nanos) {
+        AtomicInteger attempts = new AtomicInteger();
+        return () -> attempts.getAndIncrement() == 0 ? sleep(nanos) : "hedge";
+    }
+
+    private static String sleep(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "primary";
+    }
+
+    private static long counter(String name) {
+        return MetricsRegistry.getDefault().counter(name).sum();
+    }
+}
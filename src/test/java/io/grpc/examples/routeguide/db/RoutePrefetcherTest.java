@@ -0,0 +1,122 @@
+package io.grpc.examples.routeguide.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.factory.FakeAwsClientFactory;
+import io.grpc.examples.routeguide.factory.FakeDynamoDbClient;
+import io.grpc.examples.routeguide.metrics.MetricsRegistry;
+
+class RoutePrefetcherTest {
+
+    // About 220 m north per point, so a new partition every two or three points
+    private static final int STEP = 20_000;
+    private static final int POINTS = 40;
+
+    private final StubHotTier hotTier = new StubHotTier();
+
+    @Test
+    void straightRoutePrefetchesThePartitionsAhead() {
+        hotTier.demandLoads = 1_000;
+        RoutePrefetcher.Route route = new RoutePrefetcher(hotTier, Runnable::run, 1.0).newRoute();
+        List<Point> points = straightRoute(POINTS);
+        // The last points look three steps past the end
+        Set<String> onRoute = new HashSet<>();
+        for (Point point : straightRoute(POINTS + 3)) {
+            onRoute.add(FeatureRepository.partitionKey(point));
+        }
+
+        for (int i = 0; i < points.size(); i++) {
+            String partition = FeatureRepository.partitionKey(points.get(i));
+            if (i >= 2 && !partition.equals(FeatureRepository.partitionKey(points.get(i - 1)))) {
+                assertTrue(hotTier.isResident(partition), "point " + i + " entered " + partition + " unprefetched");
+            }
+            route.onPoint(points.get(i));
+        }
+
+        assertFalse(hotTier.prefetched.isEmpty());
+        assertEquals(new HashSet<>(hotTier.prefetched).size(), hotTier.prefetched.size(), "prefetched twice");
+        assertTrue(onRoute.containsAll(hotTier.prefetched), "prefetched off the route: " + hotTier.prefetched);
+        // The first partition is entered by a real lookup, never predicted
+        assertFalse(hotTier.prefetched.contains(FeatureRepository.partitionKey(points.get(0))));
+    }
+
+    @Test
+    void stopsAtTheBudgetUntilRealLoadsCatchUp() {
+        hotTier.demandLoads = 2;
+        RoutePrefetcher prefetcher = new RoutePrefetcher(hotTier, Runnable::run, 1.5);
+        long refused = counter("prefetch.refused_budget");
+        long cutOffs = counter("prefetch.cutoff_misses");
+
+        RoutePrefetcher.Route route = prefetcher.newRoute();
+        List<Point> points = straightRoute(POINTS);
+        for (Point point : points.subList(0, POINTS / 2)) {
+            route.onPoint(point);
+        }
+        // 1.5 prefetches per real load
+        assertEquals(3, hotTier.prefetched.size());
+        assertTrue(counter("prefetch.refused_budget") > refused);
+        // Walking into partitions whose prefetch was refused
+        assertTrue(counter("prefetch.cutoff_misses") > cutOffs);
+
+        hotTier.demandLoads = 4;
+        for (Point point : points.subList(POINTS / 2, POINTS)) {
+            route.onPoint(point);
+        }
+        assertEquals(6, hotTier.prefetched.size());
+    }
+
+    private static List<Point> straightRoute(int length) {
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < length; i++) {
+            points.add(Point.newBuilder().setLatitude(407_000_000 + i * STEP).setLongitude(-740_000_000).build());
+        }
+        return points;
+    }
+
+    private static long counter(String name) {
+        return MetricsRegistry.getDefault().counter(name).sum();
+    }
+
+    /**
+     * Hot tier whose partitions become resident when prefetched, with a scripted
+     * number of real loads.
+     */
+    private static final class StubHotTier extends TieredFeatureStore {
+
+        final List<String> prefetched = new ArrayList<>();
+        final Set<String> resident = new HashSet<>();
+        long demandLoads;
+
+        StubHotTier() {
+            super(new FeatureRepository(new FakeAwsClientFactory(
+                new FakeDynamoDbClient(FeatureRepository.TABLE_NAME, "geoHash", "featureId"))),
+                0, geoHash -> true);
+        }
+
+        @Override
+        public boolean isResident(String geoHash) {
+            return resident.contains(geoHash);
+        }
+
+        @Override
+        public void prefetch(String geoHash) {
+            prefetched.add(geoHash);
+            resident.add(geoHash);
+        }
+
+        @Override
+        public long demandLoads() {
+            return demandLoads;
+        }
+    }
+}
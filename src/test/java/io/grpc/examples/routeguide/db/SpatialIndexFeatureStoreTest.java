@@ -0,0 +1,110 @@
+package io.grpc.examples.routeguide.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.protobuf.FieldMask;
+
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.Rectangle;
+
+class SpatialIndexFeatureStoreTest {
+
+    private static final Feature INDEXED = feature("Indexed", 400_000_000);
+    private static final Feature REMOTE = feature("Written elsewhere", 401_000_000);
+    private static final Rectangle BOTH = Rectangle.newBuilder()
+        .setLo(Point.newBuilder().setLatitude(399_000_000).setLongitude(-741_000_000))
+        .setHi(Point.newBuilder().setLatitude(402_000_000).setLongitude(-739_000_000))
+        .build();
+
+    private final ListingStore delegate = new ListingStore();
+    private final SpatialIndexFeatureStore store = new SpatialIndexFeatureStore(delegate);
+
+    @BeforeEach
+    void build() {
+        store.rebuild(() -> Collections.singletonList(INDEXED));
+    }
+
+    @Test
+    void updatesFromTheChangeFeedReachTheIndex() {
+        store.featureUpdated(REMOTE);
+        assertEquals(Arrays.asList(INDEXED, REMOTE), list(BOTH));
+        assertEquals(0, delegate.listings.get());
+
+        store.featureUpdated(REMOTE.toBuilder().setName("").build());
+        assertEquals(Collections.singletonList(INDEXED), list(BOTH));
+    }
+
+    @Test
+    void unknownChangesFallThroughUntilTheNextRebuild() {
+        store.featureChanged(REMOTE.getLocation());
+        list(BOTH);
+        assertEquals(1, delegate.listings.get());
+
+        // A rectangle away from the changed partition still uses the index
+        list(Rectangle.newBuilder().setLo(INDEXED.getLocation()).setHi(INDEXED.getLocation()).build());
+        assertEquals(1, delegate.listings.get());
+
+        store.rebuild(() -> Arrays.asList(INDEXED, REMOTE));
+        assertEquals(Arrays.asList(INDEXED, REMOTE), list(BOTH));
+        assertEquals(1, delegate.listings.get());
+    }
+
+    @Test
+    void changeToEverythingSwitchesTheIndexOff() {
+        store.allChanged();
+        list(BOTH);
+        assertEquals(1, delegate.listings.get());
+        assertEquals(0, store.size());
+    }
+
+    private List<Feature> list(Rectangle rectangle) {
+        List<Feature> features = new ArrayList<>();
+        store.listFeatures(rectangle, features::add);
+        return features;
+    }
+
+    private static Feature feature(String name, int latitude) {
+        return Feature.newBuilder()
+            .setName(name)
+            .setLocation(Point.newBuilder().setLatitude(latitude).setLongitude(-740_000_000))
+            .build();
+    }
+
+    /**
+     * Counts the ListFeatures calls that fall through to it.
+     */
+    private static final class ListingStore implements FeatureStore {
+
+        final AtomicInteger listings = new AtomicInteger();
+
+        @Override
+        public Feature getFeature(Point point) {
+            return Feature.newBuilder().setLocation(point).build();
+        }
+
+        @Override
+        public Feature updateFeature(Feature feature, FieldMask fieldMask) {
+            return feature;
+        }
+
+        @Override
+        public void listFeatures(Rectangle rectangle, Consumer<Feature> consumer) {
+            listings.incrementAndGet();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package io.grpc.examples.routeguide.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.protobuf.FieldMask;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.GetFeatureRequest;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.Rectangle;
+import io.grpc.examples.routeguide.RouteGuideGrpc;
+import io.grpc.examples.routeguide.header.StaleResponseInterceptor;
+import io.grpc.examples.routeguide.metrics.MetricsRegistry;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.MetadataUtils;
+import io.grpc.stub.StreamObserver;
+
+class StaleWhileRevalidateFeatureStoreTest {
+
+    private static final long BUDGET_MILLIS = 50;
+    private static final Point POINT = Point.newBuilder().setLatitude(409_146_138).setLongitude(-746_188_906).build();
+    private static final Feature OLD = Feature.newBuilder().setName("Old").setLocation(POINT).build();
+    private static final Feature NEW = Feature.newBuilder().setName("New").setLocation(POINT).build();
+
+    private final ExecutorService refreshExecutor = Executors.newCachedThreadPool();
+    private final ScriptedStore backend = new ScriptedStore();
+    private final AtomicReference<Long> staleAge = new AtomicReference<>();
+    private final StaleWhileRevalidateFeatureStore store = new StaleWhileRevalidateFeatureStore(
+        backend, refreshExecutor, BUDGET_MILLIS, 100, point -> false, staleAge::set);
+
+    @AfterEach
+    void shutDown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    @Test
+    void servesKnownAnswerPastTheBudget() throws Exception {
+        backend.answer(() -> OLD);
+        assertEquals(OLD, store.getFeature(POINT));
+        assertNull(staleAge.get());
+
+        CountDownLatch slow = new CountDownLatch(1);
+        backend.answer(() -> {
+            await(slow);
+            return NEW;
+        });
+        long budgetExceeded = counter("stale.budget_exceeded");
+        long start = System.nanoTime();
+        assertEquals(OLD, store.getFeature(POINT));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1), "served without waiting for DynamoDB");
+        assertEquals(budgetExceeded + 1, counter("stale.budget_exceeded"));
+        assertTrue(staleAge.get() >= 0);
+
+        // The refresh carries on and replaces the known answer
+        slow.countDown();
+        backend.awaitCalls(2);
+        backend.answer(() -> {
+            throw new IllegalStateException("DynamoDB is down");
+        });
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        Feature served;
+        while ((served = store.getFeature(POINT)).equals(OLD) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(NEW, served);
+    }
+
+    @Test
+    void servesKnownAnswerOnBackendError() {
+        backend.answer(() -> OLD);
+        store.getFeature(POINT);
+
+        backend.answer(() -> {
+            throw new IllegalStateException("DynamoDB is down");
+        });
+        long backendErrors = counter("stale.backend_errors");
+        assertEquals(OLD, store.getFeature(POINT));
+        assertEquals(backendErrors + 1, counter("stale.backend_errors"));
+        assertTrue(staleAge.get() >= 0);
+    }
+
+    @Test
+    void failsWithoutAKnownAnswer() {
+        backend.answer(() -> {
+            throw new IllegalStateException("DynamoDB is down");
+        });
+        StatusRuntimeException e = assertThrows(StatusRuntimeException.class, () -> store.getFeature(POINT));
+        assertEquals(Status.Code.UNAVAILABLE, e.getStatus().getCode());
+        assertNull(staleAge.get());
+    }
+
+    @Test
+    void staleAnswerCarriesTheAgeHeader() throws Exception {
+        StaleWhileRevalidateFeatureStore headerStore = new StaleWhileRevalidateFeatureStore(
+            backend, refreshExecutor, BUDGET_MILLIS, 100, point -> false, StaleResponseInterceptor::markStale);
+        String name = InProcessServerBuilder.generateName();
+        Server server = InProcessServerBuilder.forName(name).directExecutor()
+            .addService(ServerInterceptors.intercept(new RouteGuideGrpc.RouteGuideImplBase() {
+                @Override
+                public void getFeature(GetFeatureRequest request, StreamObserver<Feature> observer) {
+                    observer.onNext(headerStore.getFeature(request.getPoint()));
+                    observer.onCompleted();
+                }
+            }, new StaleResponseInterceptor()))
+            .build()
+            .start();
+        ManagedChannel channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+        try {
+            GetFeatureRequest request = GetFeatureRequest.newBuilder().setPoint(POINT).build();
+            AtomicReference<Metadata> headers = new AtomicReference<>();
+            AtomicReference<Metadata> trailers = new AtomicReference<>();
+            RouteGuideGrpc.RouteGuideBlockingStub stub = RouteGuideGrpc.newBlockingStub(channel)
+                .withInterceptors(MetadataUtils.newCaptureMetadataInterceptor(headers, trailers));
+
+            backend.answer(() -> OLD);
+            assertEquals(OLD, stub.getFeature(request));
+            assertNull(headers.get().get(StaleResponseInterceptor.STALE_AGE_HEADER_KEY));
+
+            backend.answer(() -> {
+                throw new IllegalStateException("DynamoDB is down");
+            });
+            assertEquals(OLD, stub.getFeature(request));
+            String age = headers.get().get(StaleResponseInterceptor.STALE_AGE_HEADER_KEY);
+            assertTrue(age != null && Long.parseLong(age) >= 0, "stale age header: " + age);
+        } finally {
+            channel.shutdownNow();
+            server.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long counter(String name) {
+        return MetricsRegistry.getDefault().counter(name).sum();
+    }
+
+    /**
+     * Answers getFeature with whatever the test last scripted.
+     */
+    private static final class ScriptedStore implements FeatureStore {
+
+        private volatile Supplier<Feature> answer;
+        private final AtomicInteger calls = new AtomicInteger();
+
+        void answer(Supplier<Feature> answer) {
+            this.answer = answer;
+        }
+
+        void awaitCalls(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (calls.get() < count && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+        }
+
+        @Override
+        public Feature getFeature(Point point) {
+            Supplier<Feature> current = answer;
+            try {
+                return current.get();
+            } finally {
+                calls.incrementAndGet();
+            }
+        }
+
+        @Override
+        public Feature updateFeature(Feature feature, FieldMask fieldMask) {
+            return feature;
+        }
+
+        @Override
+        public void listFeatures(Rectangle rectangle, Consumer<Feature> consumer) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
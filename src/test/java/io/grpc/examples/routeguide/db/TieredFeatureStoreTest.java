@@ -0,0 +1,235 @@
+package io.grpc.examples.routeguide.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.protobuf.FieldMask;
+
+import io.grpc.Context;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.factory.FakeAwsClientFactory;
+import io.grpc.examples.routeguide.factory.FakeDynamoDbClient;
+
+class TieredFeatureStoreTest {
+
+    // Four features a tenth of a degree apart, each alone in its partition
+    private static final int PARTITIONS = 4;
+    // Room for two single-feature partitions but not three
+    private static final long MAX_RESIDENT_BYTES = 1_000;
+
+    private final FakeDynamoDbClient dynamoDb =
+        new FakeDynamoDbClient(FeatureRepository.TABLE_NAME, "geoHash", "featureId");
+    private final GatedRepository repository = new GatedRepository(dynamoDb);
+    private final Set<String> rejected = Collections.synchronizedSet(new HashSet<>());
+    private final TieredFeatureStore store =
+        new TieredFeatureStore(repository, MAX_RESIDENT_BYTES, geoHash -> !rejected.contains(geoHash));
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final List<Feature> features = new ArrayList<>();
+
+    @BeforeEach
+    void seed() {
+        for (int i = 0; i < PARTITIONS; i++) {
+            Feature feature = Feature.newBuilder()
+                .setName("Feature " + i)
+                .setLocation(Point.newBuilder()
+                    .setLatitude(400_000_000 + i * 1_000_000)
+                    .setLongitude(-740_000_000))
+                .build();
+            features.add(feature);
+            dynamoDb.load(repository.toPutRequest(DataMigration.convertToEntity(feature)).putRequest().item());
+        }
+    }
+
+    @AfterEach
+    void shutDown() {
+        repository.release();
+        callers.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        repository.hold();
+        List<Future<Feature>> lookups = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            lookups.add(callers.submit(() -> store.getFeature(location(0))));
+        }
+        repository.awaitLoads(1);
+        Thread.sleep(50); // Let the other lookups find the load in flight
+        repository.release();
+
+        for (Future<Feature> lookup : lookups) {
+            assertEquals(features.get(0), lookup.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, repository.loads.get());
+        assertTrue(store.isResident(partition(0)));
+    }
+
+    @Test
+    void waiterGivesUpAtItsOwnDeadline() throws Exception {
+        repository.hold();
+        Future<Feature> loader = callers.submit(() -> store.getFeature(location(0)));
+        repository.awaitLoads(1);
+
+        Context.CancellableContext context = Context.current().withDeadlineAfter(50, TimeUnit.MILLISECONDS, scheduler);
+        try {
+            StatusRuntimeException e = assertThrows(StatusRuntimeException.class,
+                () -> context.call(() -> store.getFeature(location(0))));
+            assertEquals(Status.Code.DEADLINE_EXCEEDED, e.getStatus().getCode());
+        } finally {
+            context.cancel(null);
+        }
+
+        // The shared load carries on for the caller that started it
+        repository.release();
+        assertEquals(features.get(0), loader.get(5, TimeUnit.SECONDS));
+        assertEquals(1, repository.loads.get());
+        assertTrue(store.isResident(partition(0)));
+    }
+
+    @Test
+    void updateDuringLoadKeepsTheLoadOut() throws Exception {
+        repository.hold();
+        Future<Feature> loader = callers.submit(() -> store.getFeature(location(0)));
+        repository.awaitLoads(1);
+        Feature renamed = features.get(0).toBuilder().setName("Renamed").build();
+        assertEquals(renamed, store.updateFeature(renamed, FieldMask.newBuilder().addPaths("name").build()));
+        repository.release();
+
+        // The load may have read the old name: it is served once but not kept
+        loader.get(5, TimeUnit.SECONDS);
+        assertFalse(store.isResident(partition(0)));
+
+        // The mark went with that load, so the next one is admitted
+        assertEquals(renamed, store.getFeature(location(0)));
+        assertEquals(2, repository.loads.get());
+        assertTrue(store.isResident(partition(0)));
+    }
+
+    @Test
+    void failedLoadLeavesNoStaleMark() throws Exception {
+        repository.hold();
+        repository.failNext = true;
+        Future<Feature> loader = callers.submit(() -> store.getFeature(location(0)));
+        repository.awaitLoads(1);
+        store.applyChanges(Collections.singletonList(features.get(0)),
+            Collections.emptyList(), Collections.emptyList());
+        repository.release();
+        assertThrows(Exception.class, () -> loader.get(5, TimeUnit.SECONDS));
+
+        assertEquals(features.get(0), store.getFeature(location(0)));
+        assertTrue(store.isResident(partition(0)));
+    }
+
+    @Test
+    void evictionSkipsPinnedPartitions() {
+        store.pin(Collections.singletonList(partition(0)));
+        for (int i = 1; i < PARTITIONS; i++) {
+            store.getFeature(location(i));
+        }
+
+        assertTrue(store.isResident(partition(0)), "pinned partition was evicted");
+        assertTrue(store.isResident(partition(PARTITIONS - 1)));
+        assertFalse(store.isResident(partition(1)), "least recently used partition was kept");
+        assertTrue(store.residentBytes() <= MAX_RESIDENT_BYTES, "resident bytes " + store.residentBytes());
+        assertEquals(2, store.residentPartitions());
+    }
+
+    @Test
+    void evictUnadmittedDropsLostPartitionsAndLoads() throws Exception {
+        store.pin(Collections.singletonList(partition(0)));
+        store.getFeature(location(1));
+        repository.hold();
+        Future<Feature> loader = callers.submit(() -> store.getFeature(location(2)));
+        repository.awaitLoads(3);
+
+        rejected.add(partition(0));
+        rejected.add(partition(2));
+        assertEquals(1, store.evictUnadmitted());
+        repository.release();
+        loader.get(5, TimeUnit.SECONDS);
+
+        assertFalse(store.isResident(partition(0)));
+        assertTrue(store.pinned().isEmpty());
+        assertTrue(store.isResident(partition(1)));
+        // The load in flight when ownership moved is not kept either
+        assertFalse(store.isResident(partition(2)));
+    }
+
+    private Point location(int index) {
+        return features.get(index).getLocation();
+    }
+
+    private String partition(int index) {
+        return FeatureRepository.partitionKey(location(index));
+    }
+
+    /**
+     * Holds partition loads at a gate the test opens, and can fail the next one.
+     */
+    private static final class GatedRepository extends FeatureRepository {
+
+        final AtomicInteger loads = new AtomicInteger();
+        volatile boolean failNext;
+        private volatile CountDownLatch gate = new CountDownLatch(0);
+
+        GatedRepository(FakeDynamoDbClient dynamoDb) {
+            super(new FakeAwsClientFactory(dynamoDb));
+        }
+
+        void hold() {
+            gate = new CountDownLatch(1);
+        }
+
+        void release() {
+            gate.countDown();
+        }
+
+        void awaitLoads(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (loads.get() < count && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(count, loads.get());
+        }
+
+        @Override
+        public List<Feature> loadPartition(String geoHash) {
+            loads.incrementAndGet();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            if (failNext) {
+                failNext = false;
+                throw new IllegalStateException("DynamoDB is down");
+            }
+            return super.loadPartition(geoHash);
+        }
+    }
+}
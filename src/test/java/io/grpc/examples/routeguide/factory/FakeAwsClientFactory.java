@@ -0,0 +1,35 @@
+package io.grpc.examples.routeguide.factory;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.streams.DynamoDbStreamsClient;
+
+/**
+ * Factory handing out a FakeDynamoDbClient, installed with
+ * AwsClientFactoryProvider.setFactory() before the server is created.
+ */
+public class FakeAwsClientFactory implements AwsClientFactory {
+
+    private final FakeDynamoDbClient dynamoDbClient;
+    private final DynamoDbClientConfig clientConfig;
+
+    public FakeAwsClientFactory(FakeDynamoDbClient dynamoDbClient) {
+        this.dynamoDbClient = dynamoDbClient;
+        // No connection pool to warm
+        this.clientConfig = DynamoDbClientConfig.from(name -> "DYNAMODB_WARMUP_CONNECTIONS".equals(name) ? "0" : null);
+    }
+
+    @Override
+    public DynamoDbClient createDynamoDbClient() {
+        return dynamoDbClient;
+    }
+
+    @Override
+    public DynamoDbStreamsClient createDynamoDbStreamsClient() {
+        throw new UnsupportedOperationException("FakeAwsClientFactory has no DynamoDB Streams");
+    }
+
+    @Override
+    public DynamoDbClientConfig getClientConfig() {
+        return clientConfig;
+    }
+}
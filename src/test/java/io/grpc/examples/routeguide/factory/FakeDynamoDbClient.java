@@ -0,0 +1,585 @@
+package io.grpc.examples.routeguide.factory;
+
+import io.grpc.examples.routeguide.ratelimit.TokenBucket;
+import software.amazon.awssdk.awscore.AwsRequestOverrideConfiguration;
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.DescribeTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.DescribeTableResponse;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ResourceNotFoundException;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.TableDescription;
+import software.amazon.awssdk.services.dynamodb.model.TableStatus;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
+/**
+ * In-memory DynamoDbClient holding one table with a string partition key and
+ * a string sort key, so tests exercise the real FeatureRepository without AWS.
+ *
+ * Supports GetItem, PutItem, UpdateItem (SET only), Query on the partition key,
+ * Scan including parallel segments, BatchWriteItem and DescribeTable. Filter
+ * expressions may join "a = :v", "a BETWEEN :lo AND :hi" and the other
+ * comparisons with AND; anything else throws UnsupportedOperationException so
+ * a test never silently gets different semantics. Items come back in key order,
+ * paged by Limit and by the 1 MB page size like the real service.
+ *
+ * Each call sleeps for a latency drawn from its LatencyModel and is charged
+ * read or write capacity units. As in the sync SDK, only the request's api
+ * call timeout cuts the sleep short; an interrupt does not. With provisioned capacity set, calls beyond it
+ * throw ProvisionedThroughputExceededException, and BatchWriteItem returns the
+ * items it had no capacity for as unprocessed. There are no SDK retries.
+ */
+public class FakeDynamoDbClient implements DynamoDbClient {
+
+    private static final int MAX_PAGE_BYTES = 1024 * 1024;
+
+    private final String tableName;
+    private final String partitionKey;
+    private final String sortKey;
+    private final ConcurrentSkipListMap<String, ConcurrentSkipListMap<String, Map<String, AttributeValue>>> partitions =
+        new ConcurrentSkipListMap<>();
+
+    private final Map<String, LatencyModel> latencies = new ConcurrentHashMap<>();
+    private volatile LatencyModel defaultLatency = LatencyModel.NONE;
+    private volatile TokenBucket readCapacity; // In half read units
+    private volatile TokenBucket writeCapacity;
+    private final AtomicLong readState = TokenBucket.newState(System.nanoTime());
+    private final AtomicLong writeState = TokenBucket.newState(System.nanoTime());
+
+    private final Map<String, LongAdder> calls = new ConcurrentHashMap<>();
+    private final LongAdder throttled = new LongAdder();
+
+    public FakeDynamoDbClient(String tableName, String partitionKey, String sortKey) {
+        this.tableName = tableName;
+        this.partitionKey = partitionKey;
+        this.sortKey = sortKey;
+    }
+
+    /**
+     * Latency of every operation without its own model.
+     */
+    public FakeDynamoDbClient withLatency(LatencyModel latency) {
+        this.defaultLatency = latency;
+        return this;
+    }
+
+    /**
+     * @param operation SDK operation name, e.g. "Query" or "BatchWriteItem"
+     */
+    public FakeDynamoDbClient withLatency(String operation, LatencyModel latency) {
+        latencies.put(operation, latency);
+        return this;
+    }
+
+    /**
+     * Provisioned capacity in units per second, with one second of burst;
+     * 0 for unlimited.
+     */
+    public FakeDynamoDbClient withCapacity(double readUnitsPerSecond, double writeUnitsPerSecond) {
+        this.readCapacity = readUnitsPerSecond > 0
+            ? new TokenBucket(readUnitsPerSecond * 2, (int) Math.max(1, readUnitsPerSecond * 2))
+            : null;
+        this.writeCapacity = writeUnitsPerSecond > 0
+            ? new TokenBucket(writeUnitsPerSecond, (int) Math.max(1, writeUnitsPerSecond))
+            : null;
+        return this;
+    }
+
+    /**
+     * Store an item directly: no latency, no capacity.
+     */
+    public void load(Map<String, AttributeValue> item) {
+        store(item);
+    }
+
+    public long calls(String operation) {
+        LongAdder count = calls.get(operation);
+        return count == null ? 0 : count.sum();
+    }
+
+    public long throttledCalls() {
+        return throttled.sum();
+    }
+
+    public long itemCount() {
+        long count = 0;
+        for (Map<String, Map<String, AttributeValue>> partition : partitions.values()) {
+            count += partition.size();
+        }
+        return count;
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public DescribeTableResponse describeTable(DescribeTableRequest request) {
+        checkTable(request.tableName());
+        serve("DescribeTable", request);
+        return DescribeTableResponse.builder()
+            .table(TableDescription.builder()
+                .tableName(tableName)
+                .tableStatus(TableStatus.ACTIVE)
+                .itemCount(itemCount())
+                .build())
+            .build();
+    }
+
+    @Override
+    public GetItemResponse getItem(GetItemRequest request) {
+        checkTable(request.tableName());
+        serve("GetItem", request);
+        Map<String, AttributeValue> item = find(request.key());
+        chargeRead(item == null ? 1 : size(item), Boolean.TRUE.equals(request.consistentRead()));
+        return GetItemResponse.builder()
+            .item(item)
+            .consumedCapacity(consumed(request.returnConsumedCapacity(), readUnits(item == null ? 1 : size(item),
+                Boolean.TRUE.equals(request.consistentRead()))))
+            .build();
+    }
+
+    @Override
+    public PutItemResponse putItem(PutItemRequest request) {
+        checkTable(request.tableName());
+        unsupported(request.conditionExpression(), "condition expressions");
+        serve("PutItem", request);
+        chargeWrite(size(request.item()));
+        Map<String, AttributeValue> previous = store(new HashMap<>(request.item()));
+        return PutItemResponse.builder()
+            .attributes(request.returnValues() == ReturnValue.ALL_OLD ? previous : null)
+            .consumedCapacity(consumed(request.returnConsumedCapacity(), writeUnits(size(request.item()))))
+            .build();
+    }
+
+    @Override
+    public UpdateItemResponse updateItem(UpdateItemRequest request) {
+        checkTable(request.tableName());
+        unsupported(request.conditionExpression(), "condition expressions");
+        serve("UpdateItem", request);
+        Map<String, AttributeValue> item = find(request.key());
+        item = item == null ? new HashMap<>(request.key()) : new HashMap<>(item);
+        String expression = request.updateExpression().trim();
+        if (!expression.regionMatches(true, 0, "SET ", 0, 4)) {
+            throw new UnsupportedOperationException("Only SET update expressions: " + expression);
+        }
+        for (String assignment : expression.substring(4).split(",")) {
+            String[] sides = assignment.split("=");
+            if (sides.length != 2) {
+                throw new UnsupportedOperationException("Unsupported assignment: " + assignment);
+            }
+            item.put(name(sides[0].trim(), request.expressionAttributeNames()),
+                value(sides[1].trim(), request.expressionAttributeValues()));
+        }
+        chargeWrite(size(item));
+        store(item);
+        return UpdateItemResponse.builder()
+            .attributes(request.returnValues() == ReturnValue.ALL_NEW ? item : null)
+            .consumedCapacity(consumed(request.returnConsumedCapacity(), writeUnits(size(item))))
+            .build();
+    }
+
+    @Override
+    public QueryResponse query(QueryRequest request) {
+        checkTable(request.tableName());
+        unsupported(request.indexName(), "secondary indexes");
+        serve("Query", request);
+        String[] keyCondition = request.keyConditionExpression().trim().split("\\s+");
+        if (keyCondition.length != 3 || !"=".equals(keyCondition[1])
+                || !partitionKey.equals(name(keyCondition[0], request.expressionAttributeNames()))) {
+            throw new UnsupportedOperationException(
+                "Only partition key equality: " + request.keyConditionExpression());
+        }
+        String partitionValue = value(keyCondition[2], request.expressionAttributeValues()).s();
+        Predicate<Map<String, AttributeValue>> filter = filter(request.filterExpression(),
+            request.expressionAttributeNames(), request.expressionAttributeValues());
+
+        NavigableMap<String, Map<String, AttributeValue>> partition = partitions.get(partitionValue);
+        if (partition == null) {
+            partition = Collections.emptyNavigableMap();
+        }
+        if (Boolean.FALSE.equals(request.scanIndexForward())) {
+            partition = partition.descendingMap();
+        }
+        if (request.hasExclusiveStartKey() && !request.exclusiveStartKey().isEmpty()) {
+            partition = partition.tailMap(request.exclusiveStartKey().get(sortKey).s(), false);
+        }
+
+        Page page = new Page(request.limit());
+        for (Map<String, AttributeValue> item : partition.values()) {
+            if (!page.add(item, filter)) {
+                break;
+            }
+        }
+        chargeRead(page.bytes, Boolean.TRUE.equals(request.consistentRead()));
+        return QueryResponse.builder()
+            .items(page.items)
+            .count(page.items.size())
+            .scannedCount(page.scanned)
+            .lastEvaluatedKey(page.lastKey)
+            .consumedCapacity(consumed(request.returnConsumedCapacity(),
+                readUnits(page.bytes, Boolean.TRUE.equals(request.consistentRead()))))
+            .build();
+    }
+
+    @Override
+    public ScanResponse scan(ScanRequest request) {
+        checkTable(request.tableName());
+        unsupported(request.indexName(), "secondary indexes");
+        serve("Scan", request);
+        int totalSegments = request.totalSegments() != null ? request.totalSegments() : 1;
+        int segment = request.segment() != null ? request.segment() : 0;
+        Predicate<Map<String, AttributeValue>> filter = filter(request.filterExpression(),
+            request.expressionAttributeNames(), request.expressionAttributeValues());
+
+        NavigableMap<String, ConcurrentSkipListMap<String, Map<String, AttributeValue>>> remaining = partitions;
+        String startSortKey = null;
+        if (request.hasExclusiveStartKey() && !request.exclusiveStartKey().isEmpty()) {
+            String startPartition = request.exclusiveStartKey().get(partitionKey).s();
+            startSortKey = request.exclusiveStartKey().get(sortKey).s();
+            remaining = partitions.tailMap(startPartition, true);
+        }
+
+        Page page = new Page(request.limit());
+        scan:
+        for (Map.Entry<String, ConcurrentSkipListMap<String, Map<String, AttributeValue>>> partition
+                : remaining.entrySet()) {
+            if (Math.floorMod(partition.getKey().hashCode(), totalSegments) != segment) {
+                continue;
+            }
+            NavigableMap<String, Map<String, AttributeValue>> items = partition.getValue();
+            if (startSortKey != null) {
+                items = items.tailMap(startSortKey, false);
+                startSortKey = null;
+            }
+            for (Map<String, AttributeValue> item : items.values()) {
+                if (!page.add(item, filter)) {
+                    break scan;
+                }
+            }
+        }
+        chargeRead(page.bytes, Boolean.TRUE.equals(request.consistentRead()));
+        return ScanResponse.builder()
+            .items(page.items)
+            .count(page.items.size())
+            .scannedCount(page.scanned)
+            .lastEvaluatedKey(page.lastKey)
+            .consumedCapacity(consumed(request.returnConsumedCapacity(),
+                readUnits(page.bytes, Boolean.TRUE.equals(request.consistentRead()))))
+            .build();
+    }
+
+    @Override
+    public BatchWriteItemResponse batchWriteItem(BatchWriteItemRequest request) {
+        serve("BatchWriteItem", request);
+        List<WriteRequest> unprocessed = new ArrayList<>();
+        double units = 0;
+        int writes = 0;
+        for (Map.Entry<String, List<WriteRequest>> table : request.requestItems().entrySet()) {
+            checkTable(table.getKey());
+            for (WriteRequest write : table.getValue()) {
+                writes++;
+                if (write.putRequest() == null) {
+                    throw new UnsupportedOperationException("Only PutRequest in batch writes");
+                }
+                int size = size(write.putRequest().item());
+                if (!tryCharge(writeCapacity, writeState, (int) writeUnits(size))) {
+                    unprocessed.add(write);
+                    continue;
+                }
+                units += writeUnits(size);
+                store(new HashMap<>(write.putRequest().item()));
+            }
+        }
+        if (writes > 0 && unprocessed.size() == writes) {
+            throttled.increment();
+            throw ProvisionedThroughputExceededException.builder()
+                .message("Fake table " + tableName + " has no write capacity left").build();
+        }
+        return BatchWriteItemResponse.builder()
+            .unprocessedItems(unprocessed.isEmpty()
+                ? Collections.emptyMap()
+                : Collections.singletonMap(tableName, unprocessed))
+            .consumedCapacity(request.returnConsumedCapacity() == ReturnConsumedCapacity.TOTAL
+                ? Collections.singletonList(ConsumedCapacity.builder()
+                    .tableName(tableName).capacityUnits(units).build())
+                : null)
+            .build();
+    }
+
+    /**
+     * Items read by one Query or Scan page, up to Limit and the page size.
+     */
+    private final class Page {
+
+        final List<Map<String, AttributeValue>> items = new ArrayList<>();
+        final Integer limit;
+        int scanned;
+        int bytes;
+        Map<String, AttributeValue> lastKey;
+
+        Page(Integer limit) {
+            this.limit = limit;
+        }
+
+        /**
+         * @return False once the page is full; the item was not read then
+         */
+        boolean add(Map<String, AttributeValue> item, Predicate<Map<String, AttributeValue>> filter) {
+            if ((limit != null && scanned >= limit) || bytes >= MAX_PAGE_BYTES) {
+                return false;
+            }
+            scanned++;
+            bytes += size(item);
+            if (filter.test(item)) {
+                items.add(item);
+            }
+            lastKey = new HashMap<>();
+            lastKey.put(partitionKey, item.get(partitionKey));
+            lastKey.put(sortKey, item.get(sortKey));
+            return true;
+        }
+    }
+
+    /**
+     * Wait out the call's latency the way the sync SDK waits on a socket read:
+     * an interrupt does not end the wait, only the request's api call timeout
+     * does. An interrupt that arrived meanwhile is noticed once the response is in.
+     */
+    private void serve(String operation, DynamoDbRequest request) {
+        calls.computeIfAbsent(operation, key -> new LongAdder()).increment();
+        long delay = latencies.getOrDefault(operation, defaultLatency).sampleNanos();
+        long timeout = request.overrideConfiguration()
+            .flatMap(AwsRequestOverrideConfiguration::apiCallTimeout)
+            .map(Duration::toNanos)
+            .orElse(Long.MAX_VALUE);
+        long wait = Math.min(delay, timeout);
+        long deadline = System.nanoTime() + wait;
+        boolean interrupted = false;
+        while (wait > 0) {
+            LockSupport.parkNanos(wait);
+            interrupted |= Thread.interrupted();
+            wait = deadline - System.nanoTime();
+        }
+        if (delay > timeout) {
+            throw ApiCallTimeoutException.create(TimeUnit.NANOSECONDS.toMillis(timeout));
+        }
+        if (interrupted) {
+            // What the SDK throws when it finds the thread interrupted between stages
+            throw AbortedException.builder().message(operation + " interrupted").build();
+        }
+    }
+
+    private void checkTable(String name) {
+        if (!tableName.equals(name)) {
+            throw ResourceNotFoundException.builder().message("Requested resource not found: " + name).build();
+        }
+    }
+
+    private static void unsupported(String value, String feature) {
+        if (value != null) {
+            throw new UnsupportedOperationException("FakeDynamoDbClient does not support " + feature);
+        }
+    }
+
+    private Map<String, AttributeValue> find(Map<String, AttributeValue> key) {
+        Map<String, Map<String, AttributeValue>> partition = partitions.get(key.get(partitionKey).s());
+        return partition == null ? null : partition.get(key.get(sortKey).s());
+    }
+
+    private Map<String, AttributeValue> store(Map<String, AttributeValue> item) {
+        if (item.get(partitionKey) == null || item.get(sortKey) == null) {
+            throw new IllegalArgumentException("Item lacks key attributes: " + item);
+        }
+        return partitions.computeIfAbsent(item.get(partitionKey).s(), key -> new ConcurrentSkipListMap<>())
+            .put(item.get(sortKey).s(), Collections.unmodifiableMap(item));
+    }
+
+    private void chargeRead(int bytes, boolean consistent) {
+        // Half units, so eventually consistent reads of up to 4 KB cost one permit
+        int halfUnits = (int) (readUnits(bytes, consistent) * 2);
+        if (!tryCharge(readCapacity, readState, halfUnits)) {
+            throttled.increment();
+            throw ProvisionedThroughputExceededException.builder()
+                .message("Fake table " + tableName + " has no read capacity left").build();
+        }
+    }
+
+    private void chargeWrite(int bytes) {
+        if (!tryCharge(writeCapacity, writeState, (int) writeUnits(bytes))) {
+            throttled.increment();
+            throw ProvisionedThroughputExceededException.builder()
+                .message("Fake table " + tableName + " has no write capacity left").build();
+        }
+    }
+
+    private static boolean tryCharge(TokenBucket bucket, AtomicLong state, int permits) {
+        return bucket == null || bucket.tryAcquire(state, System.nanoTime(), permits) == 0;
+    }
+
+    private static double readUnits(int bytes, boolean consistent) {
+        double units = Math.max(1, (bytes + 4095) / 4096);
+        return consistent ? units : units / 2;
+    }
+
+    private static double writeUnits(int bytes) {
+        return Math.max(1, (bytes + 1023) / 1024);
+    }
+
+    private ConsumedCapacity consumed(ReturnConsumedCapacity mode, double units) {
+        if (mode == null || mode == ReturnConsumedCapacity.NONE) {
+            return null;
+        }
+        return ConsumedCapacity.builder().tableName(tableName).capacityUnits(units).build();
+    }
+
+    private static int size(Map<String, AttributeValue> item) {
+        int bytes = 0;
+        for (Map.Entry<String, AttributeValue> attribute : item.entrySet()) {
+            bytes += attribute.getKey().length();
+            AttributeValue value = attribute.getValue();
+            if (value.s() != null) {
+                bytes += value.s().getBytes(StandardCharsets.UTF_8).length;
+            } else if (value.n() != null) {
+                bytes += value.n().length();
+            } else if (value.b() != null) {
+                bytes += value.b().asByteArray().length;
+            } else {
+                bytes += 1;
+            }
+        }
+        return bytes;
+    }
+
+    private static String name(String token, Map<String, String> names) {
+        if (token.startsWith("#")) {
+            String name = names.get(token);
+            if (name == null) {
+                throw new IllegalArgumentException("Undefined expression attribute name: " + token);
+            }
+            return name;
+        }
+        return token;
+    }
+
+    private static AttributeValue value(String token, Map<String, AttributeValue> values) {
+        AttributeValue value = values.get(token);
+        if (value == null) {
+            throw new IllegalArgumentException("Undefined expression attribute value: " + token);
+        }
+        return value;
+    }
+
+    /**
+     * Parse a filter expression of comparisons joined with AND.
+     */
+    private static Predicate<Map<String, AttributeValue>> filter(String expression, Map<String, String> names,
+            Map<String, AttributeValue> values) {
+        Predicate<Map<String, AttributeValue>> filter = item -> true;
+        if (expression == null || expression.trim().isEmpty()) {
+            return filter;
+        }
+        String[] tokens = expression.trim().split("\\s+");
+        int i = 0;
+        while (i < tokens.length) {
+            if (i + 2 >= tokens.length) {
+                throw new UnsupportedOperationException("Unsupported filter expression: " + expression);
+            }
+            String attribute = name(tokens[i], names);
+            String operator = tokens[i + 1].toUpperCase();
+            Predicate<Map<String, AttributeValue>> clause;
+            if ("BETWEEN".equals(operator)) {
+                if (i + 4 >= tokens.length || !"AND".equalsIgnoreCase(tokens[i + 3])) {
+                    throw new UnsupportedOperationException("Unsupported filter expression: " + expression);
+                }
+                AttributeValue low = value(tokens[i + 2], values);
+                AttributeValue high = value(tokens[i + 4], values);
+                clause = item -> item.get(attribute) != null
+                    && compare(item.get(attribute), low) >= 0 && compare(item.get(attribute), high) <= 0;
+                i += 5;
+            } else {
+                AttributeValue operand = value(tokens[i + 2], values);
+                clause = comparison(attribute, operator, operand, expression);
+                i += 3;
+            }
+            filter = filter.and(clause);
+            if (i < tokens.length) {
+                if (!"AND".equalsIgnoreCase(tokens[i])) {
+                    throw new UnsupportedOperationException("Only AND in filter expressions: " + expression);
+                }
+                i++;
+            }
+        }
+        return filter;
+    }
+
+    private static Predicate<Map<String, AttributeValue>> comparison(String attribute, String operator,
+            AttributeValue operand, String expression) {
+        switch (operator) {
+            case "=":
+                return item -> item.get(attribute) != null && compare(item.get(attribute), operand) == 0;
+            case "<>":
+                return item -> item.get(attribute) == null || compare(item.get(attribute), operand) != 0;
+            case "<":
+                return item -> item.get(attribute) != null && compare(item.get(attribute), operand) < 0;
+            case "<=":
+                return item -> item.get(attribute) != null && compare(item.get(attribute), operand) <= 0;
+            case ">":
+                return item -> item.get(attribute) != null && compare(item.get(attribute), operand) > 0;
+            case ">=":
+                return item -> item.get(attribute) != null && compare(item.get(attribute), operand) >= 0;
+            default:
+                throw new UnsupportedOperationException("Unsupported filter expression: " + expression);
+        }
+    }
+
+    private static int compare(AttributeValue a, AttributeValue b) {
+        if (a.n() != null && b.n() != null) {
+            return new BigDecimal(a.n()).compareTo(new BigDecimal(b.n()));
+        }
+        if (a.s() != null && b.s() != null) {
+            return a.s().compareTo(b.s());
+        }
+        throw new UnsupportedOperationException("Cannot compare " + a + " with " + b);
+    }
+}
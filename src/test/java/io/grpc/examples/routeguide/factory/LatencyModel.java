@@ -0,0 +1,35 @@
+package io.grpc.examples.routeguide.factory;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Distribution of the service time FakeDynamoDbClient adds to each call.
+ */
+public interface LatencyModel {
+
+    LatencyModel NONE = () -> 0;
+
+    /**
+     * @return Delay for one call in nanoseconds
+     */
+    long sampleNanos();
+
+    static LatencyModel fixed(Duration latency) {
+        long nanos = latency.toNanos();
+        return () -> nanos;
+    }
+
+    /**
+     * Log-normal latency, the usual shape of a remote call: most calls near the
+     * median and a long tail, fitted so that 99% fall below p99.
+     */
+    static LatencyModel logNormal(Duration median, Duration p99) {
+        if (p99.compareTo(median) < 0) {
+            throw new IllegalArgumentException("p99 " + p99 + " below median " + median);
+        }
+        double mu = Math.log(median.toNanos());
+        double sigma = Math.log((double) p99.toNanos() / median.toNanos()) / 2.326; // z of the 99th percentile
+        return () -> (long) Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian());
+    }
+}
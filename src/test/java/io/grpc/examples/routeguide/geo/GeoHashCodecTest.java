@@ -0,0 +1,79 @@
+package io.grpc.examples.routeguide.geo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import ch.hsr.geohash.GeoHash;
+
+/**
+ * GeoHashCodec must produce exactly the cells of ch.hsr.geohash, which wrote
+ * the partition keys already stored in DynamoDB.
+ */
+class GeoHashCodecTest {
+
+    private static final int RANDOM_POINTS = 100_000;
+    private static final int[] EDGE_LATITUDES = {-900_000_000, -899_999_999, -1, 0, 1, 899_999_999, 900_000_000};
+    private static final int[] EDGE_LONGITUDES =
+        {-1_800_000_000, -1_799_999_999, -1, 0, 1, 1_799_999_999, 1_800_000_000};
+
+    @Test
+    void matchesLibraryAtRandomPoints() {
+        Random random = new Random(42);
+        for (int n = 0; n < RANDOM_POINTS; n++) {
+            int chars = 1 + random.nextInt(GeoHashCodec.MAX_CHARS);
+            int lat = random.nextInt(1_800_000_001) - 900_000_000;
+            int lon = (int) (random.nextLong() % 1_800_000_001L);
+            assertMatches(lat, lon, chars);
+        }
+    }
+
+    @Test
+    void matchesLibraryNextToCellBoundaries() {
+        Random random = new Random(7);
+        for (int n = 0; n < RANDOM_POINTS; n++) {
+            int chars = 1 + random.nextInt(GeoHashCodec.MAX_CHARS);
+            // Snap to the E7 value nearest a cell boundary, then step around it
+            double latSize = 180.0 / (1L << (5 * chars / 2));
+            double lonSize = 360.0 / (1L << ((5 * chars + 1) / 2));
+            int lat = random.nextInt(1_800_000_001) - 900_000_000;
+            int lon = (int) (random.nextLong() % 1_800_000_001L);
+            lat = (int) Math.round(Math.floor(lat / 1e7 / latSize) * latSize * 1e7) + random.nextInt(5) - 2;
+            lon = (int) Math.round(Math.floor(lon / 1e7 / lonSize) * lonSize * 1e7) + random.nextInt(5) - 2;
+            assertMatches(Math.max(-900_000_000, Math.min(900_000_000, lat)),
+                Math.max(-1_800_000_000, Math.min(1_800_000_000, lon)), chars);
+        }
+    }
+
+    @Test
+    void matchesLibraryAtPolesAntimeridianAndOrigin() {
+        for (int chars = 1; chars <= GeoHashCodec.MAX_CHARS; chars++) {
+            for (int lat : EDGE_LATITUDES) {
+                for (int lon : EDGE_LONGITUDES) {
+                    assertMatches(lat, lon, chars);
+                }
+            }
+        }
+    }
+
+    private static void assertMatches(int lat, int lon, int chars) {
+        String where = lat + ", " + lon + " (" + chars + " chars)";
+        GeoHash expected = GeoHash.withCharacterPrecision(lat / 1e7, lon / 1e7, chars);
+        long cell = GeoHashCodec.encode(lat, lon, chars);
+        // The library keeps its bits left-aligned
+        assertEquals(expected.longValue() >>> (64 - 5 * chars), cell, where);
+        String geoHash = GeoHashCodec.toBase32(cell, chars);
+        assertEquals(expected.toBase32(), geoHash, where);
+        assertEquals(cell, GeoHashCodec.fromBase32(geoHash), where);
+
+        long[] adjacent = new long[8];
+        GeoHashCodec.neighbors(cell, chars, adjacent);
+        GeoHash[] expectedAdjacent = expected.getAdjacent();
+        for (int i = 0; i < 8; i++) {
+            assertEquals(expectedAdjacent[i].toBase32(), GeoHashCodec.toBase32(adjacent[i], chars),
+                "neighbour " + i + " of " + where);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package io.grpc.examples.routeguide.geo;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * A lookup must never miss an added point, and absent points must come back
+ * "maybe present" at no more than the target rate the filter was sized for.
+ */
+class PointBloomFilterTest {
+
+    private static final int POINTS = 100_000;
+    private static final int PROBES = 1_000_000;
+    // Measured rate may exceed the target by this factor; sampling noise at 1M probes is a few percent
+    private static final double TOLERANCE = 1.25;
+
+    @Test
+    void neverMissesAnAddedPoint() {
+        PointBloomFilter filter = new PointBloomFilter(POINTS, 0.01);
+        long[] points = randomPoints(new Random(1), POINTS);
+        for (long point : points) {
+            filter.add(latitude(point), longitude(point));
+        }
+        for (long point : points) {
+            assertTrue(filter.mightContain(latitude(point), longitude(point)));
+        }
+    }
+
+    @Test
+    void neverMissesPointsAddedPastItsSize() {
+        // Overfilling raises the false positive rate but must not lose points
+        PointBloomFilter filter = new PointBloomFilter(1_000, 0.01);
+        long[] points = randomPoints(new Random(2), 50_000);
+        for (long point : points) {
+            filter.add(latitude(point), longitude(point));
+        }
+        for (long point : points) {
+            assertTrue(filter.mightContain(latitude(point), longitude(point)));
+        }
+    }
+
+    @Test
+    void neverMissesPointsAddedConcurrently() throws Exception {
+        PointBloomFilter filter = new PointBloomFilter(POINTS, 0.01);
+        long[] points = randomPoints(new Random(3), POINTS);
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> adds = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int first = t;
+                adds.add(executor.submit(() -> {
+                    for (int i = first; i < points.length; i += threads) {
+                        filter.add(latitude(points[i]), longitude(points[i]));
+                    }
+                }));
+            }
+            for (Future<?> add : adds) {
+                add.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        for (long point : points) {
+            assertTrue(filter.mightContain(latitude(point), longitude(point)));
+        }
+    }
+
+    @Test
+    void falsePositiveRateMeetsTarget() {
+        for (double target : new double[] {0.05, 0.01, 0.001}) {
+            PointBloomFilter filter = new PointBloomFilter(POINTS, target);
+            Random random = new Random(4);
+            Set<Long> added = new HashSet<>();
+            for (long point : randomPoints(random, POINTS)) {
+                filter.add(latitude(point), longitude(point));
+                added.add(point);
+            }
+
+            int probes = 0;
+            int falsePositives = 0;
+            while (probes < PROBES) {
+                long point = randomPoint(random);
+                if (added.contains(point)) {
+                    continue;
+                }
+                probes++;
+                if (filter.mightContain(latitude(point), longitude(point))) {
+                    falsePositives++;
+                }
+            }
+            double measured = (double) falsePositives / probes;
+            assertTrue(measured <= target * TOLERANCE,
+                "false positive rate " + measured + " over target " + target);
+            assertTrue(filter.expectedFalsePositiveRate() <= target,
+                "expected rate " + filter.expectedFalsePositiveRate() + " over target " + target);
+        }
+    }
+
+    @Test
+    void emptyFilterHoldsNothing() {
+        PointBloomFilter filter = new PointBloomFilter(POINTS, 0.01);
+        Random random = new Random(5);
+        for (int i = 0; i < 10_000; i++) {
+            long point = randomPoint(random);
+            assertFalse(filter.mightContain(latitude(point), longitude(point)));
+        }
+    }
+
+    @Test
+    void rejectsRateOutsideZeroAndOne() {
+        assertThrows(IllegalArgumentException.class, () -> new PointBloomFilter(POINTS, 0));
+        assertThrows(IllegalArgumentException.class, () -> new PointBloomFilter(POINTS, 1));
+    }
+
+    private static long[] randomPoints(Random random, int count) {
+        long[] points = new long[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = randomPoint(random);
+        }
+        return points;
+    }
+
+    /**
+     * Latitude in the high half, longitude in the low half.
+     */
+    private static long randomPoint(Random random) {
+        int lat = random.nextInt(1_800_000_001) - 900_000_000;
+        int lon = (int) (random.nextLong() % 1_800_000_001L);
+        return ((long) lat << 32) | (lon & 0xffffffffL);
+    }
+
+    private static int latitude(long point) {
+        return (int) (point >> 32);
+    }
+
+    private static int longitude(long point) {
+        return (int) point;
+    }
+}
@@ -0,0 +1,182 @@
+package io.grpc.examples.routeguide.geo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Rectangle queries must return exactly what a brute-force filter over the same
+ * points returns, however the tree was built or changed.
+ */
+class PointQuadtreeTest {
+
+    private static final int POINTS = 20_000;
+    private static final int QUERIES = 500;
+
+    @Test
+    void bulkLoadedTreeMatchesBruteForce() {
+        Random random = new Random(1);
+        List<long[]> points = mixedPoints(random, POINTS);
+        PointQuadtree<long[]> tree = PointQuadtree.build(points, p -> (int) p[0], p -> (int) p[1]);
+
+        assertEquals(POINTS, tree.size());
+        assertQueriesMatch(random, tree, index(points));
+    }
+
+    @Test
+    void incrementallyBuiltTreeMatchesBruteForce() {
+        Random random = new Random(2);
+        PointQuadtree<long[]> tree = new PointQuadtree<>();
+        Map<Long, long[]> expected = new HashMap<>();
+        for (long[] point : mixedPoints(random, POINTS)) {
+            tree.put((int) point[0], (int) point[1], point);
+            expected.put(key(point), point);
+        }
+
+        assertEquals(expected.size(), tree.size());
+        assertQueriesMatch(random, tree, expected);
+    }
+
+    @Test
+    void updatesAndRemovalsMatchBruteForce() {
+        Random random = new Random(3);
+        List<long[]> points = mixedPoints(random, POINTS);
+        PointQuadtree<long[]> tree = PointQuadtree.build(points, p -> (int) p[0], p -> (int) p[1]);
+        Map<Long, long[]> expected = index(points);
+
+        List<long[]> present = new ArrayList<>(expected.values());
+        for (int i = 0; i < POINTS / 2; i++) {
+            long[] point = present.get(random.nextInt(present.size()));
+            if (random.nextBoolean()) {
+                tree.remove((int) point[0], (int) point[1]);
+                expected.remove(key(point));
+            } else {
+                long[] replacement = {point[0], point[1], -i};
+                tree.put((int) point[0], (int) point[1], replacement);
+                expected.put(key(point), replacement);
+            }
+        }
+
+        assertEquals(expected.size(), tree.size());
+        assertQueriesMatch(random, tree, expected);
+        for (long[] point : points) {
+            long[] value = tree.get((int) point[0], (int) point[1]);
+            assertEquals(expected.get(key(point)), value);
+        }
+    }
+
+    @Test
+    void includesRectangleEdges() {
+        PointQuadtree<String> tree = new PointQuadtree<>();
+        tree.put(10, 20, "corner");
+        tree.put(10, 21, "outside");
+
+        List<String> found = new ArrayList<>();
+        tree.query(0, 0, 10, 20, found::add);
+        assertEquals(List.of("corner"), found);
+
+        found.clear();
+        tree.query(10, 20, 10, 20, found::add);
+        assertEquals(List.of("corner"), found);
+
+        found.clear();
+        tree.query(11, 0, 10, 100, found::add);
+        assertEquals(List.of(), found);
+    }
+
+    @Test
+    void rejectsPointsOffTheGlobe() {
+        PointQuadtree<String> tree = new PointQuadtree<>();
+        assertThrows(IllegalArgumentException.class, () -> tree.put(900_000_001, 0, "north of the pole"));
+        tree.remove(900_000_001, 0);
+        assertNull(tree.get(900_000_001, 0));
+        assertEquals(0, tree.size());
+    }
+
+    private static void assertQueriesMatch(Random random, PointQuadtree<long[]> tree, Map<Long, long[]> points) {
+        for (int i = 0; i < QUERIES; i++) {
+            int[] rect = randomRectangle(random);
+            Set<Long> expected = new HashSet<>();
+            for (long[] point : points.values()) {
+                if (point[0] >= rect[0] && point[0] <= rect[2] && point[1] >= rect[1] && point[1] <= rect[3]) {
+                    expected.add(point[2]);
+                }
+            }
+
+            List<Long> found = new ArrayList<>();
+            tree.query(rect[0], rect[1], rect[2], rect[3], point -> found.add(point[2]));
+            assertEquals(expected.size(), found.size(), "duplicates or misses in " + Arrays.toString(rect));
+            assertEquals(expected, new HashSet<>(found));
+        }
+    }
+
+    /**
+     * Rectangles from a few meters to the whole globe, biased towards the clusters.
+     */
+    private static int[] randomRectangle(Random random) {
+        long latSpan = (long) Math.pow(10, 1 + random.nextDouble() * 8.3);
+        long lonSpan = (long) Math.pow(10, 1 + random.nextDouble() * 8.6);
+        int[] center = random.nextBoolean() ? clusterPoint(random) : uniformPoint(random);
+        long latLo = Math.max(-900_000_000L, center[0] - latSpan / 2);
+        long lonLo = Math.max(-1_800_000_000L, center[1] - lonSpan / 2);
+        return new int[] {(int) latLo, (int) lonLo,
+            (int) Math.min(900_000_000L, latLo + latSpan),
+            (int) Math.min(1_800_000_000L, lonLo + lonSpan)};
+    }
+
+    /**
+     * Half uniform over the globe, half packed into a few small clusters so
+     * leaves split deep, plus the globe's corners.
+     * Each point is {lat, lon, id}.
+     */
+    private static List<long[]> mixedPoints(Random random, int count) {
+        List<long[]> points = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        points.add(new long[] {900_000_000, 1_800_000_000, 0});
+        points.add(new long[] {-900_000_000, -1_800_000_000, 1});
+        seen.add(key(points.get(0)));
+        seen.add(key(points.get(1)));
+        while (points.size() < count) {
+            int[] point = random.nextBoolean() ? clusterPoint(random) : uniformPoint(random);
+            long[] value = {point[0], point[1], points.size()};
+            if (seen.add(key(value))) {
+                points.add(value);
+            }
+        }
+        return points;
+    }
+
+    private static int[] uniformPoint(Random random) {
+        return new int[] {random.nextInt(1_800_000_001) - 900_000_000,
+            (int) (random.nextInt(1_800_000_001) * 2L - 1_800_000_000L)};
+    }
+
+    private static int[] clusterPoint(Random random) {
+        int cluster = random.nextInt(4);
+        return new int[] {407_000_000 + cluster * 10_000 + random.nextInt(2_000),
+            -740_000_000 + cluster * 10_000 + random.nextInt(2_000)};
+    }
+
+    private static Map<Long, long[]> index(List<long[]> points) {
+        Map<Long, long[]> index = new HashMap<>();
+        for (long[] point : points) {
+            index.put(key(point), point);
+        }
+        return index;
+    }
+
+    private static long key(long[] point) {
+        return (point[0] << 32) | (point[1] & 0xffffffffL);
+    }
+}
@@ -0,0 +1,120 @@
+package io.grpc.examples.routeguide.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class HotCellTrackerTest {
+
+    private static final int CELLS = 2_000;
+    private static final int SKETCH_WIDTH = 4096;
+
+    private final HotCellTracker tracker = new HotCellTracker(16, 1, TimeUnit.MINUTES);
+
+    @Test
+    void keepsTheHeaviestCellsInOrderUnderSkew() {
+        recordZipf();
+
+        List<HotCellTracker.CellRate> top = tracker.topCells(8);
+        assertEquals(List.of("cell0", "cell1", "cell2", "cell3", "cell4", "cell5", "cell6", "cell7"),
+            cellsOf(top));
+        for (int i = 1; i < top.size(); i++) {
+            assertTrue(top.get(i - 1).totalPerSecond() >= top.get(i).totalPerSecond());
+        }
+    }
+
+    @Test
+    void overestimatesWithinTheSketchBound() {
+        long events = recordZipf();
+
+        // Count-min: never below the true count, and above it by more than
+        // e * events / width for only about e^-depth of the cells
+        long bound = (long) Math.ceil(Math.E * events / SKETCH_WIDTH);
+        int overBound = 0;
+        for (int i = 0; i < CELLS; i++) {
+            long estimate = tracker.estimatedCount("cell" + i);
+            long count = trueCount(i);
+            assertTrue(estimate >= count, "cell" + i + " estimated " + estimate + " below " + count);
+            if (estimate - count > bound) {
+                overBound++;
+            }
+        }
+        assertTrue(overBound <= CELLS / 20, overBound + " cells over the bound of " + bound);
+        for (int i = 0; i < 8; i++) {
+            assertTrue(tracker.estimatedCount("cell" + i) - trueCount(i) <= bound, "hot cell" + i);
+        }
+    }
+
+    @Test
+    void splitsReadsFromWrites() {
+        for (int i = 0; i < 300; i++) {
+            tracker.recordRead("dr5reg");
+        }
+        for (int i = 0; i < 100; i++) {
+            tracker.recordWrite("dr5reg");
+        }
+        HotCellTracker.CellRate rate = tracker.topCells(1).get(0);
+        assertEquals(3.0, rate.getReadsPerSecond() / rate.getWritesPerSecond(), 1e-9);
+    }
+
+    @Test
+    void forgetsCellsTwoWindowsOld() {
+        for (int i = 0; i < 100; i++) {
+            tracker.recordRead("old");
+        }
+        tracker.rotate();
+        tracker.recordRead("new");
+        // The previous window still counts
+        assertEquals(List.of("old", "new"), cellsOf(tracker.topCells(10)));
+        assertEquals(100, tracker.estimatedCount("old"));
+
+        tracker.rotate();
+        assertEquals(List.of("new"), cellsOf(tracker.topCells(10)));
+        assertEquals(0, tracker.estimatedCount("old"));
+
+        tracker.rotate();
+        assertTrue(tracker.topCells(10).isEmpty());
+    }
+
+    /**
+     * Record cell i about 20000 / (i + 1) times, shuffled.
+     *
+     * @return Number of events recorded
+     */
+    private long recordZipf() {
+        List<String> events = new ArrayList<>();
+        for (int i = 0; i < CELLS; i++) {
+            for (long n = trueCount(i); n > 0; n--) {
+                events.add("cell" + i);
+            }
+        }
+        Collections.shuffle(events, new Random(42));
+        for (int i = 0; i < events.size(); i++) {
+            if (i % 10 == 0) {
+                tracker.recordWrite(events.get(i));
+            } else {
+                tracker.recordRead(events.get(i));
+            }
+        }
+        return events.size();
+    }
+
+    private static long trueCount(int cell) {
+        return 20_000 / (cell + 1);
+    }
+
+    private static List<String> cellsOf(List<HotCellTracker.CellRate> rates) {
+        List<String> cells = new ArrayList<>();
+        for (HotCellTracker.CellRate rate : rates) {
+            cells.add(rate.getCell());
+        }
+        return cells;
+    }
+}
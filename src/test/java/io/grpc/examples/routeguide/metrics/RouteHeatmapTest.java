@@ -0,0 +1,137 @@
+package io.grpc.examples.routeguide.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.jupiter.api.Test;
+
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.Rectangle;
+import io.grpc.examples.routeguide.geo.GeoHashCodec;
+
+class RouteHeatmapTest {
+
+    private static final Point NEW_YORK = point(407_128_000, -740_060_000);
+    private static final Point SAN_FRANCISCO = point(377_749_000, -1_224_194_000);
+    private static final Rectangle AROUND_NEW_YORK = Rectangle.newBuilder()
+        .setLo(point(400_000_000, -750_000_000))
+        .setHi(point(410_000_000, -730_000_000))
+        .build();
+
+    private final RouteHeatmap heatmap = new RouteHeatmap(1, TimeUnit.MINUTES, 3, 10_000);
+
+    @Test
+    void coarserCellsMatchGeoHashCodec() {
+        Random random = new Random(7);
+        Point[] points = new Point[500];
+        for (int i = 0; i < points.length; i++) {
+            // A few kilometres around New York, so cells are shared at every precision
+            points[i] = point(NEW_YORK.getLatitude() + random.nextInt(400_000) - 200_000,
+                NEW_YORK.getLongitude() + random.nextInt(400_000) - 200_000);
+            heatmap.record(points[i], false);
+        }
+
+        for (int precision = 1; precision <= RouteHeatmap.MAX_PRECISION; precision++) {
+            Map<String, Long> expected = new HashMap<>();
+            for (Point point : points) {
+                expected.merge(GeoHashCodec.toBase32(
+                    GeoHashCodec.encode(point.getLatitude(), point.getLongitude(), precision), precision),
+                    1L, Long::sum);
+            }
+            RouteHeatmap.Snapshot snapshot = heatmap.query(null, precision, 0, Integer.MAX_VALUE);
+            assertEquals(expected, visits(snapshot), "precision " + precision);
+            assertEquals(points.length, snapshot.getTotalVisits());
+        }
+        // Sorted busiest first
+        List<RouteHeatmap.CellCount> cells = heatmap.query(null, 5, 0, Integer.MAX_VALUE).getCells();
+        for (int i = 1; i < cells.size(); i++) {
+            assertTrue(cells.get(i - 1).getVisits() >= cells.get(i).getVisits());
+        }
+    }
+
+    @Test
+    void areaLeavesOutCellsAndFeaturesOutside() {
+        for (int i = 0; i < 3; i++) {
+            heatmap.record(NEW_YORK, true);
+        }
+        heatmap.record(SAN_FRANCISCO, true);
+
+        RouteHeatmap.Snapshot snapshot = heatmap.query(AROUND_NEW_YORK, 4, 0, 10);
+        assertEquals(Map.of(cell(NEW_YORK, 4), 3L), visits(snapshot));
+        assertEquals(3, snapshot.getTotalVisits());
+        assertEquals(1, snapshot.getFeatures().size());
+        assertEquals(NEW_YORK.getLatitude(), snapshot.getFeatures().get(0).getLatitude());
+        assertEquals(NEW_YORK.getLongitude(), snapshot.getFeatures().get(0).getLongitude());
+        assertEquals(3, snapshot.getFeatures().get(0).getVisits());
+
+        assertEquals(4, heatmap.query(null, 4, 0, 10).getTotalVisits());
+    }
+
+    @Test
+    void lookbackLeavesOutWindowsThatEndedBeforeIt() throws InterruptedException {
+        heatmap.record(SAN_FRANCISCO, false);
+        heatmap.rotate();
+        Thread.sleep(50);
+        heatmap.record(NEW_YORK, false);
+
+        assertEquals(Map.of(cell(NEW_YORK, 7), 1L), visits(heatmap.query(null, 7, 20, 10)));
+        assertEquals(2, heatmap.query(null, 7, TimeUnit.MINUTES.toMillis(1), 10).getTotalVisits());
+        assertEquals(2, heatmap.query(null, 7, 0, 10).getTotalVisits());
+
+        // Only windowCount windows are kept at all
+        heatmap.rotate();
+        heatmap.rotate();
+        assertEquals(Map.of(cell(NEW_YORK, 7), 1L), visits(heatmap.query(null, 7, 0, 10)));
+        heatmap.rotate();
+        assertEquals(0, heatmap.query(null, 7, 0, 10).getTotalVisits());
+    }
+
+    @Test
+    void countsPointsPastMaxKeysAsDropped() {
+        RouteHeatmap small = new RouteHeatmap(1, TimeUnit.MINUTES, 2, 3);
+        LongAdder dropped = MetricsRegistry.getDefault().counter("heatmap.dropped_points");
+        long droppedBefore = dropped.sum();
+
+        for (int i = 0; i < 5; i++) {
+            small.record(point(NEW_YORK.getLatitude() + i * 100_000, NEW_YORK.getLongitude()), true);
+        }
+        // Cells already counted keep counting
+        small.record(NEW_YORK, true);
+
+        assertEquals(2, dropped.sum() - droppedBefore);
+        RouteHeatmap.Snapshot snapshot = small.query(null, 7, 0, 10);
+        assertEquals(3, snapshot.getCells().size());
+        assertEquals(4, snapshot.getTotalVisits());
+        assertEquals(3, snapshot.getFeatures().size());
+
+        // A new window has room again
+        small.rotate();
+        small.record(point(NEW_YORK.getLatitude() + 4 * 100_000, NEW_YORK.getLongitude()), false);
+        assertEquals(2, dropped.sum() - droppedBefore);
+        assertEquals(4, small.query(null, 7, 0, 10).getCells().size());
+    }
+
+    private static Map<String, Long> visits(RouteHeatmap.Snapshot snapshot) {
+        Map<String, Long> visits = new HashMap<>();
+        for (RouteHeatmap.CellCount cell : snapshot.getCells()) {
+            visits.put(cell.getGeoHash(), cell.getVisits());
+        }
+        return visits;
+    }
+
+    private static String cell(Point point, int precision) {
+        return GeoHashCodec.toBase32(
+            GeoHashCodec.encode(point.getLatitude(), point.getLongitude(), precision), precision);
+    }
+
+    private static Point point(int latitude, int longitude) {
+        return Point.newBuilder().setLatitude(latitude).setLongitude(longitude).build();
+    }
+}
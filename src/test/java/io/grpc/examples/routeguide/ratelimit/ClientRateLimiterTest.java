@@ -0,0 +1,81 @@
+package io.grpc.examples.routeguide.ratelimit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import io.grpc.examples.routeguide.ratelimit.ClientRateLimiter.Kind;
+
+class ClientRateLimiterTest {
+
+    // Reads refill far slower than any test runs; updates refill within a microsecond
+    private static final TokenBucket SLOW = new TokenBucket(0.001, 2);
+    private static final TokenBucket FAST = new TokenBucket(1_000_000, 1);
+
+    @Test
+    void limitsEachClientSeparately() {
+        ClientRateLimiter limiter = new ClientRateLimiter(new TokenBucket[] {SLOW, null, null}, 0, 100);
+        assertTrue(limiter.isLimited(Kind.READ));
+        assertFalse(limiter.isLimited(Kind.POINT));
+
+        assertEquals(0, limiter.tryAcquire("a", Kind.READ, 1));
+        assertEquals(0, limiter.tryAcquire("a", Kind.READ, 1));
+        long wait = limiter.tryAcquire("a", Kind.READ, 1);
+        assertTrue(wait > TimeUnit.SECONDS.toNanos(900), "retry after " + wait + " ns");
+
+        assertEquals(0, limiter.tryAcquire("b", Kind.READ, 1));
+        // Unlimited kinds never take tokens or track the client
+        assertEquals(0, limiter.tryAcquire("c", Kind.POINT, 1_000));
+        assertEquals(2, limiter.size());
+    }
+
+    @Test
+    void evictsOnlyIdleClientsWithFullBuckets() throws InterruptedException {
+        ClientRateLimiter limiter = new ClientRateLimiter(new TokenBucket[] {SLOW, FAST, null}, 0, 100);
+        assertEquals(0, limiter.tryAcquire("reader", Kind.READ, 1));
+        assertEquals(0, limiter.tryAcquire("updater", Kind.UPDATE, 1));
+        Thread.sleep(1);
+
+        // The updater's bucket has refilled; the reader's has not
+        assertEquals(1, limiter.evictIdle());
+        assertEquals(1, limiter.size());
+        assertEquals(0, limiter.tryAcquire("reader", Kind.READ, 1));
+        assertTrue(limiter.tryAcquire("reader", Kind.READ, 1) > 0, "reader was evicted and refilled");
+    }
+
+    @Test
+    void keepsRecentlySeenClients() {
+        ClientRateLimiter limiter =
+            new ClientRateLimiter(new TokenBucket[] {null, FAST, null}, TimeUnit.HOURS.toNanos(1), 100);
+        assertEquals(0, limiter.tryAcquire("updater", Kind.UPDATE, 1));
+        assertEquals(0, limiter.evictIdle());
+        assertEquals(1, limiter.size());
+    }
+
+    @Test
+    void clientsPastMaxShareOverflowBucket() {
+        ClientRateLimiter limiter = new ClientRateLimiter(new TokenBucket[] {SLOW, null, null}, 0, 2);
+        assertEquals(0, limiter.tryAcquire("a", Kind.READ, 1));
+        assertEquals(0, limiter.tryAcquire("b", Kind.READ, 1));
+
+        // Two new clients drain the one shared bucket between them
+        assertEquals(0, limiter.tryAcquire("c", Kind.READ, 1));
+        assertEquals(0, limiter.tryAcquire("d", Kind.READ, 1));
+        assertTrue(limiter.tryAcquire("e", Kind.READ, 1) > 0);
+        assertEquals(3, limiter.size());
+
+        // Tracked clients keep their own buckets
+        assertEquals(0, limiter.tryAcquire("a", Kind.READ, 1));
+    }
+
+    @Test
+    void needsOneBucketPerKind() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new ClientRateLimiter(new TokenBucket[] {SLOW}, 0, 100));
+    }
+}
@@ -0,0 +1,241 @@
+package io.grpc.examples.routeguide.ratelimit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.GetFeatureRequest;
+import io.grpc.examples.routeguide.ImportSummary;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.RouteGuideGrpc;
+import io.grpc.examples.routeguide.RouteSummary;
+import io.grpc.examples.routeguide.UpdateFeatureRequest;
+import io.grpc.examples.routeguide.UpdateFeatureResponse;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.MetadataUtils;
+import io.grpc.stub.StreamObserver;
+
+class RateLimitInterceptorTest {
+
+    private static final String CLIENT_HEADER = "custom_client_header_key";
+    // Refills far slower than any test runs
+    private static final double RATE = 0.001;
+
+    private final AtomicInteger pointsSeen = new AtomicInteger();
+    private final AtomicInteger featuresSeen = new AtomicInteger();
+    private final AtomicBoolean halfClosed = new AtomicBoolean();
+    private Server server;
+    private ManagedChannel channel;
+
+    @AfterEach
+    void shutDown() throws InterruptedException {
+        if (channel != null) {
+            channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+        if (server != null) {
+            server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void rejectsReadsOverLimitWithRetryAfter() throws Exception {
+        start(new TokenBucket[] {new TokenBucket(RATE, 2), null, null});
+        RouteGuideGrpc.RouteGuideBlockingStub alice = stub("alice");
+
+        alice.getFeature(GetFeatureRequest.getDefaultInstance());
+        alice.getFeature(GetFeatureRequest.getDefaultInstance());
+        StatusRuntimeException e = assertThrows(StatusRuntimeException.class,
+            () -> alice.getFeature(GetFeatureRequest.getDefaultInstance()));
+        assertEquals(Status.Code.RESOURCE_EXHAUSTED, e.getStatus().getCode());
+        assertRetryAfter(e.getTrailers());
+
+        // Another client has its own bucket; updates are not limited here
+        stub("bob").getFeature(GetFeatureRequest.getDefaultInstance());
+        alice.updateFeature(UpdateFeatureRequest.getDefaultInstance());
+    }
+
+    @Test
+    void cutsOffRecordRouteAtFirstPointOverLimit() throws Exception {
+        start(new TokenBucket[] {null, null, new TokenBucket(RATE, 3)});
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        StreamObserver<Point> points = RouteGuideGrpc.newStub(channel)
+            .withInterceptors(MetadataUtils.newAttachHeadersInterceptor(headers("alice")))
+            .recordRoute(new StreamObserver<RouteSummary>() {
+                @Override
+                public void onNext(RouteSummary summary) {
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    error.set(t);
+                    done.countDown();
+                }
+
+                @Override
+                public void onCompleted() {
+                    done.countDown();
+                }
+            });
+        for (int i = 0; i < 10; i++) {
+            points.onNext(Point.newBuilder().setLatitude(i).build());
+        }
+        points.onCompleted();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        StatusRuntimeException e = (StatusRuntimeException) error.get();
+        assertEquals(Status.Code.RESOURCE_EXHAUSTED, e.getStatus().getCode());
+        assertRetryAfter(e.getTrailers());
+        assertEquals(3, pointsSeen.get());
+        assertFalse(halfClosed.get(), "service answered a rejected stream");
+    }
+
+    private static void assertRetryAfter(Metadata trailers) {
+        String retryAfter = trailers.get(RateLimitInterceptor.RETRY_AFTER_MS_KEY);
+        // One token takes 1000 s to refill; rounded up to whole milliseconds
+        assertEquals(TimeUnit.SECONDS.toMillis(1000), Long.parseLong(retryAfter), 1_000);
+        assertEquals(retryAfter, trailers.get(RateLimitInterceptor.RETRY_PUSHBACK_MS_KEY));
+    }
+
+    @Test
+    void chargesImportsPerFeature() throws Exception {
+        start(new TokenBucket[] {null, new TokenBucket(RATE, 3), null});
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        StreamObserver<Feature> features = RouteGuideGrpc.newStub(channel)
+            .withInterceptors(MetadataUtils.newAttachHeadersInterceptor(headers("alice")))
+            .importFeatures(new StreamObserver<ImportSummary>() {
+                @Override
+                public void onNext(ImportSummary summary) {
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    error.set(t);
+                    done.countDown();
+                }
+
+                @Override
+                public void onCompleted() {
+                    done.countDown();
+                }
+            });
+        for (int i = 0; i < 10; i++) {
+            features.onNext(Feature.newBuilder().setName("Feature " + i).build());
+        }
+        features.onCompleted();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        StatusRuntimeException e = (StatusRuntimeException) error.get();
+        assertEquals(Status.Code.RESOURCE_EXHAUSTED, e.getStatus().getCode());
+        assertRetryAfter(e.getTrailers());
+        assertEquals(3, featuresSeen.get());
+        assertFalse(halfClosed.get(), "service answered a rejected stream");
+    }
+
+    @Test
+    void sharedLegacyClientIdFallsBackToAddress() throws Exception {
+        start(new TokenBucket[] {new TokenBucket(RATE, 1), null, null});
+        stub("customRequestValue").getFeature(GetFeatureRequest.getDefaultInstance());
+
+        // Same peer address, so the same bucket as the call above
+        StatusRuntimeException e = assertThrows(StatusRuntimeException.class,
+            () -> RouteGuideGrpc.newBlockingStub(channel).getFeature(GetFeatureRequest.getDefaultInstance()));
+        assertEquals(Status.Code.RESOURCE_EXHAUSTED, e.getStatus().getCode());
+        stub("alice").getFeature(GetFeatureRequest.getDefaultInstance());
+    }
+
+    private void start(TokenBucket[] buckets) throws Exception {
+        ClientRateLimiter limiter = new ClientRateLimiter(buckets, TimeUnit.MINUTES.toNanos(5), 100);
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name).directExecutor()
+            .addService(ServerInterceptors.intercept(new RouteGuideGrpc.RouteGuideImplBase() {
+                @Override
+                public void getFeature(GetFeatureRequest request, StreamObserver<Feature> observer) {
+                    observer.onNext(Feature.getDefaultInstance());
+                    observer.onCompleted();
+                }
+
+                @Override
+                public void updateFeature(UpdateFeatureRequest request,
+                        StreamObserver<UpdateFeatureResponse> observer) {
+                    observer.onNext(UpdateFeatureResponse.getDefaultInstance());
+                    observer.onCompleted();
+                }
+
+                @Override
+                public StreamObserver<Feature> importFeatures(StreamObserver<ImportSummary> observer) {
+                    return new StreamObserver<Feature>() {
+                        @Override
+                        public void onNext(Feature feature) {
+                            featuresSeen.incrementAndGet();
+                        }
+
+                        @Override
+                        public void onError(Throwable t) {
+                        }
+
+                        @Override
+                        public void onCompleted() {
+                            halfClosed.set(true);
+                            observer.onNext(ImportSummary.newBuilder().setAcceptedCount(featuresSeen.get()).build());
+                            observer.onCompleted();
+                        }
+                    };
+                }
+
+                @Override
+                public StreamObserver<Point> recordRoute(StreamObserver<RouteSummary> observer) {
+                    return new StreamObserver<Point>() {
+                        @Override
+                        public void onNext(Point point) {
+                            pointsSeen.incrementAndGet();
+                        }
+
+                        @Override
+                        public void onError(Throwable t) {
+                        }
+
+                        @Override
+                        public void onCompleted() {
+                            halfClosed.set(true);
+                            observer.onNext(RouteSummary.newBuilder().setPointCount(pointsSeen.get()).build());
+                            observer.onCompleted();
+                        }
+                    };
+                }
+            }, new RateLimitInterceptor(limiter, CLIENT_HEADER)))
+            .build()
+            .start();
+        channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+    }
+
+    private RouteGuideGrpc.RouteGuideBlockingStub stub(String client) {
+        return RouteGuideGrpc.newBlockingStub(channel)
+            .withInterceptors(MetadataUtils.newAttachHeadersInterceptor(headers(client)));
+    }
+
+    private static Metadata headers(String client) {
+        Metadata headers = new Metadata();
+        headers.put(Metadata.Key.of(CLIENT_HEADER, Metadata.ASCII_STRING_MARSHALLER), client);
+        return headers;
+    }
+}
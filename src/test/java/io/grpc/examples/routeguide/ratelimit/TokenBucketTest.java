@@ -0,0 +1,72 @@
+package io.grpc.examples.routeguide.ratelimit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class TokenBucketTest {
+
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(100); // 10 permits/s
+    private static final long START = 1_000_000_000L;
+
+    private final TokenBucket bucket = new TokenBucket(10, 3);
+
+    @Test
+    void allowsBurstThenRefillsAtRate() {
+        AtomicLong state = TokenBucket.newState(START);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.tryAcquire(state, START, 1));
+        }
+        assertEquals(INTERVAL, bucket.tryAcquire(state, START, 1));
+
+        // One interval later exactly one more token is back
+        assertEquals(0, bucket.tryAcquire(state, START + INTERVAL, 1));
+        assertTrue(bucket.tryAcquire(state, START + INTERVAL, 1) > 0);
+    }
+
+    @Test
+    void waitIsWhenTheRequestWouldFit() {
+        AtomicLong state = TokenBucket.newState(START);
+        assertEquals(0, bucket.tryAcquire(state, START, 3));
+
+        long wait = bucket.tryAcquire(state, START, 2);
+        assertEquals(2 * INTERVAL, wait);
+        // A rejected request takes nothing, so the wait does not grow
+        assertEquals(wait, bucket.tryAcquire(state, START, 2));
+        assertEquals(1, bucket.tryAcquire(state, START + wait - 1, 2));
+        assertEquals(0, bucket.tryAcquire(state, START + wait, 2));
+    }
+
+    @Test
+    void fullAgainAfterBurstIntervals() {
+        AtomicLong state = TokenBucket.newState(START);
+        assertTrue(TokenBucket.isFull(state, START));
+        bucket.tryAcquire(state, START, 2);
+        assertFalse(TokenBucket.isFull(state, START + INTERVAL));
+        assertTrue(TokenBucket.isFull(state, START + 2 * INTERVAL));
+
+        // Idle time beyond a full bucket is not banked
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.tryAcquire(state, START + 100 * INTERVAL, 1));
+        }
+        assertTrue(bucket.tryAcquire(state, START + 100 * INTERVAL, 1) > 0);
+    }
+
+    @Test
+    void rejectsMorePermitsThanTheBurst() {
+        AtomicLong state = TokenBucket.newState(START);
+        assertEquals(INTERVAL, bucket.tryAcquire(state, START, 4));
+    }
+
+    @Test
+    void rejectsNonPositiveRateOrBurst() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(1, 0));
+    }
+}
@@ -0,0 +1,103 @@
+package io.grpc.examples.routeguide.shard;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import io.grpc.examples.routeguide.geo.GeoHashCodec;
+
+class ConsistentHashRingTest {
+
+    private static final List<String> NODES =
+        Arrays.asList("localhost:8980", "localhost:8981", "localhost:8982", "localhost:8983");
+    private static final List<String> SHARDS = sampleShards();
+
+    @Test
+    void spreadsShardsEvenly() {
+        ConsistentHashRing ring = new ConsistentHashRing(NODES);
+        Map<String, Integer> owned = new HashMap<>();
+        for (String shard : SHARDS) {
+            owned.merge(ring.ownerOf(shard), 1, Integer::sum);
+        }
+
+        assertEquals(NODES.size(), owned.size());
+        double fair = (double) SHARDS.size() / NODES.size();
+        for (Map.Entry<String, Integer> entry : owned.entrySet()) {
+            assertTrue(Math.abs(entry.getValue() - fair) < fair * 0.2,
+                entry.getKey() + " owns " + entry.getValue() + " of " + SHARDS.size() + " shards");
+        }
+    }
+
+    @Test
+    void addingNodeMovesOnlyItsShareToIt() {
+        ConsistentHashRing before = new ConsistentHashRing(NODES);
+        List<String> grown = new ArrayList<>(NODES);
+        grown.add("localhost:8984");
+        ConsistentHashRing after = new ConsistentHashRing(grown);
+
+        int moved = 0;
+        for (String shard : SHARDS) {
+            if (!before.ownerOf(shard).equals(after.ownerOf(shard))) {
+                assertEquals("localhost:8984", after.ownerOf(shard));
+                moved++;
+            }
+        }
+        double fair = (double) SHARDS.size() / grown.size();
+        assertTrue(Math.abs(moved - fair) < fair * 0.2, moved + " of " + SHARDS.size() + " shards moved");
+    }
+
+    @Test
+    void removingNodeMovesOnlyItsShards() {
+        ConsistentHashRing before = new ConsistentHashRing(NODES);
+        ConsistentHashRing after = new ConsistentHashRing(NODES.subList(0, NODES.size() - 1));
+        String removed = NODES.get(NODES.size() - 1);
+
+        int moved = 0;
+        for (String shard : SHARDS) {
+            if (!before.ownerOf(shard).equals(after.ownerOf(shard))) {
+                assertEquals(removed, before.ownerOf(shard));
+                moved++;
+            } else {
+                assertTrue(!removed.equals(before.ownerOf(shard)));
+            }
+        }
+        double fair = (double) SHARDS.size() / NODES.size();
+        assertTrue(Math.abs(moved - fair) < fair * 0.2, moved + " of " + SHARDS.size() + " shards moved");
+    }
+
+    @Test
+    void ownershipDoesNotDependOnNodeOrder() {
+        List<String> reversed = new ArrayList<>(NODES);
+        Collections.reverse(reversed);
+        ConsistentHashRing ring = new ConsistentHashRing(NODES);
+        ConsistentHashRing other = new ConsistentHashRing(reversed);
+        for (String shard : SHARDS) {
+            assertEquals(ring.ownerOf(shard), other.ownerOf(shard));
+        }
+    }
+
+    @Test
+    void rejectsEmptyMembership() {
+        assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing(Collections.emptyList()));
+    }
+
+    /**
+     * Every 32nd shard key of the world, enough for stable shares.
+     */
+    private static List<String> sampleShards() {
+        List<String> shards = new ArrayList<>();
+        for (long cell = 0; cell < 1L << (5 * ConsistentHashRing.SHARD_PRECISION); cell += 32) {
+            shards.add(GeoHashCodec.toBase32(cell, ConsistentHashRing.SHARD_PRECISION));
+        }
+        return shards;
+    }
+}
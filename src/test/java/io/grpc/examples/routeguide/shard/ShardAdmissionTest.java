@@ -0,0 +1,78 @@
+package io.grpc.examples.routeguide.shard;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.cache.SerializedResponseCache;
+import io.grpc.examples.routeguide.db.DataMigration;
+import io.grpc.examples.routeguide.db.FeatureRepository;
+import io.grpc.examples.routeguide.db.TieredFeatureStore;
+import io.grpc.examples.routeguide.factory.FakeAwsClientFactory;
+import io.grpc.examples.routeguide.factory.FakeDynamoDbClient;
+
+class ShardAdmissionTest {
+
+    private static final String SELF = "localhost:8980";
+    private static final String OTHER = "localhost:8981";
+    private static final Point POINT = Point.newBuilder().setLatitude(409_146_138).setLongitude(-746_188_906).build();
+    private static final Feature FEATURE = Feature.newBuilder().setName("Feature").setLocation(POINT).build();
+
+    private final FakeDynamoDbClient dynamoDb =
+        new FakeDynamoDbClient(FeatureRepository.TABLE_NAME, "geoHash", "featureId");
+    private final FeatureRepository repository = new FeatureRepository(new FakeAwsClientFactory(dynamoDb));
+    private final String partition = FeatureRepository.partitionKey(POINT);
+
+    @Test
+    void newOwnerStartsCaching() {
+        ShardAdmission admission = new ShardAdmission(SELF, Collections.singletonList(OTHER));
+        TieredFeatureStore hotTier = new TieredFeatureStore(repository, 1024 * 1024, admission);
+        dynamoDb.load(repository.toPutRequest(DataMigration.convertToEntity(FEATURE)).putRequest().item());
+
+        assertEquals(FEATURE, hotTier.getFeature(POINT));
+        assertFalse(hotTier.isResident(partition));
+
+        admission.setNodes(Collections.singletonList(SELF));
+        assertEquals(FEATURE, hotTier.getFeature(POINT));
+        assertTrue(hotTier.isResident(partition));
+    }
+
+    @Test
+    void oldOwnerDropsMovedShards() {
+        ShardAdmission admission = new ShardAdmission(SELF, Collections.singletonList(SELF));
+        TieredFeatureStore hotTier = new TieredFeatureStore(repository, 1024 * 1024, admission);
+        SerializedResponseCache responseCache = new SerializedResponseCache(1024 * 1024, hotTier::admits);
+        dynamoDb.load(repository.toPutRequest(DataMigration.convertToEntity(FEATURE)).putRequest().item());
+        hotTier.pin(Collections.singletonList(partition));
+        responseCache.put(responseCache.stamp(), POINT, "", new byte[] {1});
+        assertTrue(hotTier.isResident(partition));
+        assertNotNull(responseCache.get(POINT, ""));
+
+        // This node stays in the cluster but no longer owns the shard
+        admission.setNodes(Collections.singletonList(OTHER));
+        assertEquals(1, hotTier.evictUnadmitted());
+        responseCache.evictUnadmitted();
+
+        assertFalse(hotTier.isResident(partition));
+        assertTrue(hotTier.pinned().isEmpty());
+        assertNull(responseCache.get(POINT, ""));
+        assertEquals(FEATURE, hotTier.getFeature(POINT));
+        assertFalse(hotTier.isResident(partition));
+    }
+
+    @Test
+    void ownsWhatTheRingAssignsIt() {
+        ShardAdmission admission = new ShardAdmission(SELF, Arrays.asList(SELF, OTHER));
+        String shard = partition.substring(0, ConsistentHashRing.SHARD_PRECISION);
+        assertEquals(SELF.equals(admission.ring().ownerOf(shard)), admission.test(partition));
+    }
+}
@@ -0,0 +1,67 @@
+package io.grpc.examples.routeguide.tracing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.grpc.examples.routeguide.metrics.MetricsRegistry;
+
+class FileSpanExporterTest {
+
+    private static final SpanContext PARENT =
+        SpanContext.fromTraceparent("00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void writesOneJsonLinePerSpan() throws Exception {
+        Path file = dir.resolve("spans.jsonl");
+        FileSpanExporter exporter = new FileSpanExporter(file);
+        Tracer tracer = new Tracer(exporter, 1.0);
+
+        Span span = tracer.startServerSpan("routeguide.RouteGuide/GetFeature", PARENT)
+            .setAttribute("geohash", "dr5\"reg\n")
+            .setAttribute("features_returned", 1)
+            .setStatus("NOT_FOUND");
+        span.end();
+        span.end(); // Ending twice exports once
+        exporter.close();
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(1, lines.size());
+        String json = lines.get(0);
+        assertTrue(json.startsWith("{\"traceId\":\"4bf92f3577b34da6a3ce929d0e0e4736\",\"spanId\":\""
+            + span.getContext().spanId() + "\",\"parentSpanId\":\"00f067aa0ba902b7\","
+            + "\"name\":\"routeguide.RouteGuide/GetFeature\",\"kind\":\"SERVER\",\"startEpochMicros\":"), json);
+        assertTrue(json.endsWith(",\"status\":\"NOT_FOUND\","
+            + "\"attributes\":{\"geohash\":\"dr5\\\"reg\\u000a\",\"features_returned\":1}}"), json);
+    }
+
+    @Test
+    void dropsSpansWhenTheQueueIsFull() throws Exception {
+        Path file = dir.resolve("dropped.jsonl");
+        LongAdder dropped = MetricsRegistry.getDefault().counter("tracing.dropped_spans");
+        long droppedBefore = dropped.sum();
+        FileSpanExporter exporter = new FileSpanExporter(file, 1);
+        Tracer tracer = new Tracer(exporter, 1.0);
+
+        int spans = 2_000;
+        for (int i = 0; i < spans; i++) {
+            tracer.startServerSpan("span " + i, null).end();
+        }
+        exporter.close();
+
+        long lost = dropped.sum() - droppedBefore;
+        assertTrue(lost > 0, "a one-span queue kept up with " + spans + " spans");
+        assertEquals(spans, Files.readAllLines(file, StandardCharsets.UTF_8).size() + lost);
+    }
+}
@@ -0,0 +1,47 @@
+package io.grpc.examples.routeguide.tracing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class SpanContextTest {
+
+    private static final String TRACEPARENT = "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01";
+
+    @Test
+    void parsesAndWritesTraceparent() {
+        SpanContext context = SpanContext.fromTraceparent(TRACEPARENT);
+        assertEquals("4bf92f3577b34da6a3ce929d0e0e4736", context.traceId());
+        assertEquals("00f067aa0ba902b7", context.spanId());
+        assertTrue(context.isSampled());
+        assertEquals(TRACEPARENT, context.toTraceparent());
+
+        SpanContext unsampled = SpanContext.fromTraceparent(TRACEPARENT.substring(0, 53) + "00");
+        assertFalse(unsampled.isSampled());
+    }
+
+    @Test
+    void rejectsMalformedTraceparent() {
+        assertNull(SpanContext.fromTraceparent(null));
+        assertNull(SpanContext.fromTraceparent(""));
+        assertNull(SpanContext.fromTraceparent(TRACEPARENT.substring(1)));
+        assertNull(SpanContext.fromTraceparent("01" + TRACEPARENT.substring(2)));
+        assertNull(SpanContext.fromTraceparent(TRACEPARENT.replace('-', '_')));
+        assertNull(SpanContext.fromTraceparent(TRACEPARENT.replace('b', 'x')));
+        assertNull(SpanContext.fromTraceparent("00-00000000000000000000000000000000-00f067aa0ba902b7-01"));
+        assertNull(SpanContext.fromTraceparent("00-4bf92f3577b34da6a3ce929d0e0e4736-0000000000000000-01"));
+    }
+
+    @Test
+    void childKeepsTraceAndDecision() {
+        SpanContext parent = SpanContext.fromTraceparent(TRACEPARENT);
+        SpanContext child = parent.child();
+        assertEquals(parent.traceId(), child.traceId());
+        assertNotEquals(parent.spanId(), child.spanId());
+        assertEquals(parent.isSampled(), child.isSampled());
+    }
+}
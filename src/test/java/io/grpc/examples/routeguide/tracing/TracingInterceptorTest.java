@@ -0,0 +1,142 @@
+package io.grpc.examples.routeguide.tracing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
+import io.grpc.examples.routeguide.Feature;
+import io.grpc.examples.routeguide.GetFeatureRequest;
+import io.grpc.examples.routeguide.Point;
+import io.grpc.examples.routeguide.RouteGuideGrpc;
+import io.grpc.examples.routeguide.db.DataMigration;
+import io.grpc.examples.routeguide.db.FeatureRepository;
+import io.grpc.examples.routeguide.factory.FakeAwsClientFactory;
+import io.grpc.examples.routeguide.factory.FakeDynamoDbClient;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+class TracingInterceptorTest {
+
+    private static final Feature FEATURE = Feature.newBuilder()
+        .setName("Traced")
+        .setLocation(Point.newBuilder().setLatitude(409_146_138).setLongitude(-746_188_906))
+        .build();
+    private static final String METHOD = "routeguide.RouteGuide/GetFeature";
+
+    private final InMemorySpanExporter exporter = new InMemorySpanExporter(100);
+    private final AtomicReference<String> traceparentReceived = new AtomicReference<>();
+    private final AtomicReference<Span> serviceSpan = new AtomicReference<>();
+    private Server server;
+    private ManagedChannel channel;
+
+    @AfterEach
+    void shutDown() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void continuesTheCallersTraceDownToDynamoDb() throws Exception {
+        Tracer tracer = new Tracer(exporter, 1.0);
+        start(tracer);
+
+        assertEquals(FEATURE, getFeature(tracer));
+
+        List<Span> spans = exporter.getSpans();
+        Span client = find(spans, METHOD, Span.Kind.CLIENT);
+        Span server = find(spans, METHOD, Span.Kind.SERVER);
+        Span interceptors = find(spans, "interceptors", Span.Kind.INTERNAL);
+        Span repository = find(spans, "FeatureRepository.getFeature", Span.Kind.INTERNAL);
+        Span query = find(spans, "DynamoDB Query", Span.Kind.INTERNAL);
+
+        assertEquals(client.getContext().toTraceparent(), traceparentReceived.get());
+        assertNull(client.getParentSpanId());
+        for (Span span : new Span[] {server, interceptors, repository, query}) {
+            assertEquals(client.getContext().traceId(), span.getContext().traceId(), span.getName());
+        }
+        assertEquals(client.getContext().spanId(), server.getParentSpanId());
+        assertEquals(server.getContext().spanId(), interceptors.getParentSpanId());
+        assertEquals(server.getContext().spanId(), repository.getParentSpanId());
+        assertEquals(repository.getContext().spanId(), query.getParentSpanId());
+        assertSame(server, serviceSpan.get());
+        assertTrue(server.toJson().contains("\"messages_received\":1,\"messages_sent\":1"), server.toJson());
+        assertTrue(server.toJson().contains("\"status\":\"OK\""), server.toJson());
+    }
+
+    @Test
+    void unsampledCallsPassThrough() throws Exception {
+        Tracer tracer = new Tracer(exporter, 0);
+        start(tracer);
+
+        assertEquals(FEATURE, getFeature(tracer));
+
+        // The decision is still propagated so the server does not start its own trace
+        SpanContext sent = SpanContext.fromTraceparent(traceparentReceived.get());
+        assertNotNull(sent);
+        assertFalse(sent.isSampled());
+        assertSame(Span.INVALID, serviceSpan.get());
+        assertTrue(exporter.getSpans().isEmpty(), "exported " + exporter.getSpans());
+    }
+
+    private Feature getFeature(Tracer tracer) {
+        return RouteGuideGrpc.newBlockingStub(channel)
+            .withInterceptors(new TracingClientInterceptor(tracer))
+            .getFeature(GetFeatureRequest.newBuilder().setPoint(FEATURE.getLocation()).build());
+    }
+
+    private void start(Tracer tracer) throws Exception {
+        FakeDynamoDbClient dynamoDb = new FakeDynamoDbClient(FeatureRepository.TABLE_NAME, "geoHash", "featureId");
+        FeatureRepository repository = new FeatureRepository(new FakeAwsClientFactory(dynamoDb));
+        dynamoDb.load(repository.toPutRequest(DataMigration.convertToEntity(FEATURE)).putRequest().item());
+        repository.initialize();
+
+        ServerInterceptor captureTraceparent = new ServerInterceptor() {
+            @Override
+            public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call,
+                    Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+                traceparentReceived.set(headers.get(SpanContext.TRACEPARENT_KEY));
+                return next.startCall(call, headers);
+            }
+        };
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name).directExecutor()
+            .addService(ServerInterceptors.intercept(new RouteGuideGrpc.RouteGuideImplBase() {
+                @Override
+                public void getFeature(GetFeatureRequest request, StreamObserver<Feature> observer) {
+                    serviceSpan.set(Span.current());
+                    observer.onNext(repository.getFeature(request.getPoint()));
+                    observer.onCompleted();
+                }
+            }, new TracingServerInterceptor(tracer), captureTraceparent))
+            .build()
+            .start();
+        channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+    }
+
+    private static Span find(List<Span> spans, String name, Span.Kind kind) {
+        for (Span span : spans) {
+            if (span.getName().equals(name) && span.getKind() == kind) {
+                return span;
+            }
+        }
+        throw new AssertionError("No " + kind + " span " + name + " in " + spans);
+    }
+}